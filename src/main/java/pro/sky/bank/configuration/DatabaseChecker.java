@@ -2,46 +2,80 @@ package pro.sky.bank.configuration;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
+import pro.sky.bank.repository.RecommendationsRepository;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 
+/**
+ * Стартовая диагностика базы данных: подключение, список таблиц с колонками, наличие
+ * обязательных таблиц и тестовых пользователей.
+ * <p>
+ * По умолчанию выполняется в отдельном потоке и не задерживает готовность приложения
+ * ({@code application.diagnostics.startup.async}); полностью отключается свойством
+ * {@code application.diagnostics.startup.enabled=false}. Подсчет строк {@code COUNT(*)} на больших
+ * таблицах дорог, поэтому его можно выключить отдельно: {@code application.diagnostics.count-rows=false}.
+ * </p>
+ */
 @Configuration
+@ConditionalOnProperty(name = "application.diagnostics.startup.enabled", havingValue = "true", matchIfMissing = true)
 public class DatabaseChecker {
 
     private static final Logger log = LoggerFactory.getLogger(DatabaseChecker.class);
 
+    @Value("${application.diagnostics.startup.async:true}")
+    private boolean async;
+
+    @Value("${application.diagnostics.count-rows:true}")
+    private boolean countRows;
+
     @Bean
-    public CommandLineRunner checkDatabaseConnection(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+    public CommandLineRunner checkDatabaseConnection(DataSource dataSource, JdbcTemplate jdbcTemplate,
+                                                     RecommendationsRepository repository) {
         return args -> {
-            log.info("=== TESTING DATABASE CONNECTION ===");
+            Runnable diagnostics = () -> runDiagnostics(dataSource, jdbcTemplate, repository);
+            if (async) {
+                Thread thread = new Thread(diagnostics, "startup-diagnostics");
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                diagnostics.run();
+            }
+        };
+    }
 
-            try {
+    private void runDiagnostics(DataSource dataSource, JdbcTemplate jdbcTemplate,
+                                RecommendationsRepository repository) {
+        log.info("=== TESTING DATABASE CONNECTION ===");
 
-                try (Connection connection = dataSource.getConnection()) {
-                    String url = connection.getMetaData().getURL();
-                    String driver = connection.getMetaData().getDriverName();
-                    log.info("✅ Подключение к базе данных установлено");
-                    log.info("   URL: {}", url);
-                    log.info("   Драйвер: {}", driver);
+        try {
+            try (Connection connection = dataSource.getConnection()) {
+                String url = connection.getMetaData().getURL();
+                String driver = connection.getMetaData().getDriverName();
+                log.info("✅ Подключение к базе данных установлено");
+                log.info("   URL: {}", url);
+                log.info("   Драйвер: {}", driver);
 
-                    checkTables(jdbcTemplate);
-                    checkTestUsers(jdbcTemplate);
+                repository.testConnection();
+                repository.showAllTables();
+                checkTables(jdbcTemplate);
+                checkTestUsers(jdbcTemplate);
 
-                }
-            } catch (Exception e) {
-                log.error("❌ Ошибка подключения к базе данных: {}", e.getMessage());
-                log.error("Проверьте:");
-                log.error("1. Наличие файла transaction.mv.db");
-                log.error("2. Правильность пути в spring.datasource.url");
-                log.error("3. Что файл не поврежден");
-                e.printStackTrace();
             }
-        };
+        } catch (Exception e) {
+            log.error("❌ Ошибка подключения к базе данных: {}", e.getMessage());
+            log.error("Проверьте:");
+            log.error("1. Наличие файла transaction.mv.db");
+            log.error("2. Правильность пути в spring.datasource.url");
+            log.error("3. Что файл не поврежден");
+            e.printStackTrace();
+        }
     }
 
     private void checkTables(JdbcTemplate jdbcTemplate) {
@@ -57,7 +91,7 @@ public class DatabaseChecker {
                 );
                 log.info("   {}: {}", table, exists != null && exists ? "✅ найдена" : "❌ не найдена");
 
-                if (exists != null && exists) {
+                if (exists != null && exists && countRows) {
                     // Показываем количество записей
                     Long count = jdbcTemplate.queryForObject(
                             "SELECT COUNT(*) FROM " + table,
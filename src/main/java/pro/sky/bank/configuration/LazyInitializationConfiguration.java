@@ -0,0 +1,34 @@
+package pro.sky.bank.configuration;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.telegram.telegrambots.meta.TelegramBotsApi;
+
+/**
+ * Исключения из ленивой инициализации ({@code spring.main.lazy-initialization=true}, профиль
+ * {@code fast-startup}).
+ * <p>
+ * Бины с {@link Scheduled}- и {@link EventListener}-методами создаются сразу: иначе фоновые
+ * перестроения индексов, сбросы счетчиков и продолжение рассылки не начнутся, пока бин не
+ * понадобится запросу. Регистрация бота тоже не откладывается.
+ * </p>
+ */
+@Configuration
+public class LazyInitializationConfiguration {
+
+    @Bean
+    public static LazyInitializationExcludeFilter eagerBackgroundBeans() {
+        // Тип бина может быть неизвестен до создания (например, фабричный метод без точного типа)
+        return (beanName, beanDefinition, beanType) -> beanType != null
+                && (TelegramBotsApi.class.isAssignableFrom(beanType)
+                || !MethodIntrospector.selectMethods(beanType, (MethodIntrospector.MetadataLookup<Boolean>) method ->
+                AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)
+                        || AnnotatedElementUtils.hasAnnotation(method, EventListener.class) ? Boolean.TRUE : null)
+                .isEmpty());
+    }
+}
@@ -16,7 +16,7 @@ import java.util.Properties;
 
 @Configuration
 @EnableJpaRepositories(
-        basePackages = "pro.sky.bank.repository",
+        basePackages = {"pro.sky.bank.repository", "pro.sky.bank.telegram.model.repository"},
         entityManagerFactoryRef = "rulesEntityManagerFactory",
         transactionManagerRef = "rulesTransactionManager"
 )
@@ -42,7 +42,7 @@ public class RulesDataSourceConfiguration {
     public LocalContainerEntityManagerFactoryBean rulesEntityManagerFactory() {
         LocalContainerEntityManagerFactoryBean em = new LocalContainerEntityManagerFactoryBean();
         em.setDataSource(rulesDataSource());
-        em.setPackagesToScan("pro.sky.bank.model.entity");
+        em.setPackagesToScan("pro.sky.bank.model.entity", "pro.sky.bank.telegram.model.entity");
 
         HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
         em.setJpaVendorAdapter(vendorAdapter);
@@ -52,6 +52,8 @@ public class RulesDataSourceConfiguration {
         properties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
         properties.setProperty("hibernate.show_sql", "true");
         properties.setProperty("hibernate.format_sql", "true");
+        // Ленивые коллекции запросов правил подгружаются пачками, а не отдельным SELECT на каждое правило
+        properties.setProperty("hibernate.default_batch_fetch_size", "100");
 
         em.setJpaProperties(properties);
         return em;
@@ -0,0 +1,68 @@
+package pro.sky.bank.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pro.sky.bank.exception.RuleValidationException;
+import pro.sky.bank.journal.DecisionJournal;
+import pro.sky.bank.journal.DecisionRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Состояние журнала решений, управление выборкой и чтение последних решений.
+ *
+ * @see DecisionJournal
+ */
+@RestController
+@RequestMapping("/management/journal")
+public class DecisionJournalController {
+
+    private final DecisionJournal journal;
+
+    public DecisionJournalController(DecisionJournal journal) {
+        this.journal = journal;
+    }
+
+    @GetMapping
+    public Map<String, Object> status() {
+        return journal.getStatistics();
+    }
+
+    /**
+     * Меняет долю пользователей, решения по которым попадают в журнал, без перезапуска.
+     */
+    @PutMapping("/sample-rate")
+    public Map<String, Object> setSampleRate(@RequestParam double rate) {
+        try {
+            journal.setSampleRate(rate);
+        } catch (IllegalArgumentException e) {
+            throw new RuleValidationException(e.getMessage());
+        }
+        return journal.getStatistics();
+    }
+
+    /**
+     * @return последние решения по пользователю и/или правилу, начиная с самого нового.
+     */
+    @GetMapping("/decisions")
+    public List<DecisionRecord> decisions(@RequestParam(required = false) UUID userId,
+                                          @RequestParam(required = false) String productId,
+                                          @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0) {
+            throw new RuleValidationException("Limit must be positive: " + limit);
+        }
+        try {
+            return journal.findRecent(record -> (userId == null || userId.equals(record.userId()))
+                    && (productId == null || productId.equals(record.ruleId())), limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package pro.sky.bank.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import pro.sky.bank.exception.RuleNotFoundException;
+import pro.sky.bank.exception.RuleValidationException;
 import pro.sky.bank.model.dto.DynamicRuleRequest;
 import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.dto.RuleSimulationResponse;
 import pro.sky.bank.model.dto.RulesListResponse;
 import pro.sky.bank.service.DynamicRuleService;
+import pro.sky.bank.service.RuleSimulationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 
@@ -19,6 +29,8 @@ import java.util.List;
 public class DynamicRuleController {
 
     private final DynamicRuleService dynamicRuleService;
+    private final RuleSimulationService ruleSimulationService;
+    private final ObjectMapper objectMapper;
 
     /**
      * Создает новое динамическое правило на основе данных из тела запроса.
@@ -40,19 +52,94 @@ public class DynamicRuleController {
     }
 
     /**
-     * Возвращает список всех динамических правил, существующих в системе.
-     * Ответ оборачивается в объект {@link RulesListResponse} для единообразной структуры ответа API.
+     * Создает пакет динамических правил за одну транзакцию.
+     * Весь пакет проверяется до записи; если хотя бы одно правило некорректно или уже существует,
+     * не создается ни одно. Запись выполняется пакетными JDBC-запросами.
+     *
+     * @param requests список {@link DynamicRuleRequest} для создания.
+     * @return {@link RulesListResponse} с созданными правилами.
+     * @throws IllegalArgumentException если пакет не прошел валидацию.
+     * @see DynamicRuleService#createRules(List)
+     */
+    @PostMapping("/bulk")
+    @ResponseStatus(HttpStatus.CREATED)
+    public RulesListResponse createRules(@RequestBody List<DynamicRuleRequest> requests) {
+        return dynamicRuleService.createRules(requests);
+    }
+
+    /**
+     * Пробный прогон правила-кандидата перед его созданием: сколько пользователей оно охватит.
+     * Правило не сохраняется, статистика срабатываний не пишется.
+     *
+     * @param request  правило-кандидат в формате {@link DynamicRuleRequest}; используется поле {@code rule}.
+     * @param sample   размер случайной выборки пользователей; без параметра оцениваются все пользователи.
+     * @param budgetMs бюджет времени на прогон в миллисекундах.
+     * @return {@link RuleSimulationResponse} с количеством и долей подошедших пользователей.
+     * @throws RuleValidationException если правило или параметры некорректны (статус 400).
+     * @see RuleSimulationService#simulate(DynamicRuleRequest, Integer, Long)
+     */
+    @PostMapping("/simulate")
+    public RuleSimulationResponse simulateRule(@RequestBody DynamicRuleRequest request,
+                                               @RequestParam(required = false) Integer sample,
+                                               @RequestParam(required = false) Long budgetMs) {
+        return ruleSimulationService.simulate(request, sample, budgetMs);
+    }
+
+    /**
+     * Атомарно заменяет весь каталог динамических правил переданным списком.
+     * Старые правила удаляются, а их статистика деактивируется в той же транзакции.
+     *
+     * @param requests полный новый каталог правил.
+     * @return {@link RulesListResponse} с правилами нового каталога.
+     * @throws IllegalArgumentException если пакет не прошел валидацию; каталог при этом не меняется.
+     * @see DynamicRuleService#replaceAllRules(List)
+     */
+    @PutMapping
+    public RulesListResponse replaceAllRules(@RequestBody List<DynamicRuleRequest> requests) {
+        return dynamicRuleService.replaceAllRules(requests);
+    }
+
+    /**
+     * Возвращает страницу динамических правил с keyset-пагинацией.
+     * Ответ оборачивается в объект {@link RulesListResponse} для единообразной структуры ответа API;
+     * поле {@code next_cursor} содержит значение параметра {@code after} для следующей страницы
+     * и равно {@code null} на последней странице.
      * Возвращает статус 200 (OK) даже если список пуст.
+     * @param after курсор — id последнего правила предыдущей страницы; не указывается для первой страницы.
+     * @param limit размер страницы; по умолчанию {@code application.rules.page-size},
+     *              ограничен сверху {@code application.rules.max-page-size}.
      * @return {@link ResponseEntity} со статусом OK и телом типа {@link RulesListResponse},
-     *         содержащим список {@link DynamicRuleResponse}.
+     *         содержащим страницу {@link DynamicRuleResponse}.
+     * @throws RuleValidationException если {@code limit} меньше 1.
      */
     @GetMapping
-    public ResponseEntity<RulesListResponse> getAllRules() {
-        List<DynamicRuleResponse> rules = dynamicRuleService.getAllRules();
-        RulesListResponse response = new RulesListResponse();
-        response.setData(rules);
-        return ResponseEntity.ok(response);
+    public ResponseEntity<RulesListResponse> getAllRules(@RequestParam(required = false) Long after,
+                                                         @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(dynamicRuleService.getRulesPage(after, limit));
     }
+
+    /**
+     * Выгружает все динамические правила в формате NDJSON (одно правило в строке).
+     * Правила читаются курсором базы данных и записываются в ответ по одному,
+     * поэтому расход памяти не зависит от количества правил в каталоге.
+     * @return {@link ResponseEntity} со статусом OK и потоковым телом {@code application/x-ndjson}.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllRules() {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        StreamingResponseBody body = outputStream -> dynamicRuleService.forEachRule(rule -> {
+            try {
+                outputStream.write(writer.writeValueAsBytes(rule));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     /**
      * Удаляет динамическое правило по его бизнес-идентификатору (productId).
      * При успешном удалении возвращает статус 204 (No Content). Также удаляет всю связанную статистику
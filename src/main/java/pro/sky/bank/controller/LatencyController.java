@@ -0,0 +1,58 @@
+package pro.sky.bank.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pro.sky.bank.exception.RuleValidationException;
+import pro.sky.bank.monitoring.LatencyMonitor;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Задержки правил, запросов и методов репозитория за текущий интервал.
+ *
+ * @see LatencyMonitor
+ */
+@RestController
+@RequestMapping("/management/latency")
+public class LatencyController {
+
+    private final LatencyMonitor latencyMonitor;
+
+    public LatencyController(LatencyMonitor latencyMonitor) {
+        this.latencyMonitor = latencyMonitor;
+    }
+
+    /**
+     * @param category {@code rule}, {@code query_type}, {@code static_rule} или {@code repository};
+     *                 по умолчанию все категории.
+     * @return p50/p99/p999, среднее и максимум в миллисекундах по каждому источнику; интервал не сбрасывается.
+     */
+    @GetMapping
+    public Map<String, Object> report(@RequestParam(required = false) String category) {
+        return latencyMonitor.getReport(parseCategory(category), false);
+    }
+
+    /**
+     * Возвращает отчет за завершившийся интервал и начинает новый.
+     */
+    @PostMapping("/reset")
+    public Map<String, Object> reset() {
+        return latencyMonitor.getReport(null, true);
+    }
+
+    private static LatencyMonitor.Category parseCategory(String category) {
+        if (category == null || category.isBlank()) {
+            return null;
+        }
+        try {
+            return LatencyMonitor.Category.valueOf(category.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuleValidationException(
+                    "Category must be one of rule, query_type, static_rule, repository: " + category);
+        }
+    }
+}
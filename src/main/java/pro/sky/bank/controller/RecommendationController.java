@@ -1,11 +1,13 @@
 package pro.sky.bank.controller;
 
 import pro.sky.bank.model.RecommendationResponse;
+import pro.sky.bank.service.BatchRecommendationService;
 import pro.sky.bank.service.RecommendationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -13,10 +15,13 @@ import java.util.UUID;
 public class RecommendationController {
 
     private final RecommendationService recommendationService;
+    private final BatchRecommendationService batchRecommendationService;
 
     @Autowired
-    public RecommendationController(RecommendationService recommendationService) {
+    public RecommendationController(RecommendationService recommendationService,
+                                    BatchRecommendationService batchRecommendationService) {
         this.recommendationService = recommendationService;
+        this.batchRecommendationService = batchRecommendationService;
     }
 
     /**
@@ -44,4 +49,26 @@ public class RecommendationController {
             return ResponseEntity.badRequest().build();
         }
     }
+
+    /**
+     * Предоставляет рекомендации сразу для списка пользователей.
+     * <p>
+     * Правила оцениваются пачками пользователей по колоночным фактам, что значительно дешевле
+     * последовательных вызовов {@link #getRecommendations(String)}. Статистика срабатываний не обновляется.
+     * </p>
+     *
+     * @param userIds Список строковых идентификаторов пользователей (UUID).
+     * @return Список {@link RecommendationResponse} в порядке входного списка, статус 200 (OK),
+     *         или статус 400 (Bad Request), если хотя бы один идентификатор не является UUID.
+     * @see BatchRecommendationService#getRecommendations(List)
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<RecommendationResponse>> getBatchRecommendations(@RequestBody List<String> userIds) {
+        try {
+            List<UUID> uuids = userIds.stream().map(UUID::fromString).toList();
+            return ResponseEntity.ok(batchRecommendationService.getRecommendations(uuids));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
 }
@@ -2,11 +2,21 @@ package pro.sky.bank.controller;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
+import pro.sky.bank.engine.AudienceIndex;
+import pro.sky.bank.engine.RuleCatalogChangeFeed;
+import pro.sky.bank.exception.RuleValidationException;
+import pro.sky.bank.model.entity.RuleTriggerBucket;
+import pro.sky.bank.repository.ProductUsageFilter;
+import pro.sky.bank.repository.UserFactStore;
 import pro.sky.bank.service.RuleStatisticService;
+import pro.sky.bank.service.RuleTriggerTimeSeries;
+import pro.sky.bank.telegram.bot.UpdateDispatcher;
+import pro.sky.bank.telegram.service.TelegramMessageSender;
 
 import java.time.Instant;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -28,6 +38,13 @@ import java.util.Map;
 public class SimpleStatsController {
 
     private final RuleStatisticService statisticService;
+    private final RuleTriggerTimeSeries timeSeries;
+    private final AudienceIndex audienceIndex;
+    private final ProductUsageFilter productUsageFilter;
+    private final UpdateDispatcher updateDispatcher;
+    private final TelegramMessageSender messageSender;
+    private final UserFactStore factStore;
+    private final RuleCatalogChangeFeed changeFeed;
     private final Instant startTime = Instant.now();
 
     @Value("${app.name}")
@@ -40,25 +57,48 @@ public class SimpleStatsController {
      * Конструктор для внедрения зависимости сервиса статистики.
      *
      * @param statisticService сервис для работы со статистикой правил, не должен быть {@code null}.
+     * @param timeSeries       временные ряды срабатываний правил.
+     * @param audienceIndex    индекс предрассчитанных аудиторий правил.
+     * @param productUsageFilter фильтры Блума для проверок {@code USER_OF}.
+     * @param updateDispatcher   диспетчер обновлений Telegram-бота.
+     * @param messageSender      очередь исходящих сообщений Telegram-бота.
+     * @param factStore          хранилище агрегатов пользователей вне кучи.
+     * @param changeFeed         лента изменений каталога правил между узлами.
      */
-    public SimpleStatsController(RuleStatisticService statisticService) {
+    public SimpleStatsController(RuleStatisticService statisticService,
+                                 RuleTriggerTimeSeries timeSeries,
+                                 AudienceIndex audienceIndex,
+                                 ProductUsageFilter productUsageFilter,
+                                 UpdateDispatcher updateDispatcher,
+                                 TelegramMessageSender messageSender,
+                                 UserFactStore factStore,
+                                 RuleCatalogChangeFeed changeFeed) {
         this.statisticService = statisticService;
+        this.timeSeries = timeSeries;
+        this.audienceIndex = audienceIndex;
+        this.productUsageFilter = productUsageFilter;
+        this.updateDispatcher = updateDispatcher;
+        this.messageSender = messageSender;
+        this.factStore = factStore;
+        this.changeFeed = changeFeed;
     }
 
     /**
      * Возвращает полную статистику по всем бизнес-правилам.
      * <p>
-     * использует {@link RuleStatisticService#getFullStatistics()} для получения агрегированных данных
+     * использует {@link RuleStatisticService#getFullStatistics(boolean)} для получения агрегированных данных
      * о срабатываниях всех динамических правил в системе.
      * </p>
      *
+     * @param details добавить в ответ статистику каждого правила; по умолчанию возвращаются только
+     *                итоги и топ правил.
      * @return {@code Map<String, Object>}, содержащая полную статистику.
-     *         Структура карты определяется реализацией {@link RuleStatisticService#getFullStatistics()}.
-     * @see RuleStatisticService#getFullStatistics()
+     *         Структура карты определяется реализацией {@link RuleStatisticService#getFullStatistics(boolean)}.
+     * @see RuleStatisticService#getFullStatistics(boolean)
      */
     @GetMapping("/rule/stats")
-    public Map<String, Object> getRuleStats() {
-        return statisticService.getFullStatistics();
+    public Map<String, Object> getRuleStats(@RequestParam(defaultValue = "false") boolean details) {
+        return statisticService.getFullStatistics(details);
     }
 
     /**
@@ -80,6 +120,117 @@ public class SimpleStatsController {
         return statisticService.getStatisticByProductId(productId);
     }
 
+    /**
+     * Возвращает ряд срабатываний правила по интервалам.
+     * <p>
+     * Поминутный ряд доступен за последние три часа, почасовой и посуточный — за срок хранения
+     * ({@code application.rules.timeseries.*-retention-days}). Интервалы считаются в UTC.
+     * </p>
+     *
+     * @param productId   идентификатор продукта правила.
+     * @param granularity {@code minute}, {@code hour} или {@code day}.
+     * @param window      длина окна в формате ISO-8601 ({@code PT6H}, {@code P7D}); по умолчанию
+     *                    час, сутки или 30 дней соответственно.
+     * @return {@code Map<String, Object>} с ключами {@code from}, {@code to}, {@code total},
+     *         {@code ratePerMinute} и {@code points} (начало интервала и число срабатываний).
+     * @see RuleTriggerTimeSeries#getSeries(String, RuleTriggerBucket.Granularity, String)
+     */
+    @GetMapping("/rule/stats/{productId}/timeseries")
+    public Map<String, Object> getRuleTimeSeries(@PathVariable String productId,
+                                                 @RequestParam(defaultValue = "hour") String granularity,
+                                                 @RequestParam(required = false) String window) {
+        RuleTriggerBucket.Granularity resolved;
+        try {
+            resolved = RuleTriggerBucket.Granularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuleValidationException("Granularity must be one of minute, hour, day: " + granularity);
+        }
+        return timeSeries.getSeries(productId, resolved, window);
+    }
+
+    /**
+     * Возвращает размер аудитории правила — сколько пользователей ему удовлетворяют.
+     * <p>
+     * Значение берется из предрассчитанного {@link AudienceIndex} и отражает данные на момент его
+     * последней сборки. Если аудитория правила еще не построена, {@code audience} равно {@code null}.
+     * </p>
+     *
+     * @param productId идентификатор продукта статического или динамического правила.
+     * @return {@code Map<String, Object>} с ключами {@code productId}, {@code audience} и {@code ready}.
+     * @see AudienceIndex#getAudienceSize(String)
+     */
+    @GetMapping("/rule/stats/{productId}/audience")
+    public Map<String, Object> getRuleAudience(@PathVariable String productId) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("productId", productId);
+        response.put("audience", audienceIndex.getAudienceSize(productId));
+        response.put("ready", audienceIndex.isReady());
+        return response;
+    }
+
+    /**
+     * Возвращает состояние индекса аудиторий: число пользователей и правил, объем памяти и время сборки.
+     *
+     * @return {@code Map<String, Object>} со сведениями об индексе.
+     * @see AudienceIndex#getStats()
+     */
+    @GetMapping("/management/audience")
+    public Map<String, Object> getAudienceIndexStats() {
+        return audienceIndex.getStats();
+    }
+
+    /**
+     * Возвращает состояние фильтров Блума по типам продуктов: число пользователей, количество
+     * хеш-функций, ожидаемую долю ложных срабатываний, объем памяти и число отсеченных запросов.
+     *
+     * @return {@code Map<String, Object>} со сведениями о фильтрах.
+     * @see ProductUsageFilter#getStats()
+     */
+    @GetMapping("/management/bloom-filters")
+    public Map<String, Object> getBloomFilterStats() {
+        return productUsageFilter.getStats();
+    }
+
+    /**
+     * Возвращает состояние хранилища агрегатов пользователей: емкость, размер слота, число
+     * попаданий, загрузок из базы, вытеснений и запросов, на которые хранилище не ответило.
+     *
+     * @return {@code Map<String, Object>} со сведениями о хранилище.
+     * @see UserFactStore#getStatistics()
+     */
+    @GetMapping("/management/fact-store")
+    public Map<String, Object> getFactStoreStats() {
+        return factStore.getStatistics();
+    }
+
+    /**
+     * Возвращает состояние ленты изменений каталога правил: идентификатор узла, отметку
+     * прочитанной ленты и число изменений, примененных с других узлов.
+     *
+     * @return {@code Map<String, Object>} со сведениями о ленте.
+     * @see RuleCatalogChangeFeed#getStats()
+     */
+    @GetMapping("/management/rule-changes")
+    public Map<String, Object> getRuleChangeFeedStats() {
+        return changeFeed.getStats();
+    }
+
+    /**
+     * Возвращает метрики Telegram-бота: очереди входящих обновлений (принятые, обработанные,
+     * отброшенные) и очереди исходящих сообщений (отправленные, замещенные, повторы, ошибки).
+     *
+     * @return {@code Map<String, Object>} с ключами {@code dispatcher} и {@code sender}.
+     * @see UpdateDispatcher#getStats()
+     * @see TelegramMessageSender#getStats()
+     */
+    @GetMapping("/management/telegram")
+    public Map<String, Object> getTelegramStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("dispatcher", updateDispatcher.getStats());
+        stats.put("sender", messageSender.getStats());
+        return stats;
+    }
+
     /**
      * Выполняет операцию очистки кэшей системы.
      * <p>
@@ -0,0 +1,52 @@
+package pro.sky.bank.controller;
+
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pro.sky.bank.exception.RuleValidationException;
+import pro.sky.bank.repository.SlowQueryLog;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Медленные запросы к базе рекомендаций с планами выполнения.
+ *
+ * @see SlowQueryLog
+ */
+@RestController
+@RequestMapping("/management/slow-queries")
+public class SlowQueryController {
+
+    private final SlowQueryLog slowQueryLog;
+
+    public SlowQueryController(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * @param limit максимальное число записей, начиная с самой новой.
+     * @return настройки и счетчики журнала и записи с полями {@code at}, {@code durationMs},
+     *         {@code rows}, {@code sql}, {@code parameters}, {@code plan}.
+     */
+    @GetMapping
+    public Map<String, Object> recent(@RequestParam(defaultValue = "50") int limit) {
+        if (limit <= 0) {
+            throw new RuleValidationException("Limit must be positive: " + limit);
+        }
+        Map<String, Object> response = new LinkedHashMap<>(slowQueryLog.getStatistics());
+        response.put("queries", slowQueryLog.getRecent(limit));
+        return response;
+    }
+
+    /**
+     * Очищает журнал и сохраненные планы.
+     */
+    @DeleteMapping
+    public Map<String, Object> clear() {
+        slowQueryLog.clear();
+        return slowQueryLog.getStatistics();
+    }
+}
@@ -0,0 +1,425 @@
+package pro.sky.bank.engine;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.event.RuleCatalogChangedEvent;
+import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.rules.RecommendationRule;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Предрассчитанные аудитории правил: для каждого статического и динамического правила
+ * хранится сжатый битовый набор ({@link RoaringBitmap}) пользователей, для которых оно выполняется.
+ * <p>
+ * Позиции битов — плотные номера пользователей из {@link UserIndex}. Полная пересборка выполняется
+ * в фоне по расписанию: пользователи разбиваются на партиции, каждая партиция загружается в колонки
+ * и оценивается {@link ColumnarRuleEvaluator} параллельно. При создании правил считаются аудитории
+ * только новых правил, остальные не переоцениваются; аудитории удаленных правил сразу удаляются из снимка.
+ * </p>
+ * <p>
+ * Пока аудитория правила не построена (индекс еще не собран, правило только что создано или
+ * пользователь появился после сборки), {@link #forUser(UUID)} отвечает {@code null} и правило
+ * оценивается напрямую. Аудитории отражают данные на момент последней сборки.
+ * </p>
+ */
+@Component
+@Slf4j
+public class AudienceIndex {
+
+    private final RecommendationsRepository repository;
+    private final RuleCatalog ruleCatalog;
+    private final List<RecommendationRule> staticRules;
+    private final ColumnarRuleEvaluator columnarEvaluator;
+    private final ExecutorService workers;
+    private final ExecutorService coordinator;
+    private final Set<Long> pendingRuleIds = ConcurrentHashMap.newKeySet();
+
+    @Value("${application.audience.enabled:true}")
+    private boolean enabled;
+
+    @Value("${application.audience.partition-size:4096}")
+    private int partitionSize;
+
+    private volatile Snapshot snapshot;
+
+    public AudienceIndex(RecommendationsRepository repository,
+                         RuleCatalog ruleCatalog,
+                         List<RecommendationRule> staticRules,
+                         ColumnarRuleEvaluator columnarEvaluator,
+                         @Value("${application.audience.parallelism:4}") int parallelism) {
+        this.repository = repository;
+        this.ruleCatalog = ruleCatalog;
+        this.staticRules = staticRules;
+        this.columnarEvaluator = columnarEvaluator;
+        this.workers = Executors.newFixedThreadPool(parallelism, daemonThreads("audience-worker-"));
+        this.coordinator = Executors.newSingleThreadExecutor(daemonThreads("audience-coordinator-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * @return принадлежность пользователя аудиториям правил или {@code null}, если индекс не готов
+     *         или пользователь в нем отсутствует.
+     */
+    public UserAudience forUser(UUID userId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        int index = current.users.indexOf(userId);
+        return index >= 0 ? new UserAudience(current, index) : null;
+    }
+
+    /**
+     * Размер аудитории правила — количество пользователей, для которых оно выполняется.
+     *
+     * @return размер аудитории или {@code null}, если аудитория правила еще не построена.
+     */
+    public Long getAudienceSize(String productId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+
+        RuleCatalog.Entry entry = ruleCatalog.findRule(productId);
+        if (entry != null) {
+            RoaringBitmap audience = current.dynamicAudiences.get(entry.getRule().getId());
+            return audience != null ? audience.getLongCardinality() : null;
+        }
+        for (Map.Entry<RecommendationRule, RoaringBitmap> audience : current.staticAudiences.entrySet()) {
+            if (productId.equals(audience.getKey().getProduct().getId())) {
+                return audience.getValue().getLongCardinality();
+            }
+        }
+        return null;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Snapshot current = snapshot;
+        stats.put("ready", current != null);
+        if (current != null) {
+            long bytes = 0;
+            for (RoaringBitmap audience : current.staticAudiences.values()) {
+                bytes += audience.getLongSizeInBytes();
+            }
+            for (RoaringBitmap audience : current.dynamicAudiences.values()) {
+                bytes += audience.getLongSizeInBytes();
+            }
+            stats.put("indexedUsers", current.users.size());
+            stats.put("staticRules", current.staticAudiences.size());
+            stats.put("dynamicRules", current.dynamicAudiences.size());
+            stats.put("sizeInBytes", bytes);
+            stats.put("builtAt", current.builtAt.toString());
+        }
+        stats.put("pendingRules", pendingRuleIds.size());
+        return stats;
+    }
+
+    /**
+     * Полная пересборка индекса: перечитывает пользователей и пересчитывает аудитории всех правил.
+     */
+    @Scheduled(initialDelayString = "${application.audience.initial-delay-ms:10000}",
+            fixedDelayString = "${application.audience.refresh-interval-ms:600000}")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            long startedAt = System.nanoTime();
+
+            List<UUID> userIds = new ArrayList<>();
+            repository.forEachUserId(userIds::add);
+            UserIndex users = new UserIndex(userIds);
+
+            List<RecommendationRule> batchRules = staticRules.stream()
+                    .filter(RecommendationRule::supportsColumns)
+                    .toList();
+            List<DynamicRuleResponse> dynamicRules = ruleCatalog.getRules().stream()
+                    .map(RuleCatalog.Entry::getRule)
+                    .toList();
+
+            Audiences audiences = evaluate(users, batchRules, dynamicRules);
+            synchronized (this) {
+                // Правила, удаленные или пересозданные во время сборки, в снимок не попадают
+                Set<String> stale = new HashSet<>();
+                audiences.ruleIds.forEach((productId, ruleId) -> {
+                    if (!isCurrent(productId, ruleId)) {
+                        stale.add(productId);
+                    }
+                });
+                snapshot = without(new Snapshot(users,
+                        Collections.unmodifiableMap(audiences.staticAudiences),
+                        Collections.unmodifiableMap(audiences.dynamicAudiences),
+                        Collections.unmodifiableMap(audiences.ruleIds),
+                        Instant.now()), stale);
+            }
+
+            log.info("Audience index rebuilt: {} users, {} static and {} dynamic rules in {} ms",
+                    users.size(), batchRules.size(), dynamicRules.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+
+            // Правила, созданные во время сборки, досчитываются отдельно
+            computeAsync(ruleCatalog.getRules().stream()
+                    .map(RuleCatalog.Entry::getRule)
+                    .filter(rule -> !snapshot.dynamicAudiences.containsKey(rule.getId()))
+                    .toList());
+        } catch (RuntimeException e) {
+            log.error("Audience index rebuild failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCatalogChanged(RuleCatalogChangedEvent event) {
+        synchronized (this) {
+            Snapshot current = snapshot;
+            if (current != null) {
+                if (event.isReplaceAll()) {
+                    snapshot = new Snapshot(current.users, current.staticAudiences, Map.of(), Map.of(), current.builtAt);
+                } else {
+                    // Аудитории удаленных правил и прежних версий пересозданных правил больше не нужны
+                    Set<String> stale = new HashSet<>(event.getRemovedProductIds());
+                    event.getCreatedRules().forEach(rule -> stale.add(rule.getProductId()));
+                    snapshot = without(current, stale);
+                }
+            }
+        }
+        computeAsync(event.getCreatedRules());
+    }
+
+    private static Snapshot without(Snapshot current, Set<String> productIds) {
+        Map<Long, RoaringBitmap> audiences = new HashMap<>(current.dynamicAudiences);
+        Map<String, Long> ruleIds = new HashMap<>(current.ruleIds);
+        for (String productId : productIds) {
+            Long ruleId = ruleIds.remove(productId);
+            if (ruleId != null) {
+                audiences.remove(ruleId);
+            }
+        }
+        if (ruleIds.size() == current.ruleIds.size()) {
+            return current;
+        }
+        return new Snapshot(current.users, current.staticAudiences,
+                Collections.unmodifiableMap(audiences), Collections.unmodifiableMap(ruleIds), current.builtAt);
+    }
+
+    /**
+     * Асинхронно считает аудитории только переданных правил по текущему индексу пользователей.
+     */
+    private void computeAsync(List<DynamicRuleResponse> rules) {
+        Snapshot current = snapshot;
+        if (current == null || rules.isEmpty()) {
+            // Первая полная сборка прочитает эти правила из каталога
+            return;
+        }
+
+        List<DynamicRuleResponse> toCompute = rules.stream()
+                .filter(rule -> rule.getId() != null && pendingRuleIds.add(rule.getId()))
+                .toList();
+        if (toCompute.isEmpty()) {
+            return;
+        }
+
+        coordinator.execute(() -> {
+            try {
+                Audiences audiences = evaluate(current.users, List.of(), toCompute);
+                install(current.users, audiences);
+            } catch (RuntimeException e) {
+                log.warn("Failed to build audiences for {} rules: {}", toCompute.size(), e.getMessage());
+            } finally {
+                toCompute.forEach(rule -> pendingRuleIds.remove(rule.getId()));
+            }
+        });
+    }
+
+    private synchronized void install(UserIndex users, Audiences audiences) {
+        Snapshot current = snapshot;
+        if (current == null || current.users != users) {
+            // Индекс пересобран, пока считались аудитории: пересборка учтет эти правила сама
+            return;
+        }
+        Map<Long, RoaringBitmap> merged = new HashMap<>(current.dynamicAudiences);
+        Map<String, Long> ruleIds = new HashMap<>(current.ruleIds);
+        audiences.ruleIds.forEach((productId, ruleId) -> {
+            if (!isCurrent(productId, ruleId)) {
+                // Правило удалено или пересоздано, пока считалась его аудитория
+                return;
+            }
+            Long previous = ruleIds.put(productId, ruleId);
+            if (previous != null) {
+                merged.remove(previous);
+            }
+            merged.put(ruleId, audiences.dynamicAudiences.get(ruleId));
+        });
+        snapshot = new Snapshot(users, current.staticAudiences,
+                Collections.unmodifiableMap(merged), Collections.unmodifiableMap(ruleIds), current.builtAt);
+    }
+
+    private boolean isCurrent(String productId, Long ruleId) {
+        RuleCatalog.Entry entry = ruleCatalog.findRule(productId);
+        return entry != null && ruleId.equals(entry.getRule().getId());
+    }
+
+    private Audiences evaluate(UserIndex users,
+                               List<RecommendationRule> batchRules,
+                               List<DynamicRuleResponse> dynamicRules) {
+        List<Future<Audiences>> partitions = new ArrayList<>();
+        for (int from = 0; from < users.size(); from += partitionSize) {
+            int start = from;
+            int end = Math.min(from + partitionSize, users.size());
+            partitions.add(workers.submit(() -> evaluatePartition(users, start, end, batchRules, dynamicRules)));
+        }
+
+        Audiences result = new Audiences();
+        batchRules.forEach(rule -> result.staticAudiences.put(rule, new RoaringBitmap()));
+        dynamicRules.forEach(rule -> {
+            result.dynamicAudiences.put(rule.getId(), new RoaringBitmap());
+            result.ruleIds.put(rule.getProductId(), rule.getId());
+        });
+
+        try {
+            for (Future<Audiences> partition : partitions) {
+                result.or(partition.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            partitions.forEach(partition -> partition.cancel(true));
+            throw new IllegalStateException("Audience evaluation interrupted", e);
+        } catch (ExecutionException e) {
+            partitions.forEach(partition -> partition.cancel(true));
+            throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+        }
+
+        result.staticAudiences.values().forEach(RoaringBitmap::runOptimize);
+        result.dynamicAudiences.values().forEach(RoaringBitmap::runOptimize);
+        return result;
+    }
+
+    private Audiences evaluatePartition(UserIndex users, int from, int to,
+                                        List<RecommendationRule> batchRules,
+                                        List<DynamicRuleResponse> dynamicRules) {
+        UserFactColumns columns = repository.loadFactColumns(users.slice(from, to));
+
+        Audiences partial = new Audiences();
+        for (RecommendationRule rule : batchRules) {
+            partial.staticAudiences.put(rule, toBitmap(rule.matches(columns), from));
+        }
+        for (DynamicRuleResponse rule : dynamicRules) {
+            partial.dynamicAudiences.put(rule.getId(), toBitmap(columnarEvaluator.evaluate(rule, columns), from));
+        }
+        return partial;
+    }
+
+    private static RoaringBitmap toBitmap(long[] mask, int offset) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        ColumnBits.forEach(mask, index -> bitmap.add(offset + index));
+        return bitmap;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Принадлежность одного пользователя аудиториям правил в рамках одного снимка индекса.
+     */
+    public static final class UserAudience {
+        private final Snapshot snapshot;
+        private final int index;
+
+        private UserAudience(Snapshot snapshot, int index) {
+            this.snapshot = snapshot;
+            this.index = index;
+        }
+
+        /**
+         * @return {@code null}, если аудитория правила не построена.
+         */
+        public Boolean matches(RecommendationRule rule) {
+            RoaringBitmap audience = snapshot.staticAudiences.get(rule);
+            return audience != null ? audience.contains(index) : null;
+        }
+
+        /**
+         * @return {@code null}, если аудитория правила не построена.
+         */
+        public Boolean matches(DynamicRuleResponse rule) {
+            RoaringBitmap audience = snapshot.dynamicAudiences.get(rule.getId());
+            return audience != null ? audience.contains(index) : null;
+        }
+    }
+
+    private static final class Snapshot {
+        private final UserIndex users;
+        private final Map<RecommendationRule, RoaringBitmap> staticAudiences;
+        private final Map<Long, RoaringBitmap> dynamicAudiences;
+        // productId -> id правила, для которого построена аудитория
+        private final Map<String, Long> ruleIds;
+        private final Instant builtAt;
+
+        private Snapshot(UserIndex users,
+                         Map<RecommendationRule, RoaringBitmap> staticAudiences,
+                         Map<Long, RoaringBitmap> dynamicAudiences,
+                         Map<String, Long> ruleIds,
+                         Instant builtAt) {
+            this.users = users;
+            this.staticAudiences = staticAudiences;
+            this.dynamicAudiences = dynamicAudiences;
+            this.ruleIds = ruleIds;
+            this.builtAt = builtAt;
+        }
+    }
+
+    /**
+     * Изменяемый набор аудиторий, собираемый по партициям.
+     */
+    private static final class Audiences {
+        private final Map<RecommendationRule, RoaringBitmap> staticAudiences = new IdentityHashMap<>();
+        private final Map<Long, RoaringBitmap> dynamicAudiences = new HashMap<>();
+        private final Map<String, Long> ruleIds = new HashMap<>();
+
+        private void or(Audiences other) {
+            other.staticAudiences.forEach((rule, audience) -> staticAudiences.get(rule).or(audience));
+            other.dynamicAudiences.forEach((ruleId, audience) -> dynamicAudiences.get(ruleId).or(audience));
+        }
+    }
+}
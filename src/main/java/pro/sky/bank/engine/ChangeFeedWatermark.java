@@ -0,0 +1,100 @@
+package pro.sky.bank.engine;
+
+import pro.sky.bank.model.entity.RuleCatalogChange;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Отметка чтения ленты изменений каталога правил.
+ * <p>
+ * Транзакции фиксируются не в порядке своих {@code id}, поэтому пропуск в нумерации может означать
+ * еще не зафиксированную запись. Отметка сдвигается только по непрерывной последовательности
+ * {@code id}; через пропуск — лишь когда этот узел видит его дольше {@code gapTimeout}. Возраст пропуска
+ * отсчитывается по монотонным часам узла с момента, когда пропуск был замечен впервые, а не по
+ * {@code createdAt} записи: это время берется с часов записавшего узла, и при их отставании отметка
+ * перескочила бы еще не зафиксированную транзакцию. Записи за пропуском применяются сразу
+ * и запоминаются, чтобы при следующем чтении не применяться повторно.
+ * </p>
+ * <p>
+ * Не потокобезопасна: {@link #select} и {@link #commit} вызываются из одного потока опроса,
+ * {@link #get()} можно вызывать из любого.
+ * </p>
+ */
+final class ChangeFeedWatermark {
+
+    private final long gapTimeoutNanos;
+    private final Set<Long> appliedAfterWatermark = new HashSet<>();
+    /**
+     * Первый отсутствующий {@code id} пропуска -> время, когда пропуск замечен впервые ({@link System#nanoTime()}).
+     */
+    private final Map<Long, Long> gapsFirstSeen = new HashMap<>();
+    private volatile long watermark;
+
+    ChangeFeedWatermark(long watermark, Duration gapTimeout) {
+        this.watermark = watermark;
+        this.gapTimeoutNanos = gapTimeout.toNanos();
+    }
+
+    /**
+     * @return {@code id} последней записи, до которой лента прочитана без пропусков.
+     */
+    long get() {
+        return watermark;
+    }
+
+    /**
+     * Отбирает из прочитанных после отметки записей еще не примененные и вычисляет новую отметку.
+     * До {@link #commit(Batch)} запоминается только время, когда замечены новые пропуски.
+     *
+     * @param changes  записи с {@code id} больше отметки по возрастанию {@code id}.
+     * @param nowNanos текущее время по {@link System#nanoTime()}, от которого отсчитывается возраст пропусков.
+     */
+    Batch select(List<RuleCatalogChange> changes, long nowNanos) {
+        long advanceTo = watermark;
+        long expected = watermark + 1;
+        boolean contiguous = true;
+        List<RuleCatalogChange> fresh = new ArrayList<>();
+        for (RuleCatalogChange change : changes) {
+            long id = change.getId();
+            if (id != expected) {
+                long firstSeen = gapsFirstSeen.computeIfAbsent(expected, missing -> nowNanos);
+                if (contiguous && nowNanos - firstSeen <= gapTimeoutNanos) {
+                    // Перед этой записью может быть еще не зафиксированная транзакция
+                    contiguous = false;
+                }
+            }
+            expected = id + 1;
+            if (contiguous) {
+                advanceTo = id;
+            }
+            if (!appliedAfterWatermark.contains(id)) {
+                fresh.add(change);
+            }
+        }
+        return new Batch(fresh, advanceTo);
+    }
+
+    /**
+     * Отмечает записи пачки примененными и сдвигает отметку.
+     */
+    void commit(Batch batch) {
+        batch.changes().forEach(change -> appliedAfterWatermark.add(change.getId()));
+        long newWatermark = batch.advanceTo();
+        appliedAfterWatermark.removeIf(id -> id <= newWatermark);
+        gapsFirstSeen.keySet().removeIf(id -> id <= newWatermark);
+        watermark = newWatermark;
+    }
+
+    /**
+     * @param changes   еще не примененные записи.
+     * @param advanceTo отметка после применения пачки.
+     */
+    record Batch(List<RuleCatalogChange> changes, long advanceTo) {
+    }
+}
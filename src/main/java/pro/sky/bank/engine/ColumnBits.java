@@ -0,0 +1,152 @@
+package pro.sky.bank.engine;
+
+import pro.sky.bank.model.dto.RuleQuery;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Битовые маски пачки пользователей: бит {@code i} слова {@code i >>> 6} относится к пользователю {@code i}.
+ * <p>
+ * Предикаты проходят по колонке примитивов одним простым циклом без ветвлений в теле,
+ * поэтому такие циклы хорошо ложатся в кэш процессора и векторизуются JIT-компилятором.
+ * Результаты условий объединяются побитовыми AND / AND NOT по 64 пользователя за операцию.
+ * </p>
+ */
+public final class ColumnBits {
+
+    private ColumnBits() {
+    }
+
+    public static int wordCount(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    public static long[] allOnes(int size) {
+        long[] words = new long[wordCount(size)];
+        java.util.Arrays.fill(words, -1L);
+        clearTail(words, size);
+        return words;
+    }
+
+    /**
+     * Пользователи, у которых значение колонки не меньше {@code min}.
+     */
+    public static long[] atLeast(int[] column, int min, int size) {
+        long[] words = new long[wordCount(size)];
+        for (int i = 0; i < size; i++) {
+            words[i >>> 6] |= (column[i] >= min ? 1L : 0L) << i;
+        }
+        return words;
+    }
+
+    /**
+     * Пользователи, у которых {@code left[i] operator right} истинно.
+     */
+    public static long[] compare(long[] left, long right, RuleQuery.ComparisonOperator operator, int size) {
+        long[] words = new long[wordCount(size)];
+        switch (operator) {
+            case GREATER -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] > right ? 1L : 0L) << i;
+            }
+            case LESS -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] < right ? 1L : 0L) << i;
+            }
+            case EQUAL -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] == right ? 1L : 0L) << i;
+            }
+            case GREATER_EQUAL -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] >= right ? 1L : 0L) << i;
+            }
+            case LESS_EQUAL -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] <= right ? 1L : 0L) << i;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Пользователи, у которых {@code left[i] operator right[i]} истинно.
+     */
+    public static long[] compare(long[] left, long[] right, RuleQuery.ComparisonOperator operator, int size) {
+        long[] words = new long[wordCount(size)];
+        switch (operator) {
+            case GREATER -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] > right[i] ? 1L : 0L) << i;
+            }
+            case LESS -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] < right[i] ? 1L : 0L) << i;
+            }
+            case EQUAL -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] == right[i] ? 1L : 0L) << i;
+            }
+            case GREATER_EQUAL -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] >= right[i] ? 1L : 0L) << i;
+            }
+            case LESS_EQUAL -> {
+                for (int i = 0; i < size; i++) words[i >>> 6] |= (left[i] <= right[i] ? 1L : 0L) << i;
+            }
+        }
+        return words;
+    }
+
+    public static void and(long[] target, long[] other) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] &= other[w];
+        }
+    }
+
+    public static void andNot(long[] target, long[] other) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] &= ~other[w];
+        }
+    }
+
+    public static void or(long[] target, long[] other) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] |= other[w];
+        }
+    }
+
+    public static void not(long[] words, int size) {
+        for (int w = 0; w < words.length; w++) {
+            words[w] = ~words[w];
+        }
+        clearTail(words, size);
+    }
+
+    public static boolean isEmpty(long[] words) {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static int cardinality(long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Вызывает {@code action} для индекса каждого установленного бита по возрастанию.
+     */
+    public static void forEach(long[] words, IntConsumer action) {
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    private static void clearTail(long[] words, int size) {
+        if ((size & 63) != 0) {
+            words[words.length - 1] &= (1L << size) - 1;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package pro.sky.bank.engine;
+
+import org.springframework.stereotype.Component;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.util.Money;
+
+import java.util.List;
+
+/**
+ * Пакетная оценка динамических правил по колонкам {@link UserFactColumns}.
+ * <p>
+ * Каждый {@link RuleQuery} вычисляется сразу для всей пачки пользователей в битовую маску
+ * (см. {@link ColumnBits}), отрицание — это инверсия маски, а правило — побитовое AND масок
+ * его запросов. Семантика совпадает с интерпретатором: некорректный запрос считается
+ * невыполненным для всех пользователей пачки.
+ * </p>
+ */
+@Component
+public class ColumnarRuleEvaluator {
+
+    private static final int ACTIVE_USER_TRANSACTIONS = 5;
+
+    /**
+     * @return маска пользователей пачки, для которых выполняются все запросы правила.
+     */
+    public long[] evaluate(DynamicRuleResponse rule, UserFactColumns columns) {
+        return evaluate(rule.getRule(), columns);
+    }
+
+    /**
+     * @return маска пользователей пачки, для которых выполняются все {@code queries}.
+     */
+    public long[] evaluate(List<RuleQuery> queries, UserFactColumns columns) {
+        long[] result = ColumnBits.allOnes(columns.size());
+        for (RuleQuery query : queries) {
+            ColumnBits.and(result, evaluateQuery(query, columns));
+            if (ColumnBits.isEmpty(result)) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    public long[] evaluateQuery(RuleQuery query, UserFactColumns columns) {
+        int size = columns.size();
+        long[] words;
+        try {
+            words = evaluateQueryInternal(query, columns);
+        } catch (RuntimeException e) {
+            return new long[ColumnBits.wordCount(size)];
+        }
+
+        if (Boolean.TRUE.equals(query.getNegate())) {
+            ColumnBits.not(words, size);
+        }
+        return words;
+    }
+
+    private long[] evaluateQueryInternal(RuleQuery query, UserFactColumns columns) {
+        RuleQuery.QueryType queryType = RuleQuery.QueryType.valueOf(query.getQuery());
+        List<String> arguments = query.getArguments();
+        int size = columns.size();
+
+        return switch (queryType) {
+            case USER_OF -> ColumnBits.atLeast(columns.transactionCounts(arguments.get(0)), 1, size);
+            case ACTIVE_USER_OF -> ColumnBits.atLeast(
+                    columns.transactionCounts(arguments.get(0)), ACTIVE_USER_TRANSACTIONS, size);
+            case TRANSACTION_SUM_COMPARE -> ColumnBits.compare(
+                    columns.transactionSums(arguments.get(0), arguments.get(1)),
+                    Money.parse(arguments.get(3)),
+                    RuleQuery.ComparisonOperator.fromSymbol(arguments.get(2)),
+                    size);
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> ColumnBits.compare(
+                    columns.transactionSums(arguments.get(0), "DEPOSIT"),
+                    columns.transactionSums(arguments.get(0), "EXPENSE"),
+                    RuleQuery.ComparisonOperator.fromSymbol(arguments.get(1)),
+                    size);
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package pro.sky.bank.engine;
+
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.service.RuleEvaluationService;
+
+/**
+ * Интерпретирующая проверка правила: каждый {@link RuleQuery} оценивается через
+ * {@link RuleEvaluationService#evaluateQuery}. Правило выполняется, если выполняются все его запросы.
+ */
+public class InterpretedRuleMatcher implements RuleMatcher {
+
+    private final DynamicRuleResponse rule;
+    private final RuleEvaluationService evaluationService;
+
+    public InterpretedRuleMatcher(DynamicRuleResponse rule, RuleEvaluationService evaluationService) {
+        this.rule = rule;
+        this.evaluationService = evaluationService;
+    }
+
+    @Override
+    public boolean matches(UserFacts facts) {
+        for (RuleQuery query : rule.getRule()) {
+            if (!evaluationService.evaluateQuery(facts.getUserId(), rule.getProductId(), query)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package pro.sky.bank.engine;
+
+import pro.sky.bank.repository.RecommendationsRepository;
+
+import java.util.UUID;
+
+/**
+ * {@link UserFacts}, читающие данные пользователя через кэширующий {@link RecommendationsRepository}.
+ */
+public class RepositoryUserFacts implements UserFacts {
+
+    private final RecommendationsRepository repository;
+    private final UUID userId;
+
+    public RepositoryUserFacts(RecommendationsRepository repository, UUID userId) {
+        this.repository = repository;
+        this.userId = userId;
+    }
+
+    @Override
+    public UUID getUserId() {
+        return userId;
+    }
+
+    @Override
+    public boolean isUserOf(String productType) {
+        return repository.hasProductType(userId, productType);
+    }
+
+    @Override
+    public boolean isActiveUserOf(String productType) {
+        return repository.isActiveUserOfProductType(userId, productType);
+    }
+
+    @Override
+    public long transactionSum(String productType, String transactionType) {
+        return repository.getTransactionSumByProductTypeAndTransactionType(userId, productType, transactionType);
+    }
+}
@@ -0,0 +1,164 @@
+package pro.sky.bank.engine;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import org.springframework.stereotype.Component;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.util.Money;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Компилятор динамических правил в байткод.
+ * <p>
+ * Для каждого {@link DynamicRuleResponse} генерируется скрытый класс (hidden class), реализующий
+ * {@link RuleMatcher}. Метод {@code matches} — линейная последовательность проверок без циклов и
+ * разбора аргументов: типы продуктов и транзакций записаны строковыми константами, пороги — константами
+ * {@code long} в копейках, суммы сравниваются инструкцией {@code lcmp}, а оператор сравнения и флаг
+ * {@code negate} превращены в одну инструкцию перехода.
+ * Такой код JIT-компилятор оптимизирует как обычный Java-метод, написанный под конкретное правило.
+ * </p>
+ * <p>
+ * Скрытые классы не имеют имени в загрузчике и выгружаются вместе с последним экземпляром,
+ * поэтому удаленные правила не накапливаются в памяти.
+ * </p>
+ */
+@Component
+public class RuleBytecodeCompiler {
+
+    private static final String CLASS_NAME = "pro/sky/bank/engine/CompiledRuleMatcher";
+    private static final String MATCHER = Type.getInternalName(RuleMatcher.class);
+    private static final String FACTS = Type.getInternalName(UserFacts.class);
+    private static final String MATCHES_DESC = "(" + Type.getDescriptor(UserFacts.class) + ")Z";
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /**
+     * Компилирует правило и создает экземпляр сгенерированного класса.
+     *
+     * @param rule правило с непустым списком запросов.
+     * @return {@link RuleMatcher}, эквивалентный интерпретации запросов правила.
+     * @throws IllegalArgumentException если правило содержит неизвестный тип запроса, оператор
+     *         или некорректные аргументы.
+     */
+    public RuleMatcher compile(DynamicRuleResponse rule) {
+        byte[] bytecode = generate(rule);
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytecode, true);
+            return (RuleMatcher) hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to load compiled rule " + rule.getProductId(), e);
+        }
+    }
+
+    byte[] generate(DynamicRuleResponse rule) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                CLASS_NAME, null, "java/lang/Object", new String[]{MATCHER});
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "matches", MATCHES_DESC, null, null);
+        mv.visitCode();
+        Label fail = new Label();
+        for (RuleQuery query : rule.getRule()) {
+            generateQuery(mv, query, fail);
+        }
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(fail);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        generateConstructor(cw);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private void generateQuery(MethodVisitor mv, RuleQuery query, Label fail) {
+        RuleQuery.QueryType queryType = RuleQuery.QueryType.valueOf(query.getQuery());
+        List<String> arguments = query.getArguments();
+        boolean negate = Boolean.TRUE.equals(query.getNegate());
+
+        switch (queryType) {
+            case USER_OF, ACTIVE_USER_OF -> {
+                String method = queryType == RuleQuery.QueryType.USER_OF ? "isUserOf" : "isActiveUserOf";
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitLdcInsn(requireArgument(arguments, 0));
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, FACTS, method, "(Ljava/lang/String;)Z", true);
+                mv.visitJumpInsn(negate ? Opcodes.IFNE : Opcodes.IFEQ, fail);
+            }
+            case TRANSACTION_SUM_COMPARE -> {
+                RuleQuery.ComparisonOperator operator =
+                        RuleQuery.ComparisonOperator.fromSymbol(requireArgument(arguments, 2));
+                long threshold = Money.parse(requireArgument(arguments, 3));
+                loadTransactionSum(mv, requireArgument(arguments, 0), requireArgument(arguments, 1));
+                mv.visitLdcInsn(threshold);
+                mv.visitInsn(Opcodes.LCMP);
+                mv.visitJumpInsn(failJump(operator, negate), fail);
+            }
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> {
+                String productType = requireArgument(arguments, 0);
+                RuleQuery.ComparisonOperator operator =
+                        RuleQuery.ComparisonOperator.fromSymbol(requireArgument(arguments, 1));
+                loadTransactionSum(mv, productType, "DEPOSIT");
+                loadTransactionSum(mv, productType, "EXPENSE");
+                mv.visitInsn(Opcodes.LCMP);
+                mv.visitJumpInsn(failJump(operator, negate), fail);
+            }
+            default -> throw new IllegalArgumentException("Unknown query type: " + queryType);
+        }
+    }
+
+    private void loadTransactionSum(MethodVisitor mv, String productType, String transactionType) {
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitLdcInsn(productType);
+        mv.visitLdcInsn(transactionType);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, FACTS, "transactionSum",
+                "(Ljava/lang/String;Ljava/lang/String;)J", true);
+    }
+
+    /**
+     * Инструкция перехода на метку {@code fail} по результату {@code lcmp} на вершине стека:
+     * без отрицания переходим, когда сравнение ложно, с отрицанием — когда истинно.
+     */
+    private int failJump(RuleQuery.ComparisonOperator operator, boolean negate) {
+        return switch (operator) {
+            case GREATER -> negate ? Opcodes.IFGT : Opcodes.IFLE;
+            case LESS -> negate ? Opcodes.IFLT : Opcodes.IFGE;
+            case EQUAL -> negate ? Opcodes.IFEQ : Opcodes.IFNE;
+            case GREATER_EQUAL -> negate ? Opcodes.IFGE : Opcodes.IFLT;
+            case LESS_EQUAL -> negate ? Opcodes.IFLE : Opcodes.IFGT;
+        };
+    }
+
+    private void generateConstructor(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static String requireArgument(List<String> arguments, int index) {
+        if (arguments == null || arguments.size() <= index || arguments.get(index) == null) {
+            throw new IllegalArgumentException("Missing query argument #" + index);
+        }
+        return arguments.get(index);
+    }
+}
@@ -0,0 +1,150 @@
+package pro.sky.bank.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.event.RuleCatalogChangedEvent;
+import pro.sky.bank.service.DynamicRuleService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Снимок каталога динамических правил в памяти вместе с готовыми {@link RuleMatcher}.
+ * <p>
+ * Каталог загружается один раз при старте приложения и затем обновляется точечно по событиям
+ * {@link RuleCatalogChangedEvent}: компилируются только созданные правила, удаленные — просто
+ * исключаются. Изменения, сделанные на других узлах, приходят теми же событиями от
+ * {@link RuleCatalogChangeFeed}. Каждое обновление строит новую неизменяемую карту и публикует ее одной записью
+ * в {@code volatile}-поле, поэтому читатели никогда не видят частично обновленный каталог и не
+ * берут блокировок.
+ * </p>
+ * <p>
+ * Загрузка читает правила постранично и не атомарна относительно изменений, зафиксированных во время
+ * чтения. Поэтому события не теряются: пришедшие до первой загрузки копятся и применяются к прочитанному
+ * каталогу перед его публикацией, а пришедшие во время загрузки ждут ее окончания на мониторе каталога.
+ * Применение события идемпотентно, так что изменение, уже попавшее в прочитанные страницы, ничего не портит.
+ * </p>
+ */
+@Component
+@Slf4j
+public class RuleCatalog {
+
+    private final DynamicRuleService dynamicRuleService;
+    private final RuleMatcherFactory matcherFactory;
+
+    private volatile Map<String, Entry> entries;
+    /**
+     * События, пришедшие до первой загрузки. Доступ под монитором каталога.
+     */
+    private final List<RuleCatalogChangedEvent> pendingEvents = new ArrayList<>();
+
+    public RuleCatalog(DynamicRuleService dynamicRuleService, RuleMatcherFactory matcherFactory) {
+        this.dynamicRuleService = dynamicRuleService;
+        this.matcherFactory = matcherFactory;
+    }
+
+    /**
+     * Возвращает все правила каталога в порядке создания.
+     * Если каталог еще не загружен, загружает его синхронно.
+     */
+    public Collection<Entry> getRules() {
+        Map<String, Entry> current = entries;
+        if (current == null) {
+            current = load();
+        }
+        return current.values();
+    }
+
+    /**
+     * @return правило каталога для продукта или {@code null}, если такого правила нет.
+     */
+    public Entry findRule(String productId) {
+        Map<String, Entry> current = entries;
+        if (current == null) {
+            current = load();
+        }
+        return current.get(productId);
+    }
+
+    public boolean isLoaded() {
+        return entries != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    /**
+     * Полностью перечитывает каталог из базы данных.
+     */
+    public synchronized Map<String, Entry> reload() {
+        Map<String, Entry> read = new LinkedHashMap<>();
+        dynamicRuleService.forEachRule(rule -> read.put(rule.getProductId(), createEntry(rule)));
+        // Изменение, пришедшее до загрузки, могло лечь на уже прочитанную страницу
+        Map<String, Entry> loaded = read;
+        for (RuleCatalogChangedEvent event : pendingEvents) {
+            loaded = apply(loaded, event);
+        }
+        pendingEvents.clear();
+        entries = Collections.unmodifiableMap(loaded);
+        log.info("Rule catalog loaded: {} rules, engine={}", loaded.size(), matcherFactory.getMode());
+        return entries;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onCatalogChanged(RuleCatalogChangedEvent event) {
+        if (entries == null) {
+            // Каталог еще не загружен: событие применится к прочитанному каталогу
+            pendingEvents.add(event);
+            return;
+        }
+        entries = Collections.unmodifiableMap(apply(new LinkedHashMap<>(entries), event));
+    }
+
+    /**
+     * Загружает каталог, если его еще не загрузил другой поток.
+     */
+    private synchronized Map<String, Entry> load() {
+        return entries != null ? entries : reload();
+    }
+
+    private Map<String, Entry> apply(Map<String, Entry> rules, RuleCatalogChangedEvent event) {
+        Map<String, Entry> updated = event.isReplaceAll() ? new LinkedHashMap<>() : rules;
+        event.getRemovedProductIds().forEach(updated::remove);
+        for (DynamicRuleResponse rule : event.getCreatedRules()) {
+            updated.put(rule.getProductId(), createEntry(rule));
+        }
+        return updated;
+    }
+
+    private Entry createEntry(DynamicRuleResponse rule) {
+        return new Entry(rule, matcherFactory.create(rule));
+    }
+
+    public static class Entry {
+        private final DynamicRuleResponse rule;
+        private final RuleMatcher matcher;
+
+        public Entry(DynamicRuleResponse rule, RuleMatcher matcher) {
+            this.rule = rule;
+            this.matcher = matcher;
+        }
+
+        public DynamicRuleResponse getRule() {
+            return rule;
+        }
+
+        public RuleMatcher getMatcher() {
+            return matcher;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package pro.sky.bank.engine;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.entity.RuleCatalogChange;
+import pro.sky.bank.model.event.RuleCatalogChangedEvent;
+import pro.sky.bank.repository.RuleCatalogChangeRepository;
+import pro.sky.bank.service.DynamicRuleService;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Распространение изменений каталога правил между узлами.
+ * <p>
+ * Каждое изменение каталога записывается в таблицу {@code rule_catalog_changes} в той же транзакции,
+ * что и само изменение. Каждый узел с интервалом {@code application.rules.change-feed.poll-interval-ms}
+ * дочитывает ленту после своей отметки — запросом по первичному ключу, который ничего не стоит,
+ * когда изменений нет. Изменения других узлов применяются точечно: перечитываются только
+ * затронутые правила и публикуются событием {@link RuleCatalogChangedEvent}, на которое
+ * подписаны {@link RuleCatalog} и {@link AudienceIndex}. Полная замена каталога на другом узле
+ * приводит к полной перезагрузке.
+ * </p>
+ * <p>
+ * Транзакции могут фиксироваться не в порядке своих {@code id}: отметка ({@link ChangeFeedWatermark})
+ * не сдвигается через пропуск в нумерации, пока он моложе {@code application.rules.change-feed.gap-timeout-ms},
+ * а уже примененные записи за пропуском повторно не применяются.
+ * </p>
+ */
+@Component
+@Slf4j
+public class RuleCatalogChangeFeed {
+
+    private final RuleCatalogChangeRepository changeRepository;
+    private final DynamicRuleService dynamicRuleService;
+    private final RuleCatalog ruleCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final long pollIntervalMs;
+    private final int batchSize;
+    private final Duration retention;
+    private final ScheduledExecutorService executor;
+
+    private final ChangeFeedWatermark watermark;
+    private final AtomicLong appliedChanges = new AtomicLong();
+    private final AtomicLong pollFailures = new AtomicLong();
+    private volatile LocalDateTime lastAppliedAt;
+
+    public RuleCatalogChangeFeed(RuleCatalogChangeRepository changeRepository,
+                                 DynamicRuleService dynamicRuleService,
+                                 RuleCatalog ruleCatalog,
+                                 ApplicationEventPublisher eventPublisher,
+                                 @Value("${application.rules.change-feed.poll-interval-ms:500}") long pollIntervalMs,
+                                 @Value("${application.rules.change-feed.gap-timeout-ms:10000}") long gapTimeoutMs,
+                                 @Value("${application.rules.change-feed.batch-size:500}") int batchSize,
+                                 @Value("${application.rules.change-feed.retention-hours:24}") long retentionHours) {
+        this.changeRepository = changeRepository;
+        this.dynamicRuleService = dynamicRuleService;
+        this.ruleCatalog = ruleCatalog;
+        this.eventPublisher = eventPublisher;
+        this.pollIntervalMs = pollIntervalMs;
+        this.batchSize = batchSize;
+        this.retention = Duration.ofHours(retentionHours);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rule-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Отметка берется до загрузки каталога: изменения между ними будут прочитаны повторно, но не потеряны
+        this.watermark = new ChangeFeedWatermark(changeRepository.findMaxId(), Duration.ofMillis(gapTimeoutMs));
+    }
+
+    /**
+     * Записывает локальное изменение каталога в ленту перед фиксацией транзакции, которая его
+     * выполнила. События, опубликованные самой лентой, выполняются вне транзакции и не пишутся.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onCatalogChanged(RuleCatalogChangedEvent event) {
+        LocalDateTime now = LocalDateTime.now();
+        List<RuleCatalogChange> changes = new ArrayList<>();
+        if (event.isReplaceAll()) {
+            changes.add(change(null, RuleCatalogChange.ChangeType.REPLACE_ALL, now));
+        } else {
+            event.getRemovedProductIds().forEach(productId ->
+                    changes.add(change(productId, RuleCatalogChange.ChangeType.DELETED, now)));
+            event.getCreatedRules().forEach(rule ->
+                    changes.add(change(rule.getProductId(), RuleCatalogChange.ChangeType.CREATED, now)));
+        }
+        changeRepository.saveAll(changes);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Rule change feed started: node={}, watermark={}", nodeId, watermark.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${application.rules.change-feed.prune-interval-ms:3600000}",
+            fixedDelayString = "${application.rules.change-feed.prune-interval-ms:3600000}")
+    public void prune() {
+        int deleted = changeRepository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Pruned {} rule catalog changes older than {}", deleted, retention);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("watermark", watermark.get());
+        stats.put("pollIntervalMs", pollIntervalMs);
+        stats.put("appliedChanges", appliedChanges.get());
+        stats.put("lastAppliedAt", lastAppliedAt);
+        stats.put("pollFailures", pollFailures.get());
+        return stats;
+    }
+
+    private void poll() {
+        try {
+            List<RuleCatalogChange> changes =
+                    changeRepository.findByIdGreaterThanOrderByIdAsc(watermark.get(), Limit.of(batchSize));
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            ChangeFeedWatermark.Batch batch = watermark.select(changes, System.nanoTime());
+            Set<String> changedProductIds = new LinkedHashSet<>();
+            boolean replaceAll = false;
+
+            for (RuleCatalogChange change : batch.changes()) {
+                if (nodeId.equals(change.getNodeId())) {
+                    continue;
+                }
+                if (change.getChangeType() == RuleCatalogChange.ChangeType.REPLACE_ALL) {
+                    replaceAll = true;
+                } else {
+                    changedProductIds.add(change.getProductId());
+                }
+            }
+
+            apply(replaceAll, changedProductIds);
+            watermark.commit(batch);
+        } catch (RuntimeException e) {
+            pollFailures.incrementAndGet();
+            log.warn("Rule change feed poll failed: {}", e.getMessage());
+        }
+    }
+
+    private void apply(boolean replaceAll, Set<String> productIds) {
+        if (!replaceAll && productIds.isEmpty()) {
+            return;
+        }
+        if (replaceAll) {
+            List<DynamicRuleResponse> rules = dynamicRuleService.getAllRules();
+            eventPublisher.publishEvent(RuleCatalogChangedEvent.replaced(rules));
+            recordApplied(rules.size());
+            log.info("Rule catalog replaced on another node, reloaded {} rules", rules.size());
+            return;
+        }
+
+        // Незагруженный каталог отложит событие до конца загрузки: изменение могло лечь на уже прочитанную
+        // страницу, поэтому оно передается целиком, без сравнения с каталогом
+        boolean loaded = ruleCatalog.isLoaded();
+        Set<String> removed = new HashSet<>(productIds);
+        List<DynamicRuleResponse> created = new ArrayList<>();
+        for (DynamicRuleResponse rule : dynamicRuleService.getRulesByProductIds(productIds)) {
+            removed.remove(rule.getProductId());
+            if (!loaded) {
+                created.add(rule);
+                continue;
+            }
+            RuleCatalog.Entry current = ruleCatalog.findRule(rule.getProductId());
+            if (current == null || !rule.getId().equals(current.getRule().getId())) {
+                created.add(rule);
+            }
+        }
+        if (loaded) {
+            removed.removeIf(productId -> ruleCatalog.findRule(productId) == null);
+        }
+        if (created.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+
+        eventPublisher.publishEvent(new RuleCatalogChangedEvent(created, removed, false));
+        recordApplied(created.size() + removed.size());
+        log.info("Applied rule changes from another node: created {}, removed {}", created.size(), removed.size());
+    }
+
+    private void recordApplied(int count) {
+        appliedChanges.addAndGet(count);
+        lastAppliedAt = LocalDateTime.now();
+    }
+
+    private RuleCatalogChange change(String productId, RuleCatalogChange.ChangeType type, LocalDateTime at) {
+        RuleCatalogChange change = new RuleCatalogChange();
+        change.setProductId(productId);
+        change.setChangeType(type);
+        change.setNodeId(nodeId);
+        change.setCreatedAt(at);
+        return change;
+    }
+}
@@ -0,0 +1,11 @@
+package pro.sky.bank.engine;
+
+/**
+ * Проверка всех условий одного динамического правила для пользователя.
+ * Реализуется интерпретатором ({@link InterpretedRuleMatcher}) или классом,
+ * сгенерированным {@link RuleBytecodeCompiler}.
+ */
+public interface RuleMatcher {
+
+    boolean matches(UserFacts facts);
+}
@@ -0,0 +1,55 @@
+package pro.sky.bank.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.service.RuleEvaluationService;
+
+/**
+ * Выбирает способ оценки динамических правил.
+ * <p>
+ * Режим задается свойством {@code application.rules.engine}:
+ * <ul>
+ *   <li>{@code compiled} (по умолчанию) — правило компилируется в байткод {@link RuleBytecodeCompiler};
+ *       если компиляция не удалась, для этого правила используется интерпретатор</li>
+ *   <li>{@code interpreted} — все правила оцениваются {@link InterpretedRuleMatcher}</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@Slf4j
+public class RuleMatcherFactory {
+
+    public enum Mode {
+        COMPILED,
+        INTERPRETED
+    }
+
+    private final RuleBytecodeCompiler compiler;
+    private final RuleEvaluationService evaluationService;
+    private final Mode mode;
+
+    public RuleMatcherFactory(RuleBytecodeCompiler compiler,
+                              RuleEvaluationService evaluationService,
+                              @Value("${application.rules.engine:compiled}") String mode) {
+        this.compiler = compiler;
+        this.evaluationService = evaluationService;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+    }
+
+    public RuleMatcher create(DynamicRuleResponse rule) {
+        if (mode == Mode.COMPILED) {
+            try {
+                return compiler.compile(rule);
+            } catch (RuntimeException e) {
+                log.warn("Rule {} falls back to interpreter: {}", rule.getProductId(), e.getMessage());
+            }
+        }
+        return new InterpretedRuleMatcher(rule, evaluationService);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+}
@@ -0,0 +1,77 @@
+package pro.sky.bank.engine;
+
+import pro.sky.bank.util.Money;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Факты о пачке пользователей в колоночном виде.
+ * <p>
+ * Для каждого типа продукта хранится колонка {@code int[]} с количеством транзакций,
+ * для каждой пары (тип продукта, тип транзакции) — колонка {@code long[]} с суммой в копейках.
+ * Элемент {@code i} любой колонки относится к пользователю {@link #getUserId(int) getUserId(i)}.
+ * Отсутствующие колонки читаются как нулевые.
+ * </p>
+ */
+public class UserFactColumns {
+
+    private final UUID[] userIds;
+    private final Map<String, int[]> transactionCounts = new HashMap<>();
+    private final Map<String, long[]> transactionSums = new HashMap<>();
+    private final int[] zeroCounts;
+    private final long[] zeroSums;
+
+    public UserFactColumns(List<UUID> userIds) {
+        this.userIds = userIds.toArray(new UUID[0]);
+        this.zeroCounts = new int[this.userIds.length];
+        this.zeroSums = new long[this.userIds.length];
+    }
+
+    public int size() {
+        return userIds.length;
+    }
+
+    public UUID getUserId(int index) {
+        return userIds[index];
+    }
+
+    /**
+     * Количество транзакций пользователей по продуктам указанного типа. Массив нельзя изменять.
+     */
+    public int[] transactionCounts(String productType) {
+        return transactionCounts.getOrDefault(productType, zeroCounts);
+    }
+
+    /**
+     * Сумма транзакций пользователей в копейках. Массив нельзя изменять.
+     */
+    public long[] transactionSums(String productType, String transactionType) {
+        return transactionSums.getOrDefault(productType + ":" + transactionType, zeroSums);
+    }
+
+    /**
+     * Добавляет агрегат по одной группе (пользователь, тип продукта, тип транзакции).
+     * Используется загрузчиком колонок.
+     *
+     * @return {@code false}, если сумма не помещается в {@code long}. Тогда она считается нулевой,
+     *         как и при ошибке запроса суммы по одному пользователю; остальные пользователи пачки
+     *         не затрагиваются.
+     */
+    public boolean add(int userIndex, String productType, String transactionType, int count, BigDecimal sum) {
+        transactionCounts.computeIfAbsent(productType, key -> new int[userIds.length])[userIndex] += count;
+
+        long[] sums = transactionSums.computeIfAbsent(productType + ":" + transactionType,
+                key -> new long[userIds.length]);
+        try {
+            sums[userIndex] = Math.addExact(sums[userIndex], Money.toMinorUnits(sum));
+            return true;
+        } catch (ArithmeticException e) {
+            sums[userIndex] = 0;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package pro.sky.bank.engine;
+
+import java.util.UUID;
+
+/**
+ * Факты о пользователе, на основе которых оцениваются условия правил.
+ * Это единственная зависимость скомпилированных правил, поэтому сигнатуры методов
+ * являются частью контракта генератора байткода {@link RuleBytecodeCompiler}.
+ */
+public interface UserFacts {
+
+    UUID getUserId();
+
+    boolean isUserOf(String productType);
+
+    boolean isActiveUserOf(String productType);
+
+    /**
+     * @return сумма транзакций в копейках.
+     */
+    long transactionSum(String productType, String transactionType);
+}
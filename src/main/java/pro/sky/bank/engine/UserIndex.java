@@ -0,0 +1,49 @@
+package pro.sky.bank.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Неизменяемое отображение идентификаторов пользователей в плотные номера {@code 0..size-1}.
+ * Номера используются как позиции битов в аудиториях правил {@link AudienceIndex}.
+ */
+public final class UserIndex {
+
+    private final UUID[] userIds;
+    private final Map<UUID, Integer> positions;
+
+    public UserIndex(List<UUID> userIds) {
+        this.userIds = userIds.toArray(new UUID[0]);
+        this.positions = new HashMap<>(this.userIds.length * 2);
+        for (int i = 0; i < this.userIds.length; i++) {
+            positions.put(this.userIds[i], i);
+        }
+    }
+
+    public int size() {
+        return userIds.length;
+    }
+
+    /**
+     * @return номер пользователя или {@code -1}, если пользователь появился после построения индекса.
+     */
+    public int indexOf(UUID userId) {
+        Integer position = positions.get(userId);
+        return position != null ? position : -1;
+    }
+
+    public UUID userAt(int index) {
+        return userIds[index];
+    }
+
+    /**
+     * Пользователи с номерами {@code from} (включительно) — {@code to} (не включительно).
+     */
+    public List<UUID> slice(int from, int to) {
+        return Collections.unmodifiableList(Arrays.asList(userIds).subList(from, to));
+    }
+}
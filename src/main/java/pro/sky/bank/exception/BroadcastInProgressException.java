@@ -0,0 +1,12 @@
+package pro.sky.bank.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class BroadcastInProgressException extends RuntimeException {
+
+    public BroadcastInProgressException(String message) {
+        super(message);
+    }
+}
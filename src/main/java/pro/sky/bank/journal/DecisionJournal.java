@@ -0,0 +1,203 @@
+package pro.sky.bank.journal;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Двоичный журнал решений по правилам: кто, какое правило или запрос, результат и время оценки.
+ * <p>
+ * Заменяет построчное логирование на горячем пути. Записи кодируются в буфер потока
+ * и дописываются в отображенный в память сегмент без блокировок (см. {@link JournalSegment});
+ * заполненный сегмент сбрасывается на диск, освобождается и заменяется новым, самые старые сегменты сверх
+ * {@code application.journal.max-segments} удаляются. Журнал пишется только для доли
+ * пользователей {@code application.journal.sample-rate}: выборка определяется хэшем userId,
+ * поэтому все решения выбранного пользователя попадают в журнал целиком.
+ * </p>
+ * <p>
+ * Прочитать журнал можно через {@code /management/journal/decisions} или утилитой
+ * {@link DecisionJournalReader}.
+ * </p>
+ */
+@Component
+public class DecisionJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(DecisionJournal.class);
+
+    static final String FILE_PREFIX = "decisions-";
+    static final String FILE_SUFFIX = ".journal";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ThreadLocal<ByteBuffer> scratch =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(DecisionRecord.MAX_SIZE));
+    private final AtomicInteger segmentSequence = new AtomicInteger();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile double sampleRate;
+    private volatile JournalSegment current;
+    private volatile boolean failed;
+    private volatile boolean closed;
+
+    public DecisionJournal(@Value("${application.journal.enabled:true}") boolean enabled,
+                           @Value("${application.journal.dir:./journal}") String directory,
+                           @Value("${application.journal.segment-size-mb:64}") int segmentSizeMb,
+                           @Value("${application.journal.max-segments:16}") int maxSegments,
+                           @Value("${application.journal.sample-rate:1.0}") double sampleRate) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSizeMb << 20;
+        this.maxSegments = maxSegments;
+        setSampleRate(sampleRate);
+    }
+
+    /**
+     * Записывает результат оценки правила.
+     */
+    public void recordRule(UUID userId, String ruleId, boolean staticRule, boolean result, long durationNanos) {
+        append(staticRule ? DecisionRecord.Kind.STATIC_RULE : DecisionRecord.Kind.DYNAMIC_RULE,
+                userId, ruleId, "", false, result, durationNanos);
+    }
+
+    /**
+     * Записывает результат оценки одного запроса правила.
+     *
+     * @param result результат с учетом {@code negated}.
+     */
+    public void recordQuery(UUID userId, String productId, String queryType, boolean negated,
+                            boolean result, long durationNanos) {
+        append(DecisionRecord.Kind.QUERY, userId, productId, queryType, negated, result, durationNanos);
+    }
+
+    /**
+     * @return {@code true}, если решения по пользователю попадают в журнал.
+     */
+    public boolean isSampled(UUID userId) {
+        double rate = sampleRate;
+        if (rate >= 1.0) {
+            return true;
+        }
+        long hash = userId.getMostSignificantBits() * 0x9E3779B97F4A7C15L ^ userId.getLeastSignificantBits();
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 32;
+        return (hash >>> 11) * 0x1.0p-53 < rate;
+    }
+
+    /**
+     * @param sampleRate доля пользователей от 0 (журнал не пишется) до 1 (все пользователи).
+     */
+    public void setSampleRate(double sampleRate) {
+        if (!(sampleRate >= 0.0 && sampleRate <= 1.0)) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public Map<String, Object> getStatistics() {
+        JournalSegment segment = current;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("failed", failed);
+        stats.put("directory", directory.toAbsolutePath().toString());
+        stats.put("sampleRate", sampleRate);
+        stats.put("written", written.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("segmentSizeBytes", segmentSize);
+        stats.put("currentSegment", segment != null ? segment.getPath().getFileName().toString() : null);
+        stats.put("currentSegmentUsedBytes", segment != null ? segment.getUsed() : 0);
+        return stats;
+    }
+
+    /**
+     * @see DecisionJournalReader#findRecent(Path, Predicate, int)
+     */
+    public List<DecisionRecord> findRecent(Predicate<DecisionRecord> filter, int limit) throws IOException {
+        return DecisionJournalReader.findRecent(directory, filter, limit);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closed = true;
+        JournalSegment segment = current;
+        current = null;
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    private void append(DecisionRecord.Kind kind, UUID userId, String ruleId, String queryType,
+                        boolean negated, boolean result, long durationNanos) {
+        if (!enabled || failed || userId == null || !isSampled(userId)) {
+            return;
+        }
+        ByteBuffer buffer = scratch.get();
+        int size = DecisionRecord.encode(buffer, kind, System.currentTimeMillis(), userId, ruleId,
+                queryType, negated, result, durationNanos);
+        while (true) {
+            JournalSegment segment = current;
+            if (segment == null || !segment.append(buffer, size)) {
+                segment = rollOver(segment);
+                if (segment == null) {
+                    dropped.increment();
+                    return;
+                }
+                continue;
+            }
+            written.increment();
+            return;
+        }
+    }
+
+    /**
+     * Открывает новый сегмент вместо {@code full}, если этого еще не сделал другой поток.
+     *
+     * @return текущий сегмент или {@code null}, если журнал недоступен.
+     */
+    private synchronized JournalSegment rollOver(JournalSegment full) {
+        if (current != full || failed || closed) {
+            return current;
+        }
+        try {
+            if (full != null) {
+                full.close();
+            }
+            Files.createDirectories(directory);
+            Path path = directory.resolve(String.format("%s%013d-%04d%s", FILE_PREFIX,
+                    System.currentTimeMillis(), segmentSequence.getAndIncrement() % 10_000, FILE_SUFFIX));
+            current = JournalSegment.create(path, segmentSize);
+            deleteOldSegments();
+            return current;
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            current = null;
+            log.error("Журнал решений отключен: не удалось открыть сегмент в {}: {}", directory, e.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = DecisionJournalReader.listSegments(directory);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package pro.sky.bank.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Чтение журнала решений.
+ * <p>
+ * Запуск из командной строки:
+ * {@code java -cp <classpath> pro.sky.bank.journal.DecisionJournalReader <каталог> [userId] [productId]}
+ * — печатает записи всех сегментов по порядку, по одной в строке, с фильтрами по пользователю
+ * и правилу.
+ * </p>
+ */
+public final class DecisionJournalReader {
+
+    private DecisionJournalReader() {
+    }
+
+    /**
+     * @return сегменты журнала от самого старого к самому новому.
+     */
+    public static List<Path> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(DecisionJournal.FILE_PREFIX) && name.endsWith(DecisionJournal.FILE_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    /**
+     * Читает записанные записи сегмента по порядку.
+     *
+     * @param consumer обработчик; вернув {@code false}, прекращает чтение.
+     * @return {@code false}, если чтение прервано обработчиком.
+     */
+    public static boolean read(Path segment, Predicate<DecisionRecord> consumer) throws IOException {
+        ByteBuffer buffer = JournalSegment.openForRead(segment);
+        try {
+            return JournalSegment.scan(buffer, offset -> consumer.test(DecisionRecord.decodeBody(buffer, offset)));
+        } finally {
+            JournalSegment.unmap(buffer);
+        }
+    }
+
+    /**
+     * Читает записанные записи сегмента от самой новой к самой старой. Смещения записей сначала
+     * собираются проходом вперед без декодирования, затем записи декодируются с конца, пока их принимает обработчик.
+     *
+     * @param consumer обработчик; вернув {@code false}, прекращает чтение.
+     * @return {@code false}, если чтение прервано обработчиком.
+     */
+    public static boolean readBackward(Path segment, Predicate<DecisionRecord> consumer) throws IOException {
+        ByteBuffer buffer = JournalSegment.openForRead(segment);
+        try {
+            Offsets offsets = new Offsets();
+            JournalSegment.scan(buffer, offsets::add);
+            for (int i = offsets.count - 1; i >= 0; i--) {
+                if (!consumer.test(DecisionRecord.decodeBody(buffer, offsets.values[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            JournalSegment.unmap(buffer);
+        }
+    }
+
+    /**
+     * Последние записи, подходящие под фильтр: сегменты и записи в них просматриваются от самых
+     * новых, чтение прекращается, как только найдено {@code limit} записей.
+     *
+     * @return до {@code limit} записей, начиная с самой новой.
+     */
+    public static List<DecisionRecord> findRecent(Path directory, Predicate<DecisionRecord> filter,
+                                                  int limit) throws IOException {
+        List<Path> segments = listSegments(directory);
+        List<DecisionRecord> result = new ArrayList<>();
+        for (int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+            readBackward(segments.get(i), record -> {
+                if (filter.test(record)) {
+                    result.add(record);
+                }
+                return result.size() < limit;
+            });
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: DecisionJournalReader <directory> [userId|-] [productId]");
+            System.exit(1);
+        }
+        UUID userId = args.length > 1 && !"-".equals(args[1]) ? UUID.fromString(args[1]) : null;
+        String ruleId = args.length > 2 ? args[2] : null;
+        for (Path segment : listSegments(Paths.get(args[0]))) {
+            read(segment, record -> {
+                if ((userId == null || userId.equals(record.userId()))
+                        && (ruleId == null || ruleId.equals(record.ruleId()))) {
+                    System.out.printf("%s %s %-12s %s %s%s %s %.3fms%n", record.at(), record.userId(),
+                            record.kind(), record.ruleId(), record.queryType(), record.negated() ? " NOT" : "",
+                            record.result(), record.durationNanos() / 1_000_000.0);
+                }
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Растущий массив смещений записей сегмента.
+     */
+    private static final class Offsets {
+        private int[] values = new int[1024];
+        private int count;
+
+        boolean add(int offset) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = offset;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package pro.sky.bank.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Одна запись журнала решений.
+ * <p>
+ * Формат записи: длина ({@code int}, пишется первой), признак фиксации ({@code int}, пишется последним,
+ * см. {@link JournalSegment}), вид, флаги результата, время, пользователь, длительность в наносекундах,
+ * идентификатор правила и тип запроса (UTF-8 с длиной {@code short}). Записи выравниваются
+ * на {@value #ALIGNMENT} байт.
+ * </p>
+ *
+ * @param kind          что оценивалось.
+ * @param ruleId        productId динамического правила или имя класса статического.
+ * @param queryType     тип запроса для {@link Kind#QUERY}, иначе пустая строка.
+ * @param negated       результат запроса инвертирован флагом {@code negate}.
+ * @param durationNanos время оценки.
+ */
+public record DecisionRecord(Kind kind, Instant at, UUID userId, String ruleId, String queryType,
+                             boolean negated, boolean result, long durationNanos) {
+
+    public enum Kind {
+        STATIC_RULE, DYNAMIC_RULE, QUERY
+    }
+
+    static final int ALIGNMENT = 8;
+    /**
+     * Длина и признак фиксации перед телом записи.
+     */
+    static final int HEADER_SIZE = 8;
+    static final int MAX_STRING_BYTES = 1024;
+    static final int MAX_SIZE = align(HEADER_SIZE + 2 + 8 + 16 + 8 + 2 * (2 + MAX_STRING_BYTES));
+
+    private static final int RESULT = 1;
+    private static final int NEGATED = 2;
+
+    /**
+     * Кодирует запись в {@code buffer} с позиции 0. Поле длины заполняется, место под признак фиксации
+     * остается нулевым: его пишет сегмент.
+     *
+     * @return размер записи с выравниванием.
+     */
+    static int encode(ByteBuffer buffer, Kind kind, long epochMillis, UUID userId, String ruleId,
+                      String queryType, boolean negated, boolean result, long durationNanos) {
+        buffer.clear();
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.put((byte) kind.ordinal());
+        buffer.put((byte) ((result ? RESULT : 0) | (negated ? NEGATED : 0)));
+        buffer.putLong(epochMillis);
+        buffer.putLong(userId.getMostSignificantBits());
+        buffer.putLong(userId.getLeastSignificantBits());
+        buffer.putLong(durationNanos);
+        putString(buffer, ruleId);
+        putString(buffer, queryType);
+        int length = buffer.position();
+        buffer.putInt(0, length);
+        int size = align(length);
+        while (buffer.position() < size) {
+            buffer.put((byte) 0);
+        }
+        buffer.flip();
+        return size;
+    }
+
+    /**
+     * Читает запись, начинающуюся с {@code offset}.
+     */
+    static DecisionRecord decode(ByteBuffer buffer, int offset) {
+        return decodeBody(buffer, offset + HEADER_SIZE);
+    }
+
+    /**
+     * Читает тело записи, начинающееся с {@code offset} (см. {@link JournalSegment#scan}).
+     */
+    static DecisionRecord decodeBody(ByteBuffer buffer, int offset) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        Kind kind = Kind.values()[record.get()];
+        int flags = record.get();
+        Instant at = Instant.ofEpochMilli(record.getLong());
+        UUID userId = new UUID(record.getLong(), record.getLong());
+        long durationNanos = record.getLong();
+        String ruleId = getString(record);
+        String queryType = getString(record);
+        return new DecisionRecord(kind, at, userId, ruleId, queryType,
+                (flags & NEGATED) != 0, (flags & RESULT) != 0, durationNanos);
+    }
+
+    static int align(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
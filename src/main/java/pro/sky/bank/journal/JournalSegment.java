@@ -0,0 +1,231 @@
+package pro.sky.bank.journal;
+
+import sun.misc.Unsafe;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Файл журнала фиксированного размера, отображенный в память.
+ * <p>
+ * Место под запись резервируется атомарным сдвигом позиции, которая хранится в заголовке сегмента,
+ * поэтому потоки пишут в разные участки файла без блокировок, а читатель знает границу
+ * зарезервированной части и после остановки процесса. Сразу после резервирования пишется длина
+ * записи, затем тело, последним — признак фиксации с семантикой release: читатель, увидевший признак,
+ * видит и всю запись. Зарезервированную, но не зафиксированную запись читатель пропускает по длине,
+ * а если не успела записаться и длина, ищет следующую зафиксированную запись с шагом выравнивания.
+ * Поэтому запись, прерванная остановкой процесса, не скрывает записанные после нее.
+ * </p>
+ * <p>
+ * Сегмент версии {@value #LEGACY_VERSION} (длина записи служит и признаком фиксации, нулевая длина —
+ * конец сегмента) по-прежнему читается.
+ * </p>
+ */
+final class JournalSegment {
+
+    static final int MAGIC = 0x444A5231;
+    static final int VERSION = 2;
+    static final int LEGACY_VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * Значение признака фиксации записи.
+     */
+    static final int COMMITTED = 0x434F4D54;
+
+    private static final int USED_OFFSET = 8;
+    private static final int LEGACY_HEADER_SIZE = 8;
+    private static final int LEGACY_LENGTH_SIZE = 4;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final Unsafe UNSAFE = unsafe();
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    /**
+     * Потоки, обращающиеся к отображению; закрытый сегмент освобождается, когда их не остается.
+     */
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile boolean closed;
+
+    private JournalSegment(Path path, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    static JournalSegment create(Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(USED_OFFSET, HEADER_SIZE);
+            return new JournalSegment(path, buffer, capacity);
+        }
+    }
+
+    /**
+     * Дописывает закодированную запись.
+     *
+     * @param record запись от позиции 0 до {@code size}: длина, место под признак фиксации и тело.
+     * @return {@code false}, если сегмент заполнен или закрыт.
+     */
+    boolean append(ByteBuffer record, int size) {
+        if (!enter()) {
+            return false;
+        }
+        try {
+            int offset = (int) INT.getAndAdd(buffer, USED_OFFSET, size);
+            if (offset < 0 || offset > capacity - size) {
+                // Остаток сегмента не используется: граница сбрасывается, чтобы позиция не переполнилась
+                INT.setVolatile(buffer, USED_OFFSET, capacity);
+                return false;
+            }
+            buffer.putInt(offset, record.getInt(0));
+            buffer.put(offset + DecisionRecord.HEADER_SIZE, record, DecisionRecord.HEADER_SIZE,
+                    size - DecisionRecord.HEADER_SIZE);
+            INT.setRelease(buffer, offset + 4, COMMITTED);
+            return true;
+        } finally {
+            users.decrementAndGet();
+        }
+    }
+
+    /**
+     * Сбрасывает сегмент на диск и освобождает отображение, дождавшись завершения начатых записей.
+     * Последующие {@link #append} возвращают {@code false}.
+     */
+    void close() {
+        closed = true;
+        while (users.get() != 0) {
+            Thread.onSpinWait();
+        }
+        buffer.force();
+        unmap(buffer);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int getUsed() {
+        if (!enter()) {
+            return capacity;
+        }
+        try {
+            return end(buffer);
+        } finally {
+            users.decrementAndGet();
+        }
+    }
+
+    private boolean enter() {
+        users.incrementAndGet();
+        if (closed) {
+            users.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет заголовок и возвращает отображение сегмента для чтения. После чтения отображение
+     * освобождается через {@link #unmap(ByteBuffer)}.
+     */
+    static ByteBuffer openForRead(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                    || (buffer.getInt(4) != VERSION && buffer.getInt(4) != LEGACY_VERSION)) {
+                unmap(buffer);
+                throw new IOException("Not a decision journal segment: " + path);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Передает смещения тел зафиксированных записей сегмента по порядку.
+     *
+     * @param consumer обработчик смещения; вернув {@code false}, прекращает чтение.
+     * @return {@code false}, если чтение прервано обработчиком.
+     */
+    static boolean scan(ByteBuffer buffer, IntPredicate consumer) {
+        if (buffer.getInt(4) == LEGACY_VERSION) {
+            return scanLegacy(buffer, consumer);
+        }
+        int end = end(buffer);
+        int offset = HEADER_SIZE;
+        while (offset <= end - DecisionRecord.HEADER_SIZE) {
+            boolean committed = (int) INT.getAcquire(buffer, offset + 4) == COMMITTED;
+            int length = buffer.getInt(offset);
+            boolean valid = length >= DecisionRecord.HEADER_SIZE && length <= DecisionRecord.MAX_SIZE
+                    && offset + length <= end;
+            if (!valid) {
+                // Длина не записана: место зарезервировано, но запись прервана или еще идет
+                offset += DecisionRecord.ALIGNMENT;
+                continue;
+            }
+            if (committed && !consumer.test(offset + DecisionRecord.HEADER_SIZE)) {
+                return false;
+            }
+            offset += DecisionRecord.align(length);
+        }
+        return true;
+    }
+
+    /**
+     * Освобождает отображение файла сразу, не дожидаясь сборщика мусора. Обращение к буферу после
+     * этого недопустимо. Если {@link Unsafe} недоступен, отображение освободит сборщик мусора.
+     */
+    static void unmap(ByteBuffer buffer) {
+        if (UNSAFE != null && buffer.isDirect()) {
+            UNSAFE.invokeCleaner(buffer);
+        }
+    }
+
+    private static boolean scanLegacy(ByteBuffer buffer, IntPredicate consumer) {
+        int offset = LEGACY_HEADER_SIZE;
+        while (offset <= buffer.capacity() - LEGACY_LENGTH_SIZE) {
+            int length = (int) INT.getAcquire(buffer, offset);
+            if (length <= 0 || length > DecisionRecord.MAX_SIZE || offset + length > buffer.capacity()) {
+                return true;
+            }
+            if (!consumer.test(offset + LEGACY_LENGTH_SIZE)) {
+                return false;
+            }
+            offset += DecisionRecord.align(length);
+        }
+        return true;
+    }
+
+    /**
+     * @return граница зарезервированной части сегмента.
+     */
+    private static int end(ByteBuffer buffer) {
+        int used = (int) INT.getVolatile(buffer, USED_OFFSET);
+        return used < HEADER_SIZE || used > buffer.capacity() ? buffer.capacity() : used;
+    }
+
+    private static Unsafe unsafe() {
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return (Unsafe) field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
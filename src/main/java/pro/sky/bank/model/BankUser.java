@@ -0,0 +1,18 @@
+package pro.sky.bank.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.UUID;
+
+/**
+ * Пользователь банка из таблицы {@code USERS}.
+ */
+@Data
+@AllArgsConstructor
+public class BankUser {
+    private UUID id;
+    private String username;
+    private String firstName;
+    private String lastName;
+}
@@ -0,0 +1,47 @@
+package pro.sky.bank.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Результат пробного прогона правила по пользователям.
+ */
+@Data
+@NoArgsConstructor
+public class RuleSimulationResponse {
+
+    @JsonProperty("evaluated_users")
+    private long evaluatedUsers;
+
+    @JsonProperty("matched_users")
+    private long matchedUsers;
+
+    /**
+     * Доля подошедших пользователей среди оцененных.
+     */
+    @JsonProperty("match_rate")
+    private double matchRate;
+
+    /**
+     * Примеры пользователей, для которых правило выполняется.
+     */
+    @JsonProperty("sample_user_ids")
+    private List<UUID> sampleUserIds;
+
+    /**
+     * {@code true}, если оценивалась случайная выборка пользователей, а не все пользователи.
+     */
+    private boolean sampled;
+
+    /**
+     * {@code false}, если прогон остановлен по истечении бюджета времени и результат частичный.
+     */
+    private boolean complete;
+
+    @JsonProperty("elapsed_ms")
+    private long elapsedMs;
+}
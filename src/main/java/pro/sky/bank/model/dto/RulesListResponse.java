@@ -1,5 +1,6 @@
 package pro.sky.bank.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 
@@ -9,6 +10,13 @@ import java.util.List;
 public class RulesListResponse {
     private List<DynamicRuleResponse> data;
 
+    /**
+     * Курсор следующей страницы (id последнего правила на странице).
+     * {@code null}, если страница последняя.
+     */
+    @JsonProperty("next_cursor")
+    private Long nextCursor;
+
     public RulesListResponse(List<DynamicRuleResponse> data) {
     }
 
@@ -0,0 +1,56 @@
+package pro.sky.bank.model.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись ленты изменений каталога динамических правил.
+ * <p>
+ * Пишется в той же транзакции, что и само изменение; возрастающий {@code id} служит отметкой,
+ * по которой остальные узлы дочитывают ленту через
+ * {@link pro.sky.bank.engine.RuleCatalogChangeFeed}.
+ */
+@Entity
+@Table(name = "rule_catalog_changes", indexes = @Index(columnList = "created_at"))
+public class RuleCatalogChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * Продукт измененного правила; {@code null} для {@link ChangeType#REPLACE_ALL}.
+     */
+    @Column(name = "product_id")
+    private String productId;
+
+    @Column(name = "change_type", nullable = false, length = 16)
+    @Enumerated(EnumType.STRING)
+    private ChangeType changeType;
+
+    @Column(name = "node_id", nullable = false, length = 36)
+    private String nodeId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public ChangeType getChangeType() { return changeType; }
+    public void setChangeType(ChangeType changeType) { this.changeType = changeType; }
+
+    public String getNodeId() { return nodeId; }
+    public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public enum ChangeType {
+        CREATED, DELETED, REPLACE_ALL
+    }
+}
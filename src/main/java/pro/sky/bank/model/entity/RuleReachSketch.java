@@ -0,0 +1,49 @@
+package pro.sky.bank.model.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Скетч HyperLogLog пользователей, которым подошло правило, за период.
+ * <p>
+ * {@code period} — {@code ALL} для всего времени или дата {@code yyyy-MM-dd} (UTC) для суток.
+ * Регистры хранятся списком занятых регистров или упакованными целиком, если так короче,
+ * см. {@link pro.sky.bank.util.HyperLogLog#toBytes()}.
+ */
+@Entity
+@Table(name = "rule_reach_sketches",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"product_id", "period"}))
+public class RuleReachSketch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private String productId;
+
+    @Column(name = "period", nullable = false, length = 10)
+    private String period;
+
+    @Column(name = "registers", nullable = false, columnDefinition = "VARBINARY(12288)")
+    private byte[] registers;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public String getPeriod() { return period; }
+    public void setPeriod(String period) { this.period = period; }
+
+    public byte[] getRegisters() { return registers; }
+    public void setRegisters(byte[] registers) { this.registers = registers; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,66 @@
+package pro.sky.bank.model.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Число срабатываний правила за час или за сутки.
+ * <p>
+ * Строки пишутся пакетно через {@link pro.sky.bank.repository.RuleTriggerBucketRepository};
+ * {@code bucketStart} — начало интервала в UTC.
+ */
+@Entity
+@Table(name = "rule_trigger_buckets",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"product_id", "granularity", "bucket_start"}))
+public class RuleTriggerBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private String productId;
+
+    @Column(name = "granularity", nullable = false, length = 16)
+    @Enumerated(EnumType.STRING)
+    private Granularity granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(name = "trigger_count", nullable = false)
+    private Long triggerCount = 0L;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public Granularity getGranularity() { return granularity; }
+    public void setGranularity(Granularity granularity) { this.granularity = granularity; }
+
+    public LocalDateTime getBucketStart() { return bucketStart; }
+    public void setBucketStart(LocalDateTime bucketStart) { this.bucketStart = bucketStart; }
+
+    public Long getTriggerCount() { return triggerCount; }
+    public void setTriggerCount(Long triggerCount) { this.triggerCount = triggerCount; }
+
+    /**
+     * Размер интервала. Поминутные счетчики хранятся только в памяти.
+     */
+    public enum Granularity {
+        MINUTE(1), HOUR(60), DAY(1440);
+
+        private final int minutes;
+
+        Granularity(int minutes) {
+            this.minutes = minutes;
+        }
+
+        public int getMinutes() {
+            return minutes;
+        }
+    }
+}
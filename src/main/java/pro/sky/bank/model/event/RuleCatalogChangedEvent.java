@@ -0,0 +1,58 @@
+package pro.sky.bank.model.event;
+
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Событие изменения каталога динамических правил.
+ * <p>
+ * Публикуется {@link pro.sky.bank.service.DynamicRuleService} при создании, удалении и замене правил,
+ * а также {@link pro.sky.bank.engine.RuleCatalogChangeFeed} при изменениях каталога на других узлах.
+ * Содержит только изменившиеся правила, чтобы подписчики (кэши, скомпилированные правила)
+ * обновляли свое состояние точечно, без полной перезагрузки каталога.
+ * </p>
+ */
+public class RuleCatalogChangedEvent {
+
+    private final List<DynamicRuleResponse> createdRules;
+    private final Set<String> removedProductIds;
+    private final boolean replaceAll;
+
+    public RuleCatalogChangedEvent(List<DynamicRuleResponse> createdRules,
+                                   Set<String> removedProductIds,
+                                   boolean replaceAll) {
+        this.createdRules = createdRules;
+        this.removedProductIds = removedProductIds;
+        this.replaceAll = replaceAll;
+    }
+
+    public static RuleCatalogChangedEvent created(List<DynamicRuleResponse> rules) {
+        return new RuleCatalogChangedEvent(rules, Set.of(), false);
+    }
+
+    public static RuleCatalogChangedEvent removed(String productId) {
+        return new RuleCatalogChangedEvent(List.of(), Set.of(productId), false);
+    }
+
+    /**
+     * Весь каталог заменен: подписчики должны забыть все прежние правила
+     * и считать каталогом ровно {@code rules}.
+     */
+    public static RuleCatalogChangedEvent replaced(List<DynamicRuleResponse> rules) {
+        return new RuleCatalogChangedEvent(rules, Set.of(), true);
+    }
+
+    public List<DynamicRuleResponse> getCreatedRules() {
+        return createdRules;
+    }
+
+    public Set<String> getRemovedProductIds() {
+        return removedProductIds;
+    }
+
+    public boolean isReplaceAll() {
+        return replaceAll;
+    }
+}
@@ -0,0 +1,106 @@
+package pro.sky.bank.monitoring;
+
+import org.springframework.stereotype.Service;
+import pro.sky.bank.util.LatencyHistogram;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Гистограммы задержек рекомендаций с разбивкой по источнику.
+ * <p>
+ * Для каждой пары (категория, имя) заводится {@link LatencyHistogram}: динамическое правило —
+ * по productId, запрос интерпретируемого правила — по {@code RuleQuery.QueryType}, статическое
+ * правило — по имени класса, метод {@code RecommendationsRepository} — по имени метода.
+ * Скомпилированные правила обращаются к фактам напрямую, поэтому их условия видны только
+ * через методы репозитория. Запись не блокирует вызывающий поток; отчет строится за интервал
+ * с последнего сброса.
+ * </p>
+ */
+@Service
+public class LatencyMonitor {
+
+    public enum Category {
+        RULE, QUERY_TYPE, STATIC_RULE, REPOSITORY
+    }
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Map<Category, Map<String, LatencyHistogram>> histograms = new EnumMap<>(Category.class);
+    private volatile Instant intervalStart = Instant.now();
+
+    public LatencyMonitor() {
+        for (Category category : Category.values()) {
+            histograms.put(category, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Записывает время, прошедшее с {@code startNanos} (значение {@link System#nanoTime()}).
+     */
+    public void record(Category category, String name, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        Map<String, LatencyHistogram> byName = histograms.get(category);
+        LatencyHistogram histogram = byName.get(name);
+        if (histogram == null) {
+            histogram = byName.computeIfAbsent(name, key -> new LatencyHistogram());
+        }
+        histogram.record(elapsed);
+    }
+
+    /**
+     * Отчет за интервал с последнего сброса: для каждой категории — источники по убыванию p99,
+     * значения в миллисекундах.
+     *
+     * @param category только эта категория или {@code null} для всех.
+     * @param reset    начать новый интервал для всех категорий после построения отчета.
+     */
+    public synchronized Map<String, Object> getReport(Category category, boolean reset) {
+        Instant now = Instant.now();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("intervalStart", intervalStart);
+        report.put("intervalEnd", now);
+
+        for (Map.Entry<Category, Map<String, LatencyHistogram>> entry : histograms.entrySet()) {
+            boolean included = category == null || entry.getKey() == category;
+            if (!included && !reset) {
+                continue;
+            }
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map.Entry<String, LatencyHistogram> histogram : entry.getValue().entrySet()) {
+                LatencyHistogram.Snapshot snapshot = histogram.getValue().snapshot(reset);
+                if (!included || snapshot.getTotalCount() == 0) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("name", histogram.getKey());
+                row.put("count", snapshot.getTotalCount());
+                row.put("mean", millis(snapshot.getMean()));
+                row.put("p50", millis(snapshot.getValueAtPercentile(50)));
+                row.put("p99", millis(snapshot.getValueAtPercentile(99)));
+                row.put("p999", millis(snapshot.getValueAtPercentile(99.9)));
+                row.put("max", millis(snapshot.getMax()));
+                rows.add(row);
+            }
+            if (included) {
+                rows.sort(Comparator.comparingDouble((Map<String, Object> row) -> (Double) row.get("p99")).reversed());
+                report.put(entry.getKey().name(), rows);
+            }
+        }
+
+        if (reset) {
+            intervalStart = now;
+        }
+        return report;
+    }
+
+    private static double millis(double nanos) {
+        return Math.round(nanos / NANOS_PER_MILLI * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,153 @@
+package pro.sky.bank.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pro.sky.bank.model.BankUser;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Индекс пользователей банка по имени пользователя (без учета регистра).
+ * <p>
+ * Таблица {@code USERS} целиком загружается при старте, затем по расписанию дочитываются только
+ * пользователи, зарегистрированные после последней загрузки ({@code registration_date}). Переименования
+ * и удаления так не видны, поэтому раз в {@code application.users.full-reload-interval-ms}
+ * индекс перестраивается целиком. Поиск
+ * по имени — один поиск в хэш-таблице без обращения к базе. Имя, которое носят несколько
+ * пользователей, считается неоднозначным и не находится.
+ * </p>
+ */
+@Component
+public class BankUserDirectory {
+
+    private static final Logger log = LoggerFactory.getLogger(BankUserDirectory.class);
+    private static final int FETCH_SIZE = 1000;
+
+    /**
+     * Метка неоднозначного имени пользователя.
+     */
+    private static final BankUser AMBIGUOUS = new BankUser(null, null, null, null);
+
+    private static final String SELECT_USERS =
+            "SELECT id, username, first_name, last_name, registration_date FROM users";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long fullReloadIntervalNanos;
+
+    private volatile Map<String, BankUser> byUsername;
+    private volatile Timestamp watermark;
+    private long reloadedAt;
+
+    public BankUserDirectory(JdbcTemplate jdbcTemplate,
+                             @Value("${application.users.full-reload-interval-ms:600000}") long fullReloadIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fullReloadIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fullReloadIntervalMs);
+    }
+
+    /**
+     * @param username имя пользователя в любом регистре.
+     * @return пользователь, если имя известно и однозначно.
+     */
+    public Optional<BankUser> findByUsername(String username) {
+        Map<String, BankUser> index = byUsername;
+        if (index == null || username == null) {
+            return Optional.empty();
+        }
+        BankUser user = index.get(username.toLowerCase(Locale.ROOT));
+        return user == null || user == AMBIGUOUS ? Optional.empty() : Optional.of(user);
+    }
+
+    public boolean isReady() {
+        return byUsername != null;
+    }
+
+    /**
+     * Дочитывает новых пользователей; при первом вызове, если отметок регистрации нет или с последней
+     * полной загрузки прошло {@code application.users.full-reload-interval-ms}, загружает таблицу целиком.
+     */
+    @Scheduled(initialDelayString = "${application.users.initial-delay-ms:0}",
+            fixedDelayString = "${application.users.refresh-interval-ms:60000}")
+    public synchronized void refresh() {
+        Map<String, BankUser> index = byUsername;
+        Timestamp since = watermark;
+        if (index == null || since == null || System.nanoTime() - reloadedAt >= fullReloadIntervalNanos) {
+            reload();
+            return;
+        }
+        try {
+            // ">=": пользователи с той же отметкой времени могли появиться после прошлой загрузки
+            int loaded = load(index, SELECT_USERS + " WHERE registration_date >= ?", since);
+            if (loaded > 0) {
+                log.debug("Дочитано пользователей банка: {}", loaded);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось обновить индекс пользователей: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Полностью перестраивает индекс. Старый индекс обслуживает поиск до публикации нового.
+     */
+    public synchronized void reload() {
+        Timestamp previousWatermark = watermark;
+        try {
+            long startedAt = System.nanoTime();
+            Map<String, BankUser> index = new ConcurrentHashMap<>();
+            watermark = null;
+            int loaded = load(index, SELECT_USERS);
+            byUsername = index;
+            reloadedAt = System.nanoTime();
+            log.info("Индекс пользователей банка построен: {} пользователей за {} мс",
+                    loaded, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        } catch (RuntimeException e) {
+            watermark = previousWatermark;
+            log.warn("Не удалось построить индекс пользователей: {}", e.getMessage());
+        }
+    }
+
+    private int load(Map<String, BankUser> index, String sql, Object... args) {
+        int[] loaded = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            add(index, rs);
+            loaded[0]++;
+        });
+        return loaded[0];
+    }
+
+    private void add(Map<String, BankUser> index, ResultSet rs) throws SQLException {
+        Timestamp registeredAt = rs.getTimestamp("registration_date");
+        if (registeredAt != null && (watermark == null || registeredAt.after(watermark))) {
+            watermark = registeredAt;
+        }
+        String username = rs.getString("username");
+        if (username == null) {
+            return;
+        }
+        BankUser user = new BankUser(UUID.fromString(rs.getString("id")), username,
+                rs.getString("first_name"), rs.getString("last_name"));
+        index.merge(username.toLowerCase(Locale.ROOT), user,
+                (existing, added) -> existing.getId() != null && existing.getId().equals(added.getId())
+                        ? added : AMBIGUOUS);
+    }
+}
@@ -1,8 +1,14 @@
 package pro.sky.bank.repository;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import pro.sky.bank.model.entity.DynamicRule;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface DynamicRuleRepository extends JpaRepository<DynamicRule, Long> {
@@ -11,4 +17,17 @@ public interface DynamicRuleRepository extends JpaRepository<DynamicRule, Long>
 
     void deleteByProductId(String productId);
     Optional<DynamicRule> findByProductId(String productId);
-}
\ No newline at end of file
+
+    List<DynamicRule> findByProductIdIn(Collection<String> productIds);
+
+    // Проверка уникальности всего пакета правил одним запросом
+    @Query("SELECT r.productId FROM DynamicRule r WHERE r.productId IN :productIds")
+    List<String> findExistingProductIds(@Param("productIds") Collection<String> productIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM DynamicRule r WHERE r.id = :id")
+    void deleteByIdInBulk(@Param("id") Long id);
+
+    // Keyset-пагинация: следующая страница правил после указанного id
+    List<DynamicRule> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+}
@@ -0,0 +1,235 @@
+package pro.sky.bank.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pro.sky.bank.util.BloomFilter;
+
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Фильтры Блума «пользователь — тип продукта», по одному на каждый тип продукта.
+ * <p>
+ * Позволяют ответить «пользователь точно не пользуется продуктами типа X» без обращения к кэшу
+ * и базе данных. Фильтры строятся по таблице {@code transactions} при старте и перестраиваются
+ * по расписанию. Пока фильтры не построены, {@link #mightUse(UUID, String)} всегда отвечает
+ * {@code true}, то есть проверка просто пропускается.
+ * </p>
+ * <p>
+ * Отрицательный ответ фильтра не может быть старше кэшей, которые он заменяет: фильтры старше
+ * {@code application.bloom.max-age-ms} (по умолчанию — время жизни кэшей репозитория) не используются,
+ * а при очистке кэшей ({@link #invalidate()}) сбрасываются сразу и перестраиваются в фоне.
+ * </p>
+ */
+@Component
+public class ProductUsageFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductUsageFilter.class);
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${application.bloom.enabled:true}")
+    private boolean enabled;
+
+    @Value("${application.bloom.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${application.bloom.max-memory-bytes:16777216}")
+    private long maxMemoryBytes;
+
+    @Value("${application.bloom.max-age-ms:600000}")
+    private long maxAgeMs;
+
+    private volatile Filters filters;
+    private volatile boolean buildAttempted;
+    private final LongAdder definiteNegatives = new LongAdder();
+    private final Object publishLock = new Object();
+    private long generation;
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bloom-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProductUsageFilter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * @return {@code false}, только если пользователь точно не совершал транзакций
+     *         по продуктам указанного типа.
+     */
+    public boolean mightUse(UUID userId, String productType) {
+        Filters current = filters;
+        if (current == null || System.currentTimeMillis() - current.builtAt() > maxAgeMs) {
+            return true;
+        }
+        BloomFilter filter = current.byType().get(productType);
+        if (filter != null && filter.mightContain(userId)) {
+            return true;
+        }
+        definiteNegatives.increment();
+        return false;
+    }
+
+    public boolean isReady() {
+        return filters != null;
+    }
+
+    /**
+     * @return {@code true}, если фильтры выключены или хотя бы одна сборка уже завершилась, пусть и
+     *         неудачно. Без фильтров проверки просто пропускаются, поэтому ждать их для готовности
+     *         приложения не нужно.
+     */
+    public boolean isWarm() {
+        return !enabled || buildAttempted;
+    }
+
+    /**
+     * Сбрасывает фильтры и ставит их пересборку в фоновый поток; вызывающий поток не ждет
+     * полного чтения таблицы. До публикации новых фильтров проверка пропускается.
+     */
+    public void invalidate() {
+        synchronized (publishLock) {
+            generation++;
+            filters = null;
+        }
+        if (enabled && refreshQueued.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                refreshQueued.set(false);
+                refresh();
+            });
+        }
+    }
+
+    /**
+     * Перестраивает фильтры по текущим данным. Старые фильтры продолжают обслуживать проверки
+     * до публикации новых.
+     */
+    @Scheduled(initialDelayString = "${application.bloom.initial-delay-ms:0}",
+            fixedDelayString = "${application.bloom.refresh-interval-ms:300000}")
+    public synchronized void refresh() {
+        if (!enabled) {
+            filters = null;
+            return;
+        }
+
+        long buildGeneration;
+        synchronized (publishLock) {
+            buildGeneration = generation;
+        }
+        try {
+            long builtAt = System.currentTimeMillis();
+            long startedAt = System.nanoTime();
+            Map<String, Long> usersByType = new LinkedHashMap<>();
+            jdbcTemplate.query("""
+                    SELECT p.type, COUNT(DISTINCT t.user_id) AS users
+                    FROM transactions t
+                    JOIN products p ON t.product_id = p.id
+                    GROUP BY p.type
+                    """, (RowCallbackHandler) rs -> usersByType.put(rs.getString("type"), rs.getLong("users")));
+
+            Map<String, BloomFilter> built = createFilters(usersByType);
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement("""
+                        SELECT DISTINCT t.user_id, p.type
+                        FROM transactions t
+                        JOIN products p ON t.product_id = p.id
+                        """);
+                statement.setFetchSize(FETCH_SIZE);
+                return statement;
+            }, (RowCallbackHandler) rs -> {
+                BloomFilter filter = built.get(rs.getString("type"));
+                if (filter != null) {
+                    filter.put(UUID.fromString(rs.getString("user_id")));
+                }
+            });
+
+            synchronized (publishLock) {
+                if (buildGeneration != generation) {
+                    // Кэши очищены во время сборки: фильтры могли пропустить новые данные
+                    return;
+                }
+                filters = new Filters(Collections.unmodifiableMap(built), builtAt);
+            }
+            log.info("Product usage filters built in {} ms: {}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), getStats());
+        } catch (Exception e) {
+            log.error("Ошибка построения фильтров Блума: {}", e.getMessage());
+        } finally {
+            buildAttempted = true;
+        }
+    }
+
+    /**
+     * Делит бюджет памяти между типами продуктов пропорционально числу пользователей.
+     */
+    private Map<String, BloomFilter> createFilters(Map<String, Long> usersByType) {
+        long requiredBits = 0;
+        for (long users : usersByType.values()) {
+            requiredBits += BloomFilter.optimalBitSize(Math.max(1, users), falsePositiveRate);
+        }
+        long budgetBits = maxMemoryBytes * 8;
+        double scale = requiredBits > budgetBits ? (double) budgetBits / requiredBits : 1.0;
+        if (scale < 1.0) {
+            log.warn("Фильтрам Блума не хватает памяти: нужно {} байт, доступно {}; доля ложных срабатываний будет выше {}",
+                    requiredBits / 8, maxMemoryBytes, falsePositiveRate);
+        }
+
+        Map<String, BloomFilter> built = new HashMap<>();
+        usersByType.forEach((type, users) -> {
+            long maxBits = (long) (BloomFilter.optimalBitSize(Math.max(1, users), falsePositiveRate) * scale);
+            built.put(type, BloomFilter.create(users, falsePositiveRate, maxBits));
+        });
+        return built;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Filters current = filters;
+        stats.put("ready", current != null);
+        stats.put("definiteNegatives", definiteNegatives.sum());
+        if (current != null) {
+            stats.put("ageMs", System.currentTimeMillis() - current.builtAt());
+            long bytes = 0;
+            for (Map.Entry<String, BloomFilter> entry : current.byType().entrySet()) {
+                BloomFilter filter = entry.getValue();
+                bytes += filter.bitSize() / 8;
+                stats.put(entry.getKey(), Map.of(
+                        "users", filter.insertions(),
+                        "hashes", filter.hashCount(),
+                        "falsePositiveRate", filter.expectedFalsePositiveRate()));
+            }
+            stats.put("sizeInBytes", bytes);
+        }
+        return stats;
+    }
+
+    /**
+     * Опубликованные фильтры и время начала чтения данных, по которым они построены.
+     */
+    private record Filters(Map<String, BloomFilter> byType, long builtAt) {
+    }
+}
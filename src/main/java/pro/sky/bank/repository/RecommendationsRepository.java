@@ -5,30 +5,51 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
+import pro.sky.bank.engine.UserFactColumns;
+import pro.sky.bank.monitoring.LatencyMonitor;
+import pro.sky.bank.util.Money;
 
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 @Repository
 public class RecommendationsRepository {
     private final JdbcTemplate jdbcTemplate;
+    private final ProductUsageFilter productUsageFilter;
+    private final BankUserDirectory userDirectory;
+    private final LatencyMonitor latencyMonitor;
+    private final UserFactStore factStore;
     private static final Logger log = LoggerFactory.getLogger(RecommendationsRepository.class);
+    private static final int USER_ID_FETCH_SIZE = 1000;
 
     // Кэши для запросов
     private final Cache<String, Boolean> userOfCache;
     private final Cache<String, Boolean> activeUserOfCache;
-    private final Cache<String, BigDecimal> transactionSumCache;
+    private final Cache<String, Long> transactionSumCache;
     private final Cache<String, Integer> transactionCountCache;
 
 
 
-    public RecommendationsRepository(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
-        log.info("✅ Подключение к БД: успешно");
-        showAllTables();
+    public RecommendationsRepository(JdbcTemplate jdbcTemplate, ProductUsageFilter productUsageFilter,
+                                     BankUserDirectory userDirectory, LatencyMonitor latencyMonitor,
+                                     SlowQueryLog slowQueryLog, UserFactStore factStore) {
+        // Запросы репозитория идут через обертку, которая записывает медленные запросы с планами
+        this.jdbcTemplate = new SlowQueryJdbcTemplate(jdbcTemplate.getDataSource(), slowQueryLog);
+        this.productUsageFilter = productUsageFilter;
+        this.userDirectory = userDirectory;
+        this.latencyMonitor = latencyMonitor;
+        this.factStore = factStore;
 
         this.userOfCache = Caffeine.newBuilder()
                 .maximumSize(1000)
@@ -55,7 +76,18 @@ public class RecommendationsRepository {
                 .build();
 
         log.info("RecommendationsRepository инициализирован с кэшированием");
-        testConnection();
+    }
+
+    /**
+     * Выполняет вызов и записывает его время в {@link LatencyMonitor} под именем метода репозитория.
+     */
+    private <T> T timed(String name, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            latencyMonitor.record(LatencyMonitor.Category.REPOSITORY, name, start);
+        }
     }
 
     public int getRandomTransactionAmount(UUID user) {
@@ -67,205 +99,377 @@ public class RecommendationsRepository {
     }
 
     public boolean hasProductType(UUID userId, String productType) {
-        String cacheKey = userId.toString() + ":" + productType;
-
-        return userOfCache.get(cacheKey, key -> {
-            try {
-                String sql = """
-                    SELECT COUNT(*) > 0 
-                    FROM transactions t
-                    JOIN products p ON t.product_id = p.id
-                    WHERE t.user_id = ? AND p.type = ?
-                    """;
-                Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class, userId.toString(), productType);
-                return result != null && result;
-            } catch (Exception e) {
-                log.error("Ошибка в hasProductType: {}", e.getMessage());
+        return timed("hasProductType", () -> {
+            if (!productUsageFilter.mightUse(userId, productType)) {
                 return false;
             }
+            String cacheKey = userId.toString() + ":" + productType;
+
+            return userOfCache.get(cacheKey, key -> {
+                long stored = storedTransactionCount(userId, productType);
+                if (stored != UserFactStore.UNKNOWN) {
+                    return stored > 0;
+                }
+                try {
+                    String sql = """
+                        SELECT COUNT(*) > 0 
+                        FROM transactions t
+                        JOIN products p ON t.product_id = p.id
+                        WHERE t.user_id = ? AND p.type = ?
+                        """;
+                    Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class, userId.toString(), productType);
+                    return result != null && result;
+                } catch (Exception e) {
+                    log.error("Ошибка в hasProductType: {}", e.getMessage());
+                    return false;
+                }
+            });
         });
     }
 
     // Новый метод для ACTIVE_USER_OF запроса (5+ транзакций)
     public boolean isActiveUserOfProductType(UUID userId, String productType) {
-        String cacheKey = userId.toString() + ":" + productType + ":active";
-
-        return activeUserOfCache.get(cacheKey, key -> {
-            try {
-                String sql = """
-                    SELECT COUNT(*) >= 5
-                    FROM transactions t
-                    JOIN products p ON t.product_id = p.id
-                    WHERE t.user_id = ? AND p.type = ?
-                    """;
-                Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class, userId.toString(), productType);
-                return result != null && result;
-            } catch (Exception e) {
-                log.error("Ошибка в isActiveUserOfProductType: {}", e.getMessage());
+        return timed("isActiveUserOfProductType", () -> {
+            if (!productUsageFilter.mightUse(userId, productType)) {
                 return false;
             }
+            String cacheKey = userId.toString() + ":" + productType + ":active";
+
+            return activeUserOfCache.get(cacheKey, key -> {
+                long stored = storedTransactionCount(userId, productType);
+                if (stored != UserFactStore.UNKNOWN) {
+                    return stored >= 5;
+                }
+                try {
+                    String sql = """
+                        SELECT COUNT(*) >= 5
+                        FROM transactions t
+                        JOIN products p ON t.product_id = p.id
+                        WHERE t.user_id = ? AND p.type = ?
+                        """;
+                    Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class, userId.toString(), productType);
+                    return result != null && result;
+                } catch (Exception e) {
+                    log.error("Ошибка в isActiveUserOfProductType: {}", e.getMessage());
+                    return false;
+                }
+            });
         });
     }
 
     // Новый метод для получения количества транзакций по типу продукта
     public int getTransactionCountByProductType(UUID userId, String productType) {
-        String cacheKey = userId.toString() + ":" + productType + ":count";
-
-        return transactionCountCache.get(cacheKey, key -> {
-            try {
-                String sql = """
-                    SELECT COUNT(*)
-                    FROM transactions t
-                    JOIN products p ON t.product_id = p.id
-                    WHERE t.user_id = ? AND p.type = ?
-                    """;
-                Integer result = jdbcTemplate.queryForObject(sql, Integer.class, userId.toString(), productType);
-                return result != null ? result : 0;
-            } catch (Exception e) {
-                log.error("Ошибка в getTransactionCountByProductType: {}", e.getMessage());
+        return timed("getTransactionCountByProductType", () -> {
+            if (!productUsageFilter.mightUse(userId, productType)) {
                 return 0;
             }
+            String cacheKey = userId.toString() + ":" + productType + ":count";
+
+            return transactionCountCache.get(cacheKey, key -> {
+                long stored = storedTransactionCount(userId, productType);
+                if (stored != UserFactStore.UNKNOWN) {
+                    return (int) stored;
+                }
+                try {
+                    String sql = """
+                        SELECT COUNT(*)
+                        FROM transactions t
+                        JOIN products p ON t.product_id = p.id
+                        WHERE t.user_id = ? AND p.type = ?
+                        """;
+                    Integer result = jdbcTemplate.queryForObject(sql, Integer.class, userId.toString(), productType);
+                    return result != null ? result : 0;
+                } catch (Exception e) {
+                    log.error("Ошибка в getTransactionCountByProductType: {}", e.getMessage());
+                    return 0;
+                }
+            });
         });
     }
 
-    public BigDecimal getTotalDepositsByProductType(UUID userId, String productType) {
+    /**
+     * @return сумма пополнений по продуктам типа в копейках.
+     */
+    public long getTotalDepositsByProductType(UUID userId, String productType) {
         return getTransactionSumByProductTypeAndTransactionType(userId, productType, "DEPOSIT");
     }
 
-    public BigDecimal getTotalExpensesByProductType(UUID userId, String productType) {
+    /**
+     * @return сумма трат по продуктам типа в копейках.
+     */
+    public long getTotalExpensesByProductType(UUID userId, String productType) {
         return getTransactionSumByProductTypeAndTransactionType(userId, productType, "EXPENSE");
     }
 
-    // Обновленный метод с кэшированием
-    public BigDecimal getTransactionSumByProductTypeAndTransactionType(
+    /**
+     * Сумма транзакций в копейках ({@link Money}). Сумма из базы переводится в копейки один раз
+     * при загрузке.
+     *
+     * @throws ArithmeticException если сумма не помещается в {@code long}; такое значение не кэшируется.
+     */
+    public long getTransactionSumByProductTypeAndTransactionType(
             UUID userId, String productType, String transactionType) {
-        String cacheKey = userId.toString() + ":" + productType + ":" + transactionType;
-
-        return transactionSumCache.get(cacheKey, key -> {
-            try {
-                String sql = """
-                    SELECT COALESCE(SUM(t.amount), 0)
-                    FROM transactions t
-                    JOIN products p ON t.product_id = p.id
-                    WHERE t.user_id = ? 
-                      AND p.type = ? 
-                      AND t.type = ?
-                    """;
-                BigDecimal result = jdbcTemplate.queryForObject(sql, BigDecimal.class,
-                        userId.toString(), productType, transactionType);
-                return result != null ? result : BigDecimal.ZERO;
-            } catch (Exception e) {
-                log.error("Ошибка в getTransactionSumByProductTypeAndTransactionType: {}", e.getMessage());
-                return BigDecimal.ZERO;
+        return timed("getTransactionSumByProductTypeAndTransactionType", () -> {
+            if (!productUsageFilter.mightUse(userId, productType)) {
+                return 0L;
             }
+            String cacheKey = userId.toString() + ":" + productType + ":" + transactionType;
+
+            return transactionSumCache.get(cacheKey, key -> {
+                long stored = factStore.transactionSum(userId, productType, transactionType, this::loadUserFacts);
+                if (stored != UserFactStore.UNKNOWN) {
+                    return stored;
+                }
+                BigDecimal result;
+                try {
+                    String sql = """
+                        SELECT COALESCE(SUM(t.amount), 0)
+                        FROM transactions t
+                        JOIN products p ON t.product_id = p.id
+                        WHERE t.user_id = ? 
+                          AND p.type = ? 
+                          AND t.type = ?
+                        """;
+                    result = jdbcTemplate.queryForObject(sql, BigDecimal.class,
+                            userId.toString(), productType, transactionType);
+                } catch (Exception e) {
+                    log.error("Ошибка в getTransactionSumByProductTypeAndTransactionType: {}", e.getMessage());
+                    return 0L;
+                }
+                // Переполнение выходит из загрузчика исключением, поэтому в кэш не попадает
+                return result != null ? Money.toMinorUnits(result) : 0L;
+            });
         });
     }
 
     public BigDecimal getTotalAmountByProductTypeAndTransactionType(UUID userId, String productType, String transactionType) {
-        return getTransactionSumByProductTypeAndTransactionType(userId, productType, transactionType);
+        return Money.toBigDecimal(getTransactionSumByProductTypeAndTransactionType(userId, productType, transactionType));
     }
 
-    public boolean hasProduct(UUID userId, UUID productId) {
-        try {
+    private long storedTransactionCount(UUID userId, String productType) {
+        return factStore.transactionCount(userId, productType, this::loadUserFacts);
+    }
+
+    /**
+     * Загружает все агрегаты одного пользователя для {@link UserFactStore}.
+     */
+    private UserFactColumns loadUserFacts(UUID userId) {
+        return loadFactColumns(List.of(userId));
+    }
+
+    /**
+     * Загружает факты о пачке пользователей в колоночном виде одним агрегирующим запросом:
+     * количество и сумма транзакций по каждой паре (тип продукта, тип транзакции).
+     * Кэши по отдельным пользователям не используются и не заполняются.
+     *
+     * @param userIds пользователи пачки; порядок задаёт индексы в колонках, повторы допускаются.
+     */
+    public UserFactColumns loadFactColumns(List<UUID> userIds) {
+        return timed("loadFactColumns", () -> {
+            UserFactColumns columns = new UserFactColumns(userIds);
+            if (userIds.isEmpty()) {
+                return columns;
+            }
+
+            // Пользователь может встречаться в пачке несколько раз: факты копируются во все его позиции
+            Map<UUID, int[]> indexes = new HashMap<>(userIds.size() * 2);
+            for (int i = 0; i < userIds.size(); i++) {
+                int[] positions = indexes.get(userIds.get(i));
+                if (positions == null) {
+                    indexes.put(userIds.get(i), new int[]{i});
+                } else {
+                    int[] extended = Arrays.copyOf(positions, positions.length + 1);
+                    extended[positions.length] = i;
+                    indexes.put(userIds.get(i), extended);
+                }
+            }
+
             String sql = """
-                SELECT COUNT(*) > 0 
+                SELECT t.user_id, p.type AS product_type, t.type AS transaction_type,
+                       COUNT(*) AS cnt, COALESCE(SUM(t.amount), 0) AS total
                 FROM transactions t
-                WHERE t.user_id = ? AND t.product_id = ?
-                """;
-            Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class,
-                    userId.toString(), productId.toString());
-            return result != null && result;
-        } catch (Exception e) {
-            log.error("Ошибка в hasProduct: {}", e.getMessage());
-            return false;
-        }
+                JOIN products p ON t.product_id = p.id
+                WHERE t.user_id IN (%s)
+                GROUP BY t.user_id, p.type, t.type
+                """.formatted(String.join(", ", Collections.nCopies(indexes.size(), "?")));
+
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                String userId = rs.getString("user_id");
+                int[] positions = indexes.get(UUID.fromString(userId));
+                if (positions == null) {
+                    return;
+                }
+                String productType = rs.getString("product_type");
+                String transactionType = rs.getString("transaction_type");
+                int count = rs.getInt("cnt");
+                BigDecimal total = rs.getBigDecimal("total");
+                boolean representable = true;
+                for (int index : positions) {
+                    representable &= columns.add(index, productType, transactionType, count, total);
+                }
+                if (!representable) {
+                    log.error("Ошибка в loadFactColumns: сумма {} {} пользователя {} не помещается в long",
+                            productType, transactionType, userId);
+                }
+            }, indexes.keySet().stream().map(UUID::toString).toArray());
+
+            return columns;
+        });
     }
 
-    public BigDecimal getTotalDeposits(UUID userId) {
-        try {
-            String sql = """
-                SELECT COALESCE(SUM(amount), 0)
-                FROM transactions
-                WHERE user_id = ? AND type = 'DEPOSIT'
-                """;
-            BigDecimal result = jdbcTemplate.queryForObject(sql, BigDecimal.class, userId.toString());
-            return result != null ? result : BigDecimal.ZERO;
-        } catch (Exception e) {
-            log.error("Ошибка в getTotalDeposits: {}", e.getMessage());
-            return BigDecimal.ZERO;
-        }
+    /**
+     * Страница идентификаторов пользователей в порядке возрастания (keyset-пагинация).
+     *
+     * @param afterId последний идентификатор предыдущей страницы или {@code null} для первой страницы.
+     */
+    public List<UUID> findUserIdsAfter(UUID afterId, int limit) {
+        return timed("findUserIdsAfter", () -> {
+            if (afterId == null) {
+                return jdbcTemplate.query("SELECT id FROM users ORDER BY id LIMIT ?",
+                        (rs, rowNum) -> UUID.fromString(rs.getString("id")), limit);
+            }
+            return jdbcTemplate.query("SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> UUID.fromString(rs.getString("id")), afterId.toString(), limit);
+        });
     }
 
-    public BigDecimal getTotalExpenses(UUID userId) {
-        try {
-            String sql = """
-                SELECT COALESCE(SUM(amount), 0)
-                FROM transactions
-                WHERE user_id = ? AND type = 'EXPENSE'
-                """;
-            BigDecimal result = jdbcTemplate.queryForObject(sql, BigDecimal.class, userId.toString());
-            return result != null ? result : BigDecimal.ZERO;
-        } catch (Exception e) {
-            log.error("Ошибка в getTotalExpenses: {}", e.getMessage());
-            return BigDecimal.ZERO;
-        }
+    /**
+     * Последовательно передает идентификаторы всех пользователей в {@code consumer}, не загружая их в память.
+     *
+     * @param consumer обработчик; вернув {@code false}, прекращает обход.
+     * @return {@code true}, если обойдены все пользователи.
+     */
+    public boolean forEachUserId(Predicate<UUID> consumer) {
+        Boolean completed = jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT id FROM users");
+            statement.setFetchSize(USER_ID_FETCH_SIZE);
+            return statement;
+        }, rs -> {
+            while (rs.next()) {
+                if (!consumer.test(UUID.fromString(rs.getString("id")))) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(completed);
+    }
+
+    public boolean hasProduct(UUID userId, UUID productId) {
+        return timed("hasProduct", () -> {
+            try {
+                String sql = """
+                    SELECT COUNT(*) > 0 
+                    FROM transactions t
+                    WHERE t.user_id = ? AND t.product_id = ?
+                    """;
+                Boolean result = jdbcTemplate.queryForObject(sql, Boolean.class,
+                        userId.toString(), productId.toString());
+                return result != null && result;
+            } catch (Exception e) {
+                log.error("Ошибка в hasProduct: {}", e.getMessage());
+                return false;
+            }
+        });
+    }
+
+    /**
+     * @return сумма по всем продуктам в копейках.
+     */
+    public long getTotalDeposits(UUID userId) {
+        return timed("getTotalDeposits", () -> {
+            try {
+                String sql = """
+                    SELECT COALESCE(SUM(amount), 0)
+                    FROM transactions
+                    WHERE user_id = ? AND type = 'DEPOSIT'
+                    """;
+                BigDecimal result = jdbcTemplate.queryForObject(sql, BigDecimal.class, userId.toString());
+                return result != null ? Money.toMinorUnits(result) : 0L;
+            } catch (Exception e) {
+                log.error("Ошибка в getTotalDeposits: {}", e.getMessage());
+                return 0L;
+            }
+        });
+    }
+
+    /**
+     * @return сумма по всем продуктам в копейках.
+     */
+    public long getTotalExpenses(UUID userId) {
+        return timed("getTotalExpenses", () -> {
+            try {
+                String sql = """
+                    SELECT COALESCE(SUM(amount), 0)
+                    FROM transactions
+                    WHERE user_id = ? AND type = 'EXPENSE'
+                    """;
+                BigDecimal result = jdbcTemplate.queryForObject(sql, BigDecimal.class, userId.toString());
+                return result != null ? Money.toMinorUnits(result) : 0L;
+            } catch (Exception e) {
+                log.error("Ошибка в getTotalExpenses: {}", e.getMessage());
+                return 0L;
+            }
+        });
     }
 
     public int getDistinctProductCount(UUID userId) {
-        try {
-            String sql = """
-                SELECT COUNT(DISTINCT product_id)
-                FROM transactions
-                WHERE user_id = ?
-                """;
-            Integer result = jdbcTemplate.queryForObject(sql, Integer.class, userId.toString());
-            return result != null ? result : 0;
-        } catch (Exception e) {
-            log.error("Ошибка в getDistinctProductCount: {}", e.getMessage());
-            return 0;
-        }
+        return timed("getDistinctProductCount", () -> {
+            try {
+                String sql = """
+                    SELECT COUNT(DISTINCT product_id)
+                    FROM transactions
+                    WHERE user_id = ?
+                    """;
+                Integer result = jdbcTemplate.queryForObject(sql, Integer.class, userId.toString());
+                return result != null ? result : 0;
+            } catch (Exception e) {
+                log.error("Ошибка в getDistinctProductCount: {}", e.getMessage());
+                return 0;
+            }
+        });
     }
 
     public List<UUID> getUserProductIds(UUID userId) {
-        try {
-            String sql = """
-                SELECT DISTINCT product_id
-                FROM transactions
-                WHERE user_id = ?
-                """;
-            return jdbcTemplate.query(sql,
-                    (rs, rowNum) -> UUID.fromString(rs.getString("product_id")),
-                    userId.toString());
-        } catch (Exception e) {
-            log.error("Ошибка в getUserProductIds: {}", e.getMessage());
-            return List.of();
-        }
+        return timed("getUserProductIds", () -> {
+            try {
+                String sql = """
+                    SELECT DISTINCT product_id
+                    FROM transactions
+                    WHERE user_id = ?
+                    """;
+                return jdbcTemplate.query(sql,
+                        (rs, rowNum) -> UUID.fromString(rs.getString("product_id")),
+                        userId.toString());
+            } catch (Exception e) {
+                log.error("Ошибка в getUserProductIds: {}", e.getMessage());
+                return List.of();
+            }
+        });
     }
 
     public String getProductType(UUID productId) {
-        try {
-            String sql = "SELECT type FROM products WHERE id = ?";
-            return jdbcTemplate.queryForObject(sql, String.class, productId.toString());
-        } catch (Exception e) {
-            log.error("Ошибка в getProductType: {}", e.getMessage());
-            return null;
-        }
+        return timed("getProductType", () -> {
+            try {
+                String sql = "SELECT type FROM products WHERE id = ?";
+                return jdbcTemplate.queryForObject(sql, String.class, productId.toString());
+            } catch (Exception e) {
+                log.error("Ошибка в getProductType: {}", e.getMessage());
+                return null;
+            }
+        });
     }
 
     public boolean isTotalDepositsExceeds(UUID userId, String productType, BigDecimal threshold) {
-        BigDecimal total = getTotalDepositsByProductType(userId, productType);
-        return total.compareTo(threshold) > 0;
+        return getTotalDepositsByProductType(userId, productType) > Money.toMinorUnits(threshold);
     }
 
     public boolean isTotalExpensesExceeds(UUID userId, String productType, BigDecimal threshold) {
-        BigDecimal total = getTotalExpensesByProductType(userId, productType);
-        return total.compareTo(threshold) > 0;
+        return getTotalExpensesByProductType(userId, productType) > Money.toMinorUnits(threshold);
     }
 
     public boolean isDepositsGreaterThanExpenses(UUID userId, String productType) {
-        BigDecimal deposits = getTotalDepositsByProductType(userId, productType);
-        BigDecimal expenses = getTotalExpensesByProductType(userId, productType);
-        return deposits.compareTo(expenses) > 0;
+        return getTotalDepositsByProductType(userId, productType) > getTotalExpensesByProductType(userId, productType);
     }
 
     // Метод для проверки подключения
@@ -273,28 +477,11 @@ public class RecommendationsRepository {
         try {
             Integer result = jdbcTemplate.queryForObject("SELECT 1", Integer.class);
             log.info("✅ Тест подключения к БД: успешно (результат: {})", result);
-
-            // Проверяем таблицы
-            checkTables();
-
         } catch (Exception e) {
             log.error("❌ Тест подключения к БД: ошибка - {}", e.getMessage());
         }
     }
 
-    private void checkTables() {
-        String[] tables = {"USERS", "products", "transactions"};
-        for (String table : tables) {
-            try {
-                Long count = jdbcTemplate.queryForObject(
-                        "SELECT COUNT(*) FROM " + table, Long.class);
-                log.info("📊 Таблица {}: {} записей", table, count);
-            } catch (Exception e) {
-                log.warn("⚠️ Таблица {}: не найдена - {}", table, e.getMessage());
-            }
-        }
-    }
-
     // Метод для сброса кэша для конкретного пользователя
     public void clearCacheForUser(UUID userId) {
         String userIdStr = userId.toString();
@@ -303,6 +490,7 @@ public class RecommendationsRepository {
         activeUserOfCache.asMap().keySet().removeIf(key -> key.startsWith(userIdStr + ":"));
         transactionSumCache.asMap().keySet().removeIf(key -> key.startsWith(userIdStr + ":"));
         transactionCountCache.asMap().keySet().removeIf(key -> key.startsWith(userIdStr + ":"));
+        factStore.invalidate(userId);
 
         log.debug("Кэш очищен для пользователя: {}", userId);
     }
@@ -335,10 +523,17 @@ public class RecommendationsRepository {
         activeUserOfCache.invalidateAll();
         transactionSumCache.invalidateAll();
         transactionCountCache.invalidateAll();
+        factStore.clear();
+        productUsageFilter.invalidate();
+        userDirectory.reload();
         log.info("Все кэши очищены");
     }
 
-    private void showAllTables() {
+    /**
+     * Выводит в лог все таблицы базы и их колонки. Вызывается из
+     * {@link pro.sky.bank.configuration.DatabaseChecker}, если стартовая диагностика включена.
+     */
+    public void showAllTables() {
         try {
             log.info("=== ALL TABLES IN DATABASE ===");
 
@@ -0,0 +1,126 @@
+package pro.sky.bank.repository;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import pro.sky.bank.model.entity.DynamicRule;
+import pro.sky.bank.model.entity.RuleQueryEntity;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пакетная запись каталога правил напрямую через JDBC.
+ * <p>
+ * Hibernate не группирует INSERT для сущностей с {@code GenerationType.IDENTITY},
+ * поэтому массовая загрузка правил выполняется здесь пакетами по {@code application.rules.batch-size}
+ * строк, а удаление — одним set-based запросом вместо загрузки и удаления каждой сущности.
+ * Методы должны вызываться внутри транзакции {@code rulesTransactionManager}.
+ * </p>
+ */
+@Repository
+public class RuleBatchRepository {
+
+    private static final String INSERT_RULE_SQL =
+            "INSERT INTO dynamic_rules (product_name, product_id, product_text) VALUES (?, ?, ?)";
+
+    private static final String INSERT_QUERY_SQL =
+            "INSERT INTO rule_queries (rule_id, query_type, arguments, negate) VALUES (?, ?, ?, ?)";
+
+    private static final String UPSERT_STATISTIC_SQL = """
+            MERGE INTO rule_statistics s
+            USING (SELECT CAST(? AS VARCHAR(255)) AS product_id, CAST(? AS VARCHAR(255)) AS product_name) v
+            ON s.product_id = v.product_id
+            WHEN MATCHED THEN UPDATE SET product_name = v.product_name, is_active = TRUE,
+                updated_at = CURRENT_TIMESTAMP
+            WHEN NOT MATCHED THEN INSERT (product_id, product_name, trigger_count, created_at, updated_at, is_active)
+                VALUES (v.product_id, v.product_name, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, TRUE)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public RuleBatchRepository(@Qualifier("rulesJdbcTemplate") JdbcTemplate jdbcTemplate,
+                               @Value("${application.rules.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Вставляет правила пакетами и проставляет каждому правилу сгенерированный id.
+     *
+     * @param rules новые правила без id.
+     */
+    public void insertRules(List<DynamicRule> rules) {
+        for (int from = 0; from < rules.size(); from += batchSize) {
+            List<DynamicRule> chunk = rules.subList(from, Math.min(from + batchSize, rules.size()));
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+
+            jdbcTemplate.batchUpdate(
+                    con -> con.prepareStatement(INSERT_RULE_SQL, Statement.RETURN_GENERATED_KEYS),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            DynamicRule rule = chunk.get(i);
+                            ps.setString(1, rule.getProductName());
+                            ps.setString(2, rule.getProductId());
+                            ps.setString(3, rule.getProductText());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return chunk.size();
+                        }
+                    },
+                    keyHolder);
+
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).setId(((Number) keys.get(i).get("id")).longValue());
+            }
+        }
+    }
+
+    /**
+     * Вставляет запросы правил пакетами. У каждого запроса должно быть заполнено правило с id.
+     *
+     * @param queries запросы правил.
+     */
+    public void insertQueries(List<RuleQueryEntity> queries) {
+        jdbcTemplate.batchUpdate(INSERT_QUERY_SQL, queries, batchSize, (ps, query) -> {
+            ps.setLong(1, query.getRule().getId());
+            ps.setString(2, query.getQueryType());
+            ps.setString(3, query.getArguments());
+            ps.setBoolean(4, query.getNegate());
+        });
+    }
+
+    /**
+     * Создает или повторно активирует записи статистики для правил, не сбрасывая накопленные счетчики.
+     *
+     * @param rules правила, для которых нужна статистика.
+     */
+    public void upsertStatistics(List<DynamicRule> rules) {
+        jdbcTemplate.batchUpdate(UPSERT_STATISTIC_SQL, rules, batchSize, (ps, rule) -> {
+            ps.setString(1, rule.getProductId());
+            ps.setString(2, rule.getProductName());
+        });
+    }
+
+    /**
+     * Удаляет все правила и их запросы двумя set-based запросами.
+     *
+     * @return количество удаленных правил.
+     */
+    public int deleteAllRules() {
+        jdbcTemplate.update("DELETE FROM rule_queries");
+        return jdbcTemplate.update("DELETE FROM dynamic_rules");
+    }
+}
@@ -0,0 +1,26 @@
+package pro.sky.bank.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import pro.sky.bank.model.entity.RuleCatalogChange;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface RuleCatalogChangeRepository extends JpaRepository<RuleCatalogChange, Long> {
+
+    // Дочитывание ленты после отметки (запрос по первичному ключу)
+    List<RuleCatalogChange> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query("SELECT COALESCE(MAX(c.id), 0) FROM RuleCatalogChange c")
+    long findMaxId();
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM RuleCatalogChange c WHERE c.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
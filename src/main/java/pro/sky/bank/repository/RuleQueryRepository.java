@@ -1,5 +1,8 @@
 package pro.sky.bank.repository;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import pro.sky.bank.model.entity.DynamicRule;
 import pro.sky.bank.model.entity.RuleQueryEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -7,5 +10,9 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.UUID;
 
 public interface RuleQueryRepository extends JpaRepository<RuleQueryEntity, UUID> {
-    void deleteByRule(DynamicRule rule);
-}
\ No newline at end of file
+
+    // Один DELETE вместо загрузки и удаления каждого запроса по отдельности
+    @Modifying
+    @Query("DELETE FROM RuleQueryEntity q WHERE q.rule = :rule")
+    void deleteByRule(@Param("rule") DynamicRule rule);
+}
@@ -0,0 +1,89 @@
+package pro.sky.bank.repository;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import pro.sky.bank.model.entity.RuleReachSketch;
+import pro.sky.bank.util.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Хранение скетчей охвата правил ({@link RuleReachSketch}) через JDBC.
+ * <p>
+ * Запись сливает скетч с уже сохраненным под блокировкой строки, поэтому несколько узлов
+ * могут писать скетчи одного правила и периода, не теряя значений друг друга.
+ * </p>
+ */
+@Repository
+public class RuleReachSketchRepository {
+
+    /**
+     * Период скетча за все время.
+     */
+    public static final String ALL_TIME = "ALL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RuleReachSketchRepository(@Qualifier("rulesJdbcTemplate") JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return объединение сохраненных скетчей правила за указанные периоды (пустой скетч, если их нет).
+     */
+    public HyperLogLog findMerged(String productId, List<String> periods) {
+        HyperLogLog merged = new HyperLogLog();
+        if (periods.isEmpty()) {
+            return merged;
+        }
+        String sql = "SELECT registers FROM rule_reach_sketches WHERE product_id = ? AND period IN (%s)"
+                .formatted(String.join(", ", Collections.nCopies(periods.size(), "?")));
+        Object[] args = new Object[periods.size() + 1];
+        args[0] = productId;
+        for (int i = 0; i < periods.size(); i++) {
+            args[i + 1] = periods.get(i);
+        }
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs ->
+                merged.merge(HyperLogLog.fromBytes(rs.getBytes("registers"))), args);
+        return merged;
+    }
+
+    /**
+     * Сливает {@code sketch} с сохраненным скетчем периода и сохраняет результат.
+     *
+     * @return сохраненный объединенный скетч.
+     */
+    @Transactional
+    public HyperLogLog mergeAndSave(String productId, String period, HyperLogLog sketch) {
+        HyperLogLog merged = new HyperLogLog();
+        merged.merge(sketch);
+        List<byte[]> stored = jdbcTemplate.query(
+                "SELECT registers FROM rule_reach_sketches WHERE product_id = ? AND period = ? FOR UPDATE",
+                (rs, rowNum) -> rs.getBytes("registers"), productId, period);
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (stored.isEmpty()) {
+            jdbcTemplate.update("INSERT INTO rule_reach_sketches (product_id, period, registers, updated_at) "
+                    + "VALUES (?, ?, ?, ?)", productId, period, merged.toBytes(), now);
+        } else {
+            merged.merge(HyperLogLog.fromBytes(stored.get(0)));
+            jdbcTemplate.update("UPDATE rule_reach_sketches SET registers = ?, updated_at = ? "
+                    + "WHERE product_id = ? AND period = ?", merged.toBytes(), now, productId, period);
+        }
+        return merged;
+    }
+
+    /**
+     * Удаляет суточные скетчи за даты раньше {@code beforePeriod} ({@code yyyy-MM-dd}).
+     */
+    public int deleteDailyBefore(String beforePeriod) {
+        return jdbcTemplate.update("DELETE FROM rule_reach_sketches WHERE period <> ? AND period < ?",
+                ALL_TIME, beforePeriod);
+    }
+}
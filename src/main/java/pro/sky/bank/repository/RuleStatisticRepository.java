@@ -24,6 +24,10 @@ public interface RuleStatisticRepository extends JpaRepository<RuleStatistic, Lo
     @Query("UPDATE RuleStatistic rs SET rs.isActive = false WHERE rs.productId = :productId")
     void deactivateByProductId(@Param("productId") String productId);
 
+    @Modifying
+    @Query("UPDATE RuleStatistic rs SET rs.isActive = false WHERE rs.isActive = true")
+    int deactivateAll();
+
     @Modifying
     @Query("UPDATE RuleStatistic rs SET rs.triggerCount = rs.triggerCount + 1, " +
             "rs.lastTriggered = :triggerTime, rs.updatedAt = :triggerTime " +
@@ -31,6 +35,14 @@ public interface RuleStatisticRepository extends JpaRepository<RuleStatistic, Lo
     void incrementTriggerCount(@Param("productId") String productId,
                                @Param("triggerTime") LocalDateTime triggerTime);
 
+    @Modifying
+    @Query("UPDATE RuleStatistic rs SET rs.triggerCount = rs.triggerCount + :delta, " +
+            "rs.lastTriggered = :triggerTime, rs.updatedAt = :triggerTime " +
+            "WHERE rs.productId = :productId")
+    void addTriggerCount(@Param("productId") String productId,
+                         @Param("delta") long delta,
+                         @Param("triggerTime") LocalDateTime triggerTime);
+
     @Query("SELECT rs FROM RuleStatistic rs ORDER BY rs.triggerCount DESC")
     List<RuleStatistic> findAllOrderByTriggerCountDesc();
 
@@ -0,0 +1,78 @@
+package pro.sky.bank.repository;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import pro.sky.bank.model.entity.RuleTriggerBucket;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Пакетная запись и чтение почасовых и посуточных счетчиков срабатываний правил
+ * ({@link RuleTriggerBucket}) напрямую через JDBC.
+ */
+@Repository
+public class RuleTriggerBucketRepository {
+
+    private static final String ADD_SQL = """
+            MERGE INTO rule_trigger_buckets b
+            USING (SELECT CAST(? AS VARCHAR(255)) AS product_id, CAST(? AS VARCHAR(16)) AS granularity,
+                          CAST(? AS TIMESTAMP) AS bucket_start, CAST(? AS BIGINT) AS delta) v
+            ON b.product_id = v.product_id AND b.granularity = v.granularity AND b.bucket_start = v.bucket_start
+            WHEN MATCHED THEN UPDATE SET trigger_count = b.trigger_count + v.delta
+            WHEN NOT MATCHED THEN INSERT (product_id, granularity, bucket_start, trigger_count)
+                VALUES (v.product_id, v.granularity, v.bucket_start, v.delta)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RuleTriggerBucketRepository(@Qualifier("rulesJdbcTemplate") JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Прибавляет приращения к счетчикам интервалов одним пакетом; отсутствующие интервалы создаются.
+     * Повторное применение пакета удваивает счетчики, поэтому вызывается в транзакции.
+     */
+    public void addAll(List<Increment> increments) {
+        jdbcTemplate.batchUpdate(ADD_SQL, increments, increments.size(), (ps, increment) -> {
+            ps.setString(1, increment.productId());
+            ps.setString(2, increment.granularity().name());
+            ps.setTimestamp(3, Timestamp.valueOf(increment.bucketStart()));
+            ps.setLong(4, increment.delta());
+        });
+    }
+
+    /**
+     * @return начало интервала -> число срабатываний для интервалов из {@code [from, to)}.
+     */
+    public Map<LocalDateTime, Long> findCounts(String productId, RuleTriggerBucket.Granularity granularity,
+                                               LocalDateTime from, LocalDateTime to) {
+        Map<LocalDateTime, Long> counts = new HashMap<>();
+        jdbcTemplate.query("""
+                        SELECT bucket_start, trigger_count FROM rule_trigger_buckets
+                        WHERE product_id = ? AND granularity = ? AND bucket_start >= ? AND bucket_start < ?
+                        """,
+                (RowCallbackHandler) rs -> counts.put(rs.getTimestamp("bucket_start").toLocalDateTime(),
+                        rs.getLong("trigger_count")),
+                productId, granularity.name(), Timestamp.valueOf(from), Timestamp.valueOf(to));
+        return counts;
+    }
+
+    /**
+     * Удаляет интервалы указанного размера, начавшиеся раньше {@code before}.
+     */
+    public int deleteOlderThan(RuleTriggerBucket.Granularity granularity, LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM rule_trigger_buckets WHERE granularity = ? AND bucket_start < ?",
+                granularity.name(), Timestamp.valueOf(before));
+    }
+
+    public record Increment(String productId, RuleTriggerBucket.Granularity granularity,
+                            LocalDateTime bucketStart, long delta) {
+    }
+}
@@ -0,0 +1,148 @@
+package pro.sky.bank.repository;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlProvider;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * {@link JdbcTemplate}, который передает запросы дольше порога в {@link SlowQueryLog}.
+ * <p>
+ * Перехватываются обе точки, через которые проходят все запросы на чтение: с подготовленным
+ * запросом и с обычным {@code Statement}. Для быстрых запросов накладные расходы — два вызова
+ * {@link System#nanoTime()}. Число строк известно для результатов-коллекций и обработчиков
+ * {@link RowCallbackHandler}; план снимается отдельным {@link JdbcTemplate} с теми же параметрами,
+ * что и у первого медленного запроса этой формы, и только для {@code SELECT}.
+ * </p>
+ */
+public class SlowQueryJdbcTemplate extends JdbcTemplate {
+
+    private final SlowQueryLog slowQueryLog;
+    private final JdbcTemplate explainTemplate;
+
+    public SlowQueryJdbcTemplate(DataSource dataSource, SlowQueryLog slowQueryLog) {
+        super(dataSource);
+        this.slowQueryLog = slowQueryLog;
+        this.explainTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+        long start = System.nanoTime();
+        T result = super.query(psc, pss, rse);
+        long elapsed = System.nanoTime() - start;
+        if (slowQueryLog.isSlow(elapsed)) {
+            String sql = psc instanceof SqlProvider provider ? provider.getSql() : null;
+            Object[] args = pss instanceof RecordingArgumentSetter recording ? recording.args : null;
+            slowQueryLog.record(sql != null ? sql : psc.getClass().getName(), parameterTypes(args),
+                    rowsOf(rse, result), elapsed, sql != null ? explain(sql, args) : null);
+        }
+        return result;
+    }
+
+    @Override
+    public <T> T query(String sql, ResultSetExtractor<T> rse) {
+        long start = System.nanoTime();
+        T result = super.query(sql, rse);
+        long elapsed = System.nanoTime() - start;
+        if (slowQueryLog.isSlow(elapsed)) {
+            slowQueryLog.record(sql, List.of(), rowsOf(rse, result), elapsed, explain(sql, null));
+        }
+        return result;
+    }
+
+    @Override
+    public void query(PreparedStatementCreator psc, RowCallbackHandler rch) {
+        query(psc, new CountingRowCallbackExtractor(rch));
+    }
+
+    @Override
+    public void query(String sql, PreparedStatementSetter pss, RowCallbackHandler rch) {
+        query(sql, pss, new CountingRowCallbackExtractor(rch));
+    }
+
+    @Override
+    public void query(String sql, RowCallbackHandler rch) {
+        query(sql, new CountingRowCallbackExtractor(rch));
+    }
+
+    @Override
+    protected PreparedStatementSetter newArgPreparedStatementSetter(Object[] args) {
+        return new RecordingArgumentSetter(args);
+    }
+
+    private Supplier<String> explain(String sql, Object[] args) {
+        String trimmed = sql.trim().toUpperCase(Locale.ROOT);
+        if (!trimmed.startsWith("SELECT") && !trimmed.startsWith("WITH")) {
+            return null;
+        }
+        return () -> String.join("\n", explainTemplate.query("EXPLAIN ANALYZE " + sql,
+                (rs, rowNum) -> rs.getString(1), args != null ? args : new Object[0]));
+    }
+
+    private static List<String> parameterTypes(Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        List<String> types = new ArrayList<>(args.length);
+        for (Object arg : args) {
+            types.add(arg == null ? "null" : arg.getClass().getSimpleName());
+        }
+        return types;
+    }
+
+    private static Long rowsOf(ResultSetExtractor<?> rse, Object result) {
+        if (rse instanceof CountingRowCallbackExtractor counting) {
+            return counting.rows;
+        }
+        if (result instanceof Collection<?> collection) {
+            return (long) collection.size();
+        }
+        return null;
+    }
+
+    /**
+     * Запоминает аргументы запроса, чтобы снять план с теми же значениями.
+     */
+    private static final class RecordingArgumentSetter extends ArgumentPreparedStatementSetter {
+        private final Object[] args;
+
+        private RecordingArgumentSetter(Object[] args) {
+            super(args);
+            this.args = args;
+        }
+    }
+
+    /**
+     * Аналог обработчика строк {@link JdbcTemplate}, считающий обработанные строки.
+     */
+    private static final class CountingRowCallbackExtractor implements ResultSetExtractor<Object> {
+        private final RowCallbackHandler handler;
+        private long rows;
+
+        private CountingRowCallbackExtractor(RowCallbackHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public Object extractData(ResultSet rs) throws SQLException {
+            while (rs.next()) {
+                handler.processRow(rs);
+                rows++;
+            }
+            return null;
+        }
+    }
+}
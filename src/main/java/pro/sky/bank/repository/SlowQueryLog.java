@@ -0,0 +1,175 @@
+package pro.sky.bank.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Журнал медленных запросов к базе рекомендаций.
+ * <p>
+ * Запросы дольше {@code application.recommendations-db.slow-query-threshold-ms} попадают
+ * в кольцевой буфер фиксированного размера: новые записи вытесняют самые старые. Запросы
+ * группируются по форме — тексту SQL без лишних пробелов, в котором списки {@code ?, ?, ...}
+ * свернуты до одного параметра. При первом появлении формы план выполнения
+ * ({@code EXPLAIN ANALYZE}) снимается в отдельном потоке, чтобы не задерживать исходный запрос.
+ * </p>
+ */
+@Component
+public class SlowQueryLog {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final int MAX_PLANS = 500;
+    private static final int MAX_PENDING_EXPLAINS = 16;
+
+    private final long thresholdNanos;
+    private final boolean explainEnabled;
+    private final AtomicReferenceArray<SlowQuery> ring;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Cache<String, String> plans = Caffeine.newBuilder().maximumSize(MAX_PLANS).build();
+    private final ThreadPoolExecutor explainExecutor;
+
+    public SlowQueryLog(@Value("${application.recommendations-db.slow-query-threshold-ms:50}") long thresholdMs,
+                        @Value("${application.recommendations-db.slow-query-capacity:200}") int capacity,
+                        @Value("${application.recommendations-db.explain-slow-queries:true}") boolean explainEnabled) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.explainEnabled = explainEnabled;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_EXPLAINS), runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-explain");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    /**
+     * Записывает медленный запрос.
+     *
+     * @param sql        текст запроса.
+     * @param parameters типы параметров или {@code null}, если они неизвестны.
+     * @param rows       число строк результата или {@code null}, если его нельзя определить.
+     * @param explain    снимает план запроса; вызывается асинхронно, только для новой формы.
+     */
+    public void record(String sql, List<String> parameters, Long rows, long elapsedNanos, Supplier<String> explain) {
+        String shape = shapeOf(sql);
+        long id = sequence.incrementAndGet();
+        ring.set((int) ((id - 1) % ring.length()), new SlowQuery(id, Instant.now(), shape,
+                summarize(parameters), rows, elapsedNanos));
+
+        if (explainEnabled && explain != null && plans.asMap().putIfAbsent(shape, "") == null) {
+            try {
+                explainExecutor.execute(() -> {
+                    try {
+                        plans.put(shape, explain.get());
+                    } catch (RuntimeException e) {
+                        plans.put(shape, "EXPLAIN failed: " + e.getMessage());
+                        log.debug("Не удалось получить план запроса {}: {}", shape, e.getMessage());
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Очередь планов переполнена: форма получит план при следующем медленном запросе
+                plans.asMap().remove(shape, "");
+            }
+        }
+    }
+
+    /**
+     * @param limit максимальное число записей.
+     * @return последние медленные запросы, начиная с самого нового, с планами выполнения.
+     */
+    public List<Map<String, Object>> getRecent(int limit) {
+        long last = sequence.get();
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (long id = last; id > 0 && id > last - ring.length() && result.size() < limit; id--) {
+            SlowQuery query = ring.get((int) ((id - 1) % ring.length()));
+            if (query == null || query.id() != id) {
+                continue;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("at", query.at());
+            row.put("durationMs", query.elapsedNanos() / 1_000_000.0);
+            row.put("rows", query.rows());
+            row.put("sql", query.shape());
+            row.put("parameters", query.parameters());
+            String plan = plans.getIfPresent(query.shape());
+            row.put("plan", plan == null || plan.isEmpty() ? null : plan);
+            result.add(row);
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("thresholdMs", TimeUnit.NANOSECONDS.toMillis(thresholdNanos));
+        stats.put("capacity", ring.length());
+        stats.put("recorded", sequence.get());
+        stats.put("shapesWithPlans", plans.estimatedSize());
+        stats.put("pendingExplains", explainExecutor.getQueue().size());
+        return stats;
+    }
+
+    public void clear() {
+        for (int i = 0; i < ring.length(); i++) {
+            ring.set(i, null);
+        }
+        plans.invalidateAll();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainExecutor.shutdownNow();
+    }
+
+    static String shapeOf(String sql) {
+        String collapsed = WHITESPACE.matcher(sql).replaceAll(" ").trim();
+        return PARAMETER_LIST.matcher(collapsed).replaceAll("?...");
+    }
+
+    /**
+     * Сворачивает подряд идущие одинаковые типы: {@code [String, String, String]} → {@code [String x3]}.
+     */
+    private static List<String> summarize(List<String> parameters) {
+        if (parameters == null || parameters.size() < 2) {
+            return parameters;
+        }
+        List<String> summary = new ArrayList<>();
+        int from = 0;
+        for (int i = 1; i <= parameters.size(); i++) {
+            if (i == parameters.size() || !parameters.get(i).equals(parameters.get(from))) {
+                int run = i - from;
+                summary.add(run == 1 ? parameters.get(from) : parameters.get(from) + " x" + run);
+                from = i;
+            }
+        }
+        return summary;
+    }
+
+    private record SlowQuery(long id, Instant at, String shape, List<String> parameters, Long rows,
+                             long elapsedNanos) {
+    }
+}
@@ -0,0 +1,389 @@
+package pro.sky.bank.repository;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pro.sky.bank.engine.UserFactColumns;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Хранилище агрегатов пользователей вне кучи — уровень под кэшами {@link RecommendationsRepository}.
+ * <p>
+ * Файл {@code application.facts.store.path} отображается в память и делится на слоты фиксированного
+ * размера: для каждого пользователя хранятся количество транзакций по каждому типу продукта и сумма
+ * в копейках по каждой паре (тип продукта, тип транзакции) из настроенных списков. Слот ищется
+ * линейным пробированием от хэша UUID в окне из {@value #PROBE_LIMIT} слотов; при заполненном окне
+ * вытесняется самый давно загруженный слот. Все агрегаты пользователя загружаются одним
+ * запросом при первом обращении и переживают перезапуск; устаревают по
+ * {@code application.facts.store.ttl-minutes} или при очистке кэшей.
+ * </p>
+ * <p>
+ * Хранилище лежит под кэшами {@link RecommendationsRepository} со сроком жизни 10 минут, поэтому
+ * его срок не должен быть больше: иначе после истечения записи в кэше запрос получил бы из хранилища
+ * еще более старое значение, и изменения транзакций становились бы видны позже, чем без хранилища.
+ * </p>
+ * <p>
+ * Агрегаты, загрузка которых началась до {@link #clear()}, не сохраняются: поколение запоминается
+ * перед вызовом загрузчика, и запись с изменившимся поколением отбрасывается.
+ * </p>
+ * <p>
+ * Чтение и запись без блокировок: первое поле слота — счетчик версии (нечетный во время записи),
+ * читатель проверяет, что версия не изменилась за время чтения. Значения читаются напрямую
+ * из отображения и не создают объектов. Если тип не входит в настроенные списки или загрузка
+ * не удалась, методы возвращают {@link #UNKNOWN} и запрос выполняется как раньше.
+ * </p>
+ */
+@Component
+public class UserFactStore {
+
+    private static final Logger log = LoggerFactory.getLogger(UserFactStore.class);
+
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x55465331;
+    private static final int HEADER_SIZE = 64;
+    private static final int GENERATION_OFFSET = 16;
+    private static final int PROBE_LIMIT = 16;
+
+    private static final int VERSION = 0;
+    private static final int GENERATION = 8;
+    private static final int MOST_SIGNIFICANT = 16;
+    private static final int LEAST_SIGNIFICANT = 24;
+    private static final int LOADED_AT = 32;
+    private static final int DATA = 40;
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final boolean enabled;
+    private final Path path;
+    private final List<String> productTypes;
+    private final List<String> transactionTypes;
+    private final long ttlMillis;
+    private final int slotSize;
+    private final int slotMask;
+
+    private MappedByteBuffer buffer;
+    private volatile long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder unknown = new LongAdder();
+
+    public UserFactStore(@Value("${application.facts.store.enabled:true}") boolean enabled,
+                         @Value("${application.facts.store.path:./facts/user-facts.dat}") String path,
+                         @Value("${application.facts.store.capacity:1048576}") int capacity,
+                         @Value("${application.facts.store.ttl-minutes:10}") long ttlMinutes,
+                         @Value("${application.facts.store.product-types:DEBIT,CREDIT,INVEST,SAVING}") List<String> productTypes,
+                         @Value("${application.facts.store.transaction-types:DEPOSIT,EXPENSE}") List<String> transactionTypes) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Fact store capacity must be a power of two: " + capacity);
+        }
+        this.path = Paths.get(path);
+        this.productTypes = List.copyOf(productTypes);
+        this.transactionTypes = List.copyOf(transactionTypes);
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.slotSize = DATA + 8 * productTypes.size() * (1 + transactionTypes.size());
+        this.slotMask = capacity - 1;
+
+        long fileSize = HEADER_SIZE + (long) capacity * slotSize;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Fact store file would exceed 2 GB: " + fileSize + " bytes");
+        }
+        this.enabled = enabled && open((int) fileSize);
+    }
+
+    /**
+     * @return количество транзакций пользователя по продуктам типа или {@link #UNKNOWN}.
+     */
+    public long transactionCount(UUID userId, String productType, Function<UUID, UserFactColumns> loader) {
+        int product = productTypes.indexOf(productType);
+        if (product < 0) {
+            return miss();
+        }
+        return read(userId, DATA + 8 * product, loader);
+    }
+
+    /**
+     * @return сумма транзакций пользователя в копейках или {@link #UNKNOWN}.
+     */
+    public long transactionSum(UUID userId, String productType, String transactionType,
+                               Function<UUID, UserFactColumns> loader) {
+        int product = productTypes.indexOf(productType);
+        int transaction = transactionTypes.indexOf(transactionType);
+        if (product < 0 || transaction < 0) {
+            return miss();
+        }
+        return read(userId, sumOffset(product, transaction), loader);
+    }
+
+    /**
+     * Делает все сохраненные агрегаты устаревшими, не трогая файл целиком.
+     */
+    public synchronized void clear() {
+        if (!enabled) {
+            return;
+        }
+        generation++;
+        buffer.putLong(GENERATION_OFFSET, generation);
+    }
+
+    /**
+     * Делает устаревшими агрегаты одного пользователя.
+     */
+    public void invalidate(UUID userId) {
+        if (!enabled) {
+            return;
+        }
+        long msb = userId.getMostSignificantBits();
+        long lsb = userId.getLeastSignificantBits();
+        int home = home(msb, lsb);
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int slot = slotOffset((home + i) & slotMask);
+            long version = (long) LONG.getAcquire(buffer, slot + VERSION);
+            if (version == 0) {
+                return;
+            }
+            if ((version & 1) == 0 && buffer.getLong(slot + MOST_SIGNIFICANT) == msb
+                    && buffer.getLong(slot + LEAST_SIGNIFICANT) == lsb
+                    && LONG.compareAndSet(buffer, slot + VERSION, version, version + 1)) {
+                buffer.putLong(slot + GENERATION, -1);
+                LONG.setRelease(buffer, slot + VERSION, version + 2);
+                return;
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("path", path.toAbsolutePath().toString());
+        stats.put("capacity", slotMask + 1);
+        stats.put("slotSizeBytes", slotSize);
+        stats.put("productTypes", productTypes);
+        stats.put("transactionTypes", transactionTypes);
+        stats.put("hits", hits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("unknown", unknown.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (enabled) {
+            buffer.force();
+        }
+    }
+
+    private long read(UUID userId, int field, Function<UUID, UserFactColumns> loader) {
+        if (!enabled) {
+            return UNKNOWN;
+        }
+        long msb = userId.getMostSignificantBits();
+        long lsb = userId.getLeastSignificantBits();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            long value = lookup(msb, lsb, field);
+            if (value != UNKNOWN) {
+                if (attempt == 0) {
+                    hits.increment();
+                }
+                return value;
+            }
+            if (!load(userId, loader)) {
+                break;
+            }
+        }
+        return miss();
+    }
+
+    /**
+     * @return значение поля из актуального слота пользователя или {@link #UNKNOWN}.
+     */
+    private long lookup(long msb, long lsb, int field) {
+        long now = System.currentTimeMillis();
+        int home = home(msb, lsb);
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int slot = slotOffset((home + i) & slotMask);
+            long version = (long) LONG.getAcquire(buffer, slot + VERSION);
+            if (version == 0) {
+                return UNKNOWN;
+            }
+            if ((version & 1) != 0
+                    || buffer.getLong(slot + MOST_SIGNIFICANT) != msb
+                    || buffer.getLong(slot + LEAST_SIGNIFICANT) != lsb) {
+                continue;
+            }
+            boolean fresh = buffer.getLong(slot + GENERATION) == generation
+                    && now - buffer.getLong(slot + LOADED_AT) < ttlMillis;
+            long value = buffer.getLong(slot + field);
+            VarHandle.acquireFence();
+            if ((long) LONG.getAcquire(buffer, slot + VERSION) != version) {
+                // Слот переписан во время чтения — считаем промахом
+                return UNKNOWN;
+            }
+            return fresh ? value : UNKNOWN;
+        }
+        return UNKNOWN;
+    }
+
+    private boolean load(UUID userId, Function<UUID, UserFactColumns> loader) {
+        // Поколение берется до загрузки: clear() во время запроса делает результат устаревшим
+        long loadGeneration = generation;
+        UserFactColumns columns;
+        try {
+            columns = loader.apply(userId);
+        } catch (RuntimeException e) {
+            log.debug("Не удалось загрузить агрегаты пользователя {}: {}", userId, e.getMessage());
+            return false;
+        }
+        long[] values = new long[productTypes.size() * (1 + transactionTypes.size())];
+        for (int p = 0; p < productTypes.size(); p++) {
+            values[p] = columns.transactionCounts(productTypes.get(p))[0];
+            for (int t = 0; t < transactionTypes.size(); t++) {
+                values[(sumOffset(p, t) - DATA) / 8] = columns.transactionSums(productTypes.get(p), transactionTypes.get(t))[0];
+            }
+        }
+        loads.increment();
+        return store(userId.getMostSignificantBits(), userId.getLeastSignificantBits(), values, loadGeneration);
+    }
+
+    private boolean store(long msb, long lsb, long[] values, long loadGeneration) {
+        if (generation != loadGeneration) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        int home = home(msb, lsb);
+        int target = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            int slot = slotOffset((home + i) & slotMask);
+            long version = (long) LONG.getAcquire(buffer, slot + VERSION);
+            if (version == 0 || (buffer.getLong(slot + MOST_SIGNIFICANT) == msb
+                    && buffer.getLong(slot + LEAST_SIGNIFICANT) == lsb)) {
+                target = slot;
+                break;
+            }
+            long loadedAt = buffer.getLong(slot + GENERATION) == generation
+                    ? buffer.getLong(slot + LOADED_AT) : Long.MIN_VALUE;
+            if ((version & 1) == 0 && loadedAt < oldest) {
+                oldest = loadedAt;
+                target = slot;
+            }
+        }
+        if (target < 0) {
+            return false;
+        }
+
+        long version = (long) LONG.getAcquire(buffer, target + VERSION);
+        if ((version & 1) != 0 || !LONG.compareAndSet(buffer, target + VERSION, version, version + 1)) {
+            // Слот пишет другой поток
+            return false;
+        }
+        if (version != 0 && (buffer.getLong(target + MOST_SIGNIFICANT) != msb
+                || buffer.getLong(target + LEAST_SIGNIFICANT) != lsb)) {
+            evictions.increment();
+        }
+        buffer.putLong(target + MOST_SIGNIFICANT, msb);
+        buffer.putLong(target + LEAST_SIGNIFICANT, lsb);
+        // Если clear() успел выполниться после проверки, слот сразу окажется устаревшим
+        buffer.putLong(target + GENERATION, loadGeneration);
+        buffer.putLong(target + LOADED_AT, now);
+        for (int i = 0; i < values.length; i++) {
+            buffer.putLong(target + DATA + 8 * i, values[i]);
+        }
+        LONG.setRelease(buffer, target + VERSION, version + 2);
+        return true;
+    }
+
+    private boolean open(int fileSize) {
+        int layout = Arrays.hashCode(new Object[]{productTypes, transactionTypes, slotSize, slotMask});
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                boolean compatible = channel.size() == fileSize;
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+                buffer.order(ByteOrder.nativeOrder());
+                if (compatible && buffer.getInt(0) == MAGIC && buffer.getInt(4) == layout) {
+                    generation = buffer.getLong(GENERATION_OFFSET);
+                    log.info("Хранилище агрегатов пользователей открыто: {}", path);
+                } else {
+                    // Новый файл или другая раскладка слотов: прежние данные не читаются
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(4, layout);
+                    generation = buffer.getLong(GENERATION_OFFSET) + 1;
+                    buffer.putLong(GENERATION_OFFSET, generation);
+                    log.info("Хранилище агрегатов пользователей создано: {} ({} слотов)", path, slotMask + 1);
+                }
+                repairTornSlots();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Хранилище агрегатов пользователей отключено: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Завершает записи, прерванные остановкой процесса. Нечетная версия слота в только что открытом
+     * файле не может принадлежать живому писателю; без исправления слот навсегда выглядел бы занятым
+     * записью. Данные такого слота могли записаться частично, поэтому он помечается устаревшим.
+     */
+    private void repairTornSlots() {
+        int repaired = 0;
+        for (int index = 0; index <= slotMask; index++) {
+            int slot = slotOffset(index);
+            long version = buffer.getLong(slot + VERSION);
+            if ((version & 1) != 0) {
+                // Поколение 0 не совпадает ни с одним текущим: хранилище начинает с поколения 1
+                buffer.putLong(slot + GENERATION, 0);
+                buffer.putLong(slot + VERSION, version + 1);
+                repaired++;
+            }
+        }
+        if (repaired > 0) {
+            log.warn("Хранилище агрегатов пользователей: сброшено {} слотов с прерванной записью", repaired);
+        }
+    }
+
+    private long miss() {
+        unknown.increment();
+        return UNKNOWN;
+    }
+
+    private int sumOffset(int product, int transaction) {
+        return DATA + 8 * (productTypes.size() + product * transactionTypes.size() + transaction);
+    }
+
+    private int slotOffset(int index) {
+        return HEADER_SIZE + index * slotSize;
+    }
+
+    private static int home(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
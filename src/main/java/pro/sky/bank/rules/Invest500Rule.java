@@ -1,17 +1,22 @@
 package pro.sky.bank.rules;
 
+import pro.sky.bank.engine.ColumnBits;
+import pro.sky.bank.engine.UserFactColumns;
 import pro.sky.bank.model.Recommendation;
+import pro.sky.bank.model.dto.RuleQuery;
 import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.util.Money;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.UUID;
 
 @Component
 public class Invest500Rule implements RecommendationRule {
 
+    private static final long SAVING_DEPOSITS_THRESHOLD = Money.ofUnits(1000);
+
     private final RecommendationsRepository repository;
 
     @Autowired
@@ -23,20 +28,40 @@ public class Invest500Rule implements RecommendationRule {
     public Optional<Recommendation> getRecommendation(UUID userId) {
         boolean hasDebit = repository.hasProductType(userId, "DEBIT");
         boolean hasInvest = repository.hasProductType(userId, "INVEST");
-        BigDecimal savingDeposits = repository.getTotalDepositsByProductType(userId, "SAVING");
+        long savingDeposits = repository.getTotalDepositsByProductType(userId, "SAVING");
 
         boolean rule1 = hasDebit;
         boolean rule2 = !hasInvest;
-        boolean rule3 = savingDeposits.compareTo(new BigDecimal("1000")) > 0;
+        boolean rule3 = savingDeposits > SAVING_DEPOSITS_THRESHOLD;
 
         if (rule1 && rule2 && rule3) {
-            Recommendation recommendation = new Recommendation("147f6a0f-3b91-413b-ab99-87f081d60d5a",
-                    "Invest 500",
-                    "индивидуальный инвестиционным счет"
-            );
-            return Optional.of(recommendation);
+            return Optional.of(getProduct());
         }
 
         return Optional.empty();
     }
+
+    @Override
+    public Recommendation getProduct() {
+        return new Recommendation(
+                "147f6a0f-3b91-413b-ab99-87f081d60d5a",
+                "Invest 500",
+                "индивидуальный инвестиционным счет"
+        );
+    }
+
+    @Override
+    public boolean supportsColumns() {
+        return true;
+    }
+
+    @Override
+    public long[] matches(UserFactColumns columns) {
+        int size = columns.size();
+        long[] result = ColumnBits.atLeast(columns.transactionCounts("DEBIT"), 1, size);
+        ColumnBits.andNot(result, ColumnBits.atLeast(columns.transactionCounts("INVEST"), 1, size));
+        ColumnBits.and(result, ColumnBits.compare(columns.transactionSums("SAVING", "DEPOSIT"),
+                SAVING_DEPOSITS_THRESHOLD, RuleQuery.ComparisonOperator.GREATER, size));
+        return result;
+    }
 }
@@ -1,5 +1,6 @@
 package pro.sky.bank.rules;
 
+import pro.sky.bank.engine.UserFactColumns;
 import pro.sky.bank.model.Recommendation;
 
 import java.util.Optional;
@@ -7,4 +8,27 @@ import java.util.UUID;
 
 public interface RecommendationRule {
     Optional<Recommendation> getRecommendation(UUID userId);
-}
\ No newline at end of file
+
+    /**
+     * Продукт, который рекомендует правило.
+     */
+    Recommendation getProduct();
+
+    /**
+     * @return {@code true}, если правило поддерживает пакетную оценку {@link #matches(UserFactColumns)}.
+     */
+    default boolean supportsColumns() {
+        return false;
+    }
+
+    /**
+     * Пакетная оценка правила сразу для всех пользователей {@code columns}.
+     * Вызывается только для правил, у которых {@link #supportsColumns()} возвращает {@code true}.
+     *
+     * @return маска пользователей (см. {@link pro.sky.bank.engine.ColumnBits}), для которых правило выполняется.
+     * @throws UnsupportedOperationException если правило не поддерживает пакетную оценку.
+     */
+    default long[] matches(UserFactColumns columns) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support batch evaluation");
+    }
+}
@@ -1,17 +1,22 @@
 package pro.sky.bank.rules;
 
+import pro.sky.bank.engine.ColumnBits;
+import pro.sky.bank.engine.UserFactColumns;
 import pro.sky.bank.model.Recommendation;
+import pro.sky.bank.model.dto.RuleQuery;
 import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.util.Money;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.UUID;
 
 @Component
 public class SimpleCreditRule implements RecommendationRule {
 
+    private static final long DEBIT_EXPENSES_THRESHOLD = Money.ofUnits(100000);
+
     private final RecommendationsRepository repository;
 
     @Autowired
@@ -22,22 +27,46 @@ public class SimpleCreditRule implements RecommendationRule {
     @Override
     public Optional<Recommendation> getRecommendation(UUID userId) {
         boolean hasCredit = repository.hasProductType(userId, "CREDIT");
-        BigDecimal debitDeposits = repository.getTotalDepositsByProductType(userId, "DEBIT");
-        BigDecimal debitExpenses = repository.getTotalExpensesByProductType(userId, "DEBIT");
+        long debitDeposits = repository.getTotalDepositsByProductType(userId, "DEBIT");
+        long debitExpenses = repository.getTotalExpensesByProductType(userId, "DEBIT");
 
         boolean rule1 = !hasCredit;
-        boolean rule2 = debitDeposits.compareTo(debitExpenses) > 0;
-        boolean rule3 = debitExpenses.compareTo(new BigDecimal("100000")) > 0;
+        boolean rule2 = debitDeposits > debitExpenses;
+        boolean rule3 = debitExpenses > DEBIT_EXPENSES_THRESHOLD;
 
         if (rule1 && rule2 && rule3) {
-            Recommendation recommendation = new Recommendation(
-                    "ab138afb-f3ba-4a93-b74f-0fcee86d447f",
-                    "Простой кредит",
-                    "Позвольте себе больше!"
-            );
-            return Optional.of(recommendation);
+            return Optional.of(getProduct());
         }
 
         return Optional.empty();
     }
-}
\ No newline at end of file
+
+    @Override
+    public Recommendation getProduct() {
+        return new Recommendation(
+                "ab138afb-f3ba-4a93-b74f-0fcee86d447f",
+                "Простой кредит",
+                "Позвольте себе больше!"
+        );
+    }
+
+    @Override
+    public boolean supportsColumns() {
+        return true;
+    }
+
+    @Override
+    public long[] matches(UserFactColumns columns) {
+        int size = columns.size();
+        long[] debitDeposits = columns.transactionSums("DEBIT", "DEPOSIT");
+        long[] debitExpenses = columns.transactionSums("DEBIT", "EXPENSE");
+
+        long[] result = ColumnBits.allOnes(size);
+        ColumnBits.andNot(result, ColumnBits.atLeast(columns.transactionCounts("CREDIT"), 1, size));
+        ColumnBits.and(result, ColumnBits.compare(debitDeposits, debitExpenses,
+                RuleQuery.ComparisonOperator.GREATER, size));
+        ColumnBits.and(result, ColumnBits.compare(debitExpenses,
+                DEBIT_EXPENSES_THRESHOLD, RuleQuery.ComparisonOperator.GREATER, size));
+        return result;
+    }
+}
@@ -1,17 +1,22 @@
 package pro.sky.bank.rules;
 
+import pro.sky.bank.engine.ColumnBits;
+import pro.sky.bank.engine.UserFactColumns;
 import pro.sky.bank.model.Recommendation;
+import pro.sky.bank.model.dto.RuleQuery;
 import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.util.Money;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.UUID;
 
 @Component
 public class TopSavingRule implements RecommendationRule {
 
+    private static final long DEPOSITS_THRESHOLD = Money.ofUnits(50000);
+
     private final RecommendationsRepository repository;
 
     @Autowired
@@ -22,24 +27,49 @@ public class TopSavingRule implements RecommendationRule {
     @Override
     public Optional<Recommendation> getRecommendation(UUID userId) {
         boolean hasDebit = repository.hasProductType(userId, "DEBIT");
-        BigDecimal debitDeposits = repository.getTotalDepositsByProductType(userId, "DEBIT");
-        BigDecimal savingDeposits = repository.getTotalDepositsByProductType(userId, "SAVING");
-        BigDecimal debitExpenses = repository.getTotalExpensesByProductType(userId, "DEBIT");
+        long debitDeposits = repository.getTotalDepositsByProductType(userId, "DEBIT");
+        long savingDeposits = repository.getTotalDepositsByProductType(userId, "SAVING");
+        long debitExpenses = repository.getTotalExpensesByProductType(userId, "DEBIT");
 
         boolean rule1 = hasDebit;
-        boolean rule2 = debitDeposits.compareTo(new BigDecimal("50000")) >= 0 ||
-                savingDeposits.compareTo(new BigDecimal("50000")) >= 0;
-        boolean rule3 = debitDeposits.compareTo(debitExpenses) > 0;
+        boolean rule2 = debitDeposits >= DEPOSITS_THRESHOLD || savingDeposits >= DEPOSITS_THRESHOLD;
+        boolean rule3 = debitDeposits > debitExpenses;
 
         if (rule1 && rule2 && rule3) {
-            Recommendation recommendation = new Recommendation(
-                    "59efc529-2fff-41af-baff-90ccd7402925",
-                    "Top Saving",
-                    "Копилка."
-            );
-            return Optional.of(recommendation);
+            return Optional.of(getProduct());
         }
 
         return Optional.empty();
     }
+
+    @Override
+    public Recommendation getProduct() {
+        return new Recommendation(
+                "59efc529-2fff-41af-baff-90ccd7402925",
+                "Top Saving",
+                "Копилка."
+        );
+    }
+
+    @Override
+    public boolean supportsColumns() {
+        return true;
+    }
+
+    @Override
+    public long[] matches(UserFactColumns columns) {
+        int size = columns.size();
+        long[] debitDeposits = columns.transactionSums("DEBIT", "DEPOSIT");
+
+        long[] deposits = ColumnBits.compare(debitDeposits,
+                DEPOSITS_THRESHOLD, RuleQuery.ComparisonOperator.GREATER_EQUAL, size);
+        ColumnBits.or(deposits, ColumnBits.compare(columns.transactionSums("SAVING", "DEPOSIT"),
+                DEPOSITS_THRESHOLD, RuleQuery.ComparisonOperator.GREATER_EQUAL, size));
+
+        long[] result = ColumnBits.atLeast(columns.transactionCounts("DEBIT"), 1, size);
+        ColumnBits.and(result, deposits);
+        ColumnBits.and(result, ColumnBits.compare(debitDeposits, columns.transactionSums("DEBIT", "EXPENSE"),
+                RuleQuery.ComparisonOperator.GREATER, size));
+        return result;
+    }
 }
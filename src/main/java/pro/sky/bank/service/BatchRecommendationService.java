@@ -0,0 +1,99 @@
+package pro.sky.bank.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.sky.bank.engine.ColumnBits;
+import pro.sky.bank.engine.ColumnarRuleEvaluator;
+import pro.sky.bank.engine.RuleCatalog;
+import pro.sky.bank.engine.UserFactColumns;
+import pro.sky.bank.model.Recommendation;
+import pro.sky.bank.model.RecommendationResponse;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.rules.RecommendationRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Рекомендации сразу для многих пользователей.
+ * <p>
+ * Пользователи обрабатываются пачками: факты пачки загружаются одним агрегирующим запросом
+ * в колонки {@link UserFactColumns}, после чего каждое правило оценивается для всей пачки
+ * в битовую маску. Статические правила без пакетной реализации оцениваются по одному пользователю.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+public class BatchRecommendationService {
+
+    private final List<RecommendationRule> staticRules;
+    private final RuleCatalog ruleCatalog;
+    private final ColumnarRuleEvaluator columnarEvaluator;
+    private final RecommendationsRepository repository;
+    private final RuleReachTracker reachTracker;
+    private final RuleStatisticService statisticService;
+    private final RuleTriggerTimeSeries timeSeries;
+
+    @Value("${application.recommendations.batch-size:1024}")
+    private int batchSize;
+
+    /**
+     * @param userIds идентификаторы пользователей.
+     * @return рекомендации в том же порядке, что и {@code userIds}.
+     */
+    public List<RecommendationResponse> getRecommendations(List<UUID> userIds) {
+        List<RecommendationResponse> responses = new ArrayList<>(userIds.size());
+        for (int from = 0; from < userIds.size(); from += batchSize) {
+            List<UUID> batch = userIds.subList(from, Math.min(from + batchSize, userIds.size()));
+            responses.addAll(evaluateBatch(repository.loadFactColumns(batch)));
+        }
+        return responses;
+    }
+
+    private List<RecommendationResponse> evaluateBatch(UserFactColumns columns) {
+        int size = columns.size();
+        List<List<Recommendation>> recommendations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            recommendations.add(new ArrayList<>());
+        }
+
+        for (RecommendationRule rule : staticRules) {
+            if (rule.supportsColumns()) {
+                Recommendation product = rule.getProduct();
+                ColumnBits.forEach(rule.matches(columns), i -> recommendations.get(i).add(product));
+            } else {
+                for (int i = 0; i < size; i++) {
+                    rule.getRecommendation(columns.getUserId(i)).ifPresent(recommendations.get(i)::add);
+                }
+            }
+        }
+
+        for (RuleCatalog.Entry entry : ruleCatalog.getRules()) {
+            long[] matches = columnarEvaluator.evaluate(entry.getRule(), columns);
+            if (!ColumnBits.isEmpty(matches)) {
+                DynamicRuleResponse rule = entry.getRule();
+                Recommendation product = new Recommendation(
+                        rule.getProductId(),
+                        rule.getProductName(),
+                        rule.getProductText()
+                );
+                ColumnBits.forEach(matches, i -> {
+                    recommendations.get(i).add(product);
+                    reachTracker.record(rule.getProductId(), columns.getUserId(i));
+                });
+                int matched = ColumnBits.cardinality(matches);
+                statisticService.recordMatches(rule.getProductId(), rule.getProductName(), matched);
+                timeSeries.record(rule.getProductId(), matched);
+            }
+        }
+
+        List<RecommendationResponse> responses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            responses.add(new RecommendationResponse(columns.getUserId(i).toString(), recommendations.get(i)));
+        }
+        return responses;
+    }
+}
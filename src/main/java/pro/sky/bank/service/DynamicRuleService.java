@@ -8,16 +8,30 @@ import pro.sky.bank.exception.RuleValidationException;
 import pro.sky.bank.model.dto.DynamicRuleRequest;
 import pro.sky.bank.model.dto.DynamicRuleResponse;
 import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.model.dto.RulesListResponse;
 import pro.sky.bank.model.entity.DynamicRule;
 import pro.sky.bank.model.entity.RuleQueryEntity;
+import pro.sky.bank.model.event.RuleCatalogChangedEvent;
 import pro.sky.bank.repository.DynamicRuleRepository;
+import pro.sky.bank.repository.RuleBatchRepository;
 import pro.sky.bank.repository.RuleQueryRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -35,16 +49,30 @@ import java.util.stream.Collectors;
  */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class DynamicRuleService {
 
     private final DynamicRuleRepository dynamicRuleRepository;
     private final RuleQueryRepository ruleQueryRepository;
+    private final RuleBatchRepository ruleBatchRepository;
     private final ObjectMapper objectMapper;
     private final RuleStatisticService statisticService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${application.rules.page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${application.rules.max-page-size:1000}")
+    private int maxPageSize;
+
     /**
      * Основной метод для создания нового динамического правила.
      * Выполняет полный цикл создания: валидация входящего запроса, сохранение основного правила,
-     * преобразование и сохранение вложенных запросов (RuleQuery), инициализацию счетчика статистики.
+     * преобразование и сохранение вложенных запросов (RuleQuery), инициализацию счетчика статистики
+     * (с нулевым значением, как и при пакетном создании через {@link #createRules(List)}).
      * Весь процесс выполняется в одной транзакции.
      *
      * @param request {@link DynamicRuleRequest} с данными для создания.
@@ -71,12 +99,73 @@ public class DynamicRuleService {
         ruleQueryRepository.saveAll(queryEntities);
         savedRule.setQueries(queryEntities);
 
-        statisticService.incrementTrigger(savedRule.getProductId(), savedRule.getProductName());
+        // Статистика создается так же, как при пакетной вставке: с нулевым счетчиком или повторной активацией
+        ruleBatchRepository.upsertStatistics(List.of(savedRule));
+        statisticService.registerRules(List.of(savedRule));
+
+        log.info("Created dynamic rule for product: {}", request.getProductName());
+
+        DynamicRuleResponse response = convertToResponse(savedRule);
+        eventPublisher.publishEvent(RuleCatalogChangedEvent.created(List.of(response)));
+        return response;
+    }
+    /**
+     * Создает пакет правил за одну транзакцию.
+     * <p>
+     * Весь пакет проверяется заранее: обязательные поля каждого правила, уникальность productId
+     * внутри пакета и отсутствие конфликтов с существующими правилами (одним запросом к БД).
+     * Правила, их запросы и записи статистики вставляются пакетными JDBC-запросами.
+     * </p>
+     *
+     * @param requests список {@link DynamicRuleRequest} для создания.
+     * @return {@link RulesListResponse} с созданными правилами в порядке запроса.
+     * @throws IllegalArgumentException если хотя бы одно правило не прошло валидацию; в этом случае
+     *         не создается ни одно правило.
+     */
+    @Transactional
+    public RulesListResponse createRules(List<DynamicRuleRequest> requests) {
+        validateBulkRequest(requests);
+        if (requests.isEmpty()) {
+            return insertRules(requests);
+        }
+
+        List<String> existing = dynamicRuleRepository.findExistingProductIds(
+                requests.stream().map(DynamicRuleRequest::getProductId).toList());
+        if (!existing.isEmpty()) {
+            throw new IllegalArgumentException("Rules for these products already exist: " + existing);
+        }
+
+        RulesListResponse response = insertRules(requests);
+        eventPublisher.publishEvent(RuleCatalogChangedEvent.created(response.getData()));
+        return response;
+    }
+
+    /**
+     * Атомарно заменяет весь каталог правил переданным списком.
+     * <p>
+     * Существующие правила и их запросы удаляются set-based запросами, их статистика деактивируется,
+     * после чего новый каталог вставляется пакетно. Статистика правил, которые остались в каталоге,
+     * повторно активируется с сохранением накопленных счетчиков.
+     * </p>
+     *
+     * @param requests полный новый каталог правил; может быть пустым.
+     * @return {@link RulesListResponse} с правилами нового каталога.
+     * @throws IllegalArgumentException если хотя бы одно правило не прошло валидацию; в этом случае
+     *         каталог остается без изменений.
+     */
+    @Transactional
+    public RulesListResponse replaceAllRules(List<DynamicRuleRequest> requests) {
+        validateBulkRequest(requests);
 
-        System.out.println("Created dynamic rule for product: " + request.getProductName());
+        int deleted = ruleBatchRepository.deleteAllRules();
+        statisticService.deactivateAllStatistics();
 
-        return convertToResponse(savedRule);
+        RulesListResponse response = insertRules(requests);
+        eventPublisher.publishEvent(RuleCatalogChangedEvent.replaced(response.getData()));
+        log.info("Replaced rule catalog: removed {}, created {}", deleted, requests.size());
+        return response;
     }
+
     /**
      * Удаляет правило и всю связанную с ним информацию.
      * <p>
@@ -100,6 +189,7 @@ public class DynamicRuleService {
 
         // Удаляем запросы и правило
         deleteRuleAndQueries(rule);
+        eventPublisher.publishEvent(RuleCatalogChangedEvent.removed(productId));
     }
     /**
      * Возвращает список всех динамических правил, существующих в системе.
@@ -114,9 +204,124 @@ public class DynamicRuleService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Возвращает одну страницу правил, используя keyset-пагинацию по id.
+     * В отличие от {@link #getAllRules()}, в памяти одновременно находится не больше {@code limit} правил,
+     * а стоимость запроса не зависит от номера страницы.
+     *
+     * @param afterId курсор — id последнего правила предыдущей страницы; {@code null} для первой страницы.
+     * @param limit   размер страницы; {@code null} — размер по умолчанию ({@code application.rules.page-size}).
+     * @return {@link RulesListResponse} со страницей правил и курсором следующей страницы.
+     * @throws RuleValidationException если размер страницы меньше 1.
+     */
+    @Transactional(readOnly = true)
+    public RulesListResponse getRulesPage(Long afterId, Integer limit) {
+        int pageSize = resolvePageSize(limit);
+
+        // Запрашиваем на одно правило больше, чтобы узнать, есть ли следующая страница
+        List<DynamicRule> rules = dynamicRuleRepository.findByIdGreaterThanOrderByIdAsc(
+                afterId != null ? afterId : 0L, Limit.of(pageSize + 1));
+        boolean hasNext = rules.size() > pageSize;
+
+        List<DynamicRuleResponse> page = rules.stream()
+                .limit(pageSize)
+                .map(this::convertToResponse)
+                .collect(Collectors.toList());
+
+        RulesListResponse response = new RulesListResponse();
+        response.setData(page);
+        response.setNextCursor(hasNext ? page.get(page.size() - 1).getId() : null);
+        return response;
+    }
+
+    /**
+     * Последовательно передает все правила в {@code consumer}, читая их страницами по id (keyset-пагинация).
+     * Запросы правил страницы догружаются одним запросом ({@code default_batch_fetch_size}), после
+     * конвертации страницы контекст персистентности очищается, поэтому расход памяти не зависит
+     * от размера каталога.
+     *
+     * @param consumer обработчик, получающий правила в порядке возрастания id.
+     */
+    @Transactional(readOnly = true)
+    public void forEachRule(Consumer<DynamicRuleResponse> consumer) {
+        long lastId = 0L;
+        List<DynamicRule> rules;
+        do {
+            rules = dynamicRuleRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(defaultPageSize));
+            List<DynamicRuleResponse> page = rules.stream()
+                    .map(this::convertToResponse)
+                    .collect(Collectors.toList());
+            entityManager.clear();
+            page.forEach(consumer);
+            if (!rules.isEmpty()) {
+                lastId = rules.get(rules.size() - 1).getId();
+            }
+        } while (rules.size() == defaultPageSize);
+    }
+
+    /**
+     * Возвращает текущие версии правил указанных продуктов. Продукты без правил в ответ не попадают.
+     *
+     * @param productIds идентификаторы продуктов.
+     * @return список {@link DynamicRuleResponse} в произвольном порядке.
+     */
+    @Transactional(readOnly = true)
+    public List<DynamicRuleResponse> getRulesByProductIds(Collection<String> productIds) {
+        if (productIds.isEmpty()) {
+            return List.of();
+        }
+        return dynamicRuleRepository.findByProductIdIn(productIds).stream()
+                .map(this::convertToResponse)
+                .collect(Collectors.toList());
+    }
+
+    private int resolvePageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+        if (limit < 1) {
+            throw new RuleValidationException("Page limit must be positive: " + limit);
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
     private void deleteRuleAndQueries(DynamicRule rule) {
         ruleQueryRepository.deleteByRule(rule);
-        dynamicRuleRepository.delete(rule);
+        dynamicRuleRepository.deleteByIdInBulk(rule.getId());
+    }
+
+    private RulesListResponse insertRules(List<DynamicRuleRequest> requests) {
+        List<DynamicRule> rules = new ArrayList<>(requests.size());
+        List<RuleQueryEntity> queryEntities = new ArrayList<>();
+
+        for (DynamicRuleRequest request : requests) {
+            DynamicRule rule = new DynamicRule();
+            rule.setProductName(request.getProductName());
+            rule.setProductId(request.getProductId());
+            rule.setProductText(request.getProductText());
+            rules.add(rule);
+        }
+
+        ruleBatchRepository.insertRules(rules);
+
+        for (int i = 0; i < rules.size(); i++) {
+            DynamicRule rule = rules.get(i);
+            List<RuleQueryEntity> ruleQueries = requests.get(i).getRule().stream()
+                    .map(query -> createQueryEntity(rule, query))
+                    .collect(Collectors.toList());
+            rule.setQueries(ruleQueries);
+            queryEntities.addAll(ruleQueries);
+        }
+
+        ruleBatchRepository.insertQueries(queryEntities);
+        ruleBatchRepository.upsertStatistics(rules);
+        statisticService.registerRules(rules);
+
+        RulesListResponse response = new RulesListResponse();
+        response.setData(rules.stream()
+                .map(this::convertToResponse)
+                .collect(Collectors.toList()));
+        return response;
     }
 
     private void validateProductId(String productId) {
@@ -201,6 +406,34 @@ public class DynamicRuleService {
     }
 
     private void validateRuleRequest(DynamicRuleRequest request) {
+        validateRuleFields(request);
+
+        // Проверяем уникальность productId
+        if (dynamicRuleRepository.existsByProductId(request.getProductId())) {
+            throw new IllegalArgumentException("Rule for this product already exists");
+        }
+    }
+
+    private void validateBulkRequest(List<DynamicRuleRequest> requests) {
+        if (requests == null) {
+            throw new IllegalArgumentException("Rules list is required");
+        }
+
+        Set<String> productIds = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            DynamicRuleRequest request = requests.get(i);
+            try {
+                validateRuleFields(request);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Rule #" + i + ": " + e.getMessage(), e);
+            }
+            if (!productIds.add(request.getProductId())) {
+                throw new IllegalArgumentException("Rule #" + i + ": duplicate product ID " + request.getProductId());
+            }
+        }
+    }
+
+    private void validateRuleFields(DynamicRuleRequest request) {
         if (request.getProductName() == null || request.getProductName().trim().isEmpty()) {
             throw new IllegalArgumentException("Product name is required");
         }
@@ -212,10 +445,5 @@ public class DynamicRuleService {
         if (request.getRule() == null || request.getRule().isEmpty()) {
             throw new IllegalArgumentException("Rule must contain at least one query");
         }
-
-        // Проверяем уникальность productId
-        if (dynamicRuleRepository.existsByProductId(request.getProductId())) {
-            throw new IllegalArgumentException("Rule for this product already exists");
-        }
     }
 }
@@ -0,0 +1,279 @@
+package pro.sky.bank.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import pro.sky.bank.engine.AudienceIndex;
+import pro.sky.bank.engine.RuleCatalog;
+import pro.sky.bank.repository.BankUserDirectory;
+import pro.sky.bank.repository.ProductUsageFilter;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая проверка состояния приложения.
+ * <p>
+ * С интервалом {@code application.health.probe-interval-ms} в отдельном потоке выполняется
+ * {@code SELECT 1}, снимается заполненность пулов соединений и готовность кэшей и каталога правил;
+ * результат публикуется снимком в {@code volatile}-поле. Эндпоинты здоровья читают только снимок
+ * и не обращаются к базе. Наличие ключевых таблиц проверяется, пока все они не будут найдены.
+ * </p>
+ * <p>
+ * Живость не зависит от базы: отдельный поток обновляет отметку пульса, и приложение считается живым,
+ * пока отметка моложе {@code application.health.stale-after-ms}. Запрос к базе может ждать соединения
+ * из пула до {@code connectionTimeout} Hikari (30 секунд по умолчанию, столько же, сколько
+ * {@code stale-after-ms}), поэтому зависшая проверка базы не должна приводить к перезапуску приложения.
+ * Сами запросы проверок ограничены {@code application.health.query-timeout-ms}.
+ * </p>
+ * <p>
+ * Приложение готово принимать трафик, если снимок проверок свежий, последняя проверка базы успешна,
+ * ни один пул не насыщен, фильтры Блума выключены или уже строились, справочник пользователей загружен,
+ * а каталог правил прочитан.
+ * </p>
+ */
+@Slf4j
+@Component
+public class HealthProber {
+
+    private static final List<String> REQUIRED_TABLES = List.of("USERS", "PRODUCTS", "TRANSACTIONS");
+
+    private final JdbcTemplate probeTemplate;
+    private final Map<String, DataSource> dataSources;
+    private final RuleCatalog ruleCatalog;
+    private final ProductUsageFilter productUsageFilter;
+    private final BankUserDirectory userDirectory;
+    private final AudienceIndex audienceIndex;
+    private final long intervalMs;
+    private final long staleAfterMs;
+    private final double saturationRatio;
+    private final ScheduledExecutorService executor;
+    private final ScheduledExecutorService heartbeat;
+    private final long startedAt = System.currentTimeMillis();
+
+    private final Map<String, Boolean> tables = new LinkedHashMap<>();
+    private volatile Snapshot snapshot;
+    private volatile long heartbeatAt;
+
+    public HealthProber(JdbcTemplate jdbcTemplate,
+                        Map<String, DataSource> dataSources,
+                        RuleCatalog ruleCatalog,
+                        ProductUsageFilter productUsageFilter,
+                        BankUserDirectory userDirectory,
+                        AudienceIndex audienceIndex,
+                        @Value("${application.health.probe-interval-ms:5000}") long intervalMs,
+                        @Value("${application.health.stale-after-ms:30000}") long staleAfterMs,
+                        @Value("${application.health.pool-saturation-ratio:0.9}") double saturationRatio,
+                        @Value("${application.health.query-timeout-ms:2000}") long queryTimeoutMs) {
+        // Отдельный шаблон: таймаут проверок не должен распространяться на рабочие запросы
+        this.probeTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.probeTemplate.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(queryTimeoutMs)));
+        this.dataSources = dataSources;
+        this.ruleCatalog = ruleCatalog;
+        this.productUsageFilter = productUsageFilter;
+        this.userDirectory = userDirectory;
+        this.audienceIndex = audienceIndex;
+        this.intervalMs = intervalMs;
+        this.staleAfterMs = staleAfterMs;
+        this.saturationRatio = saturationRatio;
+        this.executor = daemonExecutor("health-prober");
+        this.heartbeat = daemonExecutor("health-heartbeat");
+        REQUIRED_TABLES.forEach(table -> tables.put(table, false));
+    }
+
+    /**
+     * Запускает проверки после старта приложения. Собственный поток не зависит от общего
+     * планировщика, занятого долгими задачами вроде сборки индекса аудиторий.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        heartbeat.scheduleAtFixedRate(() -> heartbeatAt = System.currentTimeMillis(),
+                0, intervalMs, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::probe, 0, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("Фоновые проверки состояния запущены с интервалом {} мс", intervalMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        heartbeat.shutdownNow();
+    }
+
+    public boolean isLive() {
+        long beat = heartbeatAt;
+        // До первого пульса живость отсчитывается от запуска, чтобы медленный старт не приводил к перезапуску
+        return System.currentTimeMillis() - (beat != 0 ? beat : startedAt) < staleAfterMs;
+    }
+
+    public boolean isReady() {
+        Snapshot current = snapshot;
+        // Снимок старше stale-after-ms означает, что проверка базы зависла
+        return current != null && current.ready()
+                && System.currentTimeMillis() - current.probedAt() < staleAfterMs && isLive();
+    }
+
+    /**
+     * @return статус живости, время последнего пульса и последней проверки.
+     */
+    public Map<String, Object> getLiveness() {
+        Snapshot current = snapshot;
+        long beat = heartbeatAt;
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", isLive() ? "UP" : "DOWN");
+        response.put("heartbeatAt", beat != 0 ? beat : null);
+        response.put("probedAt", current != null ? current.probedAt() : null);
+        response.put("uptimeMs", System.currentTimeMillis() - startedAt);
+        return response;
+    }
+
+    /**
+     * @return статус готовности с результатами последней проверки: база, пулы соединений,
+     *         прогрев кэшей и каталог правил.
+     */
+    public Map<String, Object> getReadiness() {
+        Snapshot current = snapshot;
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", isReady() ? "UP" : "DOWN");
+        if (current == null) {
+            response.put("reason", "Первая проверка еще не выполнена");
+            return response;
+        }
+        response.put("probedAt", current.probedAt());
+        response.putAll(current.details());
+        return response;
+    }
+
+    /**
+     * @return снимок в формате прежнего ответа {@code /api/health}.
+     */
+    public Map<String, Object> getSummary() {
+        Snapshot current = snapshot;
+        Map<String, Object> response = new HashMap<>();
+        response.put("service", "bank-recommendation-service");
+        response.put("status", "running");
+        response.put("timestamp", System.currentTimeMillis());
+        if (current != null) {
+            response.put("probedAt", current.probedAt());
+            response.put("database", current.details().get("database"));
+            response.put("tables", current.details().get("tables"));
+            response.put("ready", isReady());
+        }
+        return response;
+    }
+
+    private void probe() {
+        try {
+            Map<String, Object> details = new LinkedHashMap<>();
+            boolean databaseUp = probeDatabase(details);
+            boolean poolsAvailable = probePools(details);
+
+            Map<String, Object> warmup = new LinkedHashMap<>();
+            warmup.put("bloomFilters", productUsageFilter.isReady());
+            warmup.put("userDirectory", userDirectory.isReady());
+            warmup.put("audienceIndex", audienceIndex.isReady());
+            details.put("warmup", warmup);
+            boolean warm = productUsageFilter.isWarm() && userDirectory.isReady();
+
+            details.put("ruleCatalog", ruleCatalog.isLoaded() ? "loaded" : "loading");
+
+            boolean ready = databaseUp && poolsAvailable && warm && ruleCatalog.isLoaded();
+            Snapshot previous = snapshot;
+            if (previous != null && previous.ready() != ready) {
+                log.info("Готовность приложения изменилась: {} -> {}", previous.ready(), ready);
+            }
+            snapshot = new Snapshot(System.currentTimeMillis(), ready, details);
+        } catch (RuntimeException e) {
+            // Исключение остановило бы периодическую задачу, а вместе с ней и живость
+            log.warn("Ошибка фоновой проверки состояния: {}", e.getMessage());
+        }
+    }
+
+    private boolean probeDatabase(Map<String, Object> details) {
+        long start = System.nanoTime();
+        try {
+            Integer test = probeTemplate.queryForObject("SELECT 1", Integer.class);
+            details.put("database", Map.of(
+                    "status", "connected",
+                    "testResult", test,
+                    "latencyMs", (System.nanoTime() - start) / 1_000_000.0
+            ));
+        } catch (Exception e) {
+            details.put("database", Map.of(
+                    "status", "disconnected",
+                    "error", String.valueOf(e.getMessage())
+            ));
+            return false;
+        }
+
+        if (tables.containsValue(false)) {
+            for (Map.Entry<String, Boolean> table : tables.entrySet()) {
+                if (!table.getValue()) {
+                    try {
+                        Boolean exists = probeTemplate.queryForObject(
+                                "SELECT COUNT(*) > 0 FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?",
+                                Boolean.class,
+                                table.getKey());
+                        table.setValue(exists != null && exists);
+                    } catch (Exception e) {
+                        log.debug("Не удалось проверить таблицу {}: {}", table.getKey(), e.getMessage());
+                    }
+                }
+            }
+        }
+        details.put("tables", Map.copyOf(tables));
+        return true;
+    }
+
+    private boolean probePools(Map<String, Object> details) {
+        boolean available = true;
+        Map<String, Object> pools = new LinkedHashMap<>();
+        for (Map.Entry<String, DataSource> entry : dataSources.entrySet()) {
+            if (!(entry.getValue() instanceof HikariDataSource hikari)) {
+                continue;
+            }
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            if (pool == null) {
+                pools.put(entry.getKey(), Map.of("status", "not started"));
+                continue;
+            }
+            int active = pool.getActiveConnections();
+            int waiting = pool.getThreadsAwaitingConnection();
+            int max = hikari.getMaximumPoolSize();
+            boolean saturated = waiting > 0 || active >= max * saturationRatio;
+            available &= !saturated;
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("status", saturated ? "saturated" : "available");
+            stats.put("active", active);
+            stats.put("idle", pool.getIdleConnections());
+            stats.put("max", max);
+            stats.put("awaiting", waiting);
+            pools.put(entry.getKey(), stats);
+        }
+        details.put("pools", pools);
+        return available;
+    }
+
+    private static ScheduledExecutorService daemonExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private record Snapshot(long probedAt, boolean ready, Map<String, Object> details) {
+    }
+}
@@ -1,98 +1,142 @@
 package pro.sky.bank.service;
 
+import pro.sky.bank.engine.AudienceIndex;
+import pro.sky.bank.engine.RepositoryUserFacts;
+import pro.sky.bank.engine.RuleCatalog;
+import pro.sky.bank.engine.UserFacts;
+import pro.sky.bank.journal.DecisionJournal;
 import pro.sky.bank.model.dto.DynamicRuleResponse;
 import pro.sky.bank.model.Recommendation;
 import pro.sky.bank.model.RecommendationResponse;
-import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.monitoring.LatencyMonitor;
+import pro.sky.bank.repository.RecommendationsRepository;
 import pro.sky.bank.rules.RecommendationRule;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class RecommendationService {
 
     @Autowired
     private final List<RecommendationRule> staticRules;
-    private final DynamicRuleService dynamicRuleService;
-    private final RuleEvaluationService ruleEvaluationService;
+    private final RuleCatalog ruleCatalog;
+    private final RecommendationsRepository repository;
+    private final AudienceIndex audienceIndex;
+    private final RuleReachTracker reachTracker;
+    private final RuleStatisticService statisticService;
+    private final RuleTriggerTimeSeries timeSeries;
+    private final LatencyMonitor latencyMonitor;
+    private final DecisionJournal decisionJournal;
 
     /**
      * Генерирует персонализированный список рекомендаций для пользователя.
      * Алгоритм формирует итоговый список, объединяя результаты оценки двух типов правил:
      *   Статические правила: На основе заранее определенных классов, реализующих {@link RecommendationRule}.
-     *   Динамические правила:На основе правил, управляемых через {@link DynamicRuleService} и оцениваемых {@link RuleEvaluationService}.
+     *   Динамические правила:На основе правил из каталога {@link RuleCatalog}, оцениваемых скомпилированными
+     *   или интерпретируемыми {@link pro.sky.bank.engine.RuleMatcher}.
+     * Если аудитория правила уже построена в {@link AudienceIndex}, правило не вычисляется,
+     * а пользователь проверяется на принадлежность аудитории.
      * Каждое правило, условие которого выполняется для данного пользователя, порождает одну рекомендацию.
+     * Время вычисления каждого правила записывается в {@link LatencyMonitor}, решение по каждому
+     * правилу — в {@link DecisionJournal}.
      *
      * @param userId Уникальный идентификатор пользователя ({@link UUID}), для которого запрашиваются рекомендации.
      * @return {@link RecommendationResponse}, содержащий идентификатор пользователя и список объектов {@link Recommendation}.
      */
     public RecommendationResponse getRecommendations(UUID userId) {
         List<Recommendation> recommendations = new ArrayList<>();
+        AudienceIndex.UserAudience audience = audienceIndex.forUser(userId);
 
         // Добавляем статические рекомендации
-        recommendations.addAll(getStaticRecommendations(userId));
+        recommendations.addAll(getStaticRecommendations(userId, audience));
 
         // Добавляем динамические рекомендации
-        recommendations.addAll(getDynamicRecommendations(userId));
+        recommendations.addAll(getDynamicRecommendations(userId, audience));
 
-        System.out.println("Found " + recommendations.size() + " recommendations for user: " + userId);
+        log.debug("Found {} recommendations for user: {}", recommendations.size(), userId);
 
         // Создаем и возвращаем RecommendationResponse
         return new RecommendationResponse(userId.toString(), recommendations);
     }
 
-    private List<Recommendation> getStaticRecommendations(UUID userId) {
+    private List<Recommendation> getStaticRecommendations(UUID userId, AudienceIndex.UserAudience audience) {
         if (staticRules == null || staticRules.isEmpty()) {
-            System.out.println("No static rules found");
+            log.debug("No static rules found");
             return new ArrayList<>();
         }
 
-        return staticRules.stream()
-                .map(rule -> rule.getRecommendation(userId))
-                .filter(java.util.Optional::isPresent)
-                .map(java.util.Optional::get)
-                .collect(Collectors.toList());
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (RecommendationRule rule : staticRules) {
+            String name = rule.getClass().getSimpleName();
+            long start = System.nanoTime();
+            Boolean member = audience != null ? audience.matches(rule) : null;
+            boolean matched;
+            if (member == null) {
+                try {
+                    Optional<Recommendation> recommendation = rule.getRecommendation(userId);
+                    recommendation.ifPresent(recommendations::add);
+                    matched = recommendation.isPresent();
+                } finally {
+                    latencyMonitor.record(LatencyMonitor.Category.STATIC_RULE, name, start);
+                }
+            } else {
+                matched = member;
+                if (matched) {
+                    recommendations.add(rule.getProduct());
+                }
+            }
+            decisionJournal.recordRule(userId, name, true, matched, System.nanoTime() - start);
+        }
+        return recommendations;
     }
 
-    private List<Recommendation> getDynamicRecommendations(UUID userId) {
+    private List<Recommendation> getDynamicRecommendations(UUID userId, AudienceIndex.UserAudience audience) {
         List<Recommendation> recommendations = new ArrayList<>();
-
-        try {
-            // Получаем все динамические правила
-            List<DynamicRuleResponse> dynamicRules = dynamicRuleService.getAllRules();
-
-            for (DynamicRuleResponse rule : dynamicRules) {
-                if (evaluateDynamicRule(userId, rule)) {
-                    Recommendation recommendation = new Recommendation(
-                            rule.getProductId(),
-                            rule.getProductName(),
-                            rule.getProductText()
-                    );
-                    recommendations.add(recommendation);
-                    System.out.println("Dynamic rule matched for user: " + userId + ", product: " + rule.getProductName());
-                }
+        UserFacts facts = new RepositoryUserFacts(repository, userId);
+
+        for (RuleCatalog.Entry entry : ruleCatalog.getRules()) {
+            DynamicRuleResponse rule = entry.getRule();
+            long start = System.nanoTime();
+            boolean matched;
+            try {
+                Boolean member = audience != null ? audience.matches(rule) : null;
+                matched = member != null ? member : matches(entry, facts, start);
+            } catch (Exception e) {
+                // Ошибка одного правила не должна лишать пользователя остальных рекомендаций
+                log.warn("Error evaluating rule {} for user {}: {}", rule.getProductId(), userId, e.getMessage());
+                continue;
+            }
+            decisionJournal.recordRule(userId, rule.getProductId(), false, matched, System.nanoTime() - start);
+            if (matched) {
+                Recommendation recommendation = new Recommendation(
+                        rule.getProductId(),
+                        rule.getProductName(),
+                        rule.getProductText()
+                );
+                recommendations.add(recommendation);
+                reachTracker.record(rule.getProductId(), userId);
+                statisticService.recordMatches(rule.getProductId(), rule.getProductName(), 1);
+                timeSeries.record(rule.getProductId());
             }
-        } catch (Exception e) {
-            System.err.println("Error getting dynamic recommendations: " + e.getMessage());
         }
 
         return recommendations;
     }
 
-    private boolean evaluateDynamicRule(UUID userId, DynamicRuleResponse rule) {
-        // Правило выполняется, если все его запросы возвращают true
-        for (RuleQuery query : rule.getRule()) {
-            if (!ruleEvaluationService.evaluateQuery(userId, query)) {
-                return false;
-            }
+    private boolean matches(RuleCatalog.Entry entry, UserFacts facts, long start) {
+        try {
+            return entry.getMatcher().matches(facts);
+        } finally {
+            latencyMonitor.record(LatencyMonitor.Category.RULE, entry.getRule().getProductId(), start);
         }
-        return true;
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,16 @@
 package pro.sky.bank.service;
 
+import pro.sky.bank.journal.DecisionJournal;
 import pro.sky.bank.model.dto.RuleQuery;
 import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.monitoring.LatencyMonitor;
 import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.util.Money;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 @Service
@@ -19,33 +21,39 @@ public class RuleEvaluationService {
     private final RecommendationsRepository repository;
     private final RuleStatisticService statisticService;
     private final DynamicRuleService dynamicRuleService;
+    private final RuleReachTracker reachTracker;
+    private final RuleTriggerTimeSeries timeSeries;
+    private final LatencyMonitor latencyMonitor;
+    private final DecisionJournal decisionJournal;
     /**
      * Выполняет оценку одного запроса ({@link RuleQuery}) в контексте конкретного пользователя.
      * Это ключевой метод для проверки бизнес-условий. Помимо вычисления результата, метод:
      *   Учитывает флаг {@code negate} в запросе для инверсии результата.
-     *   Собирает статистику срабатывания через {@link RuleStatisticService}.
+     *   Записывает решение в {@link DecisionJournal}.
      *   Обеспечивает логирование и обработку ошибок.
      * Метод выполняется в транзакции.
      *
      * @param userId Уникальный идентификатор пользователя ({@link UUID}), для которого оценивается запрос.
+     * @param productId productId правила, которому принадлежит запрос; записывается в журнал решений.
      * @param ruleQuery Объект {@link RuleQuery}, содержащий тип, аргументы и флаг отрицания оцениваемого условия.
      * @return {@code true} если условие запроса выполняется (с учетом флага {@code negate}),
      *         {@code false} в противном случае или в случае ошибки.
      */
     @Transactional
-    public boolean evaluateQuery(UUID userId, RuleQuery ruleQuery) {
+    public boolean evaluateQuery(UUID userId, String productId, RuleQuery ruleQuery) {
 
         try {
+            long start = System.nanoTime();
             boolean result = evaluateQueryInternal(userId, ruleQuery);
 
             // Применяем отрицание если нужно
-            if (Boolean.TRUE.equals(ruleQuery.getNegate())) {
+            boolean negated = Boolean.TRUE.equals(ruleQuery.getNegate());
+            if (negated) {
                 result = !result;
             }
 
-            collectStatistics(ruleQuery, result);
-
-            log.info("Query evaluated: userId={}, query={}, result={}", userId, ruleQuery.getQuery(), result);
+            decisionJournal.recordQuery(userId, productId, ruleQuery.getQuery(), negated, result,
+                    System.nanoTime() - start);
             return result;
 
         } catch (Exception e) {
@@ -55,28 +63,17 @@ public class RuleEvaluationService {
     }
 
 
-    private void collectStatistics(RuleQuery ruleQuery, boolean evaluationResult) {
+    private boolean evaluateQueryInternal(UUID userId, RuleQuery ruleQuery) {
+        RuleQuery.QueryType queryType = RuleQuery.QueryType.valueOf(ruleQuery.getQuery());
+        long start = System.nanoTime();
         try {
-            Long ruleId = ruleQuery.getRuleId();
-            String productId = ruleQuery.getProductId();
-            String productName = ruleQuery.getProductName();
-
-            if (productId != null && productName != null) {
-                // Увеличиваем счетчик срабатываний
-                statisticService.incrementTrigger(productId, productName);
-
-                log.debug("Statistics collected for rule: {}, productId: {}, result: {}",
-                        ruleId, productId, evaluationResult);
-            }
-        } catch (Exception e) {
-            log.warn("Failed to collect statistics: {}", e.getMessage());
+            return evaluateQueryType(userId, queryType, ruleQuery.getArguments());
+        } finally {
+            latencyMonitor.record(LatencyMonitor.Category.QUERY_TYPE, queryType.name(), start);
         }
     }
 
-    private boolean evaluateQueryInternal(UUID userId, RuleQuery ruleQuery) {
-        RuleQuery.QueryType queryType = RuleQuery.QueryType.valueOf(ruleQuery.getQuery());
-        var arguments = ruleQuery.getArguments();
-
+    private boolean evaluateQueryType(UUID userId, RuleQuery.QueryType queryType, java.util.List<String> arguments) {
         switch (queryType) {
             case USER_OF:
                 return evaluateUserOf(userId, arguments.get(0));
@@ -107,9 +104,9 @@ public class RuleEvaluationService {
         String productType = arguments.get(0);
         String transactionType = arguments.get(1);
         String operator = arguments.get(2);
-        BigDecimal threshold = new BigDecimal(arguments.get(3));
+        long threshold = Money.parse(arguments.get(3));
 
-        BigDecimal sum = repository.getTransactionSumByProductTypeAndTransactionType(
+        long sum = repository.getTransactionSumByProductTypeAndTransactionType(
                 userId, productType, transactionType);
 
         return compareValues(sum, threshold, operator);
@@ -119,26 +116,26 @@ public class RuleEvaluationService {
         String productType = arguments.get(0);
         String operator = arguments.get(1);
 
-        BigDecimal deposits = repository.getTotalDepositsByProductType(userId, productType);
-        BigDecimal expenses = repository.getTotalExpensesByProductType(userId, productType);
+        long deposits = repository.getTotalDepositsByProductType(userId, productType);
+        long expenses = repository.getTotalExpensesByProductType(userId, productType);
 
         return compareValues(deposits, expenses, operator);
     }
 
-    private boolean compareValues(BigDecimal value1, BigDecimal value2, String operator) {
+    private boolean compareValues(long value1, long value2, String operator) {
         RuleQuery.ComparisonOperator op = RuleQuery.ComparisonOperator.fromSymbol(operator);
 
         switch (op) {
             case GREATER:
-                return value1.compareTo(value2) > 0;
+                return value1 > value2;
             case LESS:
-                return value1.compareTo(value2) < 0;
+                return value1 < value2;
             case EQUAL:
-                return value1.compareTo(value2) == 0;
+                return value1 == value2;
             case GREATER_EQUAL:
-                return value1.compareTo(value2) >= 0;
+                return value1 >= value2;
             case LESS_EQUAL:
-                return value1.compareTo(value2) <= 0;
+                return value1 <= value2;
             default:
                 throw new IllegalArgumentException("Unknown operator: " + operator);
         }
@@ -147,6 +144,7 @@ public class RuleEvaluationService {
        @Transactional
     public boolean evaluateFullRule(UUID userId, DynamicRuleResponse rule) {
         try {
+            long start = System.nanoTime();
             boolean finalResult = true; // Начальное значение для AND логики
 
             if (rule.getRule() != null && !rule.getRule().isEmpty()) {
@@ -154,7 +152,7 @@ public class RuleEvaluationService {
                     // Устанавливаем ruleId для каждого запроса
                     query.setRuleId(rule.getId());
 
-                    boolean queryResult = evaluateQuery(userId, query);
+                    boolean queryResult = evaluateQuery(userId, rule.getProductId(), query);
 
                     // Предполагаем AND логику между запросами
                     finalResult = finalResult && queryResult;
@@ -166,11 +164,14 @@ public class RuleEvaluationService {
                 }
             }
 
-            // Собираем финальную статистику для всего правила
-            statisticService.incrementTrigger(rule.getProductId(), rule.getProductName());
+            // Статистика ведется по правилу целиком и только по срабатываниям
+            if (finalResult) {
+                statisticService.incrementTrigger(rule.getProductId(), rule.getProductName());
+                timeSeries.record(rule.getProductId());
+                reachTracker.record(rule.getProductId(), userId);
+            }
 
-            log.info("Full rule evaluated: ruleId={}, productId={}, result={}",
-                    rule.getId(), rule.getProductId(), finalResult);
+            decisionJournal.recordRule(userId, rule.getProductId(), false, finalResult, System.nanoTime() - start);
 
             return finalResult;
 
@@ -192,7 +193,7 @@ public class RuleEvaluationService {
                     .filter(rule -> evaluateFullRule(userId, rule))
                     .toList();
 
-            log.info("Rules evaluated for user: userId={}, totalRules={}, applicableRules={}",
+            log.debug("Rules evaluated for user: userId={}, totalRules={}, applicableRules={}",
                     userId, allRules.size(), applicableRules.size());
 
             return applicableRules;
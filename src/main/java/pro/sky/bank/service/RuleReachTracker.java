@@ -0,0 +1,209 @@
+package pro.sky.bank.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pro.sky.bank.repository.RuleReachSketchRepository;
+import pro.sky.bank.util.HyperLogLog;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Охват правил — приблизительное число различных пользователей, которым правило подошло.
+ * <p>
+ * Для каждого правила, которое подошло кому-то на этом узле, в памяти держатся два скетча
+ * {@link HyperLogLog}: за все время и за текущие сутки (UTC). Скетчи начинаются пустыми, без чтения
+ * базы; измененные скетчи периодически сливаются с сохраненными в {@code rule_reach_sketches}
+ * (поэлементный максимум) и записываются обратно. Повторная запись того же скетча ничего не меняет,
+ * поэтому узлы пишут свои скетчи независимо, а охват за окно из нескольких суток считается
+ * объединением суточных скетчей. Суточные скетчи хранятся {@code application.rules.reach.daily-retention-days}
+ * суток; более длинные окна обрезаются до этого срока.
+ * </p>
+ * <p>
+ * Чтение охвата правила, которого нет в памяти или которое еще не сливалось с базой, читает
+ * сохраненный скетч, но не создает для правила записи в памяти.
+ * </p>
+ */
+@Service
+public class RuleReachTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(RuleReachTracker.class);
+
+    private final RuleReachSketchRepository sketchRepository;
+    private final int dailyRetentionDays;
+
+    private final Map<String, Reach> reaches = new ConcurrentHashMap<>();
+    private volatile LocalDate retentionAppliedDay;
+
+    public RuleReachTracker(RuleReachSketchRepository sketchRepository,
+                            @Value("${application.rules.reach.daily-retention-days:30}") int dailyRetentionDays) {
+        this.sketchRepository = sketchRepository;
+        this.dailyRetentionDays = dailyRetentionDays;
+    }
+
+    /**
+     * Учитывает, что правило подошло пользователю.
+     */
+    public void record(String productId, UUID userId) {
+        Reach reach = reaches.get(productId);
+        if (reach == null) {
+            reach = reaches.computeIfAbsent(productId, id -> new Reach(today()));
+        }
+        reach.add(userId, today());
+    }
+
+    /**
+     * @return оценка числа различных пользователей, которым правило подошло за все время.
+     */
+    public long getUniqueUsers(String productId) {
+        Reach reach = reaches.get(productId);
+        if (reach != null && reach.synced) {
+            return reach.allTime.estimate();
+        }
+        HyperLogLog allTime = sketchRepository.findMerged(productId, List.of(RuleReachSketchRepository.ALL_TIME));
+        if (reach != null) {
+            allTime.merge(reach.allTime);
+        }
+        return allTime.estimate();
+    }
+
+    /**
+     * @param days длина окна в сутках, включая текущие; не больше срока хранения суточных скетчей.
+     * @return оценка числа различных пользователей, которым правило подошло за окно.
+     */
+    public long getUniqueUsers(String productId, int days) {
+        LocalDate today = today();
+        int window = Math.min(days, dailyRetentionDays);
+        List<String> periods = new ArrayList<>(window);
+        for (int i = 0; i < window; i++) {
+            periods.add(today.minusDays(i).toString());
+        }
+        HyperLogLog sketch = sketchRepository.findMerged(productId, periods);
+        Reach reach = reaches.get(productId);
+        if (reach != null) {
+            for (Day day : reach.unflushedDays()) {
+                if (periods.contains(day.date().toString())) {
+                    sketch.merge(day.sketch());
+                }
+            }
+        }
+        return sketch.estimate();
+    }
+
+    /**
+     * Сливает измененные скетчи с сохраненными.
+     */
+    @Scheduled(initialDelayString = "${application.rules.reach.flush-interval-ms:60000}",
+            fixedDelayString = "${application.rules.reach.flush-interval-ms:60000}")
+    public synchronized void flush() {
+        int flushed = 0;
+        for (Map.Entry<String, Reach> entry : reaches.entrySet()) {
+            Reach reach = entry.getValue();
+            if (!reach.dirty.getAndSet(false)) {
+                continue;
+            }
+            try {
+                reach.allTime.merge(sketchRepository.mergeAndSave(entry.getKey(),
+                        RuleReachSketchRepository.ALL_TIME, reach.allTime));
+                reach.synced = true;
+                // Сохраненный суточный скетч в память не сливается: окна читаются из базы
+                for (Day day : reach.unflushedDays()) {
+                    sketchRepository.mergeAndSave(entry.getKey(), day.date().toString(), day.sketch());
+                }
+                reach.previous = null;
+                flushed++;
+            } catch (RuntimeException e) {
+                reach.dirty.set(true);
+                log.warn("Не удалось сохранить охват правила {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        if (flushed > 0) {
+            log.debug("Сохранен охват правил: {}", flushed);
+        }
+        applyRetention();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void applyRetention() {
+        LocalDate today = today();
+        if (today.equals(retentionAppliedDay)) {
+            return;
+        }
+        try {
+            sketchRepository.deleteDailyBefore(today.minusDays(dailyRetentionDays - 1L).toString());
+            retentionAppliedDay = today;
+        } catch (RuntimeException e) {
+            log.warn("Не удалось удалить устаревшие скетчи охвата: {}", e.getMessage());
+        }
+    }
+
+    private static LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    private record Day(LocalDate date, HyperLogLog sketch) {
+    }
+
+    /**
+     * Скетчи одного правила.
+     */
+    private static final class Reach {
+        private final HyperLogLog allTime = new HyperLogLog();
+        private final AtomicBoolean dirty = new AtomicBoolean();
+        /**
+         * Скетч за все время уже слит с сохраненным и сам по себе дает полную оценку.
+         */
+        private volatile boolean synced;
+        private volatile Day current;
+        /**
+         * Прошедшие сутки, еще не записанные после смены даты.
+         */
+        private volatile Day previous;
+
+        private Reach(LocalDate today) {
+            this.current = new Day(today, new HyperLogLog());
+        }
+
+        void add(UUID userId, LocalDate today) {
+            Day day = current;
+            if (!day.date().equals(today)) {
+                day = rollOver(today);
+            }
+            boolean changed = allTime.add(userId);
+            changed |= day.sketch().add(userId);
+            if (changed) {
+                dirty.set(true);
+            }
+        }
+
+        private synchronized Day rollOver(LocalDate today) {
+            Day day = current;
+            if (!day.date().equals(today)) {
+                previous = day;
+                day = new Day(today, new HyperLogLog());
+                current = day;
+                dirty.set(true);
+            }
+            return day;
+        }
+
+        List<Day> unflushedDays() {
+            Day before = previous;
+            return before == null ? List.of(current) : List.of(before, current);
+        }
+    }
+}
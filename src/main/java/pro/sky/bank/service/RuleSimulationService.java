@@ -0,0 +1,328 @@
+package pro.sky.bank.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.sky.bank.engine.ColumnBits;
+import pro.sky.bank.engine.ColumnarRuleEvaluator;
+import pro.sky.bank.engine.UserFactColumns;
+import pro.sky.bank.exception.RuleValidationException;
+import pro.sky.bank.model.dto.DynamicRuleRequest;
+import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.model.dto.RuleSimulationResponse;
+import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.util.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пробный прогон правила-кандидата по пользователям до его создания.
+ * <p>
+ * Пользователи разбиваются на партиции, которые параллельно загружаются в колонки
+ * {@link UserFactColumns} и оцениваются {@link ColumnarRuleEvaluator}. Прогон ограничен бюджетом
+ * времени: по его истечении возвращается частичный результат. Статистика срабатываний
+ * при этом не пишется, а каталог правил не меняется.
+ * </p>
+ */
+@Service
+@Slf4j
+public class RuleSimulationService {
+
+    private final RecommendationsRepository repository;
+    private final ColumnarRuleEvaluator columnarEvaluator;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    @Value("${application.rules.simulation.partition-size:2048}")
+    private int partitionSize;
+
+    @Value("${application.rules.simulation.default-time-budget-ms:5000}")
+    private long defaultTimeBudgetMs;
+
+    @Value("${application.rules.simulation.max-time-budget-ms:60000}")
+    private long maxTimeBudgetMs;
+
+    @Value("${application.rules.simulation.sample-user-ids:20}")
+    private int sampleUserIdsLimit;
+
+    public RuleSimulationService(RecommendationsRepository repository,
+                                 ColumnarRuleEvaluator columnarEvaluator,
+                                 @Value("${application.rules.simulation.parallelism:4}") int parallelism) {
+        this.repository = repository;
+        this.columnarEvaluator = columnarEvaluator;
+        this.parallelism = parallelism;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "rule-simulation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Оценивает правило-кандидат по всем пользователям или по случайной выборке.
+     *
+     * @param request    правило-кандидат; используется только поле {@code rule}.
+     * @param sampleSize размер случайной выборки (reservoir sampling) или {@code null} для всех пользователей.
+     * @param budgetMs   бюджет времени в миллисекундах или {@code null} для значения по умолчанию.
+     * @return количество оцененных и подошедших пользователей, долю и примеры подошедших.
+     * @throws RuleValidationException если правило или параметры прогона некорректны.
+     */
+    public RuleSimulationResponse simulate(DynamicRuleRequest request, Integer sampleSize, Long budgetMs) {
+        List<RuleQuery> queries = validateQueries(request);
+        if (sampleSize != null && sampleSize < 1) {
+            throw new RuleValidationException("Sample size must be positive");
+        }
+
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + TimeUnit.MILLISECONDS.toNanos(resolveBudget(budgetMs));
+
+        Simulation simulation = new Simulation(queries, deadline);
+        if (sampleSize != null) {
+            simulation.runOnSample(sampleSize);
+        } else {
+            simulation.runOnAllUsers();
+        }
+
+        RuleSimulationResponse response = new RuleSimulationResponse();
+        response.setEvaluatedUsers(simulation.evaluated);
+        response.setMatchedUsers(simulation.matched);
+        response.setMatchRate(simulation.evaluated == 0 ? 0.0 : (double) simulation.matched / simulation.evaluated);
+        response.setSampleUserIds(simulation.sampleUserIds);
+        response.setSampled(sampleSize != null);
+        response.setComplete(simulation.complete);
+        response.setElapsedMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+
+        log.info("Rule simulation: evaluated {}, matched {}, complete {}, {} ms",
+                response.getEvaluatedUsers(), response.getMatchedUsers(),
+                response.isComplete(), response.getElapsedMs());
+        return response;
+    }
+
+    private long resolveBudget(Long budgetMs) {
+        if (budgetMs == null) {
+            return defaultTimeBudgetMs;
+        }
+        if (budgetMs < 1) {
+            throw new RuleValidationException("Time budget must be positive");
+        }
+        return Math.min(budgetMs, maxTimeBudgetMs);
+    }
+
+    private List<RuleQuery> validateQueries(DynamicRuleRequest request) {
+        if (request == null || request.getRule() == null || request.getRule().isEmpty()) {
+            throw new RuleValidationException("Rule must contain at least one query");
+        }
+
+        List<RuleQuery> queries = request.getRule();
+        for (int i = 0; i < queries.size(); i++) {
+            try {
+                validateQuery(queries.get(i));
+            } catch (RuntimeException e) {
+                throw new RuleValidationException("Query #" + i + ": " + e.getMessage(), e);
+            }
+        }
+        return queries;
+    }
+
+    private void validateQuery(RuleQuery query) {
+        RuleQuery.QueryType queryType = RuleQuery.QueryType.valueOf(query.getQuery());
+        List<String> arguments = query.getArguments();
+        int expectedArguments = switch (queryType) {
+            case USER_OF, ACTIVE_USER_OF -> 1;
+            case TRANSACTION_SUM_COMPARE -> 4;
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> 2;
+        };
+        if (arguments == null || arguments.size() != expectedArguments) {
+            throw new IllegalArgumentException(queryType + " expects " + expectedArguments + " arguments");
+        }
+        if (queryType == RuleQuery.QueryType.TRANSACTION_SUM_COMPARE) {
+            RuleQuery.ComparisonOperator.fromSymbol(arguments.get(2));
+            Money.parse(arguments.get(3));
+        } else if (queryType == RuleQuery.QueryType.TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW) {
+            RuleQuery.ComparisonOperator.fromSymbol(arguments.get(1));
+        }
+    }
+
+    /**
+     * Состояние одного прогона. Партиции читаются последовательно в вызывающем потоке
+     * и оцениваются в пуле; одновременно в работе не больше {@code 2 * parallelism} партиций.
+     */
+    private class Simulation {
+
+        private final List<RuleQuery> queries;
+        private final long deadline;
+        private final CompletionService<PartitionResult> completionService =
+                new ExecutorCompletionService<>(executor);
+        private final List<Future<PartitionResult>> pending = new ArrayList<>();
+
+        private long evaluated;
+        private long matched;
+        private final List<UUID> sampleUserIds = new ArrayList<>();
+        private boolean complete = true;
+
+        Simulation(List<RuleQuery> queries, long deadline) {
+            this.queries = queries;
+            this.deadline = deadline;
+        }
+
+        void runOnAllUsers() {
+            UUID lastId = null;
+            while (!isExpired()) {
+                List<UUID> partition = repository.findUserIdsAfter(lastId, partitionSize);
+                if (partition.isEmpty()) {
+                    awaitAll();
+                    return;
+                }
+                submit(partition);
+                lastId = partition.get(partition.size() - 1);
+            }
+            cancelPending();
+        }
+
+        void runOnSample(int sampleSize) {
+            List<UUID> reservoir = new ArrayList<>(Math.min(sampleSize, partitionSize));
+            long[] seen = {0};
+            boolean scanned = repository.forEachUserId(userId -> {
+                long index = seen[0]++;
+                if (reservoir.size() < sampleSize) {
+                    reservoir.add(userId);
+                } else {
+                    long slot = ThreadLocalRandom.current().nextLong(index + 1);
+                    if (slot < sampleSize) {
+                        reservoir.set((int) slot, userId);
+                    }
+                }
+                return (index & 0xFFF) != 0 || !isExpired();
+            });
+            if (!scanned) {
+                // Выборка набрана только из части пользователей и может быть смещена
+                complete = false;
+            }
+
+            for (int from = 0; from < reservoir.size() && !isExpired(); from += partitionSize) {
+                submit(reservoir.subList(from, Math.min(from + partitionSize, reservoir.size())));
+            }
+            if (isExpired()) {
+                cancelPending();
+            } else {
+                awaitAll();
+            }
+        }
+
+        private void submit(List<UUID> partition) {
+            while (pending.size() >= parallelism * 2) {
+                if (!awaitOne()) {
+                    return;
+                }
+            }
+            pending.add(completionService.submit(() -> evaluatePartition(queries, partition)));
+        }
+
+        private void awaitAll() {
+            while (!pending.isEmpty()) {
+                if (!awaitOne()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Ждет завершения одной партиции, но не дольше оставшегося бюджета.
+         *
+         * @return {@code false}, если бюджет исчерпан.
+         */
+        private boolean awaitOne() {
+            try {
+                Future<PartitionResult> future = completionService.poll(
+                        deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (future == null) {
+                    cancelPending();
+                    return false;
+                }
+                pending.remove(future);
+                merge(future.get());
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelPending();
+                return false;
+            } catch (ExecutionException e) {
+                cancelPending();
+                throw new IllegalStateException("Rule simulation failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        private void merge(PartitionResult result) {
+            evaluated += result.evaluated();
+            matched += result.matched();
+            for (UUID userId : result.matchedUserIds()) {
+                if (sampleUserIds.size() >= sampleUserIdsLimit) {
+                    break;
+                }
+                sampleUserIds.add(userId);
+            }
+        }
+
+        /**
+         * Учитывает уже готовые партиции и отменяет остальные.
+         */
+        private void cancelPending() {
+            for (Future<PartitionResult> future : pending) {
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        merge(future.get());
+                    } catch (InterruptedException | ExecutionException e) {
+                        complete = false;
+                    }
+                } else {
+                    future.cancel(true);
+                    complete = false;
+                }
+            }
+            pending.clear();
+        }
+
+        private boolean isExpired() {
+            if (System.nanoTime() - deadline >= 0) {
+                complete = false;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private PartitionResult evaluatePartition(List<RuleQuery> queries, List<UUID> partition) {
+        UserFactColumns columns = repository.loadFactColumns(partition);
+        long[] matches = columnarEvaluator.evaluate(queries, columns);
+
+        List<UUID> matchedUserIds = new ArrayList<>();
+        ColumnBits.forEach(matches, index -> {
+            if (matchedUserIds.size() < sampleUserIdsLimit) {
+                matchedUserIds.add(columns.getUserId(index));
+            }
+        });
+        return new PartitionResult(columns.size(), ColumnBits.cardinality(matches), matchedUserIds);
+    }
+
+    private record PartitionResult(int evaluated, int matched, List<UUID> matchedUserIds) {
+    }
+}
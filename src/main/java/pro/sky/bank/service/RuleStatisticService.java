@@ -1,16 +1,40 @@
 package pro.sky.bank.service;
 
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pro.sky.bank.engine.RuleCatalog;
 import pro.sky.bank.model.dto.DynamicRuleRequest;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.entity.DynamicRule;
 import pro.sky.bank.model.dto.RuleQuery;
 import pro.sky.bank.model.entity.RuleStatistic;
+import pro.sky.bank.model.event.RuleCatalogChangedEvent;
 import pro.sky.bank.repository.RuleStatisticRepository;
+import pro.sky.bank.util.TopK;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 /**
  * Сервис для сбора и управления статистикой срабатываний бизнес-правил.
  * <p>
@@ -22,21 +46,54 @@ import java.util.Map;
  * Этот сервис является ключевым для мониторинга активности правил и формирования аналитики,
  * доступной через REST API (например, по пути {@code /rule/stats}).
  * </p>
+ * <p>
+ * Таблица {@code rule_statistics} читается один раз при первом обращении; дальше счетчики,
+ * итоги и топ правил поддерживаются в памяти и меняются после фиксации транзакции, записавшей
+ * изменение в базу. Поэтому общая статистика строится за {@code O(K)} независимо от числа правил.
+ * </p>
+ * <p>
+ * Срабатывания при выдаче рекомендаций ({@link #recordMatches(String, String, long)}) сразу меняют
+ * счетчики в памяти, а в базу сбрасываются пачкой раз в {@code application.rules.stats.flush-interval-ms}.
+ * Удаленные и деактивированные правила (в том числе на других узлах, по {@link RuleCatalogChangedEvent})
+ * убираются из топа.
+ * </p>
  *
  * @see DynamicRuleService#createRule(DynamicRuleRequest)
  * @see DynamicRuleService#deleteRule(String)
  */
 @Service
 @Transactional
+@Slf4j
 public class RuleStatisticService {
 
     private final RuleStatisticRepository statisticRepository;
     private final DynamicRuleService dynamicRuleService;
+    private final RuleReachTracker reachTracker;
+    private final ObjectProvider<RuleCatalog> ruleCatalog;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Несброшенные в базу срабатывания: productId -> число.
+     */
+    private final Map<String, Long> pendingTriggers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final TopK<String> topRules;
+    private final AtomicLong totalTriggers = new AtomicLong();
+    private final AtomicLong activeStatistics = new AtomicLong();
+    private volatile boolean loaded;
 
     public RuleStatisticService(RuleStatisticRepository statisticRepository,
-                                DynamicRuleService dynamicRuleService) {
+                                DynamicRuleService dynamicRuleService,
+                                RuleReachTracker reachTracker,
+                                ObjectProvider<RuleCatalog> ruleCatalog,
+                                @Qualifier("rulesTransactionManager") PlatformTransactionManager transactionManager,
+                                @Value("${application.rules.stats.top-size:10}") int topSize) {
         this.statisticRepository = statisticRepository;
         this.dynamicRuleService = dynamicRuleService;
+        this.reachTracker = reachTracker;
+        this.ruleCatalog = ruleCatalog;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.topRules = new TopK<>(topSize);
     }
 
     /**
@@ -68,7 +125,105 @@ public class RuleStatisticService {
             statistic.setProductName(productName);
         }
 
-        statisticRepository.incrementTriggerCount(productId, LocalDateTime.now());
+        LocalDateTime triggerTime = LocalDateTime.now();
+        statisticRepository.incrementTriggerCount(productId, triggerTime);
+        afterCommit(() -> {
+            Counter counter = counterFor(productId, productName);
+            counter.productName = productName;
+            counter.lastTriggered = triggerTime;
+            long count = counter.count.incrementAndGet();
+            totalTriggers.incrementAndGet();
+            if (counter.active.get()) {
+                topRules.update(productId, count);
+            }
+        });
+    }
+
+    /**
+     * Учитывает срабатывания правила при выдаче рекомендаций. Без транзакции и обращения к базе
+     * (кроме первой загрузки статистики): счетчик, итог и топ меняются в памяти сразу,
+     * запись в базу откладывается до {@link #flushTriggers()}.
+     *
+     * @param matches число пользователей, для которых правило сработало.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void recordMatches(String productId, String productName, long matches) {
+        if (matches <= 0) {
+            return;
+        }
+        ensureLoaded();
+        Counter counter = counterFor(productId, productName);
+        counter.lastTriggered = LocalDateTime.now();
+        long count = counter.count.addAndGet(matches);
+        totalTriggers.addAndGet(matches);
+        if (counter.active.get()) {
+            topRules.update(productId, count);
+        }
+        pendingTriggers.merge(productId, matches, Long::sum);
+    }
+
+    /**
+     * Сбрасывает накопленные срабатывания в базу одной транзакцией. Из буфера вычитается только
+     * записанное и только после фиксации, поэтому при ошибке срабатывания будут записаны следующим сбросом.
+     */
+    @Scheduled(fixedDelayString = "${application.rules.stats.flush-interval-ms:10000}",
+            initialDelayString = "${application.rules.stats.flush-interval-ms:10000}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void flushTriggers() {
+        if (pendingTriggers.isEmpty()) {
+            return;
+        }
+        Map<String, Long> flushed = new HashMap<>(pendingTriggers);
+        transactionTemplate.executeWithoutResult(status -> flushed.forEach((productId, delta) -> {
+            Counter counter = counters.get(productId);
+            LocalDateTime lastTriggered = counter != null && counter.lastTriggered != null
+                    ? counter.lastTriggered : LocalDateTime.now();
+            statisticRepository.addTriggerCount(productId, delta, lastTriggered);
+        }));
+        flushed.forEach((productId, delta) ->
+                pendingTriggers.computeIfPresent(productId, (id, pending) -> pending == delta.longValue() ? null : pending - delta));
+        log.debug("Flushed rule triggers for {} rules", flushed.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flushTriggers();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush rule triggers on shutdown: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Отражает в памяти изменения каталога, в том числе пришедшие с других узлов: удаленные правила
+     * деактивируются и уходят из топа, созданные — активируются. Запись в базу делает узел,
+     * изменивший каталог.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void onCatalogChanged(RuleCatalogChangedEvent event) {
+        if (!loaded) {
+            return;
+        }
+        if (event.isReplaceAll()) {
+            Set<String> current = new HashSet<>();
+            event.getCreatedRules().forEach(rule -> current.add(rule.getProductId()));
+            deactivateAll(productId -> !current.contains(productId));
+        } else {
+            event.getRemovedProductIds().forEach(this::deactivate);
+        }
+        for (DynamicRuleResponse rule : event.getCreatedRules()) {
+            activate(rule.getProductId(), rule.getProductName());
+        }
+    }
+
+    /**
+     * Отражает в памяти пакетную запись статистики новых правил
+     * ({@link pro.sky.bank.repository.RuleBatchRepository#upsertStatistics(List)}):
+     * статистика создается с нулевым счетчиком или повторно активируется.
+     */
+    public void registerRules(List<DynamicRule> rules) {
+        afterCommit(() -> rules.forEach(rule -> activate(rule.getProductId(), rule.getProductName())));
     }
 
     /**
@@ -83,69 +238,72 @@ public class RuleStatisticService {
      */
     public void deactivateStatistic(String productId) {
         statisticRepository.deactivateByProductId(productId);
+        afterCommit(() -> deactivate(productId));
+    }
+
+    /**
+     * Деактивирует статистику всех правил. Используется при полной замене каталога правил
+     * через {@link DynamicRuleService#replaceAllRules(List)}; статистика правил, вошедших
+     * в новый каталог, активируется заново при их вставке.
+     */
+    public void deactivateAllStatistics() {
+        statisticRepository.deactivateAll();
+        afterCommit(() -> deactivateAll(productId -> true));
     }
 
-    public Map<String, Object> getFullStatistics() {
+    /**
+     * Общая статистика по правилам: итоги и топ правил по числу срабатываний.
+     * {@code uniqueUsers} — оценка охвата правила ({@link RuleReachTracker}) с ошибкой около 1%.
+     *
+     * @param details добавить статистику каждого активного правила ({@code ruleStatistics});
+     *                без этого флага ответ не зависит от числа правил.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Map<String, Object> getFullStatistics(boolean details) {
+        ensureLoaded();
         Map<String, Object> stats = new HashMap<>();
 
-        var allRules = dynamicRuleService.getAllRules();
+        long totalTriggerCount = totalTriggers.get();
+        // Как и раньше, правила считаются по каталогу, а не по строкам статистики
+        int totalRules = ruleCatalog.getObject().getRules().size();
 
-        List<RuleStatistic> allStatistics = statisticRepository.findAll();
+        stats.put("totalRules", totalRules);
+        stats.put("activeRules", totalRules);
+        stats.put("rulesWithStatistics", counters.size());
+        stats.put("activeStatistics", activeStatistics.get());
+        stats.put("totalTriggerCount", totalTriggerCount);
+        stats.put("averageTriggersPerRule", totalRules == 0 ? 0 : (double) totalTriggerCount / totalRules);
+        stats.put("timestamp", LocalDateTime.now());
 
-        Map<String, RuleStatistic> statsMap = new HashMap<>();
-        allStatistics.forEach(stat -> statsMap.put(stat.getProductId(), stat));
+        List<Map<String, Object>> top = new ArrayList<>();
+        for (TopK.Entry<String> entry : topRules.snapshot()) {
+            Counter counter = counters.get(entry.key());
+            Map<String, Object> rule = new HashMap<>();
+            rule.put("productId", entry.key());
+            rule.put("productName", counter != null ? counter.productName : null);
+            rule.put("triggerCount", entry.count());
+            rule.put("lastTriggered", counter != null ? counter.lastTriggered : null);
+            rule.put("uniqueUsers", reachTracker.getUniqueUsers(entry.key()));
+            top.add(rule);
+        }
+        stats.put("topRules", top);
 
-        List<Map<String, Object>> ruleStats = allRules.stream()
-                .map(rule -> {
+        if (details) {
+            List<Map<String, Object>> ruleStats = new ArrayList<>();
+            counters.forEach((productId, counter) -> {
+                if (counter.active.get()) {
                     Map<String, Object> ruleStat = new HashMap<>();
-                    ruleStat.put("productId", rule.getProductId());
-                    ruleStat.put("productName", rule.getProductName());
-
-                    RuleStatistic stat = statsMap.get(rule.getProductId());
-                    if (stat != null) {
-                        ruleStat.put("triggerCount", stat.getTriggerCount());
-                        ruleStat.put("lastTriggered", stat.getLastTriggered());
-                        ruleStat.put("isActive", stat.getIsActive());
-                    } else {
-                        ruleStat.put("triggerCount", 0);
-                        ruleStat.put("lastTriggered", null);
-                        ruleStat.put("isActive", true);
-                    }
-
-                    return ruleStat;
-                })
-                .toList();
-
-        long totalTriggers = allStatistics.stream()
-                .mapToLong(RuleStatistic::getTriggerCount)
-                .sum();
-
-        long activeRules = allRules.size();
-        long activeStats = statisticRepository.countByIsActiveTrue();
-
-        stats.put("totalRules", allRules.size());
-        stats.put("activeRules", activeRules);
-        stats.put("rulesWithStatistics", allStatistics.size());
-        stats.put("activeStatistics", activeStats);
-        stats.put("totalTriggerCount", totalTriggers);
-        stats.put("averageTriggersPerRule", allRules.isEmpty() ? 0 : (double) totalTriggers / allRules.size());
-        stats.put("ruleStatistics", ruleStats);
-        stats.put("timestamp", LocalDateTime.now());
-
-        List<Map<String, Object>> topRules = statisticRepository.findAllOrderByTriggerCountDesc()
-                .stream()
-                .limit(10)
-                .map(stat -> {
-                    Map<String, Object> top = new HashMap<>();
-                    top.put("productId", stat.getProductId());
-                    top.put("productName", stat.getProductName());
-                    top.put("triggerCount", stat.getTriggerCount());
-                    top.put("lastTriggered", stat.getLastTriggered());
-                    return top;
-                })
-                .toList();
-
-        stats.put("topRules", topRules);
+                    ruleStat.put("productId", productId);
+                    ruleStat.put("productName", counter.productName);
+                    ruleStat.put("triggerCount", counter.count.get());
+                    ruleStat.put("lastTriggered", counter.lastTriggered);
+                    ruleStat.put("uniqueUsers", reachTracker.getUniqueUsers(productId));
+                    ruleStat.put("isActive", true);
+                    ruleStats.add(ruleStat);
+                }
+            });
+            stats.put("ruleStatistics", ruleStats);
+        }
 
         return stats;
     }
@@ -171,6 +329,8 @@ public class RuleStatisticService {
             result.put("lastTriggered", statistic.getLastTriggered());
             result.put("createdAt", statistic.getCreatedAt());
             result.put("isActive", statistic.getIsActive());
+            result.put("uniqueUsers", reachTracker.getUniqueUsers(productId));
+            result.put("uniqueUsersLast30Days", reachTracker.getUniqueUsers(productId, 30));
         } else {
             // Правило есть, но статистики нет = 0 срабатываний
             result.put("productId", productId);
@@ -181,4 +341,123 @@ public class RuleStatisticService {
 
         return result;
     }
+
+    /**
+     * Загружает статистику из базы в память. Выполняется один раз; изменения, зафиксированные
+     * до загрузки, уже видны в прочитанных строках.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            for (RuleStatistic statistic : statisticRepository.findAll()) {
+                Counter counter = new Counter(statistic.getProductName());
+                counter.count.set(statistic.getTriggerCount());
+                counter.lastTriggered = statistic.getLastTriggered();
+                counter.active.set(Boolean.TRUE.equals(statistic.getIsActive()));
+                counters.put(statistic.getProductId(), counter);
+
+                totalTriggers.addAndGet(statistic.getTriggerCount());
+                if (counter.active.get()) {
+                    activeStatistics.incrementAndGet();
+                    topRules.update(statistic.getProductId(), statistic.getTriggerCount());
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private Counter counterFor(String productId, String productName) {
+        return counters.computeIfAbsent(productId, id -> {
+            Counter counter = new Counter(productName);
+            counter.active.set(true);
+            activeStatistics.incrementAndGet();
+            return counter;
+        });
+    }
+
+    private void activate(String productId, String productName) {
+        Counter counter = counterFor(productId, productName);
+        counter.productName = productName;
+        if (counter.active.compareAndSet(false, true)) {
+            activeStatistics.incrementAndGet();
+            topRules.update(productId, counter.count.get());
+        }
+    }
+
+    private void deactivate(String productId) {
+        Counter counter = counters.get(productId);
+        if (counter != null && counter.active.compareAndSet(true, false)) {
+            activeStatistics.decrementAndGet();
+            if (topRules.remove(productId)) {
+                refillTop();
+            }
+        }
+    }
+
+    private void deactivateAll(Predicate<String> filter) {
+        boolean removed = false;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (filter.test(entry.getKey()) && entry.getValue().active.compareAndSet(true, false)) {
+                activeStatistics.decrementAndGet();
+                removed |= topRules.remove(entry.getKey());
+            }
+        }
+        if (removed) {
+            refillTop();
+        }
+    }
+
+    /**
+     * Освободившееся место в топе может занять любое активное правило, поэтому их значения
+     * сообщаются заново. Удаление правил редкое, полный проход допустим.
+     */
+    private void refillTop() {
+        counters.forEach((productId, counter) -> {
+            if (counter.active.get()) {
+                topRules.update(productId, counter.count.get());
+            }
+        });
+    }
+
+    /**
+     * Выполняет изменение счетчиков в памяти после фиксации текущей транзакции, чтобы откат не
+     * оставил в памяти изменения, которых нет в базе. До загрузки статистики изменения не нужны:
+     * они будут прочитаны из базы.
+     */
+    private void afterCommit(Runnable change) {
+        Runnable guarded = () -> {
+            if (loaded) {
+                change.run();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    guarded.run();
+                }
+            });
+        } else {
+            guarded.run();
+        }
+    }
+
+    /**
+     * Статистика одного правила в памяти.
+     */
+    private static final class Counter {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicBoolean active = new AtomicBoolean();
+        private volatile String productName;
+        private volatile LocalDateTime lastTriggered;
+
+        private Counter(String productName) {
+            this.productName = productName;
+        }
+    }
 }
@@ -0,0 +1,367 @@
+package pro.sky.bank.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pro.sky.bank.exception.RuleValidationException;
+import pro.sky.bank.model.entity.RuleTriggerBucket;
+import pro.sky.bank.model.entity.RuleTriggerBucket.Granularity;
+import pro.sky.bank.repository.RuleTriggerBucketRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Временные ряды срабатываний правил.
+ * <p>
+ * Каждое срабатывание увеличивает счетчик текущей минуты в кольцевом буфере правила без блокировок:
+ * ячейка хранит номер минуты и счетчик в одном {@code long} и меняется через CAS. Раз в минуту
+ * закрытые минуты сворачиваются в почасовые и посуточные интервалы, которые пакетно прибавляются
+ * к таблице {@code rule_trigger_buckets} одной транзакцией: пакет либо записан целиком и убран
+ * из очереди, либо не записан вовсе и повторяется следующим сбросом. Поминутная детализация
+ * доступна только за последние {@value #RING_MINUTES} минут.
+ * </p>
+ * <p>
+ * Все интервалы считаются в UTC.
+ * </p>
+ */
+@Service
+public class RuleTriggerTimeSeries {
+
+    private static final Logger log = LoggerFactory.getLogger(RuleTriggerTimeSeries.class);
+
+    static final int RING_MINUTES = 180;
+
+    /**
+     * Минута считается закрытой с запасом, чтобы не свернуть ее раньше последних запоздавших инкрементов.
+     */
+    private static final int CLOSE_LAG_MINUTES = 2;
+
+    /**
+     * Кольцо правила, в которое давно ничего не записывалось, удаляется. Не меньше длины кольца:
+     * иначе поминутный ряд за {@value #RING_MINUTES} минут терял бы данные правил, затихших на время.
+     */
+    private static final int IDLE_MINUTES = RING_MINUTES;
+
+    private final RuleTriggerBucketRepository bucketRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final int hourlyRetentionDays;
+    private final int dailyRetentionDays;
+
+    private final Map<String, MinuteRing> rings = new ConcurrentHashMap<>();
+    /**
+     * Свернутые, но еще не записанные в базу приращения. Доступ под монитором сервиса.
+     */
+    private final Map<BucketKey, Long> pending = new HashMap<>();
+    private long retentionAppliedHour = Long.MIN_VALUE;
+
+    public RuleTriggerTimeSeries(RuleTriggerBucketRepository bucketRepository,
+                                 @Qualifier("rulesTransactionManager") PlatformTransactionManager transactionManager,
+                                 @Value("${application.rules.timeseries.hourly-retention-days:30}") int hourlyRetentionDays,
+                                 @Value("${application.rules.timeseries.daily-retention-days:730}") int dailyRetentionDays) {
+        this.bucketRepository = bucketRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.clock = Clock.systemUTC();
+        this.hourlyRetentionDays = hourlyRetentionDays;
+        this.dailyRetentionDays = dailyRetentionDays;
+    }
+
+    /**
+     * Учитывает одно срабатывание правила в текущей минуте.
+     */
+    public void record(String productId) {
+        record(productId, 1);
+    }
+
+    /**
+     * Учитывает {@code count} срабатываний правила в текущей минуте (оценка пачки пользователей).
+     */
+    public void record(String productId, int count) {
+        if (count <= 0) {
+            return;
+        }
+        long minute = currentMinute();
+        MinuteRing ring = rings.get(productId);
+        if (ring == null) {
+            ring = rings.computeIfAbsent(productId, id -> new MinuteRing(minute - 1));
+        }
+        ring.add(minute, count);
+    }
+
+    /**
+     * Сворачивает закрытые минуты в интервалы и записывает их в базу.
+     */
+    @Scheduled(initialDelayString = "${application.rules.timeseries.flush-interval-ms:60000}",
+            fixedDelayString = "${application.rules.timeseries.flush-interval-ms:60000}")
+    public void flush() {
+        compact(currentMinute() - CLOSE_LAG_MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compact(currentMinute());
+    }
+
+    /**
+     * Ряд срабатываний правила за окно, заканчивающееся текущим (неполным) интервалом.
+     *
+     * @param granularity размер интервала.
+     * @param window      длина окна в формате ISO-8601 ({@code PT6H}, {@code P7D});
+     *                    {@code null} — окно по умолчанию для размера интервала.
+     * @throws RuleValidationException если окно некорректно или больше хранимой истории.
+     */
+    public Map<String, Object> getSeries(String productId, Granularity granularity, String window) {
+        int bucketMinutes = granularity.getMinutes();
+        int buckets = bucketCount(granularity, parseWindow(granularity, window));
+
+        long now = currentMinute();
+        long lastBucket = Math.floorDiv(now, bucketMinutes);
+        long firstBucket = lastBucket - buckets + 1;
+        long firstMinute = firstBucket * bucketMinutes;
+        long[] counts = new long[buckets];
+
+        MinuteRing ring = rings.get(productId);
+        long ringFrom = firstMinute;
+        if (granularity != Granularity.MINUTE) {
+            synchronized (this) {
+                bucketRepository.findCounts(productId, granularity, toDateTime(firstMinute),
+                                toDateTime((lastBucket + 1) * bucketMinutes))
+                        .forEach((start, count) -> addToBucket(counts, firstBucket, bucketMinutes, toMinute(start), count));
+                pending.forEach((key, count) -> {
+                    if (key.granularity() == granularity && key.productId().equals(productId)) {
+                        addToBucket(counts, firstBucket, bucketMinutes, key.startMinute(), count);
+                    }
+                });
+                // Свернутые минуты уже учтены в базе или в pending
+                if (ring != null) {
+                    ringFrom = Math.max(ringFrom, ring.compactedThrough + 1);
+                }
+            }
+        }
+        if (ring != null) {
+            ring.forEach(Math.max(ringFrom, now - RING_MINUTES + 1), now,
+                    (minute, count) -> addToBucket(counts, firstBucket, bucketMinutes, minute, count));
+        }
+
+        List<Map<String, Object>> points = new ArrayList<>(buckets);
+        long total = 0;
+        for (int i = 0; i < buckets; i++) {
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("start", toInstant((firstBucket + i) * bucketMinutes));
+            point.put("count", counts[i]);
+            points.add(point);
+            total += counts[i];
+        }
+
+        Map<String, Object> series = new LinkedHashMap<>();
+        series.put("productId", productId);
+        series.put("granularity", granularity);
+        series.put("from", toInstant(firstMinute));
+        series.put("to", toInstant(now + 1));
+        series.put("total", total);
+        series.put("ratePerMinute", (double) total / (now - firstMinute + 1));
+        series.put("points", points);
+        return series;
+    }
+
+    private synchronized void compact(long through) {
+        for (Map.Entry<String, MinuteRing> entry : rings.entrySet()) {
+            String productId = entry.getKey();
+            MinuteRing ring = entry.getValue();
+            ring.drain(through, (minute, count) -> {
+                addPending(productId, Granularity.HOUR, minute, count);
+                addPending(productId, Granularity.DAY, minute, count);
+            });
+            long lastMinute = ring.lastMinute();
+            if (lastMinute != Long.MIN_VALUE && lastMinute < through - IDLE_MINUTES) {
+                rings.remove(productId, ring);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            List<RuleTriggerBucketRepository.Increment> increments = new ArrayList<>(pending.size());
+            pending.forEach((key, count) -> increments.add(new RuleTriggerBucketRepository.Increment(
+                    key.productId(), key.granularity(), toDateTime(key.startMinute()), count)));
+            try {
+                // Без транзакции частично примененный пакет был бы повторен целиком и посчитан дважды
+                transactionTemplate.executeWithoutResult(status -> bucketRepository.addAll(increments));
+                pending.clear();
+            } catch (RuntimeException e) {
+                // Приращения остаются в pending и будут записаны при следующем сбросе
+                log.warn("Не удалось записать {} интервалов срабатываний правил: {}", increments.size(), e.getMessage());
+            }
+        }
+
+        applyRetention(through);
+    }
+
+    private void addPending(String productId, Granularity granularity, long minute, long count) {
+        long start = Math.floorDiv(minute, granularity.getMinutes()) * granularity.getMinutes();
+        pending.merge(new BucketKey(productId, granularity, start), count, Long::sum);
+    }
+
+    private void applyRetention(long through) {
+        long hour = Math.floorDiv(through, 60);
+        if (hour == retentionAppliedHour) {
+            return;
+        }
+        try {
+            LocalDateTime now = toDateTime(through);
+            bucketRepository.deleteOlderThan(Granularity.HOUR, now.minusDays(hourlyRetentionDays));
+            bucketRepository.deleteOlderThan(Granularity.DAY, now.minusDays(dailyRetentionDays));
+            retentionAppliedHour = hour;
+        } catch (RuntimeException e) {
+            log.warn("Не удалось удалить устаревшие интервалы срабатываний правил: {}", e.getMessage());
+        }
+    }
+
+    private Duration parseWindow(Granularity granularity, String window) {
+        if (window == null || window.isBlank()) {
+            return switch (granularity) {
+                case MINUTE -> Duration.ofHours(1);
+                case HOUR -> Duration.ofDays(1);
+                case DAY -> Duration.ofDays(30);
+            };
+        }
+        try {
+            Duration duration = Duration.parse(window);
+            if (duration.isNegative() || duration.isZero()) {
+                throw new RuleValidationException("Window must be positive: " + window);
+            }
+            return duration;
+        } catch (DateTimeParseException e) {
+            throw new RuleValidationException("Window must be an ISO-8601 duration, e.g. PT6H or P7D: " + window, e);
+        }
+    }
+
+    private int bucketCount(Granularity granularity, Duration window) {
+        long maxMinutes = switch (granularity) {
+            case MINUTE -> RING_MINUTES;
+            case HOUR -> hourlyRetentionDays * 1440L;
+            case DAY -> dailyRetentionDays * 1440L;
+        };
+        if (window.toMinutes() > maxMinutes) {
+            throw new RuleValidationException("Window for " + granularity + " granularity must not exceed "
+                    + Duration.ofMinutes(maxMinutes));
+        }
+        return (int) Math.max(1, (window.toMinutes() + granularity.getMinutes() - 1) / granularity.getMinutes());
+    }
+
+    private static void addToBucket(long[] counts, long firstBucket, int bucketMinutes, long minute, long count) {
+        long index = Math.floorDiv(minute, bucketMinutes) - firstBucket;
+        if (index >= 0 && index < counts.length) {
+            counts[(int) index] += count;
+        }
+    }
+
+    private long currentMinute() {
+        return Math.floorDiv(clock.millis(), 60_000L);
+    }
+
+    private static LocalDateTime toDateTime(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    private static long toMinute(LocalDateTime dateTime) {
+        return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static Instant toInstant(long minute) {
+        return Instant.ofEpochSecond(minute * 60);
+    }
+
+    @FunctionalInterface
+    interface MinuteConsumer {
+        void accept(long minute, long count);
+    }
+
+    private record BucketKey(String productId, RuleTriggerBucket.Granularity granularity, long startMinute) {
+    }
+
+    /**
+     * Кольцо поминутных счетчиков одного правила. Ячейка: старшие 32 бита — номер минуты,
+     * младшие 32 — счетчик; ячейка чужой минуты при записи перезаписывается.
+     */
+    static final class MinuteRing {
+
+        private static final int COUNT_BITS = 32;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+        private final AtomicLongArray cells = new AtomicLongArray(RING_MINUTES);
+        /**
+         * Последняя минута, свернутая в интервалы. Меняется только под монитором сервиса.
+         */
+        volatile long compactedThrough;
+
+        MinuteRing(long compactedThrough) {
+            this.compactedThrough = compactedThrough;
+        }
+
+        void add(long minute, int count) {
+            int slot = slot(minute);
+            while (true) {
+                long cell = cells.get(slot);
+                long next = (cell >>> COUNT_BITS) == minute ? cell + count : (minute << COUNT_BITS) | count;
+                if (cells.compareAndSet(slot, cell, next)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Передает ненулевые счетчики минут из {@code [from, to]}, которые еще есть в кольце.
+         */
+        void forEach(long from, long to, MinuteConsumer consumer) {
+            for (long minute = from; minute <= to; minute++) {
+                long cell = cells.get(slot(minute));
+                if ((cell >>> COUNT_BITS) == minute && (cell & COUNT_MASK) > 0) {
+                    consumer.accept(minute, cell & COUNT_MASK);
+                }
+            }
+        }
+
+        /**
+         * Передает несвернутые минуты до {@code through} включительно и отмечает их свернутыми.
+         */
+        void drain(long through, MinuteConsumer consumer) {
+            if (through <= compactedThrough) {
+                return;
+            }
+            forEach(Math.max(compactedThrough + 1, through - RING_MINUTES + 1), through, consumer);
+            compactedThrough = through;
+        }
+
+        long lastMinute() {
+            long last = Long.MIN_VALUE;
+            for (int i = 0; i < RING_MINUTES; i++) {
+                long cell = cells.get(i);
+                if (cell != 0) {
+                    last = Math.max(last, cell >>> COUNT_BITS);
+                }
+            }
+            return last;
+        }
+
+        private static int slot(long minute) {
+            return (int) Math.floorMod(minute, (long) RING_MINUTES);
+        }
+    }
+}
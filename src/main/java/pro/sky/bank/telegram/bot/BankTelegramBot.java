@@ -1,29 +1,37 @@
 package pro.sky.bank.telegram.bot;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import pro.sky.bank.telegram.handler.CommandHandler;
 
+/**
+ * Бот в режиме long polling ({@code telegram.bot.mode=polling}, режим по умолчанию).
+ */
 @Component
+@ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "polling", matchIfMissing = true)
 public class BankTelegramBot extends TelegramLongPollingBot {
 
-    private final CommandHandler commandHandler;
+    private final UpdateDispatcher updateDispatcher;
 
     @Value("${telegram.bot.username}")
     private String botUsername;
 
-    @Value("${telegram.bot.token}")
-    private String botToken;
-
-    public BankTelegramBot(CommandHandler commandHandler) {
-        this.commandHandler = commandHandler;
+    public BankTelegramBot(UpdateDispatcher updateDispatcher,
+                           @Value("${telegram.bot.token}") String botToken,
+                           @Value("${telegram.bot.api-url:https://api.telegram.org/bot}") String apiUrl) {
+        super(botOptions(apiUrl), botToken);
+        this.updateDispatcher = updateDispatcher;
     }
 
+    /**
+     * Не обрабатывает обновление в потоке long polling, а передает его {@link UpdateDispatcher}.
+     */
     @Override
     public void onUpdateReceived(Update update) {
-        commandHandler.handle(update, this);
+        updateDispatcher.dispatch(update, this);
     }
 
     @Override
@@ -31,8 +39,9 @@ public class BankTelegramBot extends TelegramLongPollingBot {
         return botUsername;
     }
 
-    @Override
-    public String getBotToken() {
-        return botToken;
+    static DefaultBotOptions botOptions(String apiUrl) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setBaseUrl(apiUrl);
+        return options;
     }
-}
\ No newline at end of file
+}
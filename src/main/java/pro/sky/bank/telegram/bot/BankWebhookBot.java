@@ -0,0 +1,103 @@
+package pro.sky.bank.telegram.bot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.TelegramWebhookBot;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import pro.sky.bank.telegram.controller.TelegramWebhookController;
+
+/**
+ * Бот в режиме webhook ({@code telegram.bot.mode=webhook}).
+ * <p>
+ * Обновления принимает {@link TelegramWebhookController} на HTTP-порту
+ * приложения, поэтому отдельный сервер и регистрация бота в {@code TelegramBotsApi} не нужны.
+ * При старте бот сам сообщает Telegram адрес webhook.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "webhook")
+public class BankWebhookBot extends TelegramWebhookBot {
+
+    private static final Logger log = LoggerFactory.getLogger(BankWebhookBot.class);
+
+    private final UpdateDispatcher updateDispatcher;
+
+    @Value("${telegram.bot.username}")
+    private String botUsername;
+
+    @Value("${telegram.bot.webhook.public-url:}")
+    private String publicUrl;
+
+    @Value("${telegram.bot.webhook.secret:}")
+    private String secret;
+
+    @Value("${telegram.bot.webhook.max-connections:40}")
+    private int maxConnections;
+
+    public BankWebhookBot(UpdateDispatcher updateDispatcher,
+                          @Value("${telegram.bot.token}") String botToken,
+                          @Value("${telegram.bot.api-url:https://api.telegram.org/bot}") String apiUrl) {
+        super(BankTelegramBot.botOptions(apiUrl), botToken);
+        this.updateDispatcher = updateDispatcher;
+    }
+
+    /**
+     * Регистрирует webhook в Telegram. Если {@code telegram.bot.webhook.public-url} не задан,
+     * считается, что webhook настроен снаружи.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerWebhook() {
+        if (publicUrl.isBlank()) {
+            log.warn("telegram.bot.webhook.public-url is not set, webhook is not registered");
+            return;
+        }
+        try {
+            SetWebhook.SetWebhookBuilder setWebhook = SetWebhook.builder()
+                    .url(publicUrl + TelegramWebhookController.PATH)
+                    .maxConnections(maxConnections);
+            if (!secret.isBlank()) {
+                setWebhook.secretToken(secret);
+            }
+            setWebhook(setWebhook.build());
+            log.info("Telegram webhook registered at {}", publicUrl + TelegramWebhookController.PATH);
+        } catch (TelegramApiException e) {
+            log.error("Failed to register Telegram webhook: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Ставит обновление, принятое {@link TelegramWebhookController}, в очередь {@link UpdateDispatcher}.
+     *
+     * @return {@code false}, если очередь переполнена и обновление отброшено.
+     */
+    public boolean enqueue(Update update) {
+        return updateDispatcher.dispatch(update, this);
+    }
+
+    /**
+     * Обновление ставится в очередь через {@link #enqueue(Update)}; ответ в теле webhook не отправляется.
+     */
+    @Override
+    public BotApiMethod<?> onWebhookUpdateReceived(Update update) {
+        enqueue(update);
+        return null;
+    }
+
+    @Override
+    public String getBotUsername() {
+        return botUsername;
+    }
+
+    @Override
+    public String getBotPath() {
+        return TelegramWebhookController.PATH;
+    }
+}
@@ -1,12 +1,18 @@
 package pro.sky.bank.telegram.bot;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
+/**
+ * Регистрация бота для long polling. В режиме webhook не используется:
+ * обновления принимает {@link pro.sky.bank.telegram.controller.TelegramWebhookController}.
+ */
 @Configuration
+@ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "polling", matchIfMissing = true)
 public class BotConfig {
 
     @Bean
@@ -16,4 +22,4 @@ public class BotConfig {
         botsApi.registerBot(bankTelegramBot);
         return botsApi;
     }
-}
\ No newline at end of file
+}
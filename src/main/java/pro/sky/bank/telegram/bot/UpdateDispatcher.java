@@ -0,0 +1,282 @@
+package pro.sky.bank.telegram.bot;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import pro.sky.bank.telegram.handler.CommandHandler;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Параллельная обработка обновлений Telegram с сохранением порядка внутри каждого чата.
+ * <p>
+ * Поток long polling только ставит обновление в очередь своего чата и сразу возвращается.
+ * Очереди разных чатов обрабатываются параллельно в пуле потоков, а обновления одного чата —
+ * строго последовательно, в порядке поступления. Медленный ответ одному пользователю
+ * больше не задерживает остальные чаты. Обновления без чата (например, inline-запросы) порядка
+ * не требуют и обрабатываются сразу, без очереди.
+ * </p>
+ * <p>
+ * Очередь ограничена: при превышении общего лимита или лимита чата обновление отбрасывается
+ * и учитывается в метрике {@code rejected}. Если приложение запущено на Java 21+, используются
+ * виртуальные потоки, иначе — пул фиксированного размера.
+ * </p>
+ */
+@Component
+public class UpdateDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    /**
+     * Сколько обновлений чата обрабатывается подряд, прежде чем поток уступит очередь другим чатам.
+     */
+    private static final int DRAIN_BATCH = 16;
+
+    private final CommandHandler commandHandler;
+    private final ExecutorService executor;
+    private final String executorType;
+    private final Map<Long, ChatQueue> chats = new ConcurrentHashMap<>();
+
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+
+    @Value("${telegram.bot.dispatch.max-backlog:10000}")
+    private int maxBacklog;
+
+    @Value("${telegram.bot.dispatch.max-chat-backlog:100}")
+    private int maxChatBacklog;
+
+    public UpdateDispatcher(CommandHandler commandHandler,
+                            @Value("${telegram.bot.dispatch.virtual-threads:true}") boolean virtualThreads,
+                            @Value("${telegram.bot.dispatch.pool-size:0}") int poolSize) {
+        this.commandHandler = commandHandler;
+
+        ExecutorService virtual = virtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.executorType = "virtual";
+        } else {
+            int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2;
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "telegram-update-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.executorType = "fixed(" + threads + ")";
+        }
+        log.info("Telegram updates are dispatched on {} threads", executorType);
+    }
+
+    /**
+     * Ставит обновление в очередь его чата.
+     *
+     * @return {@code false}, если очередь переполнена и обновление отброшено.
+     */
+    public boolean dispatch(Update update, AbsSender bot) {
+        Long chatId = chatIdOf(update);
+
+        if (backlog.incrementAndGet() > maxBacklog) {
+            backlog.decrementAndGet();
+            reject(chatId);
+            return false;
+        }
+
+        if (chatId == null) {
+            try {
+                executor.execute(() -> process(update, bot));
+            } catch (RejectedExecutionException e) {
+                backlog.decrementAndGet();
+                reject(null);
+                return false;
+            }
+            submitted.increment();
+            return true;
+        }
+
+        ChatQueue[] toStart = new ChatQueue[1];
+        boolean[] accepted = new boolean[1];
+        chats.compute(chatId, (id, queue) -> {
+            if (queue == null) {
+                queue = new ChatQueue(id, bot);
+            }
+            if (queue.updates.size() < maxChatBacklog) {
+                queue.updates.add(update);
+                accepted[0] = true;
+                if (!queue.running) {
+                    queue.running = true;
+                    toStart[0] = queue;
+                }
+            }
+            return queue.updates.isEmpty() && !queue.running ? null : queue;
+        });
+
+        if (!accepted[0]) {
+            backlog.decrementAndGet();
+            reject(chatId);
+            return false;
+        }
+
+        submitted.increment();
+        if (toStart[0] != null) {
+            start(toStart[0]);
+        }
+        return true;
+    }
+
+    public Map<String, Object> getStats() {
+        long processedCount = processed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executor", executorType);
+        stats.put("backlog", backlog.get());
+        stats.put("maxBacklog", maxBacklog);
+        stats.put("activeChats", chats.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("processed", processedCount);
+        stats.put("rejected", rejected.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgProcessingMs", processedCount == 0 ? 0.0
+                : processingNanos.sum() / 1_000_000.0 / processedCount);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Telegram dispatcher stopped with {} updates left in backlog", backlog.get());
+            executor.shutdownNow();
+        }
+    }
+
+    private void reject(Long chatId) {
+        rejected.increment();
+        log.warn("Telegram backlog is full, update for chat {} dropped", chatId);
+    }
+
+    private void process(Update update, AbsSender bot) {
+        long startedAt = System.nanoTime();
+        try {
+            commandHandler.handle(update, bot);
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.error("Failed to handle Telegram update {}: {}", update.getUpdateId(), e.getMessage(), e);
+        } finally {
+            processingNanos.add(System.nanoTime() - startedAt);
+            processed.increment();
+            backlog.decrementAndGet();
+        }
+    }
+
+    /**
+     * Передает очередь чата в пул. Если пул уже остановлен и отклоняет задачи, очередь сбрасывается,
+     * иначе она навсегда осталась бы помеченной как выполняющаяся.
+     */
+    private void start(ChatQueue queue) {
+        try {
+            executor.execute(queue);
+        } catch (RejectedExecutionException e) {
+            queue.abandon();
+        }
+    }
+
+    /**
+     * @return идентификатор чата или {@code null}, если обновление не относится к чату.
+     */
+    private static Long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return null;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() появился в Java 21, а проект собирается под Java 17,
+     * поэтому метод вызывается через reflection.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Очередь обновлений одного чата. Поля меняются только внутри {@code chats.compute},
+     * то есть под блокировкой соответствующей ячейки карты.
+     */
+    private final class ChatQueue implements Runnable {
+        private final long chatId;
+        private final AbsSender bot;
+        private final ArrayDeque<Update> updates = new ArrayDeque<>();
+        private boolean running;
+
+        private ChatQueue(long chatId, AbsSender bot) {
+            this.chatId = chatId;
+            this.bot = bot;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Update next = poll();
+                if (next == null) {
+                    return;
+                }
+                process(next, bot);
+            }
+            // Уступаем поток другим чатам; running остается true, порядок сохраняется
+            start(this);
+        }
+
+        /**
+         * Отбрасывает оставшиеся обновления и снимает признак выполнения.
+         */
+        private void abandon() {
+            int[] dropped = new int[1];
+            chats.compute(chatId, (id, queue) -> {
+                dropped[0] = updates.size();
+                updates.clear();
+                running = false;
+                return null;
+            });
+            backlog.addAndGet(-dropped[0]);
+            rejected.add(dropped[0]);
+            log.warn("Telegram dispatcher is stopped, {} updates for chat {} dropped", dropped[0], chatId);
+        }
+
+        private Update poll() {
+            Update[] next = new Update[1];
+            chats.compute(chatId, (id, queue) -> {
+                next[0] = updates.poll();
+                if (next[0] == null) {
+                    running = false;
+                    return null;
+                }
+                return this;
+            });
+            return next[0];
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package pro.sky.bank.telegram.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import pro.sky.bank.telegram.service.RecommendationBroadcastService;
+
+import java.util.Map;
+
+/**
+ * Управление рассылкой рекомендаций подписчикам бота.
+ *
+ * @see RecommendationBroadcastService
+ */
+@RestController
+@RequestMapping("/management/broadcast")
+public class BroadcastController {
+
+    private final RecommendationBroadcastService broadcastService;
+
+    public BroadcastController(RecommendationBroadcastService broadcastService) {
+        this.broadcastService = broadcastService;
+    }
+
+    /**
+     * Запускает новую рассылку. Если рассылка уже идет — 409.
+     */
+    @PostMapping
+    public Map<String, Object> start() {
+        return broadcastService.start();
+    }
+
+    /**
+     * Продолжает рассылку, прерванную остановкой приложения; 404, если продолжать нечего.
+     */
+    @PostMapping("/resume")
+    public ResponseEntity<Map<String, Object>> resume() {
+        return ResponseEntity.of(broadcastService.resume());
+    }
+
+    @PostMapping("/cancel")
+    public Map<String, Object> cancel() {
+        return broadcastService.cancel();
+    }
+
+    @GetMapping
+    public Map<String, Object> status() {
+        return broadcastService.getStatus();
+    }
+}
@@ -0,0 +1,86 @@
+package pro.sky.bank.telegram.controller;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import pro.sky.bank.telegram.bot.BankWebhookBot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Прием обновлений Telegram в режиме webhook.
+ * <p>
+ * Telegram присылает одно обновление на запрос. Обновление только ставится в очередь через
+ * {@link BankWebhookBot#enqueue(Update)}, и Telegram сразу получает ответ 200, не дожидаясь обработки
+ * команды. Если очередь переполнена, ответ — 503, и Telegram повторит доставку позже.
+ * </p>
+ */
+@RestController
+@ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "webhook")
+public class TelegramWebhookController {
+
+    public static final String PATH = "/telegram/webhook";
+    public static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final BankWebhookBot bot;
+    private final ObjectReader updateReader;
+    private final byte[] secret;
+
+    public TelegramWebhookController(BankWebhookBot bot,
+                                     ObjectMapper objectMapper,
+                                     @Value("${telegram.bot.webhook.secret:}") String secret) {
+        this.bot = bot;
+        this.updateReader = objectMapper.readerFor(Update.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Принимает обновление.
+     *
+     * @param secretToken значение заголовка {@value #SECRET_HEADER}; должно совпадать с
+     *                    {@code telegram.bot.webhook.secret}, если он задан.
+     * @param body        JSON обновления {@link Update}.
+     * @return 200 (OK), если обновление принято; 401, если секрет неверен; 400, если тело не разобрано;
+     *         503, если обновление не поместилось в очередь — Telegram повторит доставку позже.
+     */
+    @PostMapping(PATH)
+    public ResponseEntity<Void> onUpdate(
+            @RequestHeader(name = SECRET_HEADER, required = false) String secretToken,
+            @RequestBody byte[] body) {
+        if (!isAuthorized(secretToken)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        Update update;
+        try {
+            update = updateReader.readValue(body);
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (!bot.enqueue(update)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    private boolean isAuthorized(String secretToken) {
+        if (secret.length == 0) {
+            return true;
+        }
+        return secretToken != null
+                && MessageDigest.isEqual(secret, secretToken.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,39 +1,70 @@
 package pro.sky.bank.telegram.handler;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.bots.AbsSender;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import pro.sky.bank.telegram.service.TelegramUserService;
 
 @Component
 public class CommandHandler {
 
+    private static final Logger logger = LoggerFactory.getLogger(CommandHandler.class);
+
     private final RecommendationHandler recommendationHandler;
     private final HelpHandler helpHandler;
+    private final TelegramUserService telegramUserService;
 
 
     public CommandHandler(RecommendationHandler recommendationHandler,
-                          HelpHandler helpHandler) {
+                          HelpHandler helpHandler,
+                          TelegramUserService telegramUserService) {
         this.recommendationHandler = recommendationHandler;
         this.helpHandler = helpHandler;
+        this.telegramUserService = telegramUserService;
 
     }
 
-    public void handle(Update update, TelegramLongPollingBot bot) {
+    public void handle(Update update, AbsSender bot) {
         if (update.hasMessage() && update.getMessage().hasText()) {
-            String messageText = update.getMessage().getText().toLowerCase();
+            String[] command = update.getMessage().getText().trim().split("\\s+");
             Long chatId = update.getMessage().getChatId();
+            trackUser(chatId, update);
 
-            switch (messageText) {
+            switch (command[0].toLowerCase()) {
                 case "/start":
                 case "/help":
                     helpHandler.sendHelpMessage(chatId, bot);
                     break;
+                case "/recommend":
+                    if (command.length == 2) {
+                        recommendationHandler.sendRecommendations(chatId, command[1], bot);
+                    } else {
+                        helpHandler.sendHelpMessage(chatId, bot);
+                    }
+                    break;
                 case "/recommendations":
-                    recommendationHandler.sendRecommendations(chatId, bot);
+                    // Рекомендации для пользователя банка с тем же именем, что и в Telegram
+                    String username = update.getMessage().getFrom() != null
+                            ? update.getMessage().getFrom().getUserName() : null;
+                    recommendationHandler.sendRecommendations(chatId, username, bot);
                     break;
                 default:
                     helpHandler.sendUnknownCommand(chatId, bot);
             }
         }
     }
+
+    private void trackUser(Long chatId, Update update) {
+        if (update.getMessage().getFrom() == null) {
+            return;
+        }
+        try {
+            telegramUserService.registerOrUpdateUser(chatId, update.getMessage().getFrom());
+        } catch (RuntimeException e) {
+            // Учёт пользователя не должен мешать ответу на команду
+            logger.warn("Не удалось обновить пользователя чата {}: {}", chatId, e.getMessage());
+        }
+    }
 }
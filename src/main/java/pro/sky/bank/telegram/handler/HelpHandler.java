@@ -1,33 +1,36 @@
 package pro.sky.bank.telegram.handler;
 
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.bots.AbsSender;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import pro.sky.bank.telegram.service.TelegramMessageSender;
 
 @Component
 public class HelpHandler {
 
-    public void sendHelpMessage(Long chatId, TelegramLongPollingBot bot) {
+    private final TelegramMessageSender messageSender;
+
+    public HelpHandler(TelegramMessageSender messageSender) {
+        this.messageSender = messageSender;
+    }
+
+    public void sendHelpMessage(Long chatId, AbsSender bot) {
         String help = """
             **Единственная команда:**
                 `/recommend username`
            """;
 
-        send(chatId, help, bot);
+        send(chatId, help, "help", bot);
     }
 
-    public void sendUnknownCommand(Long chatId, TelegramLongPollingBot bot) {
-        send(chatId, " Unknown command. USE /help", bot);
+    public void sendUnknownCommand(Long chatId, AbsSender bot) {
+        send(chatId, " Unknown command. USE /help", "unknown-command", bot);
     }
 
-    private void send(Long chatId, String text, TelegramLongPollingBot bot) {
-        try {
-            SendMessage message = new SendMessage();
-            message.setChatId(chatId.toString());
-            message.setText(text);
-            bot.execute(message);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    private void send(Long chatId, String text, String coalesceKey, AbsSender bot) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        message.setText(text);
+        messageSender.send(bot, message, coalesceKey);
     }
 }
\ No newline at end of file
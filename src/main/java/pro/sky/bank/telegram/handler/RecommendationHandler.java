@@ -1,57 +1,86 @@
 package pro.sky.bank.telegram.handler;
 
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.bots.AbsSender;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import pro.sky.bank.model.BankUser;
+import pro.sky.bank.model.Recommendation;
+import pro.sky.bank.model.RecommendationResponse;
+import pro.sky.bank.repository.BankUserDirectory;
 import pro.sky.bank.service.RecommendationService;
+import pro.sky.bank.telegram.service.TelegramMessageSender;
 
-import java.util.UUID;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 
 @Component
 public class RecommendationHandler {
 
+    /**
+     * Неотправленный ответ замещается только более свежим ответом на запрос того же пользователя банка.
+     */
+    private static final String COALESCE_PREFIX = "recommendations:";
+    private static final String ERROR_COALESCE_PREFIX = "recommendations-error:";
+
     private final RecommendationService recommendationService;
+    private final BankUserDirectory userDirectory;
+    private final TelegramMessageSender messageSender;
 
-    public RecommendationHandler(RecommendationService recommendationService) {
+    public RecommendationHandler(RecommendationService recommendationService,
+                                 BankUserDirectory userDirectory,
+                                 TelegramMessageSender messageSender) {
         this.recommendationService = recommendationService;
+        this.userDirectory = userDirectory;
+        this.messageSender = messageSender;
     }
 
-    public void sendRecommendations(Long chatId, TelegramLongPollingBot bot) {
-        try {
-            UUID userId = UUID.fromString("00000000-0000-0000-0000-000000000001");
-            Object result = recommendationService.getRecommendations(userId);
+    /**
+     * Отправляет рекомендации пользователю банка с указанным именем.
+     * Пользователь ищется в индексе {@link BankUserDirectory}, база при этом не запрашивается.
+     */
+    public void sendRecommendations(Long chatId, String username, AbsSender bot) {
+        Optional<BankUser> user = userDirectory.findByUsername(username);
+        if (user.isEmpty()) {
+            sendErrorMessage(chatId, username, "Пользователь не найден", bot);
+            return;
+        }
 
-            // Просто выводим результат как строку
-            String text = " **Рекомендации:**\n\n" +
-                    (result != null ? result.toString() : "Нет рекомендаций");
+        try {
+            RecommendationResponse result = recommendationService.getRecommendations(user.get().getId());
 
             SendMessage message = new SendMessage();
             message.setChatId(chatId.toString());
-            message.setText(text);
-            message.setParseMode("Markdown");
+            message.setText(formatRecommendations(user.get(), result.getRecommendations()));
 
-            bot.execute(message);
+            messageSender.send(bot, message, COALESCE_PREFIX + coalesceName(username));
         } catch (Exception e) {
-            try {
-                SendMessage error = new SendMessage();
-                error.setChatId(chatId.toString());
-                error.setText("❌ Ошибка при получении рекомендаций");
-                bot.execute(error);
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+            sendErrorMessage(chatId, username, "Ошибка при получении рекомендаций", bot);
         }
     }
 
-    private void sendErrorMessage(Long chatId, String text, TelegramLongPollingBot bot) {
-        try {
-            SendMessage message = new SendMessage();
-            message.setChatId(chatId.toString());
-            message.setText("❌ " + text);
-            bot.execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
+    private String formatRecommendations(BankUser user, List<Recommendation> recommendations) {
+        StringBuilder text = new StringBuilder("Здравствуйте, ")
+                .append(user.getFirstName()).append(' ').append(user.getLastName()).append("!\n\n");
+        if (recommendations == null || recommendations.isEmpty()) {
+            return text.append("Нет рекомендаций").toString();
+        }
+        text.append("Новые продукты для вас:\n");
+        for (Recommendation recommendation : recommendations) {
+            text.append('\n').append(recommendation.getName()).append('\n')
+                    .append(recommendation.getText()).append('\n');
         }
+        return text.toString();
+    }
+
+    private void sendErrorMessage(Long chatId, String username, String text, AbsSender bot) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        message.setText("❌ " + text);
+        messageSender.send(bot, message, ERROR_COALESCE_PREFIX + coalesceName(username));
+    }
+
+    private static String coalesceName(String username) {
+        return username == null ? "" : username.toLowerCase(Locale.ROOT);
     }
 }
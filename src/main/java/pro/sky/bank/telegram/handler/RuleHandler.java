@@ -1,8 +1,9 @@
 package pro.sky.bank.telegram.handler;
 
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.bots.AbsSender;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import pro.sky.bank.telegram.service.TelegramMessageSender;
 import pro.sky.bank.model.dto.DynamicRuleResponse;
 import pro.sky.bank.service.DynamicRuleService;
 
@@ -12,12 +13,14 @@ import java.util.List;
 public class RuleHandler {
 
     private final DynamicRuleService dynamicRuleService;
+    private final TelegramMessageSender messageSender;
 
-    public RuleHandler(DynamicRuleService dynamicRuleService) {
+    public RuleHandler(DynamicRuleService dynamicRuleService, TelegramMessageSender messageSender) {
         this.dynamicRuleService = dynamicRuleService;
+        this.messageSender = messageSender;
     }
 
-    public void showRules(Long chatId, TelegramLongPollingBot bot) {
+    public void showRules(Long chatId, AbsSender bot) {
         try {
             List<DynamicRuleResponse> rules = dynamicRuleService.getAllRules();
 
@@ -41,19 +44,15 @@ public class RuleHandler {
     }
 
 
-    public void showAddForm(Long chatId, TelegramLongPollingBot bot) {
+    public void showAddForm(Long chatId, AbsSender bot) {
         String form = "Чтобы добавить правило, отправьте JSON в чат";
         send(chatId, form, bot);
     }
 
-    private void send(Long chatId, String text, TelegramLongPollingBot bot) {
-        try {
-            SendMessage message = new SendMessage();
-            message.setChatId(chatId.toString());
-            message.setText(text);
-            bot.execute(message);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    private void send(Long chatId, String text, AbsSender bot) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        message.setText(text);
+        messageSender.send(bot, message, "rules");
     }
 }
\ No newline at end of file
@@ -1,53 +1,63 @@
 package pro.sky.bank.telegram.handler;
 
 import org.springframework.stereotype.Component;
-import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.bots.AbsSender;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import pro.sky.bank.service.RuleStatisticService;
+import pro.sky.bank.telegram.service.TelegramMessageSender;
 import pro.sky.bank.controller.SimpleStatsController;
 
+import java.util.List;
 import java.util.Map;
 
 @Component
 public class StatsHandler {
 
     private final SimpleStatsController statsController;
+    private final RuleStatisticService statisticService;
+    private final TelegramMessageSender messageSender;
 
-    public StatsHandler(SimpleStatsController statsController) {
+    public StatsHandler(SimpleStatsController statsController,
+                        RuleStatisticService statisticService,
+                        TelegramMessageSender messageSender) {
         this.statsController = statsController;
+        this.statisticService = statisticService;
+        this.messageSender = messageSender;
     }
 
-    public void sendRuleStats(Long chatId, TelegramLongPollingBot bot) {
+    public void sendRuleStats(Long chatId, AbsSender bot) {
         try {
-            Map<String, Object> stats = statsController.getRuleStats();
+            Map<String, Object> stats = statisticService.getFullStatistics(false);
 
             StringBuilder message = new StringBuilder();
             message.append("📊 **Статистика правил:**\n\n");
 
-            message.append("• Всего правил сработало: ").append(stats.get("totalRulesTriggered")).append("\n");
+            message.append("• Всего правил: ").append(stats.get("totalRules")).append("\n");
             message.append("• Всего срабатываний: ").append(stats.get("totalTriggerCount")).append("\n");
 
-            // Топ 3 правила
+            // Топ правил: список записей с productId, productName и triggerCount
             @SuppressWarnings("unchecked")
-            Map<String, Integer> topRules = (Map<String, Integer>) stats.get("topRules");
+            List<Map<String, Object>> topRules = (List<Map<String, Object>>) stats.get("topRules");
 
             if (topRules != null && !topRules.isEmpty()) {
                 message.append("\n**Топ правил:**\n");
                 int counter = 1;
-                for (Map.Entry<String, Integer> entry : topRules.entrySet()) {
-                    message.append(counter).append(". ").append(entry.getKey())
-                            .append(": ").append(entry.getValue()).append(" раз\n");
+                for (Map<String, Object> rule : topRules) {
+                    Object name = rule.get("productName") != null ? rule.get("productName") : rule.get("productId");
+                    message.append(counter).append(". ").append(name)
+                            .append(": ").append(rule.get("triggerCount")).append(" раз\n");
                     counter++;
                 }
             }
 
-            sendMessage(chatId, message.toString(), bot);
+            sendMessage(chatId, message.toString(), "rule-stats", bot);
 
         } catch (Exception e) {
-            sendMessage(chatId, "❌ Ошибка получения статистики", bot);
+            sendMessage(chatId, "❌ Ошибка получения статистики", "rule-stats", bot);
         }
     }
 
-    public void sendSystemInfo(Long chatId, TelegramLongPollingBot bot) {
+    public void sendSystemInfo(Long chatId, AbsSender bot) {
         try {
             Map<String, String> info = statsController.getSystemInfo();
 
@@ -67,22 +77,18 @@ public class StatsHandler {
                     info.get("description")
             );
 
-            sendMessage(chatId, message, bot);
+            sendMessage(chatId, message, "system-info", bot);
 
         } catch (Exception e) {
-            sendMessage(chatId, "❌ Ошибка получения информации о системе", bot);
+            sendMessage(chatId, "❌ Ошибка получения информации о системе", "system-info", bot);
         }
     }
 
-    private void sendMessage(Long chatId, String text, TelegramLongPollingBot bot) {
-        try {
-            SendMessage message = new SendMessage();
-            message.setChatId(chatId.toString());
-            message.setText(text);
-            message.setParseMode("Markdown");
-            bot.execute(message);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    private void sendMessage(Long chatId, String text, String coalesceKey, AbsSender bot) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        message.setText(text);
+        message.setParseMode("Markdown");
+        messageSender.send(bot, message, coalesceKey);
     }
 }
@@ -0,0 +1,14 @@
+package pro.sky.bank.telegram.model.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import pro.sky.bank.telegram.model.entity.BroadcastProgressEntity;
+
+import java.util.Optional;
+
+
+public interface BroadcastProgressRepository extends JpaRepository<BroadcastProgressEntity, Long> {
+
+    Optional<BroadcastProgressEntity> findFirstByOrderByIdDesc();
+
+    Optional<BroadcastProgressEntity> findFirstByStatusOrderByIdDesc(BroadcastProgressEntity.Status status);
+}
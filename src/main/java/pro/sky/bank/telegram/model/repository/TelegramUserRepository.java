@@ -1,5 +1,6 @@
 package pro.sky.bank.telegram.model.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import pro.sky.bank.telegram.model.entity.TelegramUserEntity;
 import org.springframework.data.jpa.repository.Modifying;
@@ -25,16 +26,36 @@ public interface TelegramUserRepository extends JpaRepository<TelegramUserEntity
 
     List<TelegramUserEntity> findByNotificationEnabledTrueAndIsActiveTrue();
 
+    /**
+     * Страница подписчиков рассылки в порядке возрастания chatId (keyset-пагинация).
+     *
+     * @param afterChatId chatId последнего подписчика предыдущей страницы.
+     */
+    @Query("SELECT u FROM TelegramUserEntity u " +
+            "WHERE u.notificationEnabled = true AND u.isActive = true AND u.chatId > :afterChatId " +
+            "ORDER BY u.chatId")
+    List<TelegramUserEntity> findSubscribersAfter(@Param("afterChatId") Long afterChatId, Pageable pageable);
+
 
     List<TelegramUserEntity> findByRole(TelegramUserEntity.UserRole role);
 
+    long countByIsActiveTrue();
+
+    long countByRole(TelegramUserEntity.UserRole role);
+
     @Modifying
     @Query("UPDATE TelegramUserEntity u SET u.lastActive = :lastActive WHERE u.chatId = :chatId")
     void updateLastActive(@Param("chatId") Long chatId, @Param("lastActive") LocalDateTime lastActive);
 
+    /**
+     * Меняет флаг активности, только если он действительно отличается.
+     *
+     * @return 1, если состояние пользователя изменилось, иначе 0
+     */
     @Modifying
-    @Query("UPDATE TelegramUserEntity u SET u.isActive = :isActive WHERE u.chatId = :chatId")
-    void updateIsActive(@Param("chatId") Long chatId, @Param("isActive") Boolean isActive);
+    @Query("UPDATE TelegramUserEntity u SET u.isActive = :isActive " +
+            "WHERE u.chatId = :chatId AND (u.isActive IS NULL OR u.isActive <> :isActive)")
+    int updateIsActive(@Param("chatId") Long chatId, @Param("isActive") Boolean isActive);
 
 
 }
\ No newline at end of file
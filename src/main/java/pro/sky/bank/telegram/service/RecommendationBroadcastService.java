@@ -0,0 +1,321 @@
+package pro.sky.bank.telegram.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import pro.sky.bank.exception.BroadcastInProgressException;
+import pro.sky.bank.model.BankUser;
+import pro.sky.bank.model.Recommendation;
+import pro.sky.bank.model.RecommendationResponse;
+import pro.sky.bank.repository.BankUserDirectory;
+import pro.sky.bank.service.BatchRecommendationService;
+import pro.sky.bank.telegram.model.entity.BroadcastProgressEntity;
+import pro.sky.bank.telegram.model.entity.TelegramUserEntity;
+import pro.sky.bank.telegram.model.repository.BroadcastProgressRepository;
+import pro.sky.bank.telegram.model.repository.TelegramUserRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка рекомендаций всем подписчикам бота.
+ * <p>
+ * Подписчики читаются страницами по chatId (keyset-пагинация), для каждой страницы
+ * пользователи банка находятся по username в {@link BankUserDirectory}, а рекомендации считаются
+ * пачкой через {@link BatchRecommendationService}. Сообщения уходят в общую очередь
+ * {@link TelegramMessageSender}; перед каждой постановкой рассылка ждет, пока в очереди
+ * меньше {@code telegram.broadcast.max-queued} сообщений, поэтому память не растет
+ * с числом подписчиков, а ответы на команды не вытесняются.
+ * </p>
+ * <p>
+ * Прогресс сохраняется в {@code telegram_broadcasts} после каждой страницы, а при остановке
+ * посреди страницы — по последнему подписчику, чье сообщение поставлено в очередь. Рассылку,
+ * прерванную остановкой приложения, можно продолжить с сохраненного курсора без повторной отправки
+ * уже поставленных сообщений. Сообщения, которые стояли в очереди, но не были отправлены до остановки,
+ * теряются: они не сохраняются и при продолжении не повторяются.
+ * </p>
+ */
+@Service
+public class RecommendationBroadcastService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationBroadcastService.class);
+
+    private static final String COALESCE_KEY = "broadcast";
+
+    private final TelegramUserRepository userRepository;
+    private final BroadcastProgressRepository progressRepository;
+    private final BankUserDirectory userDirectory;
+    private final BatchRecommendationService batchRecommendationService;
+    private final TelegramMessageSender messageSender;
+    private final ObjectProvider<AbsSender> botProvider;
+    private final int pageSize;
+    private final int maxQueued;
+    private final boolean resumeOnStartup;
+    private final ExecutorService executor;
+
+    private volatile BroadcastProgressEntity current;
+    private volatile boolean cancelRequested;
+
+    public RecommendationBroadcastService(TelegramUserRepository userRepository,
+                                          BroadcastProgressRepository progressRepository,
+                                          BankUserDirectory userDirectory,
+                                          BatchRecommendationService batchRecommendationService,
+                                          TelegramMessageSender messageSender,
+                                          ObjectProvider<AbsSender> botProvider,
+                                          @Value("${telegram.broadcast.page-size:500}") int pageSize,
+                                          @Value("${telegram.broadcast.max-queued:1000}") int maxQueued,
+                                          @Value("${telegram.broadcast.resume-on-startup:true}") boolean resumeOnStartup) {
+        this.userRepository = userRepository;
+        this.progressRepository = progressRepository;
+        this.userDirectory = userDirectory;
+        this.batchRecommendationService = batchRecommendationService;
+        this.messageSender = messageSender;
+        this.botProvider = botProvider;
+        this.pageSize = pageSize;
+        this.maxQueued = maxQueued;
+        this.resumeOnStartup = resumeOnStartup;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "telegram-broadcast");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запускает новую рассылку с первого подписчика.
+     *
+     * @throws BroadcastInProgressException если рассылка уже идет.
+     */
+    public synchronized Map<String, Object> start() {
+        ensureIdle();
+        return launch(progressRepository.save(new BroadcastProgressEntity()));
+    }
+
+    /**
+     * Продолжает с сохраненного курсора последнюю рассылку, прерванную остановкой приложения
+     * (в статусе {@code RUNNING}). Отмененные и завершившиеся ошибкой рассылки не продолжаются.
+     *
+     * @return состояние рассылки; пустой результат, если продолжать нечего.
+     * @throws BroadcastInProgressException если рассылка уже идет.
+     */
+    public synchronized Optional<Map<String, Object>> resume() {
+        ensureIdle();
+        return progressRepository.findFirstByStatusOrderByIdDesc(BroadcastProgressEntity.Status.RUNNING)
+                .map(progress -> {
+                    progress.setStatus(BroadcastProgressEntity.Status.RUNNING);
+                    progress.setFinishedAt(null);
+                    progress.setErrorMessage(null);
+                    return launch(progressRepository.save(progress));
+                });
+    }
+
+    /**
+     * Останавливает текущую рассылку после обработки текущей страницы.
+     */
+    public Map<String, Object> cancel() {
+        if (current != null) {
+            cancelRequested = true;
+        }
+        return getStatus();
+    }
+
+    public Map<String, Object> getStatus() {
+        BroadcastProgressEntity progress = current;
+        if (progress == null) {
+            progress = progressRepository.findFirstByOrderByIdDesc().orElse(null);
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        if (progress == null) {
+            status.put("status", "NONE");
+            return status;
+        }
+        status.put("id", progress.getId());
+        status.put("status", progress.getStatus());
+        status.put("processed", progress.getProcessed());
+        status.put("sent", progress.getSent());
+        status.put("skipped", progress.getSkipped());
+        status.put("lastChatId", progress.getLastChatId());
+        status.put("startedAt", progress.getStartedAt());
+        status.put("updatedAt", progress.getUpdatedAt());
+        status.put("finishedAt", progress.getFinishedAt());
+        status.put("error", progress.getErrorMessage());
+        return status;
+    }
+
+    /**
+     * Продолжает рассылку, прерванную остановкой приложения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        if (!resumeOnStartup) {
+            return;
+        }
+        progressRepository.findFirstByOrderByIdDesc()
+                .filter(progress -> progress.getStatus() == BroadcastProgressEntity.Status.RUNNING)
+                .ifPresent(progress -> {
+                    logger.info("Продолжение рассылки {} после перезапуска с chatId {}",
+                            progress.getId(), progress.getLastChatId());
+                    resume();
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Без cancelRequested: прерванная остановкой рассылка должна остаться RUNNING
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void ensureIdle() {
+        if (current != null) {
+            throw new BroadcastInProgressException("Рассылка " + current.getId() + " уже выполняется");
+        }
+    }
+
+    private Map<String, Object> launch(BroadcastProgressEntity progress) {
+        current = progress;
+        cancelRequested = false;
+        executor.execute(() -> run(progress));
+        return getStatus();
+    }
+
+    private void run(BroadcastProgressEntity progress) {
+        try {
+            AbsSender bot = botProvider.getObject();
+            Pageable page = PageRequest.of(0, pageSize);
+            Long cursor = progress.getLastChatId() != null ? progress.getLastChatId() : Long.MIN_VALUE;
+
+            while (!cancelRequested) {
+                List<TelegramUserEntity> subscribers = userRepository.findSubscribersAfter(cursor, page);
+                if (subscribers.isEmpty()) {
+                    finish(progress, BroadcastProgressEntity.Status.COMPLETED, null);
+                    return;
+                }
+                boolean completed;
+                try {
+                    completed = sendPage(bot, subscribers, progress);
+                } finally {
+                    // Курсор сохраняется и при остановке посреди страницы
+                    saveProgress(progress);
+                }
+                if (!completed) {
+                    break;
+                }
+                cursor = progress.getLastChatId();
+            }
+            if (cancelRequested) {
+                finish(progress, BroadcastProgressEntity.Status.CANCELLED, null);
+                return;
+            }
+            // Очередь отправки остановлена вместе с приложением: статус RUNNING оставляем,
+            // рассылка продолжится после запуска с первого подписчика без поставленного сообщения
+            current = null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current = null;
+        } catch (RuntimeException e) {
+            logger.error("Рассылка {} прервана: {}", progress.getId(), e.getMessage(), e);
+            finish(progress, BroadcastProgressEntity.Status.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * Считает рекомендации для страницы подписчиков и ставит сообщения в очередь. Счетчики и курсор
+     * {@code progress} сдвигаются после каждого подписчика.
+     *
+     * @return {@code false}, если очередь отправки остановлена или рассылка отменена.
+     */
+    private boolean sendPage(AbsSender bot, List<TelegramUserEntity> subscribers,
+                             BroadcastProgressEntity progress) throws InterruptedException {
+        // Позиция подписчика в пачке рекомендаций или -1, если он не связан с пользователем банка
+        int[] linked = new int[subscribers.size()];
+        List<UUID> linkedIds = new ArrayList<>(subscribers.size());
+        for (int i = 0; i < subscribers.size(); i++) {
+            Optional<BankUser> user = userDirectory.findByUsername(subscribers.get(i).getUsername());
+            linked[i] = user.isPresent() ? linkedIds.size() : -1;
+            user.ifPresent(bankUser -> linkedIds.add(bankUser.getId()));
+        }
+        List<RecommendationResponse> responses = batchRecommendationService.getRecommendations(linkedIds);
+
+        for (int i = 0; i < subscribers.size(); i++) {
+            TelegramUserEntity subscriber = subscribers.get(i);
+            List<Recommendation> recommendations = linked[i] >= 0
+                    ? responses.get(linked[i]).getRecommendations()
+                    : null;
+            boolean sent = false;
+            if (recommendations != null && !recommendations.isEmpty()) {
+                if (cancelRequested || !messageSender.awaitBacklogBelow(maxQueued, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+                sent = messageSender.send(bot, buildMessage(subscriber.getChatId(), recommendations), COALESCE_KEY);
+            }
+            progress.setProcessed(progress.getProcessed() + 1);
+            if (sent) {
+                progress.setSent(progress.getSent() + 1);
+            } else {
+                progress.setSkipped(progress.getSkipped() + 1);
+            }
+            progress.setLastChatId(subscriber.getChatId());
+        }
+        return true;
+    }
+
+    /**
+     * Сохраняет прогресс, в том числе когда поток рассылки прерван остановкой приложения:
+     * флаг прерывания снимается на время записи, чтобы пул соединений выдал соединение.
+     */
+    private void saveProgress(BroadcastProgressEntity progress) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            progress.setUpdatedAt(LocalDateTime.now());
+            progressRepository.save(progress);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private SendMessage buildMessage(Long chatId, List<Recommendation> recommendations) {
+        StringBuilder text = new StringBuilder("Новые рекомендации для вас:\n");
+        for (Recommendation recommendation : recommendations) {
+            text.append('\n').append(recommendation.getName()).append('\n')
+                    .append(recommendation.getText()).append('\n');
+        }
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId.toString());
+        message.setText(text.toString());
+        return message;
+    }
+
+    private void finish(BroadcastProgressEntity progress, BroadcastProgressEntity.Status status, String error) {
+        progress.setStatus(status);
+        progress.setErrorMessage(error);
+        progress.setFinishedAt(LocalDateTime.now());
+        progress.setUpdatedAt(progress.getFinishedAt());
+        try {
+            progressRepository.save(progress);
+        } finally {
+            current = null;
+            logger.info("Рассылка {} завершена со статусом {}: обработано {}, отправлено {}",
+                    progress.getId(), status, progress.getProcessed(), progress.getSent());
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package pro.sky.bank.telegram.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Единая асинхронная очередь исходящих сообщений бота с учетом лимитов Telegram.
+ * <p>
+ * Обработчики только ставят сообщение в очередь и сразу возвращаются. Поток-планировщик выбирает
+ * чаты по кругу и выдает сообщения на отправку, соблюдая две корзины токенов: общую
+ * ({@code telegram.bot.send.global-per-second}, у Telegram — около 30 сообщений в секунду)
+ * и отдельную для каждого чата ({@code telegram.bot.send.chat-per-second}, около 1 в секунду).
+ * В каждый чат одновременно отправляется не больше одного сообщения, поэтому порядок сохраняется.
+ * </p>
+ * <p>
+ * Сообщение с ключом замещает еще не отправленное сообщение с тем же ключом в тот же чат —
+ * пользователь получит только актуальную версию. Ошибки 429 и 5xx, а также сетевые ошибки
+ * повторяются с экспоненциальной задержкой; для 429 используется {@code retry_after} из ответа.
+ * </p>
+ */
+@Service
+public class TelegramMessageSender {
+
+    private static final Logger log = LoggerFactory.getLogger(TelegramMessageSender.class);
+
+    private static final long BASE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+
+    // Поля ниже защищены lock
+    private final Map<String, ChatOutbox> outboxes = new HashMap<>();
+    private final ArrayDeque<ChatOutbox> ready = new ArrayDeque<>();
+    private final TokenBucket globalBucket;
+    private int backlog;
+    private boolean running = true;
+
+    private final double chatPerSecond;
+    private final int maxBacklog;
+    private final int maxAttempts;
+    private final ExecutorService deliveryPool;
+    private final Thread scheduler;
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public TelegramMessageSender(@Value("${telegram.bot.send.global-per-second:30}") double globalPerSecond,
+                                 @Value("${telegram.bot.send.chat-per-second:1}") double chatPerSecond,
+                                 @Value("${telegram.bot.send.max-backlog:10000}") int maxBacklog,
+                                 @Value("${telegram.bot.send.max-attempts:5}") int maxAttempts,
+                                 @Value("${telegram.bot.send.threads:4}") int threads) {
+        this.globalBucket = new TokenBucket(globalPerSecond, globalPerSecond, System.nanoTime());
+        this.chatPerSecond = chatPerSecond;
+        this.maxBacklog = maxBacklog;
+        this.maxAttempts = maxAttempts;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.deliveryPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "telegram-send-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = new Thread(this::schedule, "telegram-send-scheduler");
+        this.scheduler.setDaemon(true);
+        this.scheduler.start();
+    }
+
+    /**
+     * Ставит сообщение в очередь без замещения.
+     */
+    public boolean send(AbsSender bot, SendMessage message) {
+        return send(bot, message, null);
+    }
+
+    /**
+     * Ставит сообщение в очередь.
+     *
+     * @param coalesceKey ключ замещения: неотправленное сообщение с тем же ключом в тот же чат
+     *                    заменяется новым; {@code null} — без замещения.
+     * @return {@code false}, если очередь переполнена и сообщение отброшено.
+     */
+    public boolean send(AbsSender bot, SendMessage message, String coalesceKey) {
+        String chatId = message.getChatId();
+        lock.lock();
+        try {
+            ChatOutbox outbox = outboxes.get(chatId);
+            if (outbox != null && coalesceKey != null) {
+                for (Outgoing pending : outbox.messages) {
+                    if (coalesceKey.equals(pending.coalesceKey) && pending.attempts == 0) {
+                        pending.bot = bot;
+                        pending.message = message;
+                        superseded.increment();
+                        return true;
+                    }
+                }
+            }
+
+            if (backlog >= maxBacklog) {
+                dropped.increment();
+                log.warn("Telegram send queue is full, message to chat {} dropped", chatId);
+                return false;
+            }
+
+            if (outbox == null) {
+                outbox = new ChatOutbox(new TokenBucket(1, chatPerSecond, System.nanoTime()));
+                outboxes.put(chatId, outbox);
+            }
+            boolean wasIdle = outbox.messages.isEmpty() && !outbox.inFlight;
+            outbox.messages.addLast(new Outgoing(bot, message, coalesceKey));
+            backlog++;
+            queued.increment();
+            if (wasIdle) {
+                ready.addLast(outbox);
+            }
+            changed.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Блокирует вызывающий поток, пока очередь не опустится ниже {@code threshold} сообщений.
+     * Массовые рассылки вызывают его перед каждым {@link #send}, чтобы не заполнять очередь
+     * целиком и оставлять место для ответов на команды.
+     *
+     * @return {@code false}, если место не освободилось за {@code timeout} или очередь остановлена.
+     */
+    public boolean awaitBacklogBelow(int threshold, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (running && backlog >= threshold) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = drained.awaitNanos(nanos);
+            }
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("backlog", backlog);
+            stats.put("chats", outboxes.size());
+        } finally {
+            lock.unlock();
+        }
+        stats.put("queued", queued.sum());
+        stats.put("sent", sent.sum());
+        stats.put("superseded", superseded.sum());
+        stats.put("retried", retried.sum());
+        stats.put("failed", failed.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            changed.signalAll();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        scheduler.join(TimeUnit.SECONDS.toMillis(5));
+        deliveryPool.shutdown();
+        deliveryPool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Цикл планировщика: ждет глобальный токен, затем выбирает первый по кругу чат,
+     * у которого есть токен и подошло время отправки.
+     */
+    private void schedule() {
+        long cleanedAt = System.nanoTime();
+        lock.lock();
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                if (now - cleanedAt > CLEANUP_INTERVAL_NANOS) {
+                    removeIdleOutboxes(now);
+                    cleanedAt = now;
+                }
+
+                long wait = ready.isEmpty() ? Long.MAX_VALUE : globalBucket.waitNanos(now);
+                if (wait == 0) {
+                    ChatOutbox next = null;
+                    wait = Long.MAX_VALUE;
+                    for (int i = ready.size(); i > 0; i--) {
+                        ChatOutbox outbox = ready.pollFirst();
+                        long chatWait = Math.max(outbox.bucket.waitNanos(now),
+                                outbox.messages.peekFirst().notBefore - now);
+                        if (next == null && chatWait <= 0) {
+                            next = outbox;
+                        } else {
+                            ready.addLast(outbox);
+                            wait = Math.min(wait, Math.max(chatWait, 1));
+                        }
+                    }
+                    if (next != null) {
+                        dispatch(next, now);
+                        continue;
+                    }
+                }
+
+                if (wait == Long.MAX_VALUE) {
+                    changed.await(CLEANUP_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+                } else {
+                    changed.awaitNanos(wait);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch(ChatOutbox outbox, long now) {
+        globalBucket.take(now);
+        outbox.bucket.take(now);
+        Outgoing outgoing = outbox.messages.pollFirst();
+        outbox.inFlight = true;
+        backlog--;
+        drained.signal();
+        deliveryPool.execute(() -> deliver(outbox, outgoing));
+    }
+
+    private void deliver(ChatOutbox outbox, Outgoing outgoing) {
+        long retryDelay = -1;
+        boolean delivered = false;
+        try {
+            outgoing.bot.execute(outgoing.message);
+            sent.increment();
+            delivered = true;
+        } catch (TelegramApiRequestException e) {
+            retryDelay = retryDelay(outgoing, e);
+        } catch (TelegramApiException e) {
+            // Сетевая ошибка: ответа от Telegram нет
+            retryDelay = backoff(outgoing.attempts);
+        } catch (RuntimeException e) {
+            // Ошибка не от Telegram (сериализация, ошибка в боте): повтор не поможет
+            log.error("Failed to send Telegram message to chat {}: {}", outgoing.message.getChatId(), e.getMessage(), e);
+        }
+
+        boolean retry = retryDelay >= 0 && outgoing.attempts + 1 < maxAttempts;
+        if (!delivered && !retry) {
+            failed.increment();
+            if (retryDelay >= 0) {
+                log.error("Giving up on Telegram message to chat {} after {} attempts",
+                        outgoing.message.getChatId(), outgoing.attempts + 1);
+            }
+        }
+
+        lock.lock();
+        try {
+            outbox.inFlight = false;
+            if (retry) {
+                outgoing.attempts++;
+                outgoing.notBefore = System.nanoTime() + retryDelay;
+                outbox.messages.addFirst(outgoing);
+                backlog++;
+                retried.increment();
+            }
+            if (!outbox.messages.isEmpty()) {
+                ready.addLast(outbox);
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return задержка перед повтором в наносекундах или {@code -1}, если ошибку повторять бессмысленно.
+     */
+    private long retryDelay(Outgoing outgoing, TelegramApiRequestException e) {
+        Integer code = e.getErrorCode();
+        if (code != null && code == 429) {
+            Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+            return retryAfter != null ? TimeUnit.SECONDS.toNanos(retryAfter) : backoff(outgoing.attempts);
+        }
+        if (code == null || code >= 500) {
+            return backoff(outgoing.attempts);
+        }
+        log.warn("Telegram rejected message to chat {}: {} {}", outgoing.message.getChatId(), code, e.getApiResponse());
+        return -1;
+    }
+
+    private static long backoff(int attempts) {
+        long delay = Math.min(MAX_BACKOFF_NANOS, BASE_BACKOFF_NANOS << Math.min(attempts, 16));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private void removeIdleOutboxes(long now) {
+        Iterator<ChatOutbox> iterator = outboxes.values().iterator();
+        while (iterator.hasNext()) {
+            ChatOutbox outbox = iterator.next();
+            if (outbox.messages.isEmpty() && !outbox.inFlight && outbox.bucket.isFull(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class ChatOutbox {
+        private final TokenBucket bucket;
+        private final ArrayDeque<Outgoing> messages = new ArrayDeque<>();
+        private boolean inFlight;
+
+        private ChatOutbox(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    private static final class Outgoing {
+        private AbsSender bot;
+        private SendMessage message;
+        private final String coalesceKey;
+        private int attempts;
+        private long notBefore;
+
+        private Outgoing(AbsSender bot, SendMessage message, String coalesceKey) {
+            this.bot = bot;
+            this.message = message;
+            this.coalesceKey = coalesceKey;
+            this.notBefore = System.nanoTime();
+        }
+    }
+}
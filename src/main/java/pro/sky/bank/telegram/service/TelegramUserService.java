@@ -1,52 +1,155 @@
 package pro.sky.bank.telegram.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import pro.sky.bank.telegram.model.dto.TelegramUser;
 import pro.sky.bank.telegram.model.entity.TelegramUserEntity;
 import pro.sky.bank.telegram.model.repository.TelegramUserRepository;
 import org.telegram.telegrambots.meta.api.objects.User;
 
 import java.time.LocalDateTime;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Пользователи Telegram-бота.
+ * <p>
+ * Профили кэшируются по chatId, поэтому обычное сообщение от известного пользователя
+ * не обращается к базе: {@code lastActive} копится в памяти (для чата хранится только
+ * последняя отметка) и периодически сбрасывается пачкой через {@code updateLastActive}.
+ * Полный {@code save} выполняется только при регистрации и при реальном изменении
+ * профиля (username, имя, фамилия, язык).
+ */
 @Service
 @Transactional
 public class TelegramUserService {
 
+    private static final Logger logger = LoggerFactory.getLogger(TelegramUserService.class);
+
     private final TelegramUserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
 
-    public TelegramUserService(TelegramUserRepository userRepository) {
+    /**
+     * chatId -> отсоединённая копия сущности. Сообщения одного чата обрабатываются
+     * последовательно ({@code UpdateDispatcher}), поэтому запись в копию без блокировок безопасна.
+     */
+    private final Cache<Long, TelegramUserEntity> userCache;
+
+    /**
+     * Несброшенные отметки активности: chatId -> самое позднее время.
+     */
+    private final Map<Long, LocalDateTime> pendingLastActive = new ConcurrentHashMap<>();
+
+    /**
+     * Счётчики для статистики: один раз считаются агрегатными запросами,
+     * дальше поддерживаются при регистрации, смене активности и роли.
+     */
+    private final AtomicLong totalUsers = new AtomicLong();
+    private final AtomicLong activeUsers = new AtomicLong();
+    private final AtomicLong adminUsers = new AtomicLong();
+    private volatile boolean countersLoaded;
+
+    public TelegramUserService(TelegramUserRepository userRepository,
+                               @Qualifier("rulesTransactionManager") PlatformTransactionManager transactionManager,
+                               @Value("${telegram.users.cache-size:10000}") long cacheSize,
+                               @Value("${telegram.users.cache-ttl-minutes:60}") long cacheTtlMinutes) {
         this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.userCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(Duration.ofMinutes(cacheTtlMinutes))
+                .build();
     }
 
     /**
-     * Регистрация или обновление пользователя
+     * Регистрация или обновление пользователя.
+     * Без собственной транзакции: в обычном случае метод вообще не обращается к базе.
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public TelegramUser registerOrUpdateUser(Long chatId, User telegramUser) {
-        Optional<TelegramUserEntity> existingUser = userRepository.findByChatId(chatId);
-
-        if (existingUser.isPresent()) {
-            TelegramUserEntity entity = existingUser.get();
-            updateUserInfo(entity, telegramUser);
-            entity.setLastActive(LocalDateTime.now());
-            TelegramUserEntity savedEntity = userRepository.save(entity);
+        LocalDateTime now = LocalDateTime.now();
+        TelegramUserEntity cached = userCache.get(chatId, id -> userRepository.findByChatId(id).orElse(null));
+
+        if (cached == null) {
+            TelegramUserEntity savedEntity = userRepository.save(createUserEntity(chatId, telegramUser));
+            userCache.put(chatId, savedEntity);
+            if (countersLoaded) {
+                totalUsers.incrementAndGet();
+                activeUsers.incrementAndGet();
+            }
             return TelegramUser.fromEntity(savedEntity);
-        } else {
-            TelegramUserEntity newEntity = createUserEntity(chatId, telegramUser);
-            TelegramUserEntity savedEntity = userRepository.save(newEntity);
+        }
+
+        cached.setLastActive(now);
+        if (isProfileChanged(cached, telegramUser)) {
+            updateUserInfo(cached, telegramUser);
+            TelegramUserEntity savedEntity = userRepository.save(cached);
+            userCache.put(chatId, savedEntity);
+            // Отметка уже записана вместе с профилем
+            pendingLastActive.remove(chatId);
             return TelegramUser.fromEntity(savedEntity);
         }
+
+        pendingLastActive.merge(chatId, now, (previous, current) -> current.isAfter(previous) ? current : previous);
+        return TelegramUser.fromEntity(cached);
+    }
+
+    /**
+     * Сбрасывает накопленные отметки активности одной транзакцией.
+     * Запись удаляется из буфера только если за время сброса не пришла более свежая.
+     */
+    @Scheduled(fixedDelayString = "${telegram.users.flush-interval-ms:30000}",
+            initialDelayString = "${telegram.users.flush-interval-ms:30000}")
+    public void flushLastActive() {
+        if (pendingLastActive.isEmpty()) {
+            return;
+        }
+        int flushed = 0;
+        for (Map.Entry<Long, LocalDateTime> entry : pendingLastActive.entrySet()) {
+            Long chatId = entry.getKey();
+            LocalDateTime lastActive = entry.getValue();
+            userRepository.updateLastActive(chatId, lastActive);
+            pendingLastActive.remove(chatId, lastActive);
+            flushed++;
+        }
+        logger.debug("Сброшено отметок активности Telegram-пользователей: {}", flushed);
+    }
+
+    /**
+     * Последний сброс при остановке. Вызов идет мимо транзакционного прокси, поэтому транзакция
+     * открывается явно: {@code updateLastActive} без нее не выполнится.
+     */
+    @PreDestroy
+    public void shutdown() {
+        try {
+            transactionTemplate.executeWithoutResult(status -> flushLastActive());
+        } catch (RuntimeException e) {
+            logger.warn("Не удалось сбросить отметки активности при остановке: {}", e.getMessage());
+        }
     }
 
     public Optional<TelegramUser> getUserByChatId(Long chatId) {
-        return userRepository.findByChatId(chatId)
+        return Optional.ofNullable(userCache.get(chatId, id -> userRepository.findByChatId(id).orElse(null)))
                 .map(TelegramUser::fromEntity);
     }
 
-
     public Optional<TelegramUser> getUserByUsername(String username) {
         return userRepository.findByUsername(username)
                 .map(TelegramUser::fromEntity);
@@ -64,33 +167,65 @@ public class TelegramUserService {
         userRepository.findByChatId(chatId).ifPresent(user -> {
             user.setNotificationEnabled(enabled);
             userRepository.save(user);
+            userCache.invalidate(chatId);
         });
     }
 
     public void updateUserRole(Long chatId, TelegramUserEntity.UserRole role) {
         userRepository.findByChatId(chatId).ifPresent(user -> {
+            TelegramUserEntity.UserRole previousRole = user.getRole();
             user.setRole(role);
             userRepository.save(user);
+            userCache.invalidate(chatId);
+            if (countersLoaded && previousRole != role) {
+                if (role == TelegramUserEntity.UserRole.ADMIN) {
+                    adminUsers.incrementAndGet();
+                } else if (previousRole == TelegramUserEntity.UserRole.ADMIN) {
+                    adminUsers.decrementAndGet();
+                }
+            }
         });
     }
 
 
     public void deactivateUser(Long chatId) {
-        userRepository.updateIsActive(chatId, false);
+        int changed = userRepository.updateIsActive(chatId, false);
+        userCache.invalidate(chatId);
+        if (countersLoaded && changed > 0) {
+            activeUsers.addAndGet(-changed);
+        }
     }
 
 
     public void activateUser(Long chatId) {
-        userRepository.updateIsActive(chatId, true);
+        int changed = userRepository.updateIsActive(chatId, true);
+        userCache.invalidate(chatId);
+        if (countersLoaded && changed > 0) {
+            activeUsers.addAndGet(changed);
+        }
     }
 
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public UserStatistics getStatistics() {
-        long totalUsers = userRepository.count();
-        long activeUsers = userRepository.findByIsActiveTrue().size();
-        long adminUsers = userRepository.findByRole(TelegramUserEntity.UserRole.ADMIN).size();
+        if (!countersLoaded) {
+            reloadCounters();
+        }
+        return new UserStatistics(totalUsers.get(), activeUsers.get(), adminUsers.get());
+    }
 
-        return new UserStatistics(totalUsers, activeUsers, adminUsers);
+    /**
+     * Пересчитывает счётчики агрегатными запросами. Вызывается при первом обращении
+     * и периодически — чтобы убрать расхождение от записей в обход сервиса.
+     */
+    @Scheduled(fixedDelayString = "${telegram.users.stats-resync-interval-ms:3600000}",
+            initialDelayString = "${telegram.users.stats-resync-interval-ms:3600000}")
+    @Transactional(readOnly = true)
+    public synchronized void reloadCounters() {
+        totalUsers.set(userRepository.count());
+        activeUsers.set(userRepository.countByIsActiveTrue());
+        adminUsers.set(userRepository.countByRole(TelegramUserEntity.UserRole.ADMIN));
+        countersLoaded = true;
     }
 
 
@@ -110,6 +245,13 @@ public class TelegramUserService {
         return entity;
     }
 
+    private boolean isProfileChanged(TelegramUserEntity entity, User telegramUser) {
+        return !Objects.equals(entity.getUsername(), telegramUser.getUserName())
+                || !Objects.equals(entity.getFirstName(), telegramUser.getFirstName())
+                || !Objects.equals(entity.getLastName(), telegramUser.getLastName())
+                || !Objects.equals(entity.getLanguageCode(), telegramUser.getLanguageCode());
+    }
+
     private void updateUserInfo(TelegramUserEntity entity, User telegramUser) {
         entity.setUsername(telegramUser.getUserName());
         entity.setFirstName(telegramUser.getFirstName());
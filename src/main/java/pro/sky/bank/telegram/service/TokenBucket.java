@@ -0,0 +1,43 @@
+package pro.sky.bank.telegram.service;
+
+/**
+ * Корзина токенов: не больше {@code capacity} операций подряд и в среднем {@code perSecond} операций в секунду.
+ * Не потокобезопасна — используется под блокировкой {@link TelegramMessageSender}.
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double capacity, double perSecond, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = perSecond / 1_000_000_000.0;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * @return сколько наносекунд ждать до появления токена; {@code 0}, если токен есть уже сейчас.
+     */
+    long waitNanos(long now) {
+        refill(now);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    void take(long now) {
+        refill(now);
+        tokens -= 1;
+    }
+
+    boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,108 @@
+package pro.sky.bank.util;
+
+import java.util.UUID;
+
+/**
+ * Фильтр Блума для идентификаторов {@link UUID}.
+ * <p>
+ * Отвечает «точно нет» или «возможно да»: {@link #mightContain(UUID)} никогда не возвращает
+ * {@code false} для добавленного значения, а ложноположительные ответы случаются с вероятностью,
+ * заданной при создании. Позиции битов вычисляются двойным хешированием по двум 64-битным хешам UUID.
+ * </p>
+ * <p>
+ * Класс не потокобезопасен для записи: фильтр заполняется в одном потоке и затем публикуется
+ * только для чтения.
+ * </p>
+ */
+public final class BloomFilter {
+
+    private final long[] bits;
+    private final long bitSize;
+    private final int hashCount;
+    private long insertions;
+
+    private BloomFilter(long bitSize, int hashCount) {
+        this.bits = new long[(int) ((bitSize + 63) >>> 6)];
+        this.bitSize = (long) bits.length << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Создает фильтр оптимального размера для {@code expectedInsertions} значений.
+     *
+     * @param expectedInsertions ожидаемое количество значений.
+     * @param falsePositiveRate  целевая доля ложноположительных ответов, {@code 0 < fpp < 1}.
+     * @param maxBits            верхняя граница размера; если оптимальный размер больше, фильтр будет
+     *                           меньше и фактическая доля ложноположительных ответов — выше целевой.
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate, long maxBits) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        long n = Math.max(1, expectedInsertions);
+        long optimalBits = optimalBitSize(n, falsePositiveRate);
+        long bitSize = Math.max(64, Math.min(optimalBits, Math.min(maxBits, (long) Integer.MAX_VALUE << 6)));
+        return new BloomFilter(bitSize, optimalHashCount(n, bitSize));
+    }
+
+    public static long optimalBitSize(long expectedInsertions, double falsePositiveRate) {
+        return (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    }
+
+    private static int optimalHashCount(long expectedInsertions, long bitSize) {
+        return Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(UUID value) {
+        long h1 = mix(value.getMostSignificantBits() ^ mix(value.getLeastSignificantBits()));
+        long h2 = mix(value.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+        insertions++;
+    }
+
+    public boolean mightContain(UUID value) {
+        long h1 = mix(value.getMostSignificantBits() ^ mix(value.getLeastSignificantBits()));
+        long h2 = mix(value.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long index = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    public long insertions() {
+        return insertions;
+    }
+
+    /**
+     * Ожидаемая доля ложноположительных ответов при текущем заполнении.
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions / bitSize), hashCount);
+    }
+
+    /**
+     * Финализатор MurmurHash3: перемешивает все биты 64-битного значения.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
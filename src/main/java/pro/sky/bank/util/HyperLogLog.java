@@ -0,0 +1,322 @@
+package pro.sky.bank.util;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Скетч HyperLogLog для оценки числа различных {@link UUID}.
+ * <p>
+ * {@value #PRECISION} бит хэша выбирают один из {@value #REGISTER_COUNT} регистров, в котором хранится
+ * максимальный ранг (позиция первой единицы) остальных бит. Стандартная ошибка оценки —
+ * {@code 1.04 / sqrt(m)}, около 0,8%. Скетчи объединяются поэлементным максимумом, поэтому
+ * скетчи разных узлов и разных периодов можно сливать без потери точности.
+ * </p>
+ * <p>
+ * Пока занято не больше {@value #SPARSE_LIMIT} регистров, скетч хранит только их — по 4 байта
+ * на регистр в памяти и по 3 байта в сериализованном виде, так что правило с небольшим охватом
+ * занимает единицы килобайт. Дальше скетч переходит к плотному массиву регистров
+ * ({@value #REGISTER_COUNT} байт в памяти, {@value #SERIALIZED_SIZE} байт упакованными по 6 бит).
+ * Представление не влияет на оценку.
+ * </p>
+ * <p>
+ * {@link #add(UUID)} и {@link #merge(HyperLogLog)} потокобезопасны; в плотном представлении
+ * остальные методы читают регистры без блокировок и могут не увидеть одновременно добавляемые значения.
+ * </p>
+ */
+public final class HyperLogLog {
+
+    public static final int PRECISION = 14;
+    public static final int REGISTER_COUNT = 1 << PRECISION;
+    public static final int SERIALIZED_SIZE = REGISTER_COUNT * 6 / 8;
+
+    /**
+     * Число занятых регистров, после которого скетч переходит к плотному представлению.
+     */
+    static final int SPARSE_LIMIT = REGISTER_COUNT / 8;
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+
+    /**
+     * Первый байт разреженной сериализации. Плотная сериализация заголовка не имеет и отличается длиной:
+     * {@code 1 + 3n} никогда не равно {@value #SERIALIZED_SIZE}.
+     */
+    private static final byte SPARSE_FORMAT = 1;
+    private static final int RANK_BITS = 8;
+
+    /**
+     * Плотные регистры; {@code null}, пока скетч разреженный.
+     */
+    private volatile byte[] registers;
+    /**
+     * Занятые регистры по возрастанию индекса: {@code index << 8 | rank}. Доступ под монитором скетча.
+     */
+    private int[] sparse = new int[8];
+    private int sparseSize;
+
+    /**
+     * Добавляет значение.
+     *
+     * @return {@code true}, если скетч изменился.
+     */
+    public boolean add(UUID value) {
+        long hash = mix(value.getMostSignificantBits() ^ mix(value.getLeastSignificantBits()));
+        int index = (int) (hash >>> (64 - PRECISION));
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        byte[] dense = registers;
+        if (dense != null && rank <= dense[index]) {
+            return false;
+        }
+        synchronized (this) {
+            return set(index, rank);
+        }
+    }
+
+    /**
+     * Сливает {@code other} в этот скетч.
+     */
+    public void merge(HyperLogLog other) {
+        byte[] otherDense = other.registers;
+        int[] otherSparse = null;
+        int otherSize = 0;
+        if (otherDense == null) {
+            synchronized (other) {
+                otherDense = other.registers;
+                if (otherDense == null) {
+                    otherSparse = Arrays.copyOf(other.sparse, other.sparseSize);
+                    otherSize = other.sparseSize;
+                }
+            }
+        }
+        synchronized (this) {
+            if (otherSparse == null) {
+                for (int i = 0; i < REGISTER_COUNT; i++) {
+                    if (otherDense[i] != 0) {
+                        set(i, otherDense[i]);
+                    }
+                }
+            } else {
+                for (int i = 0; i < otherSize; i++) {
+                    set(otherSparse[i] >>> RANK_BITS, (byte) otherSparse[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return оценка числа различных добавленных значений.
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        byte[] dense = registers;
+        if (dense != null) {
+            for (byte register : dense) {
+                sum += 1.0 / (1L << register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        } else {
+            synchronized (this) {
+                for (int i = 0; i < sparseSize; i++) {
+                    sum += 1.0 / (1L << (byte) sparse[i]);
+                }
+                zeros = REGISTER_COUNT - sparseSize;
+                sum += zeros;
+            }
+        }
+        double estimate = ALPHA * REGISTER_COUNT * REGISTER_COUNT / sum;
+        if (estimate <= 2.5 * REGISTER_COUNT && zeros > 0) {
+            // Малые значения: линейный подсчет по пустым регистрам точнее
+            estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public boolean isEmpty() {
+        byte[] dense = registers;
+        if (dense == null) {
+            synchronized (this) {
+                return sparseSize == 0;
+            }
+        }
+        for (byte register : dense) {
+            if (register != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return сериализованный скетч: занятые регистры по 3 байта, если так короче,
+     * иначе все регистры, упакованные по 6 бит.
+     */
+    public synchronized byte[] toBytes() {
+        int[] entries = registers == null ? Arrays.copyOf(sparse, sparseSize) : occupied(registers);
+        if (entries == null) {
+            return pack(registers);
+        }
+        byte[] bytes = new byte[1 + entries.length * 3];
+        bytes[0] = SPARSE_FORMAT;
+        for (int i = 0, b = 1; i < entries.length; i++, b += 3) {
+            // 14 бит индекса и 6 бит ранга
+            int packed = (entries[i] >>> RANK_BITS) << 6 | (entries[i] & 0x3F);
+            bytes[b] = (byte) (packed >>> 16);
+            bytes[b + 1] = (byte) (packed >>> 8);
+            bytes[b + 2] = (byte) packed;
+        }
+        return bytes;
+    }
+
+    /**
+     * Восстанавливает скетч из {@link #toBytes()}.
+     */
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        HyperLogLog sketch = new HyperLogLog();
+        if (bytes.length == SERIALIZED_SIZE) {
+            byte[] dense = new byte[REGISTER_COUNT];
+            for (int i = 0, b = 0; i < REGISTER_COUNT; i += 4, b += 3) {
+                int packed = (bytes[b] & 0xFF) << 16 | (bytes[b + 1] & 0xFF) << 8 | (bytes[b + 2] & 0xFF);
+                dense[i] = (byte) (packed >>> 18 & 0x3F);
+                dense[i + 1] = (byte) (packed >>> 12 & 0x3F);
+                dense[i + 2] = (byte) (packed >>> 6 & 0x3F);
+                dense[i + 3] = (byte) (packed & 0x3F);
+            }
+            sketch.registers = dense;
+            return sketch;
+        }
+        if (bytes.length == 0 || bytes[0] != SPARSE_FORMAT || (bytes.length - 1) % 3 != 0) {
+            throw new IllegalArgumentException("Serialized HyperLogLog must be " + SERIALIZED_SIZE
+                    + " dense bytes or a sparse list, got " + bytes.length + " bytes");
+        }
+        synchronized (sketch) {
+            for (int b = 1; b < bytes.length; b += 3) {
+                int packed = (bytes[b] & 0xFF) << 16 | (bytes[b + 1] & 0xFF) << 8 | (bytes[b + 2] & 0xFF);
+                sketch.set(packed >>> 6, (byte) (packed & 0x3F));
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * @return {@code true}, пока скетч хранит только занятые регистры.
+     */
+    boolean isSparse() {
+        return registers == null;
+    }
+
+    /**
+     * Поднимает регистр до {@code rank}. Вызывается под монитором скетча.
+     */
+    private boolean set(int index, byte rank) {
+        byte[] dense = registers;
+        if (dense != null) {
+            if (rank <= dense[index]) {
+                return false;
+            }
+            dense[index] = rank;
+            return true;
+        }
+
+        int position = find(index);
+        if (position >= 0) {
+            if (rank <= (byte) sparse[position]) {
+                return false;
+            }
+            sparse[position] = index << RANK_BITS | rank;
+            return true;
+        }
+        if (sparseSize == SPARSE_LIMIT) {
+            toDense();
+            registers[index] = rank;
+            return true;
+        }
+        int insertAt = -position - 1;
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, SPARSE_LIMIT));
+        }
+        System.arraycopy(sparse, insertAt, sparse, insertAt + 1, sparseSize - insertAt);
+        sparse[insertAt] = index << RANK_BITS | rank;
+        sparseSize++;
+        return true;
+    }
+
+    /**
+     * Двоичный поиск регистра в разреженном списке.
+     *
+     * @return позиция или {@code -(точка вставки) - 1}.
+     */
+    private int find(int index) {
+        int low = 0;
+        int high = sparseSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = sparse[middle] >>> RANK_BITS;
+            if (current < index) {
+                low = middle + 1;
+            } else if (current > index) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void toDense() {
+        byte[] dense = new byte[REGISTER_COUNT];
+        for (int i = 0; i < sparseSize; i++) {
+            dense[sparse[i] >>> RANK_BITS] = (byte) sparse[i];
+        }
+        sparse = null;
+        sparseSize = 0;
+        registers = dense;
+    }
+
+    /**
+     * @return занятые регистры плотного скетча в разреженном виде или {@code null}, если их так много,
+     * что плотная сериализация короче.
+     */
+    private static int[] occupied(byte[] dense) {
+        int count = 0;
+        for (byte register : dense) {
+            if (register != 0) {
+                count++;
+            }
+        }
+        if (1 + count * 3 >= SERIALIZED_SIZE) {
+            return null;
+        }
+        int[] entries = new int[count];
+        for (int i = 0, e = 0; i < REGISTER_COUNT; i++) {
+            if (dense[i] != 0) {
+                entries[e++] = i << RANK_BITS | dense[i];
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] pack(byte[] dense) {
+        byte[] bytes = new byte[SERIALIZED_SIZE];
+        for (int i = 0, b = 0; i < REGISTER_COUNT; i += 4, b += 3) {
+            int packed = dense[i] << 18 | dense[i + 1] << 12 | dense[i + 2] << 6 | dense[i + 3];
+            bytes[b] = (byte) (packed >>> 16);
+            bytes[b + 1] = (byte) (packed >>> 8);
+            bytes[b + 2] = (byte) packed;
+        }
+        return bytes;
+    }
+
+    /**
+     * Финализатор MurmurHash3: перемешивает все биты 64-битного значения.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,145 @@
+package pro.sky.bank.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек в наносекундах с логарифмически-линейными корзинами в духе HdrHistogram.
+ * <p>
+ * Значения до {@code 2 * }{@value #SUB_BUCKETS} нс хранятся точно, дальше каждая степень двойки
+ * делится на {@value #SUB_BUCKETS} равных корзин, поэтому относительная ошибка любого перцентиля
+ * не превышает {@code 1/}{@value #SUB_BUCKETS} (меньше 1%). Значения больше {@link #MAX_VALUE}
+ * (около 68 секунд) учитываются в последней корзине.
+ * </p>
+ * <p>
+ * Запись — один {@code incrementAndGet} без блокировок. Интервалы отсчитываются от базовой копии
+ * счетчиков: {@link #snapshot(boolean)} возвращает значения, записанные после предыдущего сброса,
+ * и при необходимости делает текущие счетчики новой базой. Записи, идущие одновременно со сбросом,
+ * попадают в один из двух интервалов и не теряются.
+ * </p>
+ */
+public final class LatencyHistogram {
+
+    public static final int SUB_BUCKET_BITS = 7;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    private static final int BUCKET_COUNT = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray maxima = new AtomicLongArray(2);
+    private long[] baseline;
+    private volatile int maxSlot;
+
+    /**
+     * Записывает одно значение.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        int slot = maxSlot;
+        long max = maxima.get(slot);
+        while (value > max && !maxima.compareAndSet(slot, max, value)) {
+            max = maxima.get(slot);
+        }
+    }
+
+    /**
+     * @param reset начать новый интервал после снятия снимка.
+     * @return значения, записанные после предыдущего сброса.
+     */
+    public synchronized Snapshot snapshot(boolean reset) {
+        long[] current = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            current[i] = counts.get(i);
+        }
+        long[] interval = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            interval[i] = baseline == null ? current[i] : current[i] - baseline[i];
+            total += interval[i];
+        }
+        long max = maxima.get(maxSlot);
+        if (reset) {
+            baseline = current;
+            int next = maxSlot ^ 1;
+            maxima.set(next, 0);
+            maxSlot = next;
+        }
+        return new Snapshot(interval, total, max);
+    }
+
+    static int index(long value) {
+        if (value < 2L * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return наибольшее значение, попадающее в корзину {@code index}.
+     */
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = (index & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Неизменяемый снимок интервала.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+        private final long max;
+
+        private Snapshot(long[] counts, long totalCount, long max) {
+            this.counts = counts;
+            this.totalCount = totalCount;
+            this.max = max;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile перцентиль от 0 до 100.
+         * @return верхняя граница корзины, в которую попадает перцентиль; 0 для пустого интервала.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(totalCount * Math.min(percentile, 100.0) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max > 0 ? max : Long.MAX_VALUE);
+                }
+            }
+            return max;
+        }
+
+        public double getMean() {
+            if (totalCount == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    sum += (double) counts[i] * (i < 2 * SUB_BUCKETS ? i : (highestValue(i - 1) + highestValue(i) + 1) / 2.0);
+                }
+            }
+            return sum / totalCount;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package pro.sky.bank.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Денежные суммы в копейках ({@code long}).
+ * <p>
+ * Внутри слоя фактов и вычислителей правил суммы хранятся и сравниваются как {@code long}
+ * без создания объектов; {@link BigDecimal} используется только на границах — при чтении
+ * из базы и в ответах API. Все преобразования и сложения проверяют переполнение и бросают
+ * {@link ArithmeticException} вместо молчаливого перехода через границу {@code long}.
+ * </p>
+ */
+public final class Money {
+
+    public static final int MINOR_UNIT_SCALE = 2;
+
+    private static final long MINOR_UNITS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Переводит сумму в копейки с округлением половины вверх.
+     *
+     * @throws ArithmeticException если сумма не помещается в {@code long}.
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        return amount.setScale(MINOR_UNIT_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Сумма в копейках для целого числа рублей.
+     *
+     * @throws ArithmeticException если сумма не помещается в {@code long}.
+     */
+    public static long ofUnits(long units) {
+        return Math.multiplyExact(units, MINOR_UNITS_PER_UNIT);
+    }
+
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, MINOR_UNIT_SCALE);
+    }
+
+    /**
+     * Разбирает десятичную запись суммы ({@code "1000"}, {@code "-12.5"}, {@code "0.005"}) в копейки
+     * с тем же округлением, что и {@link #toMinorUnits(BigDecimal)}. Обычная запись разбирается
+     * без создания объектов; экспоненциальная — через {@link BigDecimal}.
+     *
+     * @throws NumberFormatException если строка не является числом.
+     * @throws ArithmeticException   если сумма не помещается в {@code long}.
+     */
+    public static long parse(String value) {
+        int length = value.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (value.charAt(0) == '-' || value.charAt(0) == '+')) {
+            negative = value.charAt(0) == '-';
+            index++;
+        }
+
+        long result = 0;
+        int fractionDigits = -1;
+        boolean roundUp = false;
+        boolean digits = false;
+        for (; index < length; index++) {
+            char c = value.charAt(index);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                if (fractionDigits < MINOR_UNIT_SCALE) {
+                    // Накапливаем отрицательное значение, чтобы Long.MIN_VALUE тоже помещался
+                    result = Math.subtractExact(Math.multiplyExact(result, 10), c - '0');
+                    if (fractionDigits >= 0) {
+                        fractionDigits++;
+                    }
+                } else if (fractionDigits == MINOR_UNIT_SCALE) {
+                    roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else {
+                return toMinorUnits(new BigDecimal(value));
+            }
+        }
+        if (!digits) {
+            throw new NumberFormatException("Not a monetary amount: \"" + value + "\"");
+        }
+        for (int scale = Math.max(fractionDigits, 0); scale < MINOR_UNIT_SCALE; scale++) {
+            result = Math.multiplyExact(result, 10);
+        }
+        if (roundUp) {
+            result = Math.subtractExact(result, 1);
+        }
+        return negative ? result : Math.negateExact(result);
+    }
+}
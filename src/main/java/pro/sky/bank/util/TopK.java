@@ -0,0 +1,94 @@
+package pro.sky.bank.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Точный топ-K ключей по неубывающим счетчикам.
+ * <p>
+ * Хранит не больше {@code capacity} записей, упорядоченных по убыванию счетчика (при равенстве —
+ * по ключу). Если трекер видит каждое изменение каждого счетчика и счетчики только растут,
+ * результат совпадает с полной сортировкой: ключ вне топа может попасть в него, только обогнав
+ * его последний элемент. Обновление стоит {@code O(log K)}, чтение — {@code O(K)}.
+ * </p>
+ * <p>
+ * После {@link #remove(Object)} место в топе освобождается, и ключ, который должен его занять,
+ * трекеру неизвестен: владелец счетчиков должен заново сообщить значения остальных ключей.
+ * </p>
+ * <p>
+ * Методы синхронизированы.
+ * </p>
+ *
+ * @param <K> тип ключа.
+ */
+public final class TopK<K extends Comparable<K>> {
+
+    private final int capacity;
+    private final TreeSet<Entry<K>> top;
+    private final Map<K, Entry<K>> members = new HashMap<>();
+
+    public TopK(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.top = new TreeSet<>(Comparator.<Entry<K>>comparingLong(Entry::count).reversed()
+                .thenComparing(Entry::key));
+    }
+
+    /**
+     * Сообщает новое значение счетчика ключа. Устаревшее значение (меньше известного) игнорируется.
+     */
+    public synchronized void update(K key, long count) {
+        Entry<K> current = members.get(key);
+        if (current != null) {
+            if (count > current.count()) {
+                top.remove(current);
+                add(new Entry<>(key, count));
+            }
+            return;
+        }
+
+        Entry<K> candidate = new Entry<>(key, count);
+        if (top.size() < capacity) {
+            add(candidate);
+        } else if (top.comparator().compare(candidate, top.last()) < 0) {
+            members.remove(top.pollLast().key());
+            add(candidate);
+        }
+    }
+
+    /**
+     * @return записи топа по убыванию счетчика.
+     */
+    public synchronized List<Entry<K>> snapshot() {
+        return new ArrayList<>(top);
+    }
+
+    /**
+     * Убирает ключ из топа.
+     *
+     * @return {@code true}, если ключ был в топе.
+     */
+    public synchronized boolean remove(K key) {
+        Entry<K> current = members.remove(key);
+        return current != null && top.remove(current);
+    }
+
+    public synchronized void clear() {
+        top.clear();
+        members.clear();
+    }
+
+    private void add(Entry<K> entry) {
+        top.add(entry);
+        members.put(entry.key(), entry);
+    }
+
+    public record Entry<K>(K key, long count) {
+    }
+}
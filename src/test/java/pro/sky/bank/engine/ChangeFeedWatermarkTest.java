@@ -0,0 +1,102 @@
+package pro.sky.bank.engine;
+
+import org.junit.jupiter.api.Test;
+import pro.sky.bank.model.entity.RuleCatalogChange;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedWatermarkTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 1, 1, 12, 0);
+    private static final Duration GAP_TIMEOUT = Duration.ofSeconds(10);
+    private static final long NOW = 1_000_000_000_000L;
+    private static final long AFTER_TIMEOUT = NOW + GAP_TIMEOUT.toNanos() + 1;
+
+    @Test
+    void advancesOverContiguousIds() {
+        ChangeFeedWatermark watermark = new ChangeFeedWatermark(10, GAP_TIMEOUT);
+
+        ChangeFeedWatermark.Batch batch = watermark.select(List.of(change(11), change(12)), NOW);
+        watermark.commit(batch);
+
+        assertEquals(List.of(11L, 12L), ids(batch));
+        assertEquals(12, watermark.get());
+    }
+
+    @Test
+    void stopsBeforeFreshGapAndDoesNotReapplyEntriesBehindIt() {
+        ChangeFeedWatermark watermark = new ChangeFeedWatermark(10, GAP_TIMEOUT);
+
+        // Запись 12 еще может быть не зафиксирована: отметка остается на 11, но 13 применяется сразу
+        ChangeFeedWatermark.Batch first = watermark.select(List.of(change(11), change(13)), NOW);
+        watermark.commit(first);
+        assertEquals(List.of(11L, 13L), ids(first));
+        assertEquals(11, watermark.get());
+
+        // Пропуск заполнился: 13 повторно не применяется, отметка проходит до конца
+        ChangeFeedWatermark.Batch second = watermark.select(List.of(change(12), change(13)), NOW + 1);
+        watermark.commit(second);
+        assertEquals(List.of(12L), ids(second));
+        assertEquals(13, watermark.get());
+    }
+
+    @Test
+    void skipsGapSeenLongerThanTimeout() {
+        ChangeFeedWatermark watermark = new ChangeFeedWatermark(10, GAP_TIMEOUT);
+
+        watermark.commit(watermark.select(List.of(change(12), change(14)), NOW));
+        assertEquals(10, watermark.get());
+
+        // Пропуск 11 виден дольше таймаута и больше не ждется; пропуск 13 замечен тогда же
+        ChangeFeedWatermark.Batch batch = watermark.select(List.of(change(12), change(14)), AFTER_TIMEOUT);
+        watermark.commit(batch);
+        assertTrue(batch.changes().isEmpty());
+        assertEquals(14, watermark.get());
+    }
+
+    @Test
+    void gapAgeDoesNotDependOnWriterClock() {
+        ChangeFeedWatermark watermark = new ChangeFeedWatermark(10, GAP_TIMEOUT);
+        // Часы записавшего узла отстают на час: по createdAt пропуск выглядел бы давно истекшим
+        RuleCatalogChange skewed = change(12);
+        skewed.setCreatedAt(CREATED_AT.minusHours(1));
+
+        ChangeFeedWatermark.Batch batch = watermark.select(List.of(skewed), NOW);
+        watermark.commit(batch);
+
+        assertEquals(List.of(12L), ids(batch));
+        assertEquals(10, watermark.get());
+    }
+
+    @Test
+    void selectDoesNotAdvanceUntilCommit() {
+        ChangeFeedWatermark watermark = new ChangeFeedWatermark(10, GAP_TIMEOUT);
+        List<RuleCatalogChange> changes = List.of(change(11), change(13));
+
+        // Применение первой пачки не удалось: те же записи выбираются снова
+        watermark.select(changes, NOW);
+        ChangeFeedWatermark.Batch retry = watermark.select(changes, NOW);
+
+        assertEquals(List.of(11L, 13L), ids(retry));
+        assertEquals(10, watermark.get());
+    }
+
+    private static RuleCatalogChange change(long id) {
+        RuleCatalogChange change = new RuleCatalogChange();
+        change.setId(id);
+        change.setChangeType(RuleCatalogChange.ChangeType.CREATED);
+        change.setProductId("product-" + id);
+        change.setNodeId("node");
+        change.setCreatedAt(CREATED_AT);
+        return change;
+    }
+
+    private static List<Long> ids(ChangeFeedWatermark.Batch batch) {
+        return batch.changes().stream().map(RuleCatalogChange::getId).toList();
+    }
+}
@@ -0,0 +1,130 @@
+package pro.sky.bank.engine;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.service.RuleEvaluationService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pro.sky.bank.engine.RuleFixtures.PRODUCT_TYPES;
+import static pro.sky.bank.engine.RuleFixtures.TRANSACTION_TYPES;
+import static pro.sky.bank.engine.RuleFixtures.query;
+
+/**
+ * Колоночная оценка пачки пользователей должна совпадать с интерпретатором для каждого пользователя.
+ */
+class ColumnarRuleEvaluatorTest {
+
+    // Не кратно 64, чтобы проверить хвост последнего слова маски
+    private static final int USERS = 150;
+
+    private final ColumnarRuleEvaluator evaluator = new ColumnarRuleEvaluator();
+    private final Random random = new Random(7);
+
+    private final Map<String, Integer> counts = new HashMap<>();
+    private final Map<String, Long> sums = new HashMap<>();
+
+    private RecommendationsRepository repository;
+    private RuleEvaluationService evaluationService;
+    private List<UUID> userIds;
+    private UserFactColumns columns;
+
+    @BeforeEach
+    void setUp() {
+        repository = RuleFixtures.repository(new RuleFixtures.Facts() {
+            @Override
+            public boolean hasProduct(UUID userId, String productType) {
+                return count(userId, productType) >= 1;
+            }
+
+            @Override
+            public boolean isActive(UUID userId, String productType) {
+                return count(userId, productType) >= 5;
+            }
+
+            @Override
+            public long sum(UUID userId, String productType, String transactionType) {
+                return sums.getOrDefault(userId + ":" + productType + ":" + transactionType, 0L);
+            }
+        });
+        evaluationService = RuleFixtures.evaluationService(repository);
+
+        userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add(UUID.randomUUID());
+        }
+        columns = new UserFactColumns(userIds);
+        for (int i = 0; i < USERS; i++) {
+            for (String productType : PRODUCT_TYPES) {
+                for (String transactionType : TRANSACTION_TYPES) {
+                    if (random.nextInt(3) == 0) {
+                        continue;
+                    }
+                    int count = 1 + random.nextInt(4);
+                    long sum = (random.nextInt(5) - 1) * 50_000L;
+                    String key = userIds.get(i) + ":" + productType;
+                    counts.merge(key, count, Integer::sum);
+                    sums.put(key + ":" + transactionType, sum);
+                    assertTrue(columns.add(i, productType, transactionType, count, BigDecimal.valueOf(sum, 2)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void columnarMaskMatchesInterpreterForEachUser() {
+        for (int r = 0; r < 500; r++) {
+            DynamicRuleResponse rule = RuleFixtures.randomRule(random);
+            long[] mask = evaluator.evaluate(rule, columns);
+            InterpretedRuleMatcher interpreted = new InterpretedRuleMatcher(rule, evaluationService);
+
+            for (int i = 0; i < USERS; i++) {
+                UserFacts facts = new RepositoryUserFacts(repository, userIds.get(i));
+                assertEquals(interpreted.matches(facts), isSet(mask, i), "rule " + r + ", user " + i);
+            }
+            // Биты за пределами пачки не устанавливаются, даже после отрицания
+            for (int i = USERS; i < mask.length * 64; i++) {
+                assertFalse(isSet(mask, i));
+            }
+        }
+    }
+
+    @Test
+    void invalidQueryMatchesNobody() {
+        RuleQuery query = query("TRANSACTION_SUM_COMPARE", true, "DEBIT", "DEPOSIT", "!=", "100");
+
+        assertArrayEquals(new long[ColumnBits.wordCount(USERS)], evaluator.evaluateQuery(query, columns));
+    }
+
+    @Test
+    void overflowingSumAffectsOnlyItsUser() {
+        UserFactColumns batch = new UserFactColumns(List.of(UUID.randomUUID(), UUID.randomUUID()));
+
+        assertFalse(batch.add(0, "DEBIT", "DEPOSIT", 1, new BigDecimal("1e30")));
+        assertTrue(batch.add(1, "DEBIT", "DEPOSIT", 1, new BigDecimal("12.345")));
+
+        assertArrayEquals(new long[]{0, 1235}, batch.transactionSums("DEBIT", "DEPOSIT"));
+        assertArrayEquals(new int[]{1, 1}, batch.transactionCounts("DEBIT"));
+    }
+
+    private int count(UUID userId, String productType) {
+        return counts.getOrDefault(userId + ":" + productType, 0);
+    }
+
+    private static boolean isSet(long[] mask, int index) {
+        return (mask[index >>> 6] >>> index & 1L) != 0;
+    }
+}
@@ -0,0 +1,125 @@
+package pro.sky.bank.engine;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.service.RuleEvaluationService;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pro.sky.bank.engine.RuleFixtures.PRODUCT_TYPES;
+import static pro.sky.bank.engine.RuleFixtures.TRANSACTION_TYPES;
+import static pro.sky.bank.engine.RuleFixtures.query;
+import static pro.sky.bank.engine.RuleFixtures.rule;
+
+/**
+ * Скомпилированные правила должны давать тот же результат, что и интерпретатор,
+ * на одних и тех же фактах о пользователе.
+ */
+class RuleBytecodeCompilerTest {
+
+    private final RuleBytecodeCompiler compiler = new RuleBytecodeCompiler();
+    private final Random random = new Random(42);
+    private final UUID userId = UUID.randomUUID();
+
+    private final Set<String> products = new HashSet<>();
+    private final Set<String> activeProducts = new HashSet<>();
+    private final Map<String, Long> sums = new HashMap<>();
+
+    private RuleEvaluationService evaluationService;
+    private UserFacts facts;
+
+    @BeforeEach
+    void setUp() {
+        RecommendationsRepository repository = RuleFixtures.repository(new RuleFixtures.Facts() {
+            @Override
+            public boolean hasProduct(UUID userId, String productType) {
+                return products.contains(productType);
+            }
+
+            @Override
+            public boolean isActive(UUID userId, String productType) {
+                return activeProducts.contains(productType);
+            }
+
+            @Override
+            public long sum(UUID userId, String productType, String transactionType) {
+                return sums.getOrDefault(productType + "/" + transactionType, 0L);
+            }
+        });
+        evaluationService = RuleFixtures.evaluationService(repository);
+        facts = new RepositoryUserFacts(repository, userId);
+    }
+
+    @Test
+    void compiledRuleMatchesInterpreterOnRandomRulesAndFacts() {
+        for (int i = 0; i < 2_000; i++) {
+            DynamicRuleResponse rule = RuleFixtures.randomRule(random);
+            RuleMatcher compiled = compiler.compile(rule);
+            RuleMatcher interpreted = new InterpretedRuleMatcher(rule, evaluationService);
+
+            for (int j = 0; j < 5; j++) {
+                randomFacts();
+                assertEquals(interpreted.matches(facts), compiled.matches(facts), () -> describe(rule));
+            }
+        }
+    }
+
+    @Test
+    void thresholdIsComparedInMinorUnits() {
+        DynamicRuleResponse rule = rule(query("TRANSACTION_SUM_COMPARE", false, "DEBIT", "DEPOSIT", ">=", "100.005"));
+        RuleMatcher compiled = compiler.compile(rule);
+
+        sums.put("DEBIT/DEPOSIT", 10_000L);
+        assertFalse(compiled.matches(facts));
+        sums.put("DEBIT/DEPOSIT", 10_001L);
+        assertTrue(compiled.matches(facts));
+    }
+
+    @Test
+    void rejectsUnknownOperator() {
+        DynamicRuleResponse rule = rule(query("TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW", false, "DEBIT", "!="));
+
+        assertThrows(IllegalArgumentException.class, () -> compiler.compile(rule));
+    }
+
+    private void randomFacts() {
+        products.clear();
+        activeProducts.clear();
+        sums.clear();
+        for (String productType : PRODUCT_TYPES) {
+            if (random.nextBoolean()) {
+                products.add(productType);
+            }
+            if (random.nextBoolean()) {
+                activeProducts.add(productType);
+            }
+            for (String transactionType : TRANSACTION_TYPES) {
+                // Суммы около порогов из randomRule, чтобы часто попадать на границу сравнения
+                sums.put(productType + "/" + transactionType, (random.nextInt(5) - 1) * 50_000L);
+            }
+        }
+    }
+
+    private String describe(DynamicRuleResponse rule) {
+        StringBuilder description = new StringBuilder();
+        for (RuleQuery query : rule.getRule()) {
+            description.append(Boolean.TRUE.equals(query.getNegate()) ? "!" : "")
+                    .append(query.getQuery()).append(query.getArguments()).append(' ');
+        }
+        return description.append("facts: products=").append(products)
+                .append(", active=").append(activeProducts)
+                .append(", sums=").append(sums).toString();
+    }
+}
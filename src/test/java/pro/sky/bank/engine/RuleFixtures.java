@@ -0,0 +1,122 @@
+package pro.sky.bank.engine;
+
+import org.mockito.Mockito;
+import pro.sky.bank.journal.DecisionJournal;
+import pro.sky.bank.model.dto.DynamicRuleResponse;
+import pro.sky.bank.model.dto.RuleQuery;
+import pro.sky.bank.monitoring.LatencyMonitor;
+import pro.sky.bank.repository.RecommendationsRepository;
+import pro.sky.bank.service.DynamicRuleService;
+import pro.sky.bank.service.RuleEvaluationService;
+import pro.sky.bank.service.RuleReachTracker;
+import pro.sky.bank.service.RuleStatisticService;
+import pro.sky.bank.service.RuleTriggerTimeSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Общая подготовка тестов движка правил: случайные правила и интерпретатор поверх заглушки репозитория.
+ */
+final class RuleFixtures {
+
+    static final String[] PRODUCT_TYPES = {"DEBIT", "CREDIT", "INVEST", "SAVING"};
+    static final String[] TRANSACTION_TYPES = {"DEPOSIT", "EXPENSE"};
+    static final String[] OPERATORS = {">", "<", "=", ">=", "<="};
+
+    private RuleFixtures() {
+    }
+
+    /**
+     * Факты о пользователях, которые отдает заглушка репозитория.
+     */
+    interface Facts {
+
+        boolean hasProduct(UUID userId, String productType);
+
+        boolean isActive(UUID userId, String productType);
+
+        /**
+         * @return сумма в копейках.
+         */
+        long sum(UUID userId, String productType, String transactionType);
+    }
+
+    /**
+     * @return заглушка {@link RecommendationsRepository}, читающая факты из {@code facts} при каждом вызове.
+     */
+    static RecommendationsRepository repository(Facts facts) {
+        RecommendationsRepository repository = Mockito.mock(RecommendationsRepository.class);
+        when(repository.hasProductType(any(), anyString()))
+                .thenAnswer(invocation -> facts.hasProduct(invocation.getArgument(0), invocation.getArgument(1)));
+        when(repository.isActiveUserOfProductType(any(), anyString()))
+                .thenAnswer(invocation -> facts.isActive(invocation.getArgument(0), invocation.getArgument(1)));
+        when(repository.getTransactionSumByProductTypeAndTransactionType(any(), anyString(), anyString()))
+                .thenAnswer(invocation -> facts.sum(invocation.getArgument(0), invocation.getArgument(1),
+                        invocation.getArgument(2)));
+        when(repository.getTotalDepositsByProductType(any(), anyString()))
+                .thenAnswer(invocation -> facts.sum(invocation.getArgument(0), invocation.getArgument(1), "DEPOSIT"));
+        when(repository.getTotalExpensesByProductType(any(), anyString()))
+                .thenAnswer(invocation -> facts.sum(invocation.getArgument(0), invocation.getArgument(1), "EXPENSE"));
+        return repository;
+    }
+
+    /**
+     * @return {@link RuleEvaluationService} поверх {@code repository}; остальные зависимости — заглушки.
+     */
+    static RuleEvaluationService evaluationService(RecommendationsRepository repository) {
+        return new RuleEvaluationService(repository,
+                Mockito.mock(RuleStatisticService.class),
+                Mockito.mock(DynamicRuleService.class),
+                Mockito.mock(RuleReachTracker.class),
+                Mockito.mock(RuleTriggerTimeSeries.class),
+                Mockito.mock(LatencyMonitor.class),
+                Mockito.mock(DecisionJournal.class));
+    }
+
+    /**
+     * @return правило из 1-3 случайных запросов; пороги сумм — 0, 500 и 1000.
+     */
+    static DynamicRuleResponse randomRule(Random random) {
+        List<RuleQuery> queries = new ArrayList<>();
+        int size = 1 + random.nextInt(3);
+        for (int i = 0; i < size; i++) {
+            String productType = pick(random, PRODUCT_TYPES);
+            boolean negate = random.nextBoolean();
+            queries.add(switch (random.nextInt(4)) {
+                case 0 -> query("USER_OF", negate, productType);
+                case 1 -> query("ACTIVE_USER_OF", negate, productType);
+                case 2 -> query("TRANSACTION_SUM_COMPARE", negate, productType, pick(random, TRANSACTION_TYPES),
+                        pick(random, OPERATORS), String.valueOf(random.nextInt(3) * 500));
+                default -> query("TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW", negate, productType,
+                        pick(random, OPERATORS));
+            });
+        }
+        return rule(queries.toArray(new RuleQuery[0]));
+    }
+
+    static DynamicRuleResponse rule(RuleQuery... queries) {
+        DynamicRuleResponse rule = new DynamicRuleResponse();
+        rule.setProductId(UUID.randomUUID().toString());
+        rule.setRule(List.of(queries));
+        return rule;
+    }
+
+    static RuleQuery query(String type, boolean negate, String... arguments) {
+        RuleQuery query = new RuleQuery();
+        query.setQuery(type);
+        query.setNegate(negate);
+        query.setArguments(List.of(arguments));
+        return query;
+    }
+
+    static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,171 @@
+package pro.sky.bank.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecisionJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void encodedRecordDecodesToSameValues() {
+        ByteBuffer buffer = ByteBuffer.allocate(DecisionRecord.MAX_SIZE);
+        UUID userId = UUID.randomUUID();
+
+        int size = DecisionRecord.encode(buffer, DecisionRecord.Kind.QUERY, 1_700_000_000_123L, userId,
+                "product-1", "USER_OF", true, false, 42_000);
+
+        assertEquals(0, size % DecisionRecord.ALIGNMENT);
+        assertEquals(size, buffer.remaining());
+        DecisionRecord record = DecisionRecord.decode(buffer, 0);
+        assertEquals(new DecisionRecord(DecisionRecord.Kind.QUERY, Instant.ofEpochMilli(1_700_000_000_123L),
+                userId, "product-1", "USER_OF", true, false, 42_000), record);
+    }
+
+    @Test
+    void longAndMissingStringsAreBounded() {
+        ByteBuffer buffer = ByteBuffer.allocate(DecisionRecord.MAX_SIZE);
+        String longId = "я".repeat(DecisionRecord.MAX_STRING_BYTES);
+
+        int size = DecisionRecord.encode(buffer, DecisionRecord.Kind.DYNAMIC_RULE, 0, UUID.randomUUID(),
+                longId, null, false, true, 0);
+
+        assertTrue(size <= DecisionRecord.MAX_SIZE);
+        DecisionRecord record = DecisionRecord.decode(buffer, 0);
+        assertEquals(DecisionRecord.MAX_STRING_BYTES, record.ruleId().getBytes(StandardCharsets.UTF_8).length);
+        assertEquals("", record.queryType());
+    }
+
+    @Test
+    void rollsOverSegmentsAndKeepsNewestOnes() throws IOException {
+        DecisionJournal journal = new DecisionJournal(true, directory.toString(), 1, 2, 1.0);
+        UUID userId = UUID.randomUUID();
+        // Записи по ~90 байт: около 11 600 в сегменте в 1 МБ, поэтому сегментов будет четыре
+        int total = 40_000;
+        for (int i = 0; i < total; i++) {
+            journal.recordRule(userId, "rule-" + i, false, i % 2 == 0, i);
+        }
+        journal.close();
+
+        List<Path> segments = DecisionJournalReader.listSegments(directory);
+        assertEquals(2, segments.size());
+        assertEquals((long) total, journal.getStatistics().get("written"));
+
+        // Оставшиеся сегменты содержат непрерывный хвост записей
+        List<DecisionRecord> records = new ArrayList<>();
+        for (Path segment : segments) {
+            DecisionJournalReader.read(segment, records::add);
+        }
+        int first = total - records.size();
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("rule-" + (first + i), records.get(i).ruleId());
+        }
+        assertTrue(first > 0);
+    }
+
+    @Test
+    void findRecentReturnsNewestMatchesFirstAndStopsAtLimit() throws IOException {
+        DecisionJournal journal = new DecisionJournal(true, directory.toString(), 1, 4, 1.0);
+        UUID userId = UUID.randomUUID();
+        UUID otherUserId = UUID.randomUUID();
+        for (int i = 0; i < 30_000; i++) {
+            journal.recordRule(i % 3 == 0 ? userId : otherUserId, "rule-" + i, false, true, i);
+        }
+        journal.close();
+
+        List<DecisionRecord> recent = journal.findRecent(record -> record.userId().equals(userId), 5);
+
+        assertEquals(List.of("rule-29997", "rule-29994", "rule-29991", "rule-29988", "rule-29985"),
+                recent.stream().map(DecisionRecord::ruleId).toList());
+
+        // Чтение с конца останавливается, как только обработчик отказывается от следующей записи
+        List<Path> segments = DecisionJournalReader.listSegments(directory);
+        List<DecisionRecord> read = new ArrayList<>();
+        assertFalse(DecisionJournalReader.readBackward(segments.get(segments.size() - 1), record -> {
+            read.add(record);
+            return read.size() < 3;
+        }));
+        assertEquals(List.of("rule-29999", "rule-29998", "rule-29997"),
+                read.stream().map(DecisionRecord::ruleId).toList());
+    }
+
+    @Test
+    void interruptedWriteDoesNotHideLaterRecords() throws IOException {
+        Path path = directory.resolve(DecisionJournal.FILE_PREFIX + "0000000000001-0000" + DecisionJournal.FILE_SUFFIX);
+        JournalSegment segment = JournalSegment.create(path, 1 << 16);
+        ByteBuffer buffer = ByteBuffer.allocate(DecisionRecord.MAX_SIZE);
+        List<Integer> offsets = new ArrayList<>();
+        int offset = JournalSegment.HEADER_SIZE;
+        for (int i = 0; i < 4; i++) {
+            int size = DecisionRecord.encode(buffer, DecisionRecord.Kind.DYNAMIC_RULE, i, UUID.randomUUID(),
+                    "rule-" + i, "", false, true, i);
+            assertTrue(segment.append(buffer, size));
+            offsets.add(offset);
+            offset += size;
+        }
+        segment.close();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            // Запись 1: место зарезервировано, но процесс остановился до записи длины
+            channel.write(ByteBuffer.allocate(DecisionRecord.HEADER_SIZE), offsets.get(1));
+            // Запись 2: длина записана, признак фиксации — нет
+            channel.write(ByteBuffer.allocate(4), offsets.get(2) + 4);
+        }
+
+        List<String> forward = new ArrayList<>();
+        DecisionJournalReader.read(path, record -> forward.add(record.ruleId()));
+        assertEquals(List.of("rule-0", "rule-3"), forward);
+
+        List<String> backward = new ArrayList<>();
+        DecisionJournalReader.readBackward(path, record -> backward.add(record.ruleId()));
+        assertEquals(List.of("rule-3", "rule-0"), backward);
+    }
+
+    @Test
+    void readsSegmentsOfPreviousFormat() throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(DecisionRecord.MAX_SIZE);
+        UUID userId = UUID.randomUUID();
+        int size = DecisionRecord.encode(record, DecisionRecord.Kind.QUERY, 5, userId, "product", "USER_OF",
+                true, false, 7);
+        int bodySize = size - DecisionRecord.HEADER_SIZE;
+
+        // Версия 1: заголовок в 8 байт, у записи только длина, нулевая длина — конец сегмента
+        ByteBuffer legacy = ByteBuffer.allocate(1024);
+        legacy.putInt(JournalSegment.MAGIC).putInt(JournalSegment.LEGACY_VERSION);
+        legacy.putInt(4 + bodySize).put(record.array(), DecisionRecord.HEADER_SIZE, bodySize);
+        Path path = directory.resolve(DecisionJournal.FILE_PREFIX + "0000000000000-0000" + DecisionJournal.FILE_SUFFIX);
+        Files.write(path, legacy.array());
+
+        List<DecisionRecord> records = new ArrayList<>();
+        DecisionJournalReader.read(path, records::add);
+        assertEquals(List.of(new DecisionRecord(DecisionRecord.Kind.QUERY, Instant.ofEpochMilli(5), userId,
+                "product", "USER_OF", true, false, 7)), records);
+    }
+
+    @Test
+    void unsampledUsersAreNotWritten() throws IOException {
+        DecisionJournal journal = new DecisionJournal(true, directory.toString(), 1, 2, 0.0);
+        journal.recordQuery(UUID.randomUUID(), "product", "USER_OF", false, true, 1);
+        journal.close();
+
+        assertEquals(0L, journal.getStatistics().get("written"));
+        assertTrue(DecisionJournalReader.listSegments(directory).isEmpty());
+    }
+}
@@ -0,0 +1,211 @@
+package pro.sky.bank.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pro.sky.bank.engine.UserFactColumns;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserFactStoreTest {
+
+    private static final List<String> PRODUCT_TYPES = List.of("DEBIT", "CREDIT");
+    private static final List<String> TRANSACTION_TYPES = List.of("DEPOSIT", "EXPENSE");
+
+    @TempDir
+    Path directory;
+
+    private final Map<UUID, AtomicInteger> loads = new ConcurrentHashMap<>();
+
+    @Test
+    void servesStoredFactsWithoutLoadingAgain() {
+        UserFactStore store = store(1024, PRODUCT_TYPES);
+        UUID userId = UUID.randomUUID();
+
+        assertEquals(3, store.transactionCount(userId, "DEBIT", loader(3, 150)));
+        assertEquals(15_000, store.transactionSum(userId, "DEBIT", "EXPENSE", loader(3, 150)));
+        assertEquals(1, loads(userId));
+        assertEquals(UserFactStore.UNKNOWN, store.transactionCount(userId, "INVEST", loader(3, 150)));
+    }
+
+    @Test
+    void probesWholeWindowAndEvictsOldestSlot() {
+        // Окно пробирования совпадает со всей таблицей: первые 16 пользователей помещаются
+        UserFactStore store = store(16, PRODUCT_TYPES);
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            UUID userId = UUID.randomUUID();
+            users.add(userId);
+            assertEquals(i, store.transactionCount(userId, "CREDIT", loader(i, 0)));
+        }
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, store.transactionCount(users.get(i), "CREDIT", loader(i, 0)));
+            assertEquals(1, loads(users.get(i)));
+        }
+        assertEquals(0L, store.getStatistics().get("evictions"));
+
+        UUID newcomer = UUID.randomUUID();
+        assertEquals(99, store.transactionCount(newcomer, "CREDIT", loader(99, 0)));
+        assertEquals(1L, store.getStatistics().get("evictions"));
+
+        int reloaded = 0;
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, store.transactionCount(users.get(i), "CREDIT", loader(i, 0)));
+            reloaded += loads(users.get(i)) - 1;
+        }
+        assertTrue(reloaded >= 1, "evicted user must be loaded again");
+    }
+
+    @Test
+    void readersNeverSeeAnotherUsersSlot() throws InterruptedException {
+        // Один слот на двоих: пользователи постоянно вытесняют друг друга
+        UserFactStore store = store(1, PRODUCT_TYPES);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            UUID userId = t % 2 == 0 ? first : second;
+            long expected = t % 2 == 0 ? 1_000 : 2_000;
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    long count = store.transactionCount(userId, "DEBIT", loader((int) expected, expected));
+                    long sum = store.transactionSum(userId, "CREDIT", "DEPOSIT", loader((int) expected, expected));
+                    if ((count != expected && count != UserFactStore.UNKNOWN)
+                            || (sum != expected * 100 && sum != UserFactStore.UNKNOWN)) {
+                        failure.compareAndSet(null, "user " + userId + ": count " + count + ", sum " + sum);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        Thread.sleep(300);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+    }
+
+    @Test
+    void loadStartedBeforeClearIsNotStored() {
+        UserFactStore store = store(1024, PRODUCT_TYPES);
+        UUID userId = UUID.randomUUID();
+        Function<UUID, UserFactColumns> clearingLoader = id -> {
+            UserFactColumns columns = loader(7, 0).apply(id);
+            store.clear();
+            return columns;
+        };
+
+        assertEquals(UserFactStore.UNKNOWN, store.transactionCount(userId, "DEBIT", clearingLoader));
+        assertEquals(8, store.transactionCount(userId, "DEBIT", loader(8, 0)));
+        assertEquals(2, loads(userId));
+    }
+
+    @Test
+    void clearAndInvalidateMakeFactsStale() {
+        UserFactStore store = store(1024, PRODUCT_TYPES);
+        UUID userId = UUID.randomUUID();
+        UUID otherUserId = UUID.randomUUID();
+        store.transactionCount(userId, "DEBIT", loader(1, 0));
+        store.transactionCount(otherUserId, "DEBIT", loader(1, 0));
+
+        store.invalidate(userId);
+        assertEquals(2, store.transactionCount(userId, "DEBIT", loader(2, 0)));
+        assertEquals(1, store.transactionCount(otherUserId, "DEBIT", loader(2, 0)));
+
+        store.clear();
+        assertEquals(3, store.transactionCount(otherUserId, "DEBIT", loader(3, 0)));
+    }
+
+    @Test
+    void survivesReopenAndDiscardsOtherLayout() {
+        UUID userId = UUID.randomUUID();
+        UserFactStore store = store(1024, PRODUCT_TYPES);
+        store.transactionCount(userId, "DEBIT", loader(4, 0));
+        store.close();
+
+        UserFactStore reopened = store(1024, PRODUCT_TYPES);
+        assertEquals(4, reopened.transactionCount(userId, "DEBIT", loader(5, 0)));
+        assertEquals(1, loads(userId));
+        reopened.close();
+
+        // Другой список типов меняет раскладку слотов: прежние данные не читаются
+        UserFactStore migrated = store(1024, List.of("DEBIT", "CREDIT", "INVEST"));
+        assertEquals(6, migrated.transactionCount(userId, "DEBIT", loader(6, 0)));
+        assertEquals(2, loads(userId));
+    }
+
+    @Test
+    void slotLeftMidWriteIsUsableAfterRestart() throws IOException {
+        UUID userId = UUID.randomUUID();
+        UserFactStore store = store(1, PRODUCT_TYPES);
+        store.transactionCount(userId, "DEBIT", loader(4, 0));
+        store.close();
+
+        // Процесс остановился посреди записи: версия единственного слота осталась нечетной
+        Path file = directory.resolve("facts.dat");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer version = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+            channel.read(version, 64);
+            long value = version.flip().getLong();
+            channel.write(version.clear().putLong(value + 1).flip(), 64);
+        }
+
+        UserFactStore reopened = store(1, PRODUCT_TYPES);
+        // Данные прерванной записи не читаются, но слот снова принимает запись
+        assertEquals(5, reopened.transactionCount(userId, "DEBIT", loader(5, 0)));
+        assertEquals(5, reopened.transactionCount(userId, "DEBIT", loader(6, 0)));
+        assertEquals(2, loads(userId));
+    }
+
+    private UserFactStore store(int capacity, List<String> productTypes) {
+        return new UserFactStore(true, directory.resolve("facts.dat").toString(), capacity, 10,
+                productTypes, TRANSACTION_TYPES);
+    }
+
+    /**
+     * Загрузчик, у которого каждый тип продукта имеет {@code count} транзакций и сумму {@code units} рублей
+     * по каждому типу транзакции.
+     */
+    private Function<UUID, UserFactColumns> loader(int count, long units) {
+        return userId -> {
+            loads.computeIfAbsent(userId, id -> new AtomicInteger()).incrementAndGet();
+            UserFactColumns columns = new UserFactColumns(List.of(userId));
+            for (String productType : List.of("DEBIT", "CREDIT", "INVEST")) {
+                for (String transactionType : TRANSACTION_TYPES) {
+                    // Все транзакции относим к пополнениям, чтобы количество по типу продукта было равно count
+                    int share = transactionType.equals("DEPOSIT") ? count : 0;
+                    columns.add(0, productType, transactionType, share, BigDecimal.valueOf(units));
+                }
+            }
+            return columns;
+        };
+    }
+
+    private int loads(UUID userId) {
+        AtomicInteger count = loads.get(userId);
+        return count == null ? 0 : count.get();
+    }
+}
@@ -0,0 +1,49 @@
+package pro.sky.bank.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MinuteRingTest {
+
+    @Test
+    void countsPerMinuteAndOverwritesStaleSlots() {
+        RuleTriggerTimeSeries.MinuteRing ring = new RuleTriggerTimeSeries.MinuteRing(999);
+        ring.add(1_000, 1);
+        ring.add(1_000, 4);
+        ring.add(1_001, 2);
+        // Тот же слот кольца, но минута на круг позже
+        ring.add(1_000 + RuleTriggerTimeSeries.RING_MINUTES, 3);
+
+        assertEquals(Map.of(1_001L, 2L, 1_000L + RuleTriggerTimeSeries.RING_MINUTES, 3L),
+                collect(ring, 1_000, 1_000 + RuleTriggerTimeSeries.RING_MINUTES));
+        assertEquals(1_000L + RuleTriggerTimeSeries.RING_MINUTES, ring.lastMinute());
+    }
+
+    @Test
+    void drainsEachMinuteOnce() {
+        RuleTriggerTimeSeries.MinuteRing ring = new RuleTriggerTimeSeries.MinuteRing(99);
+        ring.add(100, 1);
+        ring.add(101, 1);
+        ring.add(102, 1);
+
+        Map<Long, Long> first = new HashMap<>();
+        ring.drain(101, first::put);
+        Map<Long, Long> second = new HashMap<>();
+        ring.drain(101, second::put);
+        ring.drain(102, second::put);
+
+        assertEquals(Map.of(100L, 1L, 101L, 1L), first);
+        assertEquals(Map.of(102L, 1L), second);
+        assertEquals(102, ring.compactedThrough);
+    }
+
+    private static Map<Long, Long> collect(RuleTriggerTimeSeries.MinuteRing ring, long from, long to) {
+        Map<Long, Long> counts = new HashMap<>();
+        ring.forEach(from, to, counts::put);
+        return counts;
+    }
+}
@@ -0,0 +1,142 @@
+package pro.sky.bank.telegram.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import pro.sky.bank.telegram.bot.BankWebhookBot;
+import pro.sky.bank.telegram.bot.UpdateDispatcher;
+import pro.sky.bank.telegram.handler.CommandHandler;
+import pro.sky.bank.telegram.handler.HelpHandler;
+import pro.sky.bank.telegram.handler.RecommendationHandler;
+import pro.sky.bank.telegram.service.TelegramMessageSender;
+import pro.sky.bank.telegram.service.TelegramUserService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Webhook-режим бота против локальной заглушки Telegram Bot API: обновление приходит на webhook,
+ * подтверждается сразу, а ответ бота уходит в заглушку.
+ */
+class TelegramWebhookControllerTest {
+
+    private static final String TOKEN = "123:TEST";
+    private static final String SECRET = "webhook-secret";
+
+    private HttpServer telegramStub;
+    private final BlockingQueue<String[]> telegramRequests = new LinkedBlockingQueue<>();
+    private UpdateDispatcher dispatcher;
+    private TelegramMessageSender messageSender;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        telegramStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        telegramStub.createContext("/", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            telegramRequests.add(new String[]{exchange.getRequestURI().getPath(), body});
+
+            byte[] response = """
+                    {"ok":true,"result":{"message_id":1,"date":0,"chat":{"id":42,"type":"private"},"text":"ok"}}
+                    """.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        telegramStub.start();
+
+        messageSender = new TelegramMessageSender(30, 1, 100, 3, 2);
+        CommandHandler commandHandler = new CommandHandler(
+                Mockito.mock(RecommendationHandler.class), new HelpHandler(messageSender),
+                Mockito.mock(TelegramUserService.class));
+        dispatcher = new UpdateDispatcher(commandHandler, false, 2);
+        ReflectionTestUtils.setField(dispatcher, "maxBacklog", 100);
+        ReflectionTestUtils.setField(dispatcher, "maxChatBacklog", 10);
+
+        String apiUrl = "http://127.0.0.1:" + telegramStub.getAddress().getPort() + "/bot";
+        BankWebhookBot bot = new BankWebhookBot(dispatcher, TOKEN, apiUrl);
+        TelegramWebhookController controller = new TelegramWebhookController(bot, new ObjectMapper(), SECRET);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+        messageSender.shutdown();
+        telegramStub.stop(0);
+    }
+
+    @Test
+    void acknowledgesUpdateAndRepliesThroughTelegramApi() throws Exception {
+        mockMvc.perform(post(TelegramWebhookController.PATH)
+                        .header(TelegramWebhookController.SECRET_HEADER, SECRET)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(update(1, 42, "/help")))
+                .andExpect(status().isOk());
+
+        String[] request = telegramRequests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request, "bot did not call Telegram API");
+        assertEquals("/bot" + TOKEN + "/sendmessage", request[0].toLowerCase());
+        assertTrue(request[1].contains("42"));
+    }
+
+    @Test
+    void answersServiceUnavailableWhenUpdateDoesNotFitIntoQueue() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "maxBacklog", 0);
+
+        mockMvc.perform(post(TelegramWebhookController.PATH)
+                        .header(TelegramWebhookController.SECRET_HEADER, SECRET)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(update(1, 42, "/help")))
+                .andExpect(status().isServiceUnavailable());
+
+        assertNull(telegramRequests.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void rejectsUnparsableBody() throws Exception {
+        mockMvc.perform(post(TelegramWebhookController.PATH)
+                        .header(TelegramWebhookController.SECRET_HEADER, SECRET)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void rejectsUpdateWithWrongSecret() throws Exception {
+        mockMvc.perform(post(TelegramWebhookController.PATH)
+                        .header(TelegramWebhookController.SECRET_HEADER, "wrong")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(update(1, 42, "/help")))
+                .andExpect(status().isUnauthorized());
+
+        assertNull(telegramRequests.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private static String update(int updateId, long chatId, String text) {
+        return """
+                {"update_id":%d,"message":{"message_id":%d,"date":0,"chat":{"id":%d,"type":"private"},"text":"%s"}}
+                """.formatted(updateId, updateId, chatId, text).trim();
+    }
+}
@@ -0,0 +1,80 @@
+package pro.sky.bank.telegram.handler;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import pro.sky.bank.controller.SimpleStatsController;
+import pro.sky.bank.service.RuleStatisticService;
+import pro.sky.bank.telegram.service.TelegramMessageSender;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StatsHandlerTest {
+
+    private final RuleStatisticService statisticService = Mockito.mock(RuleStatisticService.class);
+    private final TelegramMessageSender messageSender = Mockito.mock(TelegramMessageSender.class);
+    private final AbsSender bot = Mockito.mock(AbsSender.class);
+    private final StatsHandler handler = new StatsHandler(
+            Mockito.mock(SimpleStatsController.class), statisticService, messageSender);
+
+    @Test
+    void formatsTotalsAndTopRulesFromStatisticService() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalRules", 3);
+        stats.put("totalTriggerCount", 42L);
+        stats.put("topRules", List.of(
+                rule("product-1", "Invest 500", 30L),
+                rule("product-2", null, 12L)));
+        when(statisticService.getFullStatistics(false)).thenReturn(stats);
+
+        handler.sendRuleStats(7L, bot);
+
+        String text = sentText();
+        assertTrue(text.contains("Всего правил: 3"), text);
+        assertTrue(text.contains("Всего срабатываний: 42"), text);
+        assertTrue(text.contains("1. Invest 500: 30 раз"), text);
+        // Без названия правило показывается по идентификатору продукта
+        assertTrue(text.contains("2. product-2: 12 раз"), text);
+        assertFalse(text.contains("Ошибка"), text);
+    }
+
+    @Test
+    void omitsTopSectionWhenNoRuleTriggered() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalRules", 0);
+        stats.put("totalTriggerCount", 0L);
+        stats.put("topRules", List.of());
+        when(statisticService.getFullStatistics(false)).thenReturn(stats);
+
+        handler.sendRuleStats(7L, bot);
+
+        String text = sentText();
+        assertFalse(text.contains("Топ правил"), text);
+        assertFalse(text.contains("Ошибка"), text);
+    }
+
+    private String sentText() {
+        ArgumentCaptor<SendMessage> message = ArgumentCaptor.forClass(SendMessage.class);
+        verify(messageSender).send(eq(bot), message.capture(), any());
+        return message.getValue().getText();
+    }
+
+    private static Map<String, Object> rule(String productId, String productName, long triggerCount) {
+        Map<String, Object> rule = new HashMap<>();
+        rule.put("productId", productId);
+        rule.put("productName", productName);
+        rule.put("triggerCount", triggerCount);
+        return rule;
+    }
+}
@@ -0,0 +1,68 @@
+package pro.sky.bank.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    private final Random random = new Random(11);
+
+    @Test
+    void neverReturnsFalseNegatives() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01, Long.MAX_VALUE);
+        List<UUID> values = randomUuids(10_000);
+        values.forEach(filter::put);
+
+        for (UUID value : values) {
+            assertTrue(filter.mightContain(value));
+        }
+        assertEquals(10_000, filter.insertions());
+    }
+
+    @Test
+    void falsePositiveRateIsCloseToTarget() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01, Long.MAX_VALUE);
+        randomUuids(10_000).forEach(filter::put);
+
+        int falsePositives = 0;
+        for (UUID value : randomUuids(100_000)) {
+            if (filter.mightContain(value)) {
+                falsePositives++;
+            }
+        }
+        double rate = falsePositives / 100_000.0;
+        assertTrue(rate < 0.015, "false positive rate " + rate);
+        assertTrue(filter.expectedFalsePositiveRate() < 0.015);
+    }
+
+    @Test
+    void memoryCapRaisesFalsePositiveRate() {
+        BloomFilter capped = BloomFilter.create(10_000, 0.01, 32_768);
+        randomUuids(10_000).forEach(capped::put);
+
+        assertEquals(32_768, capped.bitSize());
+        assertTrue(capped.expectedFalsePositiveRate() > 0.01);
+    }
+
+    @Test
+    void rejectsInvalidFalsePositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(10, 0, 1024));
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(10, 1, 1024));
+    }
+
+    private List<UUID> randomUuids(int count) {
+        List<UUID> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        return values;
+    }
+}
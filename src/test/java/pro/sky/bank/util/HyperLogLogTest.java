@@ -0,0 +1,131 @@
+package pro.sky.bank.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    // Три стандартные ошибки 1.04 / sqrt(2^14)
+    private static final double MAX_ERROR = 3 * 1.04 / Math.sqrt(HyperLogLog.REGISTER_COUNT);
+
+    private final Random random = new Random(3);
+
+    @Test
+    void estimateStaysWithinErrorBound() {
+        for (int cardinality : new int[]{10, 100, 1_000, 10_000, 100_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (int i = 0; i < cardinality; i++) {
+                sketch.add(randomUuid());
+            }
+
+            double error = Math.abs(sketch.estimate() - cardinality) / (double) cardinality;
+            assertTrue(error <= MAX_ERROR, "cardinality " + cardinality + ", error " + error);
+        }
+    }
+
+    @Test
+    void repeatedValuesDoNotChangeEstimate() {
+        HyperLogLog sketch = new HyperLogLog();
+        UUID[] values = new UUID[5_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = randomUuid();
+            sketch.add(values[i]);
+        }
+        long estimate = sketch.estimate();
+
+        for (UUID value : values) {
+            assertFalse(sketch.add(value));
+        }
+        assertEquals(estimate, sketch.estimate());
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        for (int i = 0; i < 50_000; i++) {
+            UUID value = randomUuid();
+            (i % 3 == 0 ? left : right).add(value);
+            union.add(value);
+        }
+        // Пересечение: значения в обоих скетчах
+        for (int i = 0; i < 1_000; i++) {
+            UUID value = randomUuid();
+            left.add(value);
+            right.add(value);
+            union.add(value);
+        }
+
+        left.merge(right);
+        assertArrayEquals(union.toBytes(), left.toBytes());
+        assertEquals(union.estimate(), left.estimate());
+    }
+
+    @Test
+    void smallSketchIsSerializedSparsely() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add(randomUuid());
+        }
+
+        byte[] bytes = sketch.toBytes();
+        assertTrue(sketch.isSparse());
+        assertTrue(bytes.length < 3_100, "serialized size " + bytes.length);
+
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertEquals(sketch.estimate(), restored.estimate());
+        assertArrayEquals(bytes, restored.toBytes());
+    }
+
+    @Test
+    void largeSketchBecomesDenseWithoutChangingEstimate() {
+        HyperLogLog sketch = new HyperLogLog();
+        HyperLogLog copy = new HyperLogLog();
+        for (int i = 0; i < 100_000; i++) {
+            UUID value = randomUuid();
+            sketch.add(value);
+            if (i < 1_000) {
+                copy.add(value);
+            }
+        }
+        assertFalse(sketch.isSparse());
+        assertTrue(copy.isSparse());
+
+        byte[] bytes = sketch.toBytes();
+        assertEquals(HyperLogLog.SERIALIZED_SIZE, bytes.length);
+        assertEquals(sketch.estimate(), HyperLogLog.fromBytes(bytes).estimate());
+
+        // Слияние разреженного скетча в плотный и наоборот дает тот же результат
+        HyperLogLog merged = HyperLogLog.fromBytes(copy.toBytes());
+        merged.merge(sketch);
+        assertArrayEquals(bytes, merged.toBytes());
+    }
+
+    @Test
+    void readsDenseSerializationOfEmptySketch() {
+        HyperLogLog sketch = HyperLogLog.fromBytes(new byte[HyperLogLog.SERIALIZED_SIZE]);
+
+        assertTrue(sketch.isEmpty());
+        assertEquals(0, sketch.estimate());
+    }
+
+    @Test
+    void rejectsMalformedBytes() {
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{1, 0}));
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[]{2, 0, 0, 0}));
+    }
+
+    private UUID randomUuid() {
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+}
@@ -0,0 +1,70 @@
+package pro.sky.bank.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    private final Random random = new Random(17);
+
+    @Test
+    void percentilesStayWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Логнормальные задержки от микросекунд до секунд
+            values[i] = (long) Math.exp(7 + random.nextGaussian() * 3);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(false);
+
+        assertEquals(values.length, snapshot.getTotalCount());
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100.0) - 1];
+            long reported = snapshot.getValueAtPercentile(percentile);
+            double error = Math.abs(reported - exact) / (double) Math.max(exact, 1);
+            assertTrue(error <= 1.0 / LatencyHistogram.SUB_BUCKETS, "p" + percentile + " error " + error);
+        }
+        assertEquals(Math.min(values[values.length - 1], LatencyHistogram.MAX_VALUE), snapshot.getMax());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 2 * LatencyHistogram.SUB_BUCKETS; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(false);
+
+        assertEquals(LatencyHistogram.SUB_BUCKETS - 1, snapshot.getValueAtPercentile(50));
+        assertEquals(2 * LatencyHistogram.SUB_BUCKETS - 1, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    void resetStartsNewInterval() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_000);
+        histogram.snapshot(true);
+        histogram.record(500);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(true);
+        assertEquals(1, snapshot.getTotalCount());
+        assertEquals(500, snapshot.getMax());
+        assertEquals(0, histogram.snapshot(false).getTotalCount());
+    }
+
+    @Test
+    void bucketBoundariesAreContiguous() {
+        for (int index = 1; index < LatencyHistogram.index(LatencyHistogram.MAX_VALUE); index++) {
+            long lowest = LatencyHistogram.highestValue(index - 1) + 1;
+            assertEquals(index, LatencyHistogram.index(lowest));
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.highestValue(index)));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package pro.sky.bank.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTest {
+
+    private final Random random = new Random(11);
+
+    @Test
+    void roundsThirdDecimalHalfUp() {
+        assertEquals(1, Money.parse("0.005"));
+        assertEquals(0, Money.parse("0.0049"));
+        assertEquals(-1, Money.parse("-0.005"));
+        assertEquals(0, Money.parse("-0.004"));
+        assertEquals(10_000, Money.parse("100.004"));
+        assertEquals(10_001, Money.parse("100.0050"));
+        // Учитывается только третий знак, как при setScale(2, HALF_UP)
+        assertEquals(1_234, Money.parse("12.3449"));
+        assertEquals(100, Money.parse("0.995"));
+    }
+
+    @Test
+    void parsesIntegersAndShortFractions() {
+        assertEquals(100_000, Money.parse("1000"));
+        assertEquals(1_250, Money.parse("+12.5"));
+        assertEquals(-1_250, Money.parse("-12.50"));
+        assertEquals(100, Money.parse("1."));
+        assertEquals(50, Money.parse(".5"));
+        assertEquals(0, Money.parse("-0"));
+    }
+
+    @Test
+    void parsesExponentThroughBigDecimal() {
+        assertEquals(100_000, Money.parse("1e3"));
+        assertEquals(1, Money.parse("5E-3"));
+        assertEquals(-1_250, Money.parse("-1.25E+1"));
+    }
+
+    @Test
+    void coversWholeLongRange() {
+        assertEquals(Long.MIN_VALUE, Money.parse("-92233720368547758.08"));
+        assertEquals(Long.MAX_VALUE, Money.parse("92233720368547758.07"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.08"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("-92233720368547758.085"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.075"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("1000000000000000000000"));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        for (String value : new String[]{"", "-", "+", ".", "1.2.3", "abc", "1,5", " 1", "--1"}) {
+            assertThrows(NumberFormatException.class, () -> Money.parse(value), value);
+        }
+    }
+
+    @Test
+    void agreesWithBigDecimalConversion() {
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder value = new StringBuilder();
+            if (random.nextInt(3) == 0) {
+                value.append(random.nextBoolean() ? '-' : '+');
+            }
+            value.append(random.nextLong(1_000_000_000_000L));
+            if (random.nextBoolean()) {
+                value.append('.');
+                int fraction = random.nextInt(6);
+                for (int d = 0; d < fraction; d++) {
+                    value.append((char) ('0' + random.nextInt(10)));
+                }
+            }
+            String text = value.toString();
+            assertEquals(Money.toMinorUnits(new BigDecimal(text)), Money.parse(text), text);
+        }
+    }
+}
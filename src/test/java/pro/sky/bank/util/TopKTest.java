@@ -0,0 +1,78 @@
+package pro.sky.bank.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKTest {
+
+    private final Random random = new Random(5);
+
+    @Test
+    void matchesFullSortForGrowingCounters() {
+        TopK<String> top = new TopK<>(10);
+        Map<String, Long> counts = new HashMap<>();
+
+        for (int i = 0; i < 50_000; i++) {
+            // Неравномерное распределение, чтобы состав топа менялся
+            String key = "rule-" + (int) Math.abs(random.nextGaussian() * 40);
+            long count = counts.merge(key, 1L + random.nextInt(3), Long::sum);
+            top.update(key, count);
+
+            if (i % 1_000 == 0) {
+                assertEquals(expectedTop(counts, 10), top.snapshot());
+            }
+        }
+        assertEquals(expectedTop(counts, 10), top.snapshot());
+    }
+
+    @Test
+    void ignoresStaleCount() {
+        TopK<String> top = new TopK<>(2);
+        top.update("a", 5);
+        top.update("a", 3);
+
+        assertEquals(List.of(new TopK.Entry<>("a", 5L)), top.snapshot());
+    }
+
+    @Test
+    void removedKeyLeavesTopUntilCountersAreReported() {
+        TopK<String> top = new TopK<>(2);
+        Map<String, Long> counts = Map.of("a", 10L, "b", 7L, "c", 5L);
+        counts.forEach(top::update);
+
+        assertTrue(top.remove("a"));
+        assertFalse(top.remove("a"));
+        assertEquals(List.of(new TopK.Entry<>("b", 7L)), top.snapshot());
+
+        counts.forEach((key, count) -> {
+            if (!key.equals("a")) {
+                top.update(key, count);
+            }
+        });
+        assertEquals(List.of(new TopK.Entry<>("b", 7L), new TopK.Entry<>("c", 5L)), top.snapshot());
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new TopK<String>(0));
+    }
+
+    private static List<TopK.Entry<String>> expectedTop(Map<String, Long> counts, int size) {
+        List<TopK.Entry<String>> entries = new ArrayList<>();
+        counts.forEach((key, count) -> entries.add(new TopK.Entry<>(key, count)));
+        entries.sort(Comparator.<TopK.Entry<String>>comparingLong(TopK.Entry::count).reversed()
+                .thenComparing(TopK.Entry::key));
+        return entries.subList(0, Math.min(size, entries.size()));
+    }
+}